@@ -0,0 +1,143 @@
+package clienteftp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase AlmacenPerfiles. Guarda los perfiles de conexión en perfiles.bin,
+ * recordando cuál fue el último que consiguió conectar. Si aún no existe y
+ * hay un sesionAnterior.bin de versiones anteriores, lo convierte en el
+ * primer perfil.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class AlmacenPerfiles {
+
+    private static final int VERSION = 2;
+
+    private final File archivo;
+    private final Map<String, Perfil> perfiles;
+    private String ultimo;
+
+    /**
+     * Constructor del almacén, carga los perfiles guardados.
+     *
+     * @param archivo Archivo de perfiles.
+     * @param sesionAnterior Archivo de la versión anterior con una sola sesión.
+     * @param bufferDatos Buffer que se da al perfil migrado.
+     * @param maxSesiones Sesiones que se dan al perfil migrado.
+     */
+    public AlmacenPerfiles(File archivo, File sesionAnterior, int bufferDatos, int maxSesiones) {
+        this.archivo = archivo;
+        this.perfiles = new LinkedHashMap<>();
+        this.ultimo = "";
+        if (archivo.exists()) {
+            this.cargar();
+        } else if (sesionAnterior.exists()) {
+            this.migrar(sesionAnterior, bufferDatos, maxSesiones);
+        }
+    }
+
+    // Lee todos los perfiles del archivo.
+    private void cargar() {
+        try (DataInputStream lector = new DataInputStream(new BufferedInputStream(new FileInputStream(this.archivo)))) {
+            int version = lector.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Versión de perfiles desconocida: " + version);
+            }
+            this.ultimo = lector.readUTF();
+            int cantidad = lector.readInt();
+            for (int i = 0; i < cantidad; i++) {
+                Perfil perfil = Perfil.leer(lector, version);
+                this.perfiles.put(perfil.getNombre(), perfil);
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al leer los perfiles", ex);
+        }
+    }
+
+    // Convierte la sesión anterior (servidor, usuario y contraseña) en un perfil.
+    private void migrar(File sesionAnterior, int bufferDatos, int maxSesiones) {
+        try (DataInputStream lector = new DataInputStream(new FileInputStream(sesionAnterior))) {
+            Perfil perfil = new Perfil(lector.readUTF(), Perfil.PUERTO_POR_DEFECTO, lector.readUTF(), lector.readUTF(),
+                    Perfil.SIN_TLS, true, false, bufferDatos, maxSesiones);
+            this.guardar(perfil);
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede migrar la sesión anterior", ex);
+        }
+    }
+
+    /**
+     * Obtiene los nombres de todos los perfiles.
+     *
+     * @return Listado de nombres.
+     */
+    public synchronized List<String> getNombres() {
+        return new ArrayList<>(this.perfiles.keySet());
+    }
+
+    /**
+     * Obtiene un perfil por su nombre.
+     *
+     * @param nombre Nombre del perfil.
+     * @return El perfil o null si no existe.
+     */
+    public synchronized Perfil getPerfil(String nombre) {
+        return this.perfiles.get(nombre);
+    }
+
+    /**
+     * Obtiene el último perfil que consiguió conectar.
+     *
+     * @return El perfil o null si no hay ninguno.
+     */
+    public synchronized Perfil getUltimo() {
+        return this.perfiles.get(this.ultimo);
+    }
+
+    /**
+     * Guarda un perfil, sustituyendo al que tenga el mismo nombre, y lo marca
+     * como el último usado.
+     *
+     * @param perfil El perfil que ha conectado.
+     */
+    public synchronized void guardar(Perfil perfil) {
+        this.perfiles.put(perfil.getNombre(), perfil);
+        this.ultimo = perfil.getNombre();
+        this.escribir();
+    }
+
+    // Escribe todos los perfiles en un temporal y lo cambia por el actual.
+    private void escribir() {
+        File temporal = new File(this.archivo.getPath() + ".tmp");
+        try (DataOutputStream escritor = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal)))) {
+            escritor.writeInt(VERSION);
+            escritor.writeUTF(this.ultimo);
+            escritor.writeInt(this.perfiles.size());
+            for (Perfil perfil : this.perfiles.values()) {
+                perfil.escribir(escritor);
+            }
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se pueden guardar los perfiles", ex);
+            return;
+        }
+        try {
+            Files.move(temporal.toPath(), this.archivo.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se pueden guardar los perfiles", ex);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase BorradoRecursivo. Borra archivos y directorios remotos con todo su
+ * contenido. Primero recorre el árbol listando varios directorios a la vez
+ * con sesiones del pool y cuenta lo que se va a borrar, sin tocar nada; así
+ * se puede pedir confirmación. Después borra los archivos en paralelo y cada
+ * directorio en cuanto se han borrado todos sus hijos, de abajo arriba. Lo
+ * que falla se agrupa por código de respuesta del servidor, y los
+ * directorios a los que les queda algo dentro no se intentan borrar.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class BorradoRecursivo {
+
+    /**
+     * Recibe el avance del borrado. Se llama desde los hilos del borrado.
+     */
+    public interface OyenteBorrado {
+
+        /**
+         * Han terminado más elementos, borrados o no.
+         *
+         * @param hechos Elementos terminados.
+         * @param total Elementos que hay que borrar.
+         */
+        void progreso(int hechos, int total);
+    }
+
+    // Códigos propios para los fallos que no son respuestas del servidor.
+    private static final int SIN_CONEXION = 0;
+    private static final int NO_VACIO = -1;
+    // Tiempo mínimo entre dos avisos de progreso.
+    private static final long AVISO_CADA = 200;
+
+    private final PoolSesiones pool;
+    private final CacheListados cache;
+    private final ExecutorService hilos;
+    private final AtomicInteger pendientes, archivos, carpetas, hechos, archivosBorrados, carpetasBorradas;
+    private final Map<Integer, Fallo> fallos;
+    private final List<String> listados;
+    private Nodo raiz;
+    private long bytes;
+    private CountDownLatch recorrido, terminado;
+    private OyenteBorrado oyente;
+    private volatile long ultimoAviso;
+
+    /**
+     * Constructor del borrado.
+     *
+     * @param pool Pool de sesiones del servidor.
+     * @param cache Cache de listados, se olvidan los directorios tocados.
+     * @param paralelismo Número de órdenes que se mandan a la vez.
+     */
+    public BorradoRecursivo(PoolSesiones pool, CacheListados cache, int paralelismo) {
+        this.pool = pool;
+        this.cache = cache;
+        this.hilos = Executors.newFixedThreadPool(Math.max(1, paralelismo));
+        this.pendientes = new AtomicInteger(0);
+        this.archivos = new AtomicInteger(0);
+        this.carpetas = new AtomicInteger(0);
+        this.hechos = new AtomicInteger(0);
+        this.archivosBorrados = new AtomicInteger(0);
+        this.carpetasBorradas = new AtomicInteger(0);
+        this.fallos = new TreeMap<>();
+        this.listados = new ArrayList<>();
+    }
+
+    /**
+     * Recorre lo que se va a borrar y lo cuenta, sin borrar nada. Vuelve
+     * cuando se han listado todos los directorios.
+     *
+     * @param directorio Directorio remoto donde están los elementos.
+     * @param elementos Archivos y directorios seleccionados.
+     * @return Cadena con el recuento.
+     */
+    public String contar(String directorio, List<FTPFile> elementos) {
+        this.raiz = new Nodo(null, directorio, true);
+        this.recorrido = new CountDownLatch(1);
+        this.pendientes.incrementAndGet();
+        for (FTPFile elemento : elementos) {
+            this.anadir(this.raiz, elemento);
+        }
+        this.acabarListado();
+
+        try {
+            this.recorrido.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        String recuento = "Se borrarán " + this.archivos.get() + " archivos (" + (this.bytes / (1024 * 1024)) + " MB) y "
+                + this.carpetas.get() + " carpetas.";
+        synchronized (this.fallos) {
+            if (!this.fallos.isEmpty()) {
+                recuento += " No se han podido listar " + this.contarFallos() + " carpetas, que se quedarán sin borrar.";
+            }
+        }
+        return recuento;
+    }
+
+    /**
+     * Borra lo contado y espera a que termine. Hay que llamar antes a contar.
+     *
+     * @param oyente Recibe el avance, puede ser null.
+     * @return Cadena con el resumen del borrado y los fallos.
+     */
+    public String borrar(OyenteBorrado oyente) {
+        this.oyente = oyente;
+        long inicio = System.currentTimeMillis();
+        int total = this.archivos.get() + this.carpetas.get();
+        this.terminado = new CountDownLatch(total);
+        this.lanzarHojas(this.raiz);
+
+        try {
+            this.terminado.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.hilos.shutdown();
+        for (String ruta : this.listados) {
+            this.cache.invalidar(ruta);
+        }
+        this.cache.invalidar(this.raiz.ruta);
+        if (this.oyente != null) {
+            this.oyente.progreso(this.hechos.get(), total);
+        }
+
+        return "Borrados " + this.archivosBorrados.get() + " archivos y " + this.carpetasBorradas.get() + " carpetas en "
+                + ((System.currentTimeMillis() - inicio) / 1000) + " s." + this.getFallos();
+    }
+
+    /**
+     * Cierra los hilos sin borrar nada, por ejemplo si no se confirma.
+     */
+    public void descartar() {
+        this.hilos.shutdown();
+    }
+
+    // Añade un elemento al árbol y, si es directorio, encola su listado.
+    private void anadir(Nodo padre, FTPFile elemento) {
+        Nodo nodo = new Nodo(padre, CacheListados.unir(padre.ruta, elemento.getName()), elemento.isDirectory());
+        padre.hijos.add(nodo);
+        if (nodo.directorio) {
+            this.carpetas.incrementAndGet();
+            this.explorar(nodo);
+        } else {
+            this.archivos.incrementAndGet();
+            synchronized (this) {
+                this.bytes += Math.max(0, elemento.getSize());
+            }
+        }
+    }
+
+    // Encola el listado de un directorio.
+    private void explorar(final Nodo nodo) {
+        this.pendientes.incrementAndGet();
+        this.hilos.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    procesarDirectorio(nodo);
+                } finally {
+                    acabarListado();
+                }
+            }
+        });
+    }
+
+    // Un listado menos; al acabar el último el árbol está completo.
+    private void acabarListado() {
+        if (this.pendientes.decrementAndGet() == 0) {
+            this.recorrido.countDown();
+        }
+    }
+
+    // Lista un directorio y cuelga sus hijos del árbol. Si no se puede listar
+    // se queda sin borrar, y con él todos los que lo contienen.
+    private void procesarDirectorio(Nodo nodo) {
+        FTPFile[] elementos = this.listar(nodo.ruta);
+        if (elementos == null) {
+            nodo.incompleto = true;
+            return;
+        }
+        synchronized (this.listados) {
+            this.listados.add(nodo.ruta);
+        }
+        for (FTPFile elemento : elementos) {
+            String nombre = elemento.getName();
+            if (nombre.equals(".") || nombre.equals("..")) {
+                continue;
+            }
+            this.anadir(nodo, elemento);
+        }
+        nodo.restantes.set(nodo.hijos.size());
+    }
+
+    // Lista un directorio en el servidor, con los archivos ocultos, que de
+    // otro modo impedirían borrarlo. Nunca de la cache: podría faltar algo.
+    private FTPFile[] listar(String ruta) {
+        FTPClient cliente = null;
+        try {
+            cliente = this.pool.obtener();
+            boolean ocultos = cliente.getListHiddenFiles();
+            cliente.setListHiddenFiles(true);
+            FTPFile[] elementos;
+            try {
+                elementos = cliente.listFiles(ruta);
+            } finally {
+                cliente.setListHiddenFiles(ocultos);
+            }
+            int respuesta = cliente.getReplyCode();
+            this.pool.devolver(cliente);
+            if (!FTPReply.isPositiveCompletion(respuesta)) {
+                this.anotarFallo(respuesta, ruta);
+                return null;
+            }
+            return elementos;
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al listar " + ruta, ex);
+            this.anotarFallo(SIN_CONEXION, ruta);
+            if (cliente != null) {
+                this.pool.descartar(cliente);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.anotarFallo(SIN_CONEXION, ruta);
+        }
+        return null;
+    }
+
+    // Recorre el árbol y encola lo que se puede borrar ya: archivos y
+    // directorios vacíos. Los demás directorios se encolan al acabar sus hijos.
+    private void lanzarHojas(Nodo nodo) {
+        for (Nodo hijo : nodo.hijos) {
+            if (!hijo.directorio) {
+                this.encolarBorrado(hijo);
+            } else if (hijo.incompleto) {
+                this.terminar(hijo, false);
+            } else if (hijo.hijos.isEmpty()) {
+                this.encolarBorrado(hijo);
+            } else {
+                this.lanzarHojas(hijo);
+            }
+        }
+    }
+
+    // Encola el borrado de un elemento.
+    private void encolarBorrado(final Nodo nodo) {
+        this.hilos.execute(new Runnable() {
+            @Override
+            public void run() {
+                terminar(nodo, eliminar(nodo));
+            }
+        });
+    }
+
+    // Manda DELE o RMD. Devuelve true si el servidor lo ha borrado.
+    private boolean eliminar(Nodo nodo) {
+        FTPClient cliente = null;
+        try {
+            cliente = this.pool.obtener();
+            boolean correcto = nodo.directorio ? cliente.removeDirectory(nodo.ruta) : cliente.deleteFile(nodo.ruta);
+            if (!correcto) {
+                this.anotarFallo(cliente.getReplyCode(), nodo.ruta);
+            }
+            this.pool.devolver(cliente);
+            return correcto;
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al borrar " + nodo.ruta, ex);
+            this.anotarFallo(SIN_CONEXION, nodo.ruta);
+            if (cliente != null) {
+                this.pool.descartar(cliente);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.anotarFallo(SIN_CONEXION, nodo.ruta);
+        }
+        return false;
+    }
+
+    // Da un elemento por terminado y, si era el último hijo de su directorio,
+    // encola el borrado del directorio o lo da por fallido si le queda algo.
+    private void terminar(Nodo nodo, boolean borrado) {
+        if (borrado) {
+            (nodo.directorio ? this.carpetasBorradas : this.archivosBorrados).incrementAndGet();
+        } else {
+            nodo.padre.incompleto = true;
+        }
+        this.avisar(this.hechos.incrementAndGet());
+        this.terminado.countDown();
+
+        Nodo padre = nodo.padre;
+        if (padre != this.raiz && padre.restantes.decrementAndGet() == 0) {
+            if (padre.incompleto) {
+                this.anotarFallo(NO_VACIO, padre.ruta);
+                this.terminar(padre, false);
+            } else {
+                this.encolarBorrado(padre);
+            }
+        }
+    }
+
+    // Avisa al oyente como mucho cada AVISO_CADA milisegundos.
+    private void avisar(int hechos) {
+        long ahora = System.currentTimeMillis();
+        if (this.oyente != null && ahora - this.ultimoAviso >= AVISO_CADA) {
+            this.ultimoAviso = ahora;
+            this.oyente.progreso(hechos, this.archivos.get() + this.carpetas.get());
+        }
+    }
+
+    private void anotarFallo(int codigo, String ruta) {
+        synchronized (this.fallos) {
+            Fallo fallo = this.fallos.get(codigo);
+            if (fallo == null) {
+                this.fallos.put(codigo, new Fallo(ruta));
+            } else {
+                fallo.veces++;
+            }
+        }
+    }
+
+    private int contarFallos() {
+        int total = 0;
+        for (Fallo fallo : this.fallos.values()) {
+            total += fallo.veces;
+        }
+        return total;
+    }
+
+    // Resumen de los fallos por código, con un ejemplo de cada uno.
+    private String getFallos() {
+        synchronized (this.fallos) {
+            if (this.fallos.isEmpty()) {
+                return "";
+            }
+            StringBuilder resumen = new StringBuilder(" Fallaron " + this.contarFallos() + ":");
+            String separador = " ";
+            for (Map.Entry<Integer, Fallo> entrada : this.fallos.entrySet()) {
+                int codigo = entrada.getKey();
+                String motivo = codigo == SIN_CONEXION ? "sin conexión" : codigo == NO_VACIO ? "no vacías" : String.valueOf(codigo);
+                resumen.append(separador).append(motivo).append(" x").append(entrada.getValue().veces)
+                        .append(" (").append(entrada.getValue().ejemplo).append(")");
+                separador = ", ";
+            }
+            return resumen.append('.').toString();
+        }
+    }
+
+    // Un elemento del árbol que se borra.
+    private static class Nodo {
+
+        private final Nodo padre;
+        private final String ruta;
+        private final boolean directorio;
+        private final List<Nodo> hijos;
+        // Hijos que faltan por terminar.
+        private final AtomicInteger restantes;
+        // Algo de dentro no se ha podido listar o borrar.
+        private volatile boolean incompleto;
+
+        private Nodo(Nodo padre, String ruta, boolean directorio) {
+            this.padre = padre;
+            this.ruta = ruta;
+            this.directorio = directorio;
+            this.hijos = new ArrayList<>();
+            this.restantes = new AtomicInteger(0);
+            this.incompleto = false;
+        }
+    }
+
+    // Fallos con el mismo código.
+    private static class Fallo {
+
+        private final String ejemplo;
+        private int veces;
+
+        private Fallo(String ejemplo) {
+            this.ejemplo = ejemplo;
+            this.veces = 1;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase BuscadorRemoto. Recorre el árbol de directorios remoto a partir de una
+ * ruta, listando varios directorios a la vez con sesiones del pool, y avisa de
+ * cada archivo que cumple los criterios en cuanto lo encuentra. Los listados
+ * se toman de la cache si están y se guardan en ella si no, así que repetir
+ * una búsqueda apenas cuesta.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class BuscadorRemoto {
+
+    /**
+     * Recibe los resultados de la búsqueda según van apareciendo. Se llama
+     * desde los hilos de la búsqueda.
+     */
+    public interface OyenteBusqueda {
+
+        /**
+         * Se ha encontrado un elemento que cumple los criterios.
+         *
+         * @param ruta Ruta completa del elemento.
+         * @param archivo Datos del elemento.
+         */
+        void encontrado(String ruta, FTPFile archivo);
+
+        /**
+         * La búsqueda ha terminado o se ha cancelado.
+         *
+         * @param encontrados Número de elementos encontrados.
+         * @param directorios Número de directorios recorridos.
+         */
+        void terminado(int encontrados, int directorios);
+    }
+
+    private final PoolSesiones pool;
+    private final CacheListados cache;
+    private final boolean usarMlsd;
+    private final ExecutorService hilos;
+    private final AtomicInteger pendientes, encontrados, recorridos;
+    private Pattern patron;
+    private long tamanioMinimo, tamanioMaximo, modificadoDespues;
+    private int profundidadMaxima;
+    private OyenteBusqueda oyente;
+    private volatile boolean cancelado;
+
+    /**
+     * Constructor del buscador, sin criterios: encuentra todo.
+     *
+     * @param pool Pool de sesiones del servidor.
+     * @param cache Cache de listados.
+     * @param usarMlsd true si el servidor admite MLSD.
+     * @param paralelismo Número de directorios que se listan a la vez.
+     */
+    public BuscadorRemoto(PoolSesiones pool, CacheListados cache, boolean usarMlsd, int paralelismo) {
+        this.pool = pool;
+        this.cache = cache;
+        this.usarMlsd = usarMlsd;
+        this.hilos = Executors.newFixedThreadPool(Math.max(1, paralelismo));
+        this.pendientes = new AtomicInteger(0);
+        this.encontrados = new AtomicInteger(0);
+        this.recorridos = new AtomicInteger(0);
+        this.patron = null;
+        this.tamanioMinimo = 0;
+        this.tamanioMaximo = Long.MAX_VALUE;
+        this.modificadoDespues = 0;
+        this.profundidadMaxima = Integer.MAX_VALUE;
+        this.cancelado = false;
+    }
+
+    /**
+     * Busca por nombre con un patrón de comodines (* y ?) o una expresión
+     * regular.
+     *
+     * @param texto Patrón o expresión regular.
+     * @param esExpresionRegular true si texto es una expresión regular.
+     */
+    public void setNombre(String texto, boolean esExpresionRegular) {
+        if (texto == null || texto.trim().isEmpty()) {
+            this.patron = null;
+        } else if (esExpresionRegular) {
+            this.patron = Pattern.compile(texto.trim());
+        } else {
+            this.patron = Pattern.compile(comodinesAExpresion(texto.trim()), Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    /**
+     * Limita el tamaño de los archivos encontrados.
+     *
+     * @param minimo Tamaño mínimo en bytes.
+     * @param maximo Tamaño máximo en bytes.
+     */
+    public void setTamanio(long minimo, long maximo) {
+        this.tamanioMinimo = minimo;
+        this.tamanioMaximo = maximo;
+    }
+
+    /**
+     * Solo encuentra elementos modificados después de una fecha.
+     *
+     * @param milisegundos Fecha en milisegundos desde 1970, 0 para no filtrar.
+     */
+    public void setModificadoDespues(long milisegundos) {
+        this.modificadoDespues = milisegundos;
+    }
+
+    /**
+     * Limita cuántos niveles por debajo de la ruta inicial se recorren.
+     *
+     * @param profundidad Número de niveles, 0 solo la ruta inicial.
+     */
+    public void setProfundidadMaxima(int profundidad) {
+        this.profundidadMaxima = profundidad;
+    }
+
+    /**
+     * Empieza la búsqueda en segundo plano.
+     *
+     * @param rutaInicial Directorio remoto desde el que se busca.
+     * @param oyente Recibe los resultados.
+     */
+    public void buscar(String rutaInicial, OyenteBusqueda oyente) {
+        this.oyente = oyente;
+        this.explorar(rutaInicial, 0);
+    }
+
+    /**
+     * Cancela la búsqueda. Los directorios que se estén listando terminan pero
+     * no se recorren más.
+     */
+    public void cancelar() {
+        this.cancelado = true;
+    }
+
+    // Encola el listado de un directorio.
+    private void explorar(final String ruta, final int profundidad) {
+        this.pendientes.incrementAndGet();
+        this.hilos.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!cancelado) {
+                        procesarDirectorio(ruta, profundidad);
+                    }
+                } finally {
+                    if (pendientes.decrementAndGet() == 0) {
+                        hilos.shutdown();
+                        oyente.terminado(encontrados.get(), recorridos.get());
+                    }
+                }
+            }
+        });
+    }
+
+    // Lista un directorio, avisa de lo que cumple los criterios y encola sus
+    // subdirectorios.
+    private void procesarDirectorio(String ruta, int profundidad) {
+        FTPFile[] archivos = this.listar(ruta);
+        if (archivos == null) {
+            return;
+        }
+        this.recorridos.incrementAndGet();
+
+        for (FTPFile archivo : archivos) {
+            if (this.cancelado) {
+                return;
+            }
+            String nombre = archivo.getName();
+            if (nombre.equals(".") || nombre.equals("..")) {
+                continue;
+            }
+
+            String rutaCompleta = CacheListados.unir(ruta, nombre);
+            if (this.cumpleCriterios(archivo)) {
+                this.encontrados.incrementAndGet();
+                this.oyente.encontrado(rutaCompleta, archivo);
+            }
+            if (archivo.isDirectory() && profundidad < this.profundidadMaxima) {
+                this.explorar(rutaCompleta, profundidad + 1);
+            }
+        }
+    }
+
+    // Obtiene el listado de la cache o, si no está, del servidor con el mismo
+    // formato que la sesión interactiva. Si el servidor lo rechaza no se
+    // guarda nada.
+    private FTPFile[] listar(String ruta) {
+        FTPFile[] archivos = this.cache.obtener(ruta);
+        if (archivos != null) {
+            return archivos;
+        }
+
+        FTPClient cliente = null;
+        try {
+            cliente = this.pool.obtener();
+            archivos = Control.listar(cliente, ruta, this.usarMlsd);
+            this.cache.guardar(ruta, archivos);
+            this.pool.devolver(cliente);
+            return archivos;
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al listar " + ruta, ex);
+            if (cliente != null) {
+                this.pool.descartar(cliente);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // Comprueba nombre, tamaño y fecha.
+    private boolean cumpleCriterios(FTPFile archivo) {
+        if (this.patron != null && !this.patron.matcher(archivo.getName()).matches()) {
+            return false;
+        }
+        if (archivo.isFile() && (archivo.getSize() < this.tamanioMinimo || archivo.getSize() > this.tamanioMaximo)) {
+            return false;
+        }
+        if (archivo.isDirectory() && (this.tamanioMinimo > 0 || this.tamanioMaximo < Long.MAX_VALUE)) {
+            return false;
+        }
+        if (this.modificadoDespues > 0) {
+            return archivo.getTimestamp() != null && archivo.getTimestamp().getTimeInMillis() > this.modificadoDespues;
+        }
+        return true;
+    }
+
+    // Pasa un patrón con * y ? a expresión regular.
+    private static String comodinesAExpresion(String comodines) {
+        StringBuilder expresion = new StringBuilder();
+        for (char c : comodines.toCharArray()) {
+            if (c == '*') {
+                expresion.append(".*");
+            } else if (c == '?') {
+                expresion.append('.');
+            } else {
+                expresion.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return expresion.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPClientConfig;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase CacheCapacidades. Guarda en disco, por servidor, lo que responde a FEAT
+ * y SYST y el modo de las conexiones de datos que funciona con él. Así las
+ * siguientes conexiones no tienen que volver a preguntarlo ni a probarlo, y
+ * el listado no espera al SYST que usa commons-net para elegir el analizador.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class CacheCapacidades {
+
+    private final File archivo;
+    private final long caducidad;
+    private final Properties propiedades;
+
+    /**
+     * Constructor de la cache, carga el archivo si existe.
+     *
+     * @param archivo Archivo donde se guardan las capacidades.
+     * @param dias Días que se da por buena la información de un servidor.
+     */
+    public CacheCapacidades(File archivo, int dias) {
+        this.archivo = archivo;
+        this.caducidad = dias * 24L * 3600 * 1000;
+        this.propiedades = new Properties();
+        if (archivo.exists()) {
+            try (FileInputStream fis = new FileInputStream(archivo)) {
+                this.propiedades.load(fis);
+            } catch (IOException ex) {
+                RegistroEventos.aviso("No se puede leer la cache de capacidades", ex);
+            }
+        }
+    }
+
+    /**
+     * Prepara una sesión recién logueada. Si el servidor no está en la cache,
+     * o ha caducado, pregunta FEAT y SYST y lo guarda.
+     *
+     * @param servidor Dirección del servidor.
+     * @param cliente Sesión logueada contra ese servidor.
+     */
+    public void preparar(String servidor, FTPClient cliente) {
+        if (!this.conocido(servidor)) {
+            try {
+                this.aprender(servidor, cliente);
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al preguntar las capacidades del servidor", ex);
+                return;
+            }
+        }
+        this.configurar(servidor, cliente);
+    }
+
+    /**
+     * Aplica a una sesión lo que se sabe del servidor, sin preguntar nada.
+     *
+     * @param servidor Dirección del servidor.
+     * @param cliente Sesión contra ese servidor.
+     */
+    public void configurar(String servidor, FTPClient cliente) {
+        String sistema = this.propiedades.getProperty(servidor + ".sistema");
+        if (sistema != null && !sistema.isEmpty()) {
+            cliente.configure(new FTPClientConfig(sistema));
+        }
+        SondeoDatos.Modo modo = this.getModoDatos(servidor);
+        if (modo != null) {
+            modo.aplicar(cliente);
+        }
+    }
+
+    /**
+     * Obtiene el modo de datos que funcionó con el servidor.
+     *
+     * @param servidor Dirección del servidor.
+     * @return El modo, o null si no se sabe o ha caducado.
+     */
+    public synchronized SondeoDatos.Modo getModoDatos(String servidor) {
+        String modo = this.propiedades.getProperty(servidor + ".datos");
+        if (modo == null || !this.vigente(servidor + ".datos.fecha")) {
+            return null;
+        }
+        try {
+            return SondeoDatos.Modo.valueOf(modo);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Recuerda el modo de datos que funciona con el servidor.
+     *
+     * @param servidor Dirección del servidor.
+     * @param modo Modo que ha funcionado.
+     */
+    public synchronized void setModoDatos(String servidor, SondeoDatos.Modo modo) {
+        this.propiedades.setProperty(servidor + ".datos", modo.name());
+        this.propiedades.setProperty(servidor + ".datos.fecha", String.valueOf(System.currentTimeMillis()));
+        this.guardar();
+    }
+
+    /**
+     * Olvida el modo de datos del servidor, para que la próxima conexión lo
+     * vuelva a probar. Se usa cuando el modo recordado deja de funcionar.
+     *
+     * @param servidor Dirección del servidor.
+     */
+    public synchronized void olvidarModoDatos(String servidor) {
+        if (this.propiedades.remove(servidor + ".datos") != null) {
+            this.propiedades.remove(servidor + ".datos.fecha");
+            this.guardar();
+        }
+    }
+
+    /**
+     * Indica si el servidor anunció una función en su respuesta a FEAT.
+     *
+     * @param servidor Dirección del servidor.
+     * @param funcion Nombre de la función, por ejemplo MLST.
+     * @return true si el servidor la admite.
+     */
+    public boolean tieneFuncion(String servidor, String funcion) {
+        String funciones = this.propiedades.getProperty(servidor + ".funciones", "");
+        for (String f : funciones.split(",")) {
+            if (f.equalsIgnoreCase(funcion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Indica si hay datos del servidor y aún no han caducado.
+    private boolean conocido(String servidor) {
+        return this.vigente(servidor + ".fecha");
+    }
+
+    // Indica si la fecha guardada en la clave aún no ha caducado.
+    private boolean vigente(String clave) {
+        try {
+            long fecha = Long.parseLong(this.propiedades.getProperty(clave, "0"));
+            return System.currentTimeMillis() - fecha < this.caducidad;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // Pregunta FEAT y SYST al servidor y guarda las respuestas.
+    private void aprender(String servidor, FTPClient cliente) throws IOException {
+        StringBuilder funciones = new StringBuilder();
+        if (FTPReply.isPositiveCompletion(cliente.feat())) {
+            // Las funciones vienen una por línea, con un espacio delante.
+            for (String linea : cliente.getReplyStrings()) {
+                if (linea.startsWith(" ") && !linea.trim().isEmpty()) {
+                    if (funciones.length() > 0) {
+                        funciones.append(',');
+                    }
+                    funciones.append(linea.trim().split(" ")[0].toUpperCase());
+                }
+            }
+        }
+
+        String sistema;
+        try {
+            sistema = cliente.getSystemType();
+        } catch (IOException ex) {
+            // Hay servidores que no responden a SYST, se deja que commons-net decida.
+            sistema = "";
+        }
+
+        synchronized (this) {
+            this.propiedades.setProperty(servidor + ".funciones", funciones.toString());
+            this.propiedades.setProperty(servidor + ".sistema", sistema);
+            this.propiedades.setProperty(servidor + ".fecha", String.valueOf(System.currentTimeMillis()));
+            this.guardar();
+        }
+    }
+
+    // Escribe la cache en un temporal y lo cambia por el actual.
+    private void guardar() {
+        File temporal = new File(this.archivo.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporal)) {
+            this.propiedades.store(fos, "Capacidades de los servidores FTP");
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede guardar la cache de capacidades", ex);
+            return;
+        }
+        try {
+            Files.move(temporal.toPath(), this.archivo.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede guardar la cache de capacidades", ex);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package clienteftp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase CacheDescargas. Guarda en una carpeta local una copia de cada archivo
+ * descargado, identificada por servidor, usuario, ruta, tamaño y fecha (más
+ * el identificador único que da MLSD). Si se vuelve a pedir el mismo archivo sin
+ * que haya cambiado en el servidor se sirve desde aquí, con un enlace duro si
+ * se puede y si no con una copia, sin abrir sesión. Cuando se pasa del
+ * límite se borran los que hace más tiempo que no se usan. El índice, en
+ * orden de uso, se carga al arrancar.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class CacheDescargas {
+
+    private static final String INDICE = "indice.txt";
+
+    private final File carpeta, indice;
+    private final long limite;
+    private final boolean enlazar;
+    // Clave de cada entrada y cómo era su copia, de la menos a la más usada.
+    private final LinkedHashMap<String, Copia> entradas;
+    private final AtomicLong aciertos, fallos;
+    private long ocupado;
+    private boolean cambiado;
+
+    /**
+     * Constructor de la cache, carga el índice si existe.
+     *
+     * @param carpeta Carpeta donde se guardan las copias.
+     * @param limite Bytes máximos que ocupa, 0 para no usar la cache.
+     * @param enlazar true para usar enlaces duros en lugar de copias. Ahorra
+     * espacio y tiempo, pero si se edita la descarga sin cambiar de archivo
+     * también cambia la copia; por eso se comprueban el tamaño y la fecha de
+     * modificación al servirla.
+     */
+    public CacheDescargas(File carpeta, long limite, boolean enlazar) {
+        this.carpeta = carpeta;
+        this.indice = new File(carpeta, INDICE);
+        this.limite = Math.max(0, limite);
+        this.enlazar = enlazar;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true);
+        this.aciertos = new AtomicLong();
+        this.fallos = new AtomicLong();
+        if (this.isActiva()) {
+            this.cargar();
+        }
+    }
+
+    /**
+     * Indica si la cache está en uso.
+     *
+     * @return false si el límite es 0.
+     */
+    public boolean isActiva() {
+        return this.limite > 0;
+    }
+
+    /**
+     * Calcula la clave de un archivo remoto a partir del listado. Solo se
+     * puede guardar en cache si se sabe su tamaño y su fecha al segundo, así
+     * que hace falta el hecho modify= de MLSD: la fecha de LIST se queda en
+     * minutos o en días y dos versiones del archivo darían la misma clave. El
+     * identificador único de MLSD, si lo hay, distingue además un archivo
+     * borrado y vuelto a crear.
+     *
+     * @param sesion Usuario, servidor y puerto: "usuario@servidor:21".
+     * @param ruta Ruta absoluta del archivo en el servidor.
+     * @param archivo Datos del archivo según el listado.
+     * @return La clave o null si el archivo no se puede identificar.
+     */
+    public static String clave(String sesion, String ruta, FTPFile archivo) {
+        if (archivo == null || !archivo.isFile() || archivo.getTimestamp() == null || leerHecho(archivo, "modify") == null) {
+            return null;
+        }
+        return componer(sesion, ruta, archivo.getSize(), archivo.getTimestamp(), leerHecho(archivo, "unique"));
+    }
+
+    /**
+     * Calcula la clave de un archivo remoto con la fecha que ha dado MDTM,
+     * para cuando el listado no la trae exacta.
+     *
+     * @param sesion Usuario, servidor y puerto: "usuario@servidor:21".
+     * @param ruta Ruta absoluta del archivo en el servidor.
+     * @param tamanio Tamaño según el listado.
+     * @param modificado Fecha según MDTM.
+     * @return La clave o null si falta el tamaño o la fecha.
+     */
+    public static String clave(String sesion, String ruta, long tamanio, Calendar modificado) {
+        return modificado == null ? null : componer(sesion, ruta, tamanio, modificado, null);
+    }
+
+    // Junta los datos del archivo en la clave. El identificador único no
+    // cambia si se reescribe el archivo, así que se añade a la fecha en lugar
+    // de sustituirla.
+    private static String componer(String sesion, String ruta, long tamanio, Calendar modificado, String unico) {
+        if (tamanio < 0) {
+            return null;
+        }
+        return resumir(sesion + "|" + ruta + "|" + tamanio + "|" + modificado.getTimeInMillis()
+                + (unico == null ? "" : "|" + unico));
+    }
+
+    /**
+     * Deja en destino una copia del archivo si está en la cache. Cuenta un
+     * acierto o un fallo.
+     *
+     * @param clave Clave calculada con clave().
+     * @param destino Archivo donde se deja; se sustituye si existe.
+     * @return true si se ha servido desde la cache.
+     */
+    public boolean servir(String clave, File destino) {
+        File copia = new File(this.carpeta, clave);
+        synchronized (this) {
+            Copia entrada = this.entradas.get(clave);
+            if (entrada != null && !entrada.coincide(copia)) {
+                // Borrada o modificada desde fuera, aunque sea sin cambiar
+                // de tamaño (por ejemplo editando la descarga enlazada).
+                this.quitar(clave);
+                entrada = null;
+            }
+            if (entrada == null) {
+                this.fallos.incrementAndGet();
+                return false;
+            }
+            // Ha cambiado el orden de uso.
+            this.cambiado = true;
+        }
+        try {
+            this.duplicar(copia, destino);
+            this.aciertos.incrementAndGet();
+            return true;
+        } catch (IOException ex) {
+            // Se ha podido borrar para hacer sitio mientras tanto.
+            RegistroEventos.aviso("No se puede servir desde la cache " + destino.getName(), ex);
+            this.fallos.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Guarda una descarga recién terminada y borra las entradas menos usadas
+     * si se pasa del límite.
+     *
+     * @param clave Clave calculada con clave().
+     * @param origen Archivo descargado.
+     */
+    public void guardar(String clave, File origen) {
+        if (!this.isActiva() || origen.length() > this.limite) {
+            return;
+        }
+        File copia = new File(this.carpeta, clave);
+        File temporal = new File(this.carpeta, clave + ".tmp");
+        try {
+            this.duplicar(origen, temporal);
+            Files.move(temporal.toPath(), copia.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede guardar en la cache " + origen.getName(), ex);
+            temporal.delete();
+            return;
+        }
+        Copia entrada = new Copia(copia);
+        synchronized (this) {
+            Copia anterior = this.entradas.put(clave, entrada);
+            this.ocupado += entrada.tamanio - (anterior == null ? 0 : anterior.tamanio);
+            this.cambiado = true;
+            this.liberar(clave);
+        }
+    }
+
+    /**
+     * Escribe el índice si ha cambiado. Si el programa se cierra sin hacerlo,
+     * al arrancar se recuperan las copias que no estén en el índice.
+     */
+    public synchronized void guardarIndice() {
+        if (!this.cambiado) {
+            return;
+        }
+        File temporal = new File(this.carpeta, INDICE + ".tmp");
+        try (BufferedWriter escritor = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporal), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Copia> entrada : this.entradas.entrySet()) {
+                escritor.write(entrada.getKey() + " " + entrada.getValue().tamanio + " " + entrada.getValue().modificado);
+                escritor.newLine();
+            }
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede guardar el índice de la cache", ex);
+            return;
+        }
+        try {
+            Files.move(temporal.toPath(), this.indice.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.cambiado = false;
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede guardar el índice de la cache", ex);
+        }
+    }
+
+    /**
+     * Obtiene las descargas servidas desde la cache.
+     *
+     * @return Número de aciertos desde que arrancó el programa.
+     */
+    public long getAciertos() {
+        return this.aciertos.get();
+    }
+
+    /**
+     * Obtiene las descargas que se han tenido que pedir al servidor.
+     *
+     * @return Número de fallos desde que arrancó el programa.
+     */
+    public long getFallos() {
+        return this.fallos.get();
+    }
+
+    /**
+     * Resume el uso de la cache, para saber si el límite es el adecuado.
+     *
+     * @return Aciertos, fallos y espacio ocupado.
+     */
+    public synchronized String getResumen() {
+        long total = this.getAciertos() + this.getFallos();
+        long porcentaje = total == 0 ? 0 : this.getAciertos() * 100 / total;
+        return "Cache de descargas: " + this.getAciertos() + " aciertos, " + this.getFallos() + " fallos (" + porcentaje + "%), "
+                + this.entradas.size() + " archivos, " + (this.ocupado / (1024 * 1024)) + " de " + (this.limite / (1024 * 1024)) + " MB.";
+    }
+
+    // Lee el índice y lo cuadra con lo que hay en la carpeta: se quitan las
+    // entradas sin copia o con la copia cambiada y se añaden, como las menos
+    // usadas, las copias que no llegaron al índice. Las líneas sin fecha son
+    // de un índice anterior y se fían de la fecha que tenga la copia.
+    private void cargar() {
+        if (!this.carpeta.exists() && !this.carpeta.mkdirs()) {
+            RegistroEventos.aviso("No se puede crear la carpeta de la cache " + this.carpeta);
+            return;
+        }
+        LinkedHashMap<String, Copia> leidas = new LinkedHashMap<>();
+        if (this.indice.exists()) {
+            try (BufferedReader lector = new BufferedReader(new InputStreamReader(new FileInputStream(this.indice), StandardCharsets.UTF_8))) {
+                String linea;
+                while ((linea = lector.readLine()) != null) {
+                    String[] partes = linea.split(" ");
+                    if (partes.length == 2 || partes.length == 3) {
+                        leidas.put(partes[0], new Copia(Long.parseLong(partes[1]),
+                                partes.length == 3 ? Long.parseLong(partes[2]) : new File(this.carpeta, partes[0]).lastModified()));
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                RegistroEventos.aviso("No se puede leer el índice de la cache", ex);
+            }
+        }
+
+        File[] archivos = this.carpeta.listFiles();
+        List<File> sueltos = new ArrayList<>();
+        for (File archivo : archivos == null ? new File[0] : archivos) {
+            String nombre = archivo.getName();
+            if (nombre.equals(INDICE) || !archivo.isFile()) {
+                continue;
+            }
+            if (nombre.endsWith(".tmp")) {
+                archivo.delete();
+            } else if (!leidas.containsKey(nombre)) {
+                sueltos.add(archivo);
+            }
+        }
+        File[] ordenados = sueltos.toArray(new File[sueltos.size()]);
+        Arrays.sort(ordenados, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File archivo : ordenados) {
+            this.entradas.put(archivo.getName(), new Copia(archivo));
+            this.ocupado += archivo.length();
+        }
+        for (Map.Entry<String, Copia> entrada : leidas.entrySet()) {
+            File copia = new File(this.carpeta, entrada.getKey());
+            if (entrada.getValue().coincide(copia)) {
+                this.entradas.put(entrada.getKey(), entrada.getValue());
+                this.ocupado += entrada.getValue().tamanio;
+            } else {
+                copia.delete();
+            }
+        }
+        this.cambiado = !sueltos.isEmpty() || this.entradas.size() != leidas.size();
+        this.liberar(null);
+    }
+
+    // Borra las entradas menos usadas hasta caber en el límite, sin tocar la
+    // que se acaba de guardar.
+    private void liberar(String conservar) {
+        Iterator<Map.Entry<String, Copia>> iterador = this.entradas.entrySet().iterator();
+        while (this.ocupado > this.limite && iterador.hasNext()) {
+            Map.Entry<String, Copia> entrada = iterador.next();
+            if (entrada.getKey().equals(conservar)) {
+                continue;
+            }
+            new File(this.carpeta, entrada.getKey()).delete();
+            this.ocupado -= entrada.getValue().tamanio;
+            iterador.remove();
+            this.cambiado = true;
+        }
+    }
+
+    // Quita una entrada y su copia.
+    private void quitar(String clave) {
+        Copia entrada = this.entradas.remove(clave);
+        if (entrada != null) {
+            this.ocupado -= entrada.tamanio;
+            this.cambiado = true;
+        }
+        new File(this.carpeta, clave).delete();
+    }
+
+    // Enlaza o copia un archivo, sustituyendo el destino.
+    private void duplicar(File origen, File destino) throws IOException {
+        Files.deleteIfExists(destino.toPath());
+        if (this.enlazar) {
+            try {
+                Files.createLink(destino.toPath(), origen.toPath());
+                return;
+            } catch (IOException | UnsupportedOperationException ex) {
+                // Otro sistema de archivos o sin enlaces duros: se copia.
+            }
+        }
+        Files.copy(origen.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Valor de un hecho de MLSD (como unique o modify), si el listado es de
+    // MLSD y lo trae.
+    private static String leerHecho(FTPFile archivo, String nombre) {
+        String crudo = archivo.getRawListing();
+        if (crudo == null) {
+            return null;
+        }
+        String prefijo = nombre + "=";
+        for (String hecho : crudo.split(";")) {
+            String limpio = hecho.trim();
+            if (limpio.toLowerCase().startsWith(prefijo)) {
+                return limpio.substring(prefijo.length());
+            }
+        }
+        return null;
+    }
+
+    // Resume la clave para usarla como nombre de archivo.
+    private static String resumir(String texto) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(texto.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Tamaño y fecha de modificación de una copia al guardarla. Con enlaces
+    // duros la copia es el mismo archivo que la descarga, así que si alguien
+    // la edita cambia al menos la fecha.
+    private static class Copia {
+
+        private final long tamanio, modificado;
+
+        private Copia(long tamanio, long modificado) {
+            this.tamanio = tamanio;
+            this.modificado = modificado;
+        }
+
+        private Copia(File copia) {
+            this(copia.length(), copia.lastModified());
+        }
+
+        // Indica si la copia sigue como se guardó.
+        private boolean coincide(File copia) {
+            return copia.isFile() && copia.length() == this.tamanio && copia.lastModified() == this.modificado;
+        }
+    }
+}
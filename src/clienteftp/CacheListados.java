@@ -0,0 +1,127 @@
+package clienteftp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase CacheListados. Guarda en memoria los listados remotos ya obtenidos,
+ * por ruta, durante un tiempo limitado. La usan la navegación y la búsqueda
+ * para no repetir LIST de directorios que se acaban de listar. Guarda como
+ * mucho un número de listados: una búsqueda por un árbol grande lista
+ * muchos directorios, y al pasar del máximo se olvidan los menos usados.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class CacheListados {
+
+    // Listados por ruta, del menos al más usado.
+    private final LinkedHashMap<String, Listado> listados;
+    private final long caducidad;
+
+    /**
+     * Constructor de la cache.
+     *
+     * @param segundos Segundos que un listado se da por bueno.
+     * @param maximo Número máximo de listados que se guardan.
+     */
+    public CacheListados(int segundos, final int maximo) {
+        this.caducidad = segundos * 1000L;
+        // Al guardar se quita el menos usado si sobra o si ya ha caducado.
+        this.listados = new LinkedHashMap<String, Listado>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listado> menosUsado) {
+                return size() > Math.max(1, maximo) || caducado(menosUsado.getValue());
+            }
+        };
+    }
+
+    /**
+     * Obtiene el listado de una ruta si no ha caducado.
+     *
+     * @param ruta Ruta absoluta del directorio remoto.
+     * @return El listado o null si no está o ha caducado.
+     */
+    public synchronized FTPFile[] obtener(String ruta) {
+        Listado listado = this.listados.get(normalizar(ruta));
+        if (listado == null) {
+            return null;
+        }
+        if (this.caducado(listado)) {
+            this.listados.remove(normalizar(ruta));
+            return null;
+        }
+        return listado.archivos;
+    }
+
+    /**
+     * Guarda el listado de una ruta.
+     *
+     * @param ruta Ruta absoluta del directorio remoto.
+     * @param archivos Listado del directorio.
+     */
+    public synchronized void guardar(String ruta, FTPFile[] archivos) {
+        this.listados.put(normalizar(ruta), new Listado(archivos));
+    }
+
+    /**
+     * Indica si hay un listado válido para la ruta.
+     *
+     * @param ruta Ruta absoluta del directorio remoto.
+     * @return true si está y no ha caducado.
+     */
+    public boolean contiene(String ruta) {
+        return this.obtener(ruta) != null;
+    }
+
+    /**
+     * Olvida el listado de una ruta, por ejemplo porque se ha cambiado algo en
+     * ella.
+     *
+     * @param ruta Ruta absoluta del directorio remoto.
+     */
+    public synchronized void invalidar(String ruta) {
+        this.listados.remove(normalizar(ruta));
+    }
+
+    /**
+     * Olvida todos los listados.
+     */
+    public synchronized void vaciar() {
+        this.listados.clear();
+    }
+
+    /**
+     * Une una ruta de directorio con un nombre.
+     *
+     * @param directorio Ruta del directorio.
+     * @param nombre Nombre del archivo o subdirectorio.
+     * @return La ruta completa.
+     */
+    public static String unir(String directorio, String nombre) {
+        return directorio.endsWith("/") ? directorio + nombre : directorio + "/" + nombre;
+    }
+
+    // Indica si un listado ya no se da por bueno.
+    private boolean caducado(Listado listado) {
+        return System.currentTimeMillis() - listado.momento > this.caducidad;
+    }
+
+    // Quita la barra final para que "/a" y "/a/" sean la misma entrada.
+    private static String normalizar(String ruta) {
+        return ruta.length() > 1 && ruta.endsWith("/") ? ruta.substring(0, ruta.length() - 1) : ruta;
+    }
+
+    // Un listado y el momento en que se obtuvo.
+    private static class Listado {
+
+        private final FTPFile[] archivos;
+        private final long momento;
+
+        private Listado(FTPFile[] archivos) {
+            this.archivos = archivos;
+            this.momento = System.currentTimeMillis();
+        }
+    }
+}
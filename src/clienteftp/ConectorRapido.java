@@ -0,0 +1,233 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase ConectorRapido. Conecta un cliente FTP lo antes posible: la resolución
+ * DNS se puede lanzar por adelantado y, si el servidor tiene varias
+ * direcciones, se prueban escalonadas en paralelo alternando IPv6 e IPv4 y se
+ * queda la primera que responde con el saludo (happy eyeballs). La dirección
+ * ganadora se recuerda para que las siguientes sesiones vayan directas.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class ConectorRapido {
+
+    // Tiempo que se da a cada dirección antes de probar también la siguiente.
+    private static final long RETRASO_INTENTO = 250;
+
+    private static final Map<String, Future<InetAddress[]>> resoluciones = new ConcurrentHashMap<>();
+    private static final Map<String, InetAddress> ganadoras = new ConcurrentHashMap<>();
+    private static final ExecutorService ejecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable tarea) {
+            Thread hilo = new Thread(tarea, "conector-rapido");
+            hilo.setDaemon(true);
+            return hilo;
+        }
+    });
+
+    private ConectorRapido() {
+    }
+
+    /**
+     * Empieza a resolver el nombre del servidor en segundo plano, para que la
+     * respuesta ya esté cuando se pulse conectar.
+     *
+     * @param servidor Nombre o dirección del servidor.
+     */
+    public static void resolverAntes(final String servidor) {
+        if (servidor == null || servidor.trim().isEmpty()) {
+            return;
+        }
+        final String nombre = servidor.trim();
+        if (!resoluciones.containsKey(nombre)) {
+            resoluciones.putIfAbsent(nombre, ejecutor.submit(new Callable<InetAddress[]>() {
+                @Override
+                public InetAddress[] call() throws Exception {
+                    return InetAddress.getAllByName(nombre);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Conecta un cliente nuevo al servidor. Si ya hay una dirección que
+     * funcionó se usa directamente; si no, o si falla, se prueban todas las
+     * direcciones.
+     *
+     * @param fabrica Crea los clientes de cada intento (FTP o FTPS).
+     * @param servidor Nombre o dirección del servidor.
+     * @param puerto Puerto de control.
+     * @param tiempoMaximo Milisegundos que se espera en total a conectar.
+     * @return El cliente conectado a la dirección ganadora.
+     * @throws IOException Si no se puede conectar a ninguna dirección.
+     */
+    public static FTPClient conectar(FabricaClientes fabrica, String servidor, int puerto, int tiempoMaximo) throws IOException {
+        long inicio = Trazador.ahora();
+        FTPClient cliente = abrir(fabrica, servidor.trim(), puerto, tiempoMaximo);
+        if (Trazador.activo()) {
+            Trazador.tramo(Trazador.getPista(), "conectar", inicio, cliente.getRemoteAddress().getHostAddress());
+            Trazador.seguir(cliente);
+        }
+        return cliente;
+    }
+
+    // Conecta por la dirección conocida o, si no la hay, por la ganadora.
+    private static FTPClient abrir(FabricaClientes fabrica, String nombre, int puerto, int tiempoMaximo) throws IOException {
+        FTPClient cliente = fabrica.crear();
+        cliente.setConnectTimeout(tiempoMaximo);
+
+        InetAddress conocida = ganadoras.get(nombre);
+        if (conocida != null) {
+            try {
+                cliente.connect(conocida, puerto);
+                return cliente;
+            } catch (IOException ex) {
+                ganadoras.remove(nombre);
+                cliente = fabrica.crear();
+                cliente.setConnectTimeout(tiempoMaximo);
+            }
+        }
+
+        long inicio = Trazador.ahora();
+        InetAddress[] direcciones = ordenar(resolver(nombre, tiempoMaximo));
+        Trazador.tramo(Trazador.getPista(), "resolver", inicio, nombre);
+        if (direcciones.length == 1) {
+            cliente.connect(direcciones[0], puerto);
+            ganadoras.put(nombre, direcciones[0]);
+            return cliente;
+        }
+        FTPClient ganador = competir(fabrica, cliente, direcciones, puerto, tiempoMaximo);
+        ganadoras.put(nombre, ganador.getRemoteAddress());
+        return ganador;
+    }
+
+    // Espera a la resolución lanzada por adelantado o resuelve ahora.
+    private static InetAddress[] resolver(String nombre, int tiempoMaximo) throws IOException {
+        resolverAntes(nombre);
+        Future<InetAddress[]> resolucion = resoluciones.get(nombre);
+        try {
+            return resolucion.get(tiempoMaximo, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            // Una resolución fallida no se guarda, se reintenta la próxima vez.
+            resoluciones.remove(nombre, resolucion);
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new IOException("Tiempo agotado resolviendo " + nombre);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Resolución interrumpida: " + nombre);
+        }
+    }
+
+    // Alterna familias de direcciones empezando por la que prefiere el sistema.
+    private static InetAddress[] ordenar(InetAddress[] direcciones) {
+        List<InetAddress> primeras = new ArrayList<>();
+        List<InetAddress> segundas = new ArrayList<>();
+        boolean primeraEsV6 = direcciones[0] instanceof Inet6Address;
+        for (InetAddress direccion : direcciones) {
+            if ((direccion instanceof Inet6Address) == primeraEsV6) {
+                primeras.add(direccion);
+            } else {
+                segundas.add(direccion);
+            }
+        }
+
+        InetAddress[] ordenadas = new InetAddress[direcciones.length];
+        int i = 0;
+        for (int j = 0; j < Math.max(primeras.size(), segundas.size()); j++) {
+            if (j < primeras.size()) {
+                ordenadas[i++] = primeras.get(j);
+            }
+            if (j < segundas.size()) {
+                ordenadas[i++] = segundas.get(j);
+            }
+        }
+        return ordenadas;
+    }
+
+    // Lanza un intento por dirección, cada uno RETRASO_INTENTO después del
+    // anterior o en cuanto falla el anterior. El primero que conecta gana y
+    // los que lleguen después se desconectan solos.
+    private static FTPClient competir(FabricaClientes fabrica, FTPClient cliente, InetAddress[] direcciones, int puerto, int tiempoMaximo) throws IOException {
+        final AtomicReference<FTPClient> ganador = new AtomicReference<>();
+        CompletionService<FTPClient> intentos = new ExecutorCompletionService<>(ejecutor);
+        long limite = System.currentTimeMillis() + tiempoMaximo;
+        IOException ultimoError = new IOException("No se puede conectar");
+        int lanzados = 0;
+        int pendientes = 0;
+
+        try {
+            while (lanzados < direcciones.length || pendientes > 0) {
+                if (lanzados < direcciones.length) {
+                    FTPClient intento = cliente;
+                    if (lanzados > 0) {
+                        intento = fabrica.crear();
+                        intento.setConnectTimeout(tiempoMaximo);
+                    }
+                    intentos.submit(intentar(intento, direcciones[lanzados], puerto, ganador));
+                    lanzados++;
+                    pendientes++;
+                }
+
+                long espera = lanzados < direcciones.length ? RETRASO_INTENTO : limite - System.currentTimeMillis();
+                Future<FTPClient> terminado = intentos.poll(Math.max(0, espera), TimeUnit.MILLISECONDS);
+                if (terminado != null) {
+                    pendientes--;
+                    try {
+                        return terminado.get();
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof IOException) {
+                            ultimoError = (IOException) ex.getCause();
+                        }
+                    }
+                } else if (System.currentTimeMillis() >= limite) {
+                    throw new IOException("Tiempo agotado conectando");
+                }
+            }
+            throw ultimoError;
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Conexión interrumpida");
+        } finally {
+            // Si nadie ha ganado aún, los intentos que conecten tarde se cierran.
+            ganador.compareAndSet(null, new FTPClient());
+        }
+    }
+
+    // Un intento de conexión a una dirección.
+    private static Callable<FTPClient> intentar(final FTPClient intento, final InetAddress direccion, final int puerto, final AtomicReference<FTPClient> ganador) {
+        return new Callable<FTPClient>() {
+            @Override
+            public FTPClient call() throws Exception {
+                intento.connect(direccion, puerto);
+                if (!ganador.compareAndSet(null, intento)) {
+                    intento.disconnect();
+                    throw new IOException("Otro intento conectó antes");
+                }
+                return intento;
+            }
+        };
+    }
+}
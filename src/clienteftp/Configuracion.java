@@ -0,0 +1,73 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Clase Configuracion. Lee los ajustes opcionales del archivo
+ * configuracion.properties. Si el archivo o una clave no existen se usa el
+ * valor por defecto indicado.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class Configuracion {
+
+    private final Properties propiedades;
+
+    /**
+     * Constructor de la configuración, carga el archivo si existe.
+     *
+     * @param archivo Archivo de propiedades.
+     */
+    public Configuracion(File archivo) {
+        this.propiedades = new Properties();
+        if (archivo.exists()) {
+            try (FileInputStream fis = new FileInputStream(archivo)) {
+                this.propiedades.load(fis);
+            } catch (IOException ex) {
+                RegistroEventos.aviso("No se puede leer la configuración", ex);
+            }
+        }
+    }
+
+    /**
+     * Obtiene un valor numérico.
+     *
+     * @param clave Nombre del ajuste.
+     * @param porDefecto Valor si no está definido o no es un número.
+     * @return El valor del ajuste.
+     */
+    public int getEntero(String clave, int porDefecto) {
+        try {
+            return Integer.parseInt(this.propiedades.getProperty(clave, "").trim());
+        } catch (NumberFormatException ex) {
+            return porDefecto;
+        }
+    }
+
+    /**
+     * Obtiene un valor de sí o no.
+     *
+     * @param clave Nombre del ajuste.
+     * @param porDefecto Valor si no está definido.
+     * @return El valor del ajuste.
+     */
+    public boolean getBooleano(String clave, boolean porDefecto) {
+        String valor = this.propiedades.getProperty(clave);
+        return valor == null ? porDefecto : Boolean.parseBoolean(valor.trim());
+    }
+
+    /**
+     * Obtiene un valor de texto.
+     *
+     * @param clave Nombre del ajuste.
+     * @param porDefecto Valor si no está definido.
+     * @return El valor del ajuste.
+     */
+    public String getCadena(String clave, String porDefecto) {
+        return this.propiedades.getProperty(clave, porDefecto).trim();
+    }
+}
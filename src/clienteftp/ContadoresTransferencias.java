@@ -0,0 +1,134 @@
+package clienteftp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clase ContadoresTransferencias. Lleva la cuenta de las subidas y descargas
+ * del lote actual. Los hilos de transferencia solo incrementan contadores
+ * LongAdder, así que nunca se bloquean unos a otros al terminar.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class ContadoresTransferencias {
+
+    private final AtomicInteger subidasPedidas, descargasPedidas;
+    private final LongAdder subidasHechas, subidasFallidas;
+    private final LongAdder descargasHechas, descargasFallidas;
+    private final LongAdder bytesTotales;
+
+    /**
+     * Constructor de los contadores, todos a cero.
+     */
+    public ContadoresTransferencias() {
+        this.subidasPedidas = new AtomicInteger(0);
+        this.descargasPedidas = new AtomicInteger(0);
+        this.subidasHechas = new LongAdder();
+        this.subidasFallidas = new LongAdder();
+        this.descargasHechas = new LongAdder();
+        this.descargasFallidas = new LongAdder();
+        this.bytesTotales = new LongAdder();
+    }
+
+    /**
+     * Empieza un nuevo lote de subidas.
+     *
+     * @param numero Número de archivos que se van a subir.
+     */
+    public void iniciarSubidas(int numero) {
+        this.subidasHechas.reset();
+        this.subidasFallidas.reset();
+        this.subidasPedidas.set(numero);
+    }
+
+    /**
+     * Empieza un nuevo lote de descargas.
+     *
+     * @param numero Número de archivos que se van a descargar.
+     */
+    public void iniciarDescargas(int numero) {
+        this.descargasHechas.reset();
+        this.descargasFallidas.reset();
+        this.descargasPedidas.set(numero);
+    }
+
+    /**
+     * Suma más subidas al lote en marcha sin reiniciar lo ya hecho.
+     *
+     * @param numero Número de archivos que se añaden.
+     */
+    public void aniadirSubidas(int numero) {
+        this.subidasPedidas.addAndGet(numero);
+    }
+
+    /**
+     * Suma más descargas al lote en marcha sin reiniciar lo ya hecho.
+     *
+     * @param numero Número de archivos que se añaden.
+     */
+    public void aniadirDescargas(int numero) {
+        this.descargasPedidas.addAndGet(numero);
+    }
+
+    /**
+     * Anota el final de una transferencia.
+     *
+     * @param estado Estado de la transferencia que ha terminado.
+     */
+    public void anotar(EstadoTransferencia estado) {
+        boolean correcto = estado.getFase() == EstadoTransferencia.Fase.COMPLETADA;
+        if (estado.getAccion() == HiloGenerico.SUBIR) {
+            (correcto ? this.subidasHechas : this.subidasFallidas).increment();
+        } else {
+            (correcto ? this.descargasHechas : this.descargasFallidas).increment();
+        }
+        this.bytesTotales.add(estado.getBytesTransferidos());
+    }
+
+    /**
+     * Indica si ya han acabado todas las subidas del lote.
+     *
+     * @return true si no queda ninguna por terminar.
+     */
+    public boolean subidasAcabadas() {
+        return this.subidasHechas.sum() + this.subidasFallidas.sum() >= this.subidasPedidas.get();
+    }
+
+    /**
+     * Indica si ya han acabado todas las descargas del lote.
+     *
+     * @return true si no queda ninguna por terminar.
+     */
+    public boolean descargasAcabadas() {
+        return this.descargasHechas.sum() + this.descargasFallidas.sum() >= this.descargasPedidas.get();
+    }
+
+    /**
+     * Obtiene el número de archivos en cola, sin contar los que han fallado.
+     *
+     * @return Número de archivos.
+     */
+    public int getArchivosEnCola() {
+        return (int) (this.subidasPedidas.get() - this.subidasFallidas.sum()
+                + this.descargasPedidas.get() - this.descargasFallidas.sum());
+    }
+
+    /**
+     * Obtiene el número de archivos transferidos correctamente.
+     *
+     * @return Número de archivos.
+     */
+    public int getArchivosTerminados() {
+        return (int) (this.subidasHechas.sum() + this.descargasHechas.sum());
+    }
+
+    /**
+     * Obtiene los bytes transferidos desde que se inició el programa.
+     *
+     * @return Número de bytes.
+     */
+    public long getBytesTotales() {
+        return this.bytesTotales.sum();
+    }
+}
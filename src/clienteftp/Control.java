@@ -1,59 +1,151 @@
 package clienteftp;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.SwingUtilities;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 
 /**
  * Clase Control. Controla todo el proceso de comunicación con el servidor FTP.
+ * Cada sesión (una ventana de logueo y una de cliente) tiene su propio
+ * control; todos comparten los RecursosCompartidos del proceso.
  *
  * @version 14/01/2019
  * @author Carlos Aguirre Vozmediano
  */
 public class Control {
 
+    // Momento en que empezó main, hasta que se mide la primera ventana.
+    private static long inicioMain;
     private final File carpetaDescargas;
-    private final File archivoSesionAnterior;
+    private final RecursosCompartidos compartidos;
+    private final DiarioTransferencias diario;
+    private final Configuracion configuracion;
+    private final CacheListados cacheListados;
+    private final CacheCapacidades capacidades;
     private GuiLogueo vLogueo;
     private GuiClienteFtp vCliente;
+    private Perfil perfil;
+    private FabricaClientes fabricaClientes;
     private String servidor;
     private String usuario;
     private String contrasenia;
-    private FTPClient clienteFtp;
-    private HiloGenerico[] grupoDescarga;
-    private HiloGenerico[] grupoSubida;
+    private SesionInteractiva sesionInteractiva;
+    private PoolSesiones poolSesiones;
+    private volatile String rutaActual;
+    private FTPFile[] listadoActual;
+    private boolean usarMlsd;
+    private Precargador precargador;
+    private PlanificadorTransferencias planificador;
+    private final List<HiloGenerico> grupoDescarga;
+    private final List<HiloGenerico> grupoSubida;
+    private VigilanteCarpeta vigilanteCarpeta;
+    private VigilanteRemoto vigilanteRemoto;
     private HiloGenerico hiloConexion;
-    private boolean descargando, subiendo;
+    private final ContadoresTransferencias contadores;
+    private final PublicadorTransferencias publicador;
+    private volatile boolean descargando, subiendo;
     private boolean intentantoConectar;
-    private int numeroArchivosDescargados;
-    private int numeroArchivosADescargar;
-    private int numeroArchivosSubidos;
-    private int numeroArchivosASubir;
 
     /**
      * Contructor de la clase control. Se encarga de dejar todos los elementos
      * bien inicializados y preparados.
      */
     public Control() {
+        this(new RecursosCompartidos());
+    }
+
+    /**
+     * Constructor de una sesión más dentro del mismo proceso.
+     *
+     * @param compartidos Recursos que comparten todas las sesiones.
+     */
+    public Control(RecursosCompartidos compartidos) {
         this.carpetaDescargas = new File("Descargas");
-        this.archivoSesionAnterior = new File("sesionAnterior.bin");
+        this.compartidos = compartidos;
+        this.compartidos.sesionAbierta();
+        this.configuracion = compartidos.getConfiguracion();
+        this.cacheListados = new CacheListados(this.configuracion.getEntero("cache.listados.segundos", 60),
+                this.configuracion.getEntero("cache.listados.maximo", 2000));
+        this.capacidades = compartidos.getCapacidades();
+        this.diario = compartidos.getDiario();
+        this.contadores = new ContadoresTransferencias();
+        this.grupoDescarga = new CopyOnWriteArrayList<>();
+        this.grupoSubida = new CopyOnWriteArrayList<>();
+        this.publicador = new PublicadorTransferencias(this);
+        this.publicador.iniciar();
+        // La ventana del cliente no se crea hasta el primer logueo y los
+        // perfiles llegan cuando se han leído: lo primero es ver el logueo.
         this.vLogueo = new GuiLogueo(this);
-        this.vCliente = new GuiClienteFtp(this);
-        this.cargarDatosSesionAnterior();
+        this.vLogueo.setValoresPorDefecto(this.configuracion.getEntero("sesiones.maximo", 8), this.configuracion.getEntero("buffer.datos", 64 * 1024));
+        this.medirArranque();
         this.vLogueo.mostrar(true);
+        this.mostrarPerfilesAlCargar();
+        Recursos.precargar("conectar.png", "cargar.png", "info.png", "eliminar.png", "crear.png", "limpiar.png",
+                "desconectar.png", "descargar.png", "subir.png", "cancelar.png");
         this.descargando = false;
         this.subiendo = false;
         this.intentantoConectar = false;
-        this.numeroArchivosADescargar = 0;
-        this.numeroArchivosDescargados = 0;
-        this.numeroArchivosASubir = 0;
-        this.numeroArchivosSubidos = 0;
+    }
+
+    // Espera a que se lean los perfiles en otro hilo y los pasa a la ventana
+    // de logueo, con el último usado si aún no se ha escrito nada.
+    private void mostrarPerfilesAlCargar() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final AlmacenPerfiles perfiles = compartidos.getPerfiles();
+                final List<String> nombres = perfiles.getNombres();
+                final Perfil ultimo = perfiles.getUltimo();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        vLogueo.setPerfiles(nombres);
+                        if (vLogueo.getServidor().trim().isEmpty()) {
+                            mostrarPerfil(ultimo);
+                        }
+                    }
+                });
+            }
+        }, "perfiles-logueo").start();
+    }
+
+    // Con la primera ventana del programa apunta lo que ha tardado en verse.
+    // Con -Dclienteftp.arranque=medir da también el tiempo desde que arrancó
+    // la JVM, y con =salir además sale, para repetirlo desde un script o
+    // generar el archivo AppCDS.
+    private void medirArranque() {
+        if (inicioMain == 0) {
+            return;
+        }
+        final long inicio = inicioMain;
+        inicioMain = 0;
+        this.vLogueo.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                String modo = System.getProperty("clienteftp.arranque", "");
+                String medida = "Primera ventana a " + ((System.nanoTime() - inicio) / 1000000) + " ms de main";
+                if (!modo.isEmpty()) {
+                    medida += ", " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms desde que arrancó la JVM";
+                }
+                RegistroEventos.info(medida + ".");
+                if (modo.equals("salir")) {
+                    System.exit(0);
+                }
+            }
+        });
     }
 
     // Comprueba si existe la carpeta de descargas y si no la crea.
@@ -72,20 +164,116 @@ public class Control {
         return carpetaDescargas.getAbsolutePath();
     }
 
+    /**
+     * Obtiene cuánto se espera como máximo al conectar con el servidor.
+     *
+     * @return Milisegundos, según el ajuste conexion.timeout.
+     */
+    protected int getTiempoConexion() {
+        return this.configuracion.getEntero("conexion.timeout", 10000);
+    }
+
+    /**
+     * Obtiene el perfil de la sesión actual.
+     *
+     * @return El perfil con el que se conecta.
+     */
+    protected Perfil getPerfil() {
+        return perfil;
+    }
+
+    /**
+     * Obtiene la fábrica que crea los clientes FTP o FTPS de la sesión actual.
+     *
+     * @return La fábrica de clientes.
+     */
+    protected FabricaClientes getFabricaClientes() {
+        return fabricaClientes;
+    }
+
+    /**
+     * Obtiene el pool de sesiones de la conexión actual.
+     *
+     * @return El pool de sesiones.
+     */
+    protected PoolSesiones getPoolSesiones() {
+        return poolSesiones;
+    }
+
+    /**
+     * Obtiene el motor NIO para las conexiones de datos.
+     *
+     * @return El motor o null si las transferencias bloquean su hilo.
+     */
+    protected MotorNio getMotorNio() {
+        return this.compartidos.getMotorNio();
+    }
+
+    /**
+     * Obtiene el sincronizador con el que se publican las descargas.
+     *
+     * @return El sincronizador compartido.
+     */
+    protected SincronizadorDescargas getSincronizadorDescargas() {
+        return this.compartidos.getSincronizador();
+    }
+
+    /**
+     * Obtiene la cache local de descargas.
+     *
+     * @return La cache compartida por todas las sesiones.
+     */
+    protected CacheDescargas getCacheDescargas() {
+        return this.compartidos.getCacheDescargas();
+    }
+
+    /**
+     * Obtiene el diario donde se apuntan las transferencias pendientes.
+     *
+     * @return El diario de transferencias.
+     */
+    protected DiarioTransferencias getDiario() {
+        return diario;
+    }
+
+    /**
+     * Crea la suma de comprobación que se calcula durante cada transferencia,
+     * según el ajuste verificacion.algoritmo (crc32, md5 o sha256).
+     *
+     * @return Una suma nueva o null si no se quiere verificar.
+     */
+    protected SumaVerificacion crearSumaVerificacion() {
+        SumaVerificacion.Algoritmo algoritmo = SumaVerificacion.Algoritmo.desdeNombre(this.configuracion.getCadena("verificacion.algoritmo", ""));
+        return algoritmo == null ? null : new SumaVerificacion(algoritmo);
+    }
+
     /**
      * Lee los datos de la última sesión que se logró conectar.
      *
      * @return booleano que informa de si se ha cargado bien o no.
      */
     public boolean cargarDatosSesionAnterior() {
-        try (FileInputStream fis = new FileInputStream(archivoSesionAnterior); DataInputStream lector = new DataInputStream(fis);) {
-            this.vLogueo.setServidor(lector.readUTF());
-            this.vLogueo.setUsuario(lector.readUTF());
-            this.vLogueo.setContrasenia(lector.readUTF());
+        return this.mostrarPerfil(this.compartidos.getPerfiles().getUltimo());
+    }
 
-        } catch (Exception ex) {
+    /**
+     * Carga en la ventana de logueo el perfil elegido en la lista.
+     *
+     * @param nombre Nombre del perfil.
+     * @return booleano que informa de si se ha cargado bien o no.
+     */
+    protected boolean perfilSeleccionado(String nombre) {
+        return this.mostrarPerfil(this.compartidos.getPerfiles().getPerfil(nombre));
+    }
+
+    // Pasa un perfil a la ventana de logueo.
+    private boolean mostrarPerfil(Perfil elegido) {
+        if (elegido == null) {
             return false;
         }
+        this.vLogueo.setPerfil(elegido);
+        // Mientras el usuario mira la ventana ya se va resolviendo el nombre.
+        ConectorRapido.resolverAntes(elegido.getServidor());
         return true;
     }
 
@@ -93,15 +281,38 @@ public class Control {
      * Almacena los datos de la sesión que ha conseguido conectarse.
      */
     public void guardarDatosSesionAnterior() {
-        try (FileOutputStream fos = new FileOutputStream(archivoSesionAnterior); DataOutputStream escritor = new DataOutputStream(fos);) {
-            escritor.writeUTF(this.servidor);
-            escritor.writeUTF(this.usuario);
-            escritor.writeUTF(this.contrasenia);
-            escritor.flush();
+        this.compartidos.getPerfiles().guardar(this.perfil);
+        this.vLogueo.setPerfiles(this.compartidos.getPerfiles().getNombres());
+    }
 
-        } catch (IOException ex) {
-            System.out.println("No se pueden guardar los datos de sesión.");
+    /**
+     * Abre otra ventana de logueo para trabajar con otro servidor a la vez.
+     */
+    protected void pulsadoNuevaSesion() {
+        new Control(this.compartidos);
+    }
+
+    /**
+     * Se cierra la ventana de logueo sin haber conectado: se acaba la sesión.
+     */
+    protected void cerrarVentanaLogueo() {
+        if (this.intentantoConectar) {
+            this.pulsadoConectar();
         }
+        this.publicador.detener();
+        this.vLogueo.dispose();
+        if (this.vCliente != null) {
+            this.vCliente.dispose();
+        }
+        this.compartidos.sesionCerrada();
+    }
+
+    /**
+     * Se cierra la ventana del cliente: se desconecta y se acaba la sesión.
+     */
+    protected void cerrarVentanaCliente() {
+        this.desconectar();
+        this.cerrarVentanaLogueo();
     }
 
     /**
@@ -141,6 +352,14 @@ public class Control {
                     this.contrasenia += c;
                 }
 
+                // Obtener el resto del perfil, con valores por defecto si no son números.
+                byte seguridad = this.vLogueo.getSeguridad();
+                int puertoPorDefecto = seguridad == Perfil.TLS_IMPLICITO ? Perfil.PUERTO_TLS_IMPLICITO : Perfil.PUERTO_POR_DEFECTO;
+                this.perfil = new Perfil(servidor, leerEntero(this.vLogueo.getPuerto(), puertoPorDefecto), usuario, contrasenia,
+                        seguridad, this.vLogueo.isProtegerDatos(), this.vLogueo.isPasivo(), leerEntero(this.vLogueo.getBufferKilobytes(), 64) * 1024,
+                        leerEntero(this.vLogueo.getMaxSesiones(), this.configuracion.getEntero("sesiones.maximo", 8)));
+                this.fabricaClientes = new FabricaClientes(this.perfil, this.configuracion);
+
                 // Crea un hilo para conectar.
                 this.vLogueo.setEstado("Intentando conectar, espera un momento.");
                 this.hiloConexion = new HiloGenerico(this, servidor, usuario, contrasenia);
@@ -149,6 +368,26 @@ public class Control {
         }
     }
 
+    // Lee un número positivo de un campo de texto.
+    private static int leerEntero(String texto, int porDefecto) {
+        try {
+            int valor = Integer.parseInt(texto.trim());
+            return valor > 0 ? valor : porDefecto;
+        } catch (NumberFormatException ex) {
+            return porDefecto;
+        }
+    }
+
+    // Lee los pesos de los carriles alta, normal y baja: "6,3,1".
+    private static int[] leerPesos(String texto) {
+        String[] partes = texto.split(",");
+        int[] pesos = {6, 3, 1};
+        for (int i = 0; i < pesos.length && i < partes.length; i++) {
+            pesos[i] = leerEntero(partes[i], pesos[i]);
+        }
+        return pesos;
+    }
+
     /**
      * Obtiene un resultado enviado por el hilo genérico. Null si no se ha
      * podido realizar la conexión o una instancia de FPTClient si ha conseguido
@@ -160,20 +399,45 @@ public class Control {
         // Intentar conectar.
         if (!(cliente == null)) {
             // Si se consigue conectar y listar los elementos muestra la ventana del cliente FTP.
-            this.clienteFtp = cliente;
+            // La sesión del login queda reservada para navegar; el pool y el
+            // planificador usan el resto de sesiones del perfil.
+            int maxSesiones = Math.max(1, this.perfil.getMaxSesiones() - 1);
+            this.poolSesiones = new PoolSesiones(this.perfil, this.fabricaClientes, 1);
+            this.poolSesiones.setPresupuesto(this.compartidos.getPresupuesto());
+            this.poolSesiones.setCapacidades(this.capacidades);
+            this.poolSesiones.setTiempoConexion(this.getTiempoConexion());
+            this.sesionInteractiva = new SesionInteractiva(cliente, this.poolSesiones);
+            if (this.vCliente == null) {
+                this.crearVentanaCliente();
+            }
+            // Con el motor NIO los hilos solo preparan cada transferencia y
+            // la entregan; las que hay en curso a la vez las limita el pool.
+            int hilos = this.getMotorNio() == null ? maxSesiones : Math.min(maxSesiones, this.configuracion.getEntero("nio.preparacion", 64));
+            this.planificador = new PlanificadorTransferencias(hilos, maxSesiones, leerPesos(this.configuracion.getCadena("cola.pesos", "6,3,1")));
+            this.iniciarPrecargador();
+            this.capacidades.preparar(servidor, cliente);
+            this.elegirModoDatos(cliente);
+            this.usarMlsd = this.capacidades.tieneFuncion(servidor, "MLST");
+            this.rutaActual = "/";
+            this.resincronizarRuta();
             if (this.refrescarListado()) {
                 this.intentantoConectar = false;
                 this.vLogueo.setIntentandoConectar(false);
                 this.vCliente.setEstado("Conectado.");
-                this.vCliente.setNombreServidor(this.servidor);
+                this.vCliente.setNombreServidor(this.perfil.getNombre());
                 this.vCliente.setNombreUsuario(this.usuario);
                 this.actualizarRutaActualFtp();
                 this.vLogueo.mostrar(false);
                 this.vCliente.mostrar(true);
+                // Mientras se mira el primer listado se abren sesiones para las transferencias.
+                this.poolSesiones.precalentar(Math.min(maxSesiones, this.configuracion.getEntero("sesiones.precalentar", 2)));
                 this.vLogueo.setEstado("Pulsa en conectar para volver a conectar de nuevo.");
                 this.guardarDatosSesionAnterior();
+                this.reanudarTransferencias();
             } else {
                 this.vLogueo.setEstado("Fallo listar elementos, comprueba el cortafuegos.");
+                // Si el modo recordado ha dejado de valer, la próxima vez se prueba otra vez.
+                this.capacidades.olvidarModoDatos(servidor);
                 this.intentantoConectar = false;
                 this.vLogueo.setIntentandoConectar(false);
             }
@@ -185,6 +449,77 @@ public class Control {
         }
     }
 
+    // Crea la ventana del cliente en el hilo de Swing y espera a que esté
+    // hecha: resultadoConexion llega desde el hilo que ha conectado.
+    private void crearVentanaCliente() {
+        final Control control = this;
+        Runnable crear = new Runnable() {
+            @Override
+            public void run() {
+                vCliente = new GuiClienteFtp(control);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            crear.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(crear);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido al crear la ventana del cliente", ex);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("Fallo al crear la ventana del cliente", ex.getCause());
+        }
+    }
+
+    // La primera vez que se conecta al servidor prueba EPSV, PASV y activo con
+    // tiempos cortos y recuerda el que funciona; las demás, preparar() ya ha
+    // aplicado el recordado. Si no funciona ninguno se queda el del perfil.
+    private void elegirModoDatos(FTPClient cliente) {
+        if (this.capacidades.getModoDatos(servidor) != null) {
+            return;
+        }
+        this.vLogueo.setEstado("Probando el modo de las conexiones de datos...");
+        SondeoDatos.Modo modo = this.sondearModoDatos(this.poolSesiones, this.perfil);
+        if (modo != null) {
+            modo.aplicar(cliente);
+        }
+    }
+
+    // Si no se sabe qué modo de datos funciona con el servidor del pool, lo
+    // prueba y lo recuerda; las sesiones que abra el pool después ya lo usan.
+    private SondeoDatos.Modo sondearModoDatos(PoolSesiones pool, Perfil perfilPool) {
+        SondeoDatos.Modo modo = this.capacidades.getModoDatos(pool.getServidor());
+        if (modo == null) {
+            modo = SondeoDatos.sondear(pool, perfilPool.isPasivo(), this.configuracion.getEntero("datos.sondeo.timeout", 3000));
+            if (modo != null) {
+                this.capacidades.setModoDatos(pool.getServidor(), modo);
+            }
+        }
+        return modo;
+    }
+
+    // Arranca la precarga de subdirectorios si está activada.
+    private void iniciarPrecargador() {
+        if (this.configuracion.getBooleano("precarga.activa", true)) {
+            this.precargador = new Precargador(this, this.poolSesiones, this.cacheListados,
+                    this.configuracion.getEntero("precarga.maximo", 10),
+                    this.configuracion.getEntero("precarga.profundidad", 1),
+                    this.configuracion.getEntero("precarga.cola", 200));
+            this.precargador.iniciar();
+        }
+    }
+
+    /**
+     * Indica si hay subidas o descargas en marcha.
+     *
+     * @return true si se está subiendo o descargando algo.
+     */
+    protected boolean hayTransferencias() {
+        return this.subiendo || this.descargando;
+    }
+
     /**
      * Sube los archivos seleccionados a la nube.
      */
@@ -199,60 +534,153 @@ public class Control {
             File archivos[] = this.vCliente.seleccionarArchivos();
 
             if (archivos != null) {
-                this.numeroArchivosASubir = archivos.length;
-                this.subiendo = true;
-                this.vCliente.setSubiendo(true);
-                this.vCliente.setEstado("Subiendo archivos...");
-                this.grupoSubida = new HiloGenerico[this.numeroArchivosASubir];
-
-                HiloGenerico hiloTemporal;
-                int i = 0;
-                for (File archivo : archivos) {
-                    hiloTemporal = new HiloGenerico(this, servidor, usuario, contrasenia, archivo, getRutaActualRemota());
-                    this.grupoSubida[i] = hiloTemporal;
-                    this.crearHilo(hiloTemporal);
-                    i++;
-                }
+                this.subirLote(Arrays.asList(archivos), getRutaActualRemota(), PlanificadorTransferencias.ALTA);
             } else {
                 this.vCliente.setEstado("No hay nada que subir.");
             }
         }
     }
 
-    // Anula todas las subidas.
-    private void anularSubidas() {
-        this.subiendo = false;
-        this.vCliente.setSubiendo(false);
-        this.desconectarHilos(this.grupoSubida);
-        this.numeroArchivosASubir = 0;
-        this.numeroArchivosSubidos = 0;
-        this.vCliente.setEstado("Subidas canceladas.");
-        System.out.println("Subidas anuladas.");
+    /**
+     * Sube un lote de archivos a un directorio remoto. Si ya hay subidas en
+     * marcha el lote se suma a ellas en lugar de empezar otro.
+     *
+     * @param archivos Archivos locales que se van a subir.
+     * @param rutaRemota Directorio remoto de destino.
+     * @param prioridad Carril del planificador: ALTA, NORMAL o BAJA.
+     */
+    protected synchronized void subirLote(List<File> archivos, String rutaRemota, byte prioridad) {
+        if (this.planificador == null) {
+            return;
+        }
+        List<HiloGenerico> hilos = new ArrayList<>(archivos.size());
+        for (File archivo : archivos) {
+            HiloGenerico hiloTemporal = new HiloGenerico(this, servidor, usuario, contrasenia, archivo, rutaRemota);
+            hiloTemporal.setPrioridad(prioridad);
+            this.apuntarEnDiario(hiloTemporal, HiloGenerico.SUBIR, archivo.getAbsolutePath(), rutaRemota);
+            hilos.add(hiloTemporal);
+        }
+        this.empezarSubidas(hilos);
+        this.vCliente.setEstado("Subiendo archivos...");
+    }
+
+    // Suma las subidas al lote en marcha, o empieza uno nuevo, y las envía al planificador.
+    private synchronized void empezarSubidas(List<HiloGenerico> hilos) {
+        if (this.subiendo) {
+            this.contadores.aniadirSubidas(hilos.size());
+        } else {
+            this.grupoSubida.clear();
+            this.contadores.iniciarSubidas(hilos.size());
+            this.subiendo = true;
+            this.vCliente.setSubiendo(true);
+        }
+        this.grupoSubida.addAll(hilos);
+        for (HiloGenerico h : hilos) {
+            this.planificador.enviar(h);
+        }
+    }
+
+    /**
+     * Empieza o deja de vigilar una carpeta local. Lo que aparezca en ella se
+     * sube solo al directorio remoto actual.
+     */
+    protected void pulsadoVigilarCarpeta() {
+        if (this.vigilanteCarpeta != null) {
+            this.dejarDeVigilarCarpeta();
+            this.vCliente.setEstado("Carpeta sin vigilar.");
+            return;
+        }
+
+        File carpeta = this.vCliente.seleccionarCarpeta();
+        if (carpeta == null) {
+            return;
+        }
+        VigilanteCarpeta vigilante = new VigilanteCarpeta(this, carpeta, getRutaActualRemota(),
+                this.configuracion.getEntero("vigilancia.estabilidad", 2000),
+                this.configuracion.getEntero("vigilancia.lote", 200));
+        try {
+            vigilante.iniciar();
+            this.vigilanteCarpeta = vigilante;
+            this.vCliente.setVigilando(true);
+            this.vCliente.setEstado("Vigilando " + carpeta.getName() + " -> " + getRutaActualRemota());
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al vigilar la carpeta", ex);
+            this.vCliente.setEstado("No se puede vigilar la carpeta.");
+        }
     }
 
     /**
-     * Notifica que el archivo ha sido descargado, para llevar el control.
+     * Empieza o deja de vigilar directorios del servidor. Se vigilan los
+     * directorios seleccionados o, si no hay ninguno, el directorio actual; lo
+     * nuevo o modificado se descarga solo.
      *
-     * @param valor Indica si se ha subido o no el archivo.
+     * @param nombreElementos Nombres seleccionados en el listado.
      */
-    protected synchronized void archivoSubido(boolean valor) {
-        if (valor) {
-            this.numeroArchivosSubidos++;
-        } else {
-            this.numeroArchivosASubir -= 1;
+    protected void pulsadoVigilarServidor(List<String> nombreElementos) {
+        if (this.vigilanteRemoto != null) {
+            this.dejarDeVigilarServidor();
+            this.vCliente.setEstado("Servidor sin vigilar.");
+            return;
         }
 
-        if (numeroArchivosSubidos >= numeroArchivosASubir && this.subiendo == true) {
-            this.numeroArchivosSubidos = 0;
-            this.numeroArchivosASubir = 0;
-            this.subiendo = false;
-            this.vCliente.setSubiendo(false);
+        List<String> rutas = new ArrayList<>();
+        for (String nombre : nombreElementos) {
+            if (this.esDirectorio(nombre)) {
+                rutas.add(CacheListados.unir(this.rutaActual, nombre));
+            }
+        }
+        if (rutas.isEmpty()) {
+            rutas.add(this.rutaActual);
+        }
 
-            this.vCliente.setEstado("Archivos subidos correctamente.");
-            System.out.println("Todo subido.\n");
+        this.vigilanteRemoto = new VigilanteRemoto(this, this.poolSesiones, rutas, this.capacidades,
+                this.configuracion.getEntero("vigilancia.remota.minimo", 5000),
+                this.configuracion.getEntero("vigilancia.remota.maximo", 120000),
+                this.configuracion.getEntero("vigilancia.remota.forzar", 10));
+        this.vigilanteRemoto.iniciar();
+        this.vCliente.setVigilandoServidor(true);
+        this.vCliente.setEstado("Vigilando " + rutas.size() + " directorios del servidor.");
+    }
+
+    // Detiene el vigilante del servidor si hay uno.
+    private void dejarDeVigilarServidor() {
+        if (this.vigilanteRemoto != null) {
+            this.vigilanteRemoto.detener();
+            this.vigilanteRemoto = null;
+            this.vCliente.setVigilandoServidor(false);
         }
+    }
 
-        this.refrescarListado();
+    // Detiene el vigilante de carpeta si hay uno.
+    private void dejarDeVigilarCarpeta() {
+        if (this.vigilanteCarpeta != null) {
+            this.vigilanteCarpeta.detener();
+            this.vigilanteCarpeta = null;
+            this.vCliente.setVigilando(false);
+        }
+    }
+
+    // Anula todas las subidas.
+    private synchronized void anularSubidas() {
+        this.subiendo = false;
+        this.vCliente.setSubiendo(false);
+        this.desconectarHilos(this.grupoSubida);
+        this.quitarDelDiario(this.grupoSubida);
+        this.grupoSubida.clear();
+        this.contadores.iniciarSubidas(0);
+        this.vCliente.setEstado("Subidas canceladas.");
+        RegistroEventos.info("Subidas anuladas.");
+    }
+
+    /**
+     * Notifica que el archivo ha sido subido, para llevar el control. No se
+     * bloquea: anota el resultado y deja el aviso al publicador.
+     *
+     * @param estado Estado final de la subida.
+     */
+    protected void archivoSubido(EstadoTransferencia estado) {
+        this.contadores.anotar(estado);
+        this.publicador.publicar(estado);
     }
 
     /**
@@ -268,115 +696,325 @@ public class Control {
             this.anularDescargas();
             // Empezar descargar si hay algo seleccionado.
         } else {
-            this.numeroArchivosADescargar = nombreArchivos.size();
-            if (this.numeroArchivosADescargar > 0) {
-                this.descargando = true;
-                this.vCliente.setDescargando(true);
-                this.vCliente.setEstado("Descargando archivos...");
-                this.comprobarDirectorioDescargas();
-                this.grupoDescarga = new HiloGenerico[this.numeroArchivosADescargar];
-
-                HiloGenerico hiloTemporal;
-                int i = 0;
-                for (String nombreArchivo : nombreArchivos) {
-                    hiloTemporal = new HiloGenerico(this, servidor, usuario, contrasenia, nombreArchivo, getRutaActualRemota());
-                    this.grupoDescarga[i] = hiloTemporal;
-                    this.crearHilo(hiloTemporal);
-                    i++;
-                }
-
+            if (nombreArchivos.size() > 0) {
+                this.descargarLote(nombreArchivos, getRutaActualRemota(), PlanificadorTransferencias.ALTA);
             } else {
                 this.vCliente.setEstado("No hay nada que descargar.");
             }
         }
     }
 
+    /**
+     * Descarga un lote de archivos de un directorio remoto. Si ya hay
+     * descargas en marcha el lote se suma a ellas en lugar de empezar otro.
+     *
+     * @param nombreArchivos Nombres de los archivos que se van a descargar.
+     * @param rutaRemota Directorio remoto donde están.
+     * @param prioridad Carril del planificador: ALTA, NORMAL o BAJA.
+     */
+    protected synchronized void descargarLote(List<String> nombreArchivos, String rutaRemota, byte prioridad) {
+        if (this.planificador == null) {
+            return;
+        }
+        this.comprobarDirectorioDescargas();
+        Map<String, FTPFile> listado = this.leerListado(rutaRemota);
+        boolean usarCache = this.getCacheDescargas().isActiva();
+        String sesion = this.usuario + "@" + this.servidor + ":" + this.perfil.getPuerto();
+        List<HiloGenerico> hilos = new ArrayList<>(nombreArchivos.size());
+        for (String nombreArchivo : nombreArchivos) {
+            HiloGenerico hiloTemporal = new HiloGenerico(this, servidor, usuario, contrasenia, nombreArchivo, rutaRemota);
+            hiloTemporal.setPrioridad(prioridad);
+            FTPFile remoto = listado.get(nombreArchivo);
+            if (remoto != null) {
+                hiloTemporal.setTamanio(remoto.getSize());
+                if (usarCache) {
+                    // Con LIST la fecha no es exacta: el hilo la pedirá con MDTM.
+                    hiloTemporal.setClaveCache(CacheDescargas.clave(sesion, CacheListados.unir(rutaRemota, nombreArchivo), remoto));
+                    hiloTemporal.setSesionCache(sesion);
+                }
+            }
+            this.apuntarEnDiario(hiloTemporal, HiloGenerico.DESCARGAR, nombreArchivo, rutaRemota);
+            hilos.add(hiloTemporal);
+        }
+        this.empezarDescargas(hilos);
+        this.vCliente.setEstado("Descargando archivos...");
+    }
+
+    // Archivos de un directorio según el último listado, por nombre, sin
+    // preguntar al servidor; vacío si no hay listado a mano.
+    private Map<String, FTPFile> leerListado(String ruta) {
+        FTPFile[] listado = ruta.equals(this.rutaActual) ? this.listadoActual : this.cacheListados.obtener(ruta);
+        Map<String, FTPFile> archivos = new HashMap<>();
+        if (listado != null) {
+            for (FTPFile archivo : listado) {
+                if (archivo != null && archivo.isFile()) {
+                    archivos.put(archivo.getName(), archivo);
+                }
+            }
+        }
+        return archivos;
+    }
+
+    // Suma las descargas al lote en marcha, o empieza uno nuevo, y las envía al planificador.
+    private synchronized void empezarDescargas(List<HiloGenerico> hilos) {
+        if (this.descargando) {
+            this.contadores.aniadirDescargas(hilos.size());
+        } else {
+            this.grupoDescarga.clear();
+            this.contadores.iniciarDescargas(hilos.size());
+            this.descargando = true;
+            this.vCliente.setDescargando(true);
+        }
+        this.grupoDescarga.addAll(hilos);
+        for (HiloGenerico h : hilos) {
+            this.planificador.enviar(h);
+        }
+    }
+
     // Anula las descargas.
-    private void anularDescargas() {
+    private synchronized void anularDescargas() {
         this.descargando = false;
         this.vCliente.setDescargando(false);
         this.desconectarHilos(this.grupoDescarga);
-        this.numeroArchivosADescargar = 0;
-        this.numeroArchivosDescargados = 0;
+        this.quitarDelDiario(this.grupoDescarga);
+        this.grupoDescarga.clear();
+        this.contadores.iniciarDescargas(0);
         this.vCliente.setEstado("Descargas canceladas.");
-        System.out.println("Descargas anuladas.");
+        RegistroEventos.info("Descargas anuladas.");
+    }
+
+    /**
+     * Notifica que el archivo ha sido descargado, para llevar el control. No se
+     * bloquea: anota el resultado y deja el aviso al publicador.
+     *
+     * @param estado Estado final de la descarga.
+     */
+    protected void archivoDescargado(EstadoTransferencia estado) {
+        this.contadores.anotar(estado);
+        this.publicador.publicar(estado);
     }
 
     /**
-     * Notifica que el archivo ha sido descargado, para llevar el control.
+     * Lo llama el publicador con los avisos acumulados desde la última vez.
+     * Cierra los lotes que hayan acabado y refresca la interfaz una sola vez
+     * por tanda de avisos.
      *
-     * @param valor Indica si se ha bajado o no el archivo.
+     * @param avisos Transferencias que han terminado.
      */
-    protected synchronized void archivoDescargado(boolean valor) {
-        if (valor) {
-            this.numeroArchivosDescargados++;
+    protected void procesarTransferencias(List<EstadoTransferencia> avisos) {
+        boolean haySubidas = false;
+        for (EstadoTransferencia estado : avisos) {
+            if (estado.getAccion() == HiloGenerico.SUBIR) {
+                haySubidas = true;
+            }
+        }
+
+        this.cerrarLotesAcabados();
+
+        // Las subidas cambian el listado remoto, las descargas no.
+        if (haySubidas) {
+            this.refrescarListado();
         } else {
-            this.numeroArchivosADescargar -= 1;
+            this.refrescarBarraProgreso();
         }
+    }
+
+    // Cierra los lotes de subida y descarga que ya no tienen nada pendiente.
+    private synchronized void cerrarLotesAcabados() {
+        if (this.subiendo && this.contadores.subidasAcabadas()) {
+            this.contadores.iniciarSubidas(0);
+            this.subiendo = false;
+            this.grupoSubida.clear();
+            this.vCliente.setSubiendo(false);
 
-        if (numeroArchivosDescargados >= numeroArchivosADescargar && this.descargando == true) {
-            this.numeroArchivosDescargados = 0;
-            this.numeroArchivosADescargar = 0;
+            this.vCliente.setEstado("Archivos subidos correctamente.");
+            RegistroEventos.info("Todo subido.");
+        }
+
+        if (this.descargando && this.contadores.descargasAcabadas()) {
+            this.contadores.iniciarDescargas(0);
             this.descargando = false;
+            this.grupoDescarga.clear();
             this.vCliente.setDescargando(false);
 
             this.vCliente.setEstado("Archivos descargados correctamente.");
-            System.out.println("Todo descargado.\n");
+            RegistroEventos.info("Todo descargado.");
         }
+    }
 
-        this.refrescarBarraProgreso();
+    /**
+     * Copia los archivos seleccionados a otro servidor FTP sin descargarlos.
+     *
+     * @param nombreArchivos Listado con los nombres de los archivos que se van
+     * a copiar.
+     */
+    protected void pulsadoCopiarServidor(final List<String> nombreArchivos) {
+        if (nombreArchivos.isEmpty()) {
+            this.vCliente.setEstado("No hay nada que copiar.");
+            return;
+        }
+
+        AlmacenPerfiles perfiles = this.compartidos.getPerfiles();
+        String[] datosDestino = this.vCliente.pedirServidorDestino(perfiles.getNombres());
+        if (datosDestino == null) {
+            return;
+        }
+
+        // Un perfil guardado trae su puerto, su seguridad y su modo de datos;
+        // a mano solo se da el servidor y se usa el puerto por defecto sin TLS.
+        final Perfil perfilDestino;
+        if (!datosDestino[0].isEmpty()) {
+            perfilDestino = perfiles.getPerfil(datosDestino[0]);
+        } else if (!datosDestino[1].trim().isEmpty()) {
+            String usuarioDestino = datosDestino[2].trim().isEmpty() ? "Anonimous" : datosDestino[2].trim();
+            perfilDestino = new Perfil(datosDestino[1].trim(), Perfil.PUERTO_POR_DEFECTO, usuarioDestino, datosDestino[3],
+                    Perfil.SIN_TLS, true, false, this.configuracion.getEntero("buffer.datos", 64 * 1024), this.configuracion.getEntero("sesiones.maximo", 8));
+        } else {
+            return;
+        }
+        final PoolSesiones poolDestino = new PoolSesiones(perfilDestino, new FabricaClientes(perfilDestino, this.configuracion));
+        poolDestino.setPresupuesto(this.compartidos.getPresupuesto());
+        poolDestino.setCapacidades(this.capacidades);
+        poolDestino.setTiempoConexion(this.getTiempoConexion());
+        final CopiaEntreServidores copia = new CopiaEntreServidores(this, this.poolSesiones, getRutaActualRemota(),
+                poolDestino, datosDestino[4].trim(), this.configuracion.getEntero("copia.paralelismo", 4));
+
+        this.vCliente.setEstado("Copiando archivos a " + perfilDestino.getServidor() + "...");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // El reenvío abre conexiones de datos con el destino: antes se
+                // elige el modo que funciona con él, como con el servidor principal.
+                sondearModoDatos(poolDestino, perfilDestino);
+                String resumen = copia.copiar(nombreArchivos);
+                poolDestino.cerrarTodas();
+                setMensajeCliente(resumen);
+            }
+        }).start();
+    }
+
+    /**
+     * Crea una tubería para procesar archivos remotos según se descargan, sin
+     * guardarlos en la carpeta de descargas. Usa las sesiones del pool.
+     *
+     * @return La tubería de descarga.
+     */
+    protected TuberiaDescarga crearTuberiaDescarga() {
+        return new TuberiaDescarga(this.poolSesiones, this.perfil.getBufferDatos());
+    }
+
+    /**
+     * Abre la ventana de búsqueda en el servidor.
+     */
+    protected void pulsadoBuscar() {
+        new GuiBusqueda(this).mostrar(true);
+    }
+
+    /**
+     * Crea un buscador que recorre el árbol remoto con las sesiones del pool
+     * y la cache de listados.
+     *
+     * @return El buscador, sin criterios.
+     */
+    protected BuscadorRemoto crearBuscador() {
+        return new BuscadorRemoto(this.poolSesiones, this.cacheListados, this.usarMlsd, this.configuracion.getEntero("busqueda.paralelismo", 4));
+    }
+
+    /**
+     * Abre la ventana con las transferencias que esperan en la cola.
+     */
+    protected void pulsadoVerCola() {
+        new GuiCola(this).mostrar(true);
+    }
+
+    /**
+     * Obtiene las transferencias que esperan en la cola, en el orden en que
+     * saldrían.
+     *
+     * @return Copia de la cola, vacía si no hay conexión.
+     */
+    protected List<HiloGenerico> getCola() {
+        PlanificadorTransferencias actual = this.planificador;
+        return actual == null ? new ArrayList<HiloGenerico>() : actual.getEnCola();
     }
 
     /**
-     * Elimina tanto los archivos como los directorios seleccionados.
+     * Pasa transferencias de la cola al principio sin cancelar las demás. Se
+     * adelantan de la última a la primera para que queden en el mismo orden.
+     *
+     * @param hilos Transferencias en cola.
+     * @return Número de transferencias adelantadas.
+     */
+    protected int adelantar(List<HiloGenerico> hilos) {
+        PlanificadorTransferencias actual = this.planificador;
+        int adelantadas = 0;
+        if (actual != null) {
+            for (int i = hilos.size() - 1; i >= 0; i--) {
+                if (actual.adelantar(hilos.get(i))) {
+                    adelantadas++;
+                }
+            }
+        }
+        return adelantadas;
+    }
+
+    /**
+     * Elimina tanto los archivos como los directorios seleccionados, estos
+     * con todo su contenido. Si hay directorios primero se cuenta lo que se
+     * va a borrar y se pide confirmación. Se hace en segundo plano con las
+     * sesiones del pool.
      *
      * @param nombreElementos Listado de nombres de elementos que se desean
      * borrar.
      */
     protected void eliminarArchivoDirectorio(List<String> nombreElementos) {
+        if (nombreElementos.isEmpty()) {
+            this.vCliente.setEstado("No hay nada que borrar.");
+            return;
+        }
 
-        // Ejecuta solo si hay al menos un elemento que borrar
-        if (nombreElementos.size() > 0) {
-            this.vCliente.setEstado("Borrando elementos...");
-            String cadenaResultado = "";
-            String errores = "";
-            boolean correcto = true;
-
-            try {
-                FTPFile[] elementos = clienteFtp.listFiles();
-
-                for (String nombre : nombreElementos) {
-                    for (FTPFile f : elementos) {
-                        if (f.getName().equals(nombre)) {
-                            if (f.isFile()) {
-                                if (!clienteFtp.deleteFile(nombre)) {
-                                    correcto = false;
-                                    errores += nombre + " ";
-                                }
-                            } else {
-                                if (!clienteFtp.removeDirectory(nombre)) {
-                                    correcto = false;
-                                    errores += nombre + " ";
-                                }
-                            }
-                        }
-                    }
+        final List<FTPFile> seleccion = new ArrayList<>();
+        boolean hayCarpetas = false;
+        try {
+            FTPFile[] elementos = this.listadoActual == null ? this.listar(this.rutaActual) : this.listadoActual;
+            for (FTPFile f : elementos) {
+                if (nombreElementos.contains(f.getName())) {
+                    seleccion.add(f);
+                    hayCarpetas |= f.isDirectory();
                 }
-            } catch (IOException ex) {
-                System.out.println("ERROR: " + ex);
             }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al listar " + this.rutaActual, ex);
+            this.vCliente.setEstado("No se pueden borrar los elementos.");
+            return;
+        }
 
-            if (correcto) {
-                cadenaResultado = "Elementos borrados correctamente.";
-            } else {
-                cadenaResultado += "No se pueden borrar los elementos: " + errores;
-            }
+        final boolean confirmar = hayCarpetas;
+        final String ruta = this.rutaActual;
+        final BorradoRecursivo borrado = new BorradoRecursivo(this.poolSesiones, this.cacheListados,
+                this.configuracion.getEntero("borrado.paralelismo", 4));
+        this.vCliente.setEstado(confirmar ? "Contando elementos..." : "Borrando elementos...");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String recuento = borrado.contar(ruta, seleccion);
+                if (confirmar && !vCliente.confirmar("Borrar", recuento + "\n¿Borrar todo?")) {
+                    borrado.descartar();
+                    setMensajeCliente("Borrado cancelado.");
+                    return;
+                }
 
-            this.vCliente.setEstado(cadenaResultado);
-        } else {
-            this.vCliente.setEstado("No hay nada que borrar.");
-        }
-        this.refrescarListado();
+                String resumen = borrado.borrar(new BorradoRecursivo.OyenteBorrado() {
+                    @Override
+                    public void progreso(int hechos, int total) {
+                        setMensajeCliente("Borrando elementos... " + hechos + " de " + total);
+                    }
+                });
+                RegistroEventos.info(resumen);
+                refrescarListado();
+                setMensajeCliente(resumen);
+            }
+        }).start();
     }
 
     /**
@@ -388,13 +1026,18 @@ public class Control {
         this.vCliente.setEstado("Creando carpeta...");
         String cadenaResultado = "";
         try {
-            if (clienteFtp.makeDirectory(nombreCarpeta)) {
-                cadenaResultado = "Carpeta " + nombreCarpeta + " creada correctamente.";
-            } else {
-                cadenaResultado += "Error al crear el directorio.";
+            FTPClient clienteFtp = this.sesionInteractiva.tomar();
+            try {
+                if (clienteFtp.makeDirectory(CacheListados.unir(this.rutaActual, nombreCarpeta))) {
+                    cadenaResultado = "Carpeta " + nombreCarpeta + " creada correctamente.";
+                } else {
+                    cadenaResultado += "Error al crear el directorio.";
+                }
+            } finally {
+                this.sesionInteractiva.soltar();
             }
         } catch (Exception ex) {
-            System.out.println("ERROR: " + ex);
+            RegistroEventos.error("Fallo al crear la carpeta " + nombreCarpeta, ex);
         }
         this.vCliente.setEstado(cadenaResultado);
         this.refrescarListado();
@@ -408,35 +1051,53 @@ public class Control {
     protected boolean refrescarListado() {
         this.refrescarBarraProgreso();
 
-        String[] nombreElementos = null;
-
         try {
-            FTPFile[] archivos = clienteFtp.listFiles();
-            nombreElementos = new String[archivos.length];
-            int i = 0;
-
-            for (FTPFile f : archivos) {
-                nombreElementos[i] = f.getName();
-                i++;
-            }
-
-            this.vCliente.setListado(nombreElementos);
+            String ruta = this.rutaActual;
+            FTPFile[] archivos = this.listar(ruta);
+            this.cacheListados.guardar(ruta, archivos);
+            this.mostrarListado(ruta, archivos);
             return true;
 
         } catch (IOException ex) {
-            System.out.println("ERROR: " + ex);
+            RegistroEventos.error("Fallo al listar " + this.rutaActual, ex);
+            this.resincronizarRuta();
             return false;
         }
     }
 
+    // Pasa el listado a la ventana y avisa al precargador.
+    private void mostrarListado(String ruta, FTPFile[] archivos) {
+        this.listadoActual = archivos;
+        this.vCliente.setListado(ruta, archivos);
+        if (this.precargador != null) {
+            this.precargador.directorioMostrado(ruta, archivos);
+        }
+    }
+
     /**
      * Desconecta la conexión con el servidor FTP.
      */
     protected void desconectar() {
-        try {
-            this.clienteFtp.disconnect();
-        } catch (IOException ex) {
-            System.out.println("ERROR: " + ex);
+        this.dejarDeVigilarCarpeta();
+        this.dejarDeVigilarServidor();
+        if (this.planificador != null) {
+            this.planificador.detener();
+            this.planificador = null;
+        }
+        if (this.precargador != null) {
+            this.precargador.detener();
+            this.precargador = null;
+        }
+        if (this.poolSesiones != null) {
+            this.poolSesiones.cerrarTodas();
+        }
+        if (this.sesionInteractiva != null) {
+            this.sesionInteractiva.cerrar();
+        }
+        CacheDescargas cache = this.getCacheDescargas();
+        if (cache.isActiva()) {
+            RegistroEventos.info(cache.getResumen());
+            cache.guardarIndice();
         }
     }
 
@@ -445,31 +1106,50 @@ public class Control {
      * GuiLogueo.
      */
     protected void pulsadoDesconectar() {
+        RegistroEventos.depurar("Accion: desconectar");
+        this.detenerTransferencias();
         this.desconectar();
         this.vCliente.dispose();
         this.vLogueo.mostrar(true);
+    }
 
-        System.out.println("Accion: desconectar");
-        this.anularDescargas();
+    // Al desconectar se paran las subidas y las descargas por igual, pero
+    // siguen en el diario con lo que llevaban para reanudarlas al volver a
+    // conectar; solo las que cancela el usuario salen de él.
+    private synchronized void detenerTransferencias() {
+        this.subiendo = false;
+        this.descargando = false;
+        this.vCliente.setSubiendo(false);
+        this.vCliente.setDescargando(false);
+        this.desconectarHilos(this.grupoSubida);
+        this.desconectarHilos(this.grupoDescarga);
+        this.grupoSubida.clear();
+        this.grupoDescarga.clear();
+        this.contadores.iniciarSubidas(0);
+        this.contadores.iniciarDescargas(0);
+        RegistroEventos.info("Transferencias detenidas al desconectar.");
     }
 
     /**
-     * Cambia al directorio especificado.
+     * Cambia al directorio especificado. La ruta se lleva en el cliente y se
+     * lista directamente, sin enviar CWD ni PWD al servidor.
      *
-     * @param directorio Directorio al que se desea cambiar.
+     * @param directorio Nombre de un subdirectorio del actual o ruta absoluta.
      */
     protected void cambiarDirectorio(String directorio) {
-        try {
-            boolean puedoEntrar = this.clienteFtp.changeWorkingDirectory(directorio);
-            if (puedoEntrar) {
+        if (directorio.equals("..")) {
+            this.volverDirectorioAnterior();
+        } else if (directorio.equals(".")) {
+            this.refrescarListado();
+        } else if (!directorio.startsWith("/") && !this.esDirectorio(directorio)) {
+            this.vCliente.setEstado("No puedes meterte dentro de un archivo.");
+        } else {
+            String destino = directorio.startsWith("/") ? directorio : CacheListados.unir(this.rutaActual, directorio);
+            if (this.abrirDirectorio(destino)) {
                 this.vCliente.setEstado("2 ClicIzq (Entrar) / 1 ClicDcho (Volver)");
-                this.refrescarListado();
             } else {
-                this.vCliente.setEstado("No puedes meterte dentro de un archivo.");
+                this.vCliente.setEstado("No se puede entrar en " + directorio);
             }
-            this.vCliente.setRutaDirectoriosRemoto(getRutaActualRemota());
-        } catch (IOException ex) {
-            System.out.println("ERROR: " + ex);
         }
     }
 
@@ -477,28 +1157,136 @@ public class Control {
      * Cambia al directorio anterior.
      */
     protected void volverDirectorioAnterior() {
+        if (this.abrirDirectorio(rutaPadre(this.rutaActual))) {
+            this.vCliente.setEstado("2 ClicIzq (Entrar) / 1 ClicDcho (Volver)");
+        } else {
+            this.abrirDirectorio("/");
+            this.vCliente.setEstado("Problema al volver, se regresó a la raíz.");
+        }
+    }
+
+    // Muestra el listado de un directorio, de la cache si está precargado o
+    // pidiéndolo al servidor si no, y lo convierte en el directorio actual.
+    private boolean abrirDirectorio(String ruta) {
+        FTPFile[] archivos = this.cacheListados.obtener(ruta);
+        if (archivos == null) {
+            try {
+                archivos = this.listar(ruta);
+                this.cacheListados.guardar(ruta, archivos);
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al listar " + ruta, ex);
+                this.resincronizarRuta();
+                return false;
+            }
+        }
+
+        this.rutaActual = ruta;
+        this.actualizarRutaActualFtp();
+        this.refrescarBarraProgreso();
+        this.mostrarListado(ruta, archivos);
+        return true;
+    }
+
+    // Lista un directorio con MLSD si el servidor lo admite o con LIST si no.
+    // Si el servidor rechaza el listado se lanza una excepción.
+    private FTPFile[] listar(String ruta) throws IOException {
+        long inicio = Trazador.ahora();
+        FTPClient cliente = this.sesionInteractiva.tomar();
         try {
-            boolean puedoVolver = this.clienteFtp.changeToParentDirectory();
-            if (puedoVolver) {
-                this.actualizarRutaActualFtp();
-                this.vCliente.setEstado("2 ClicIzq (Entrar) / 1 ClicDcho (Volver)");
-            } else {
-                this.clienteFtp.changeWorkingDirectory("/");
-                this.actualizarRutaActualFtp();
-                this.vCliente.setEstado("Problema al volver, se regresó a la raíz.");
+            return listar(cliente, ruta, this.usarMlsd);
+        } finally {
+            Trazador.tramo(Trazador.getPista(), "listar", inicio, ruta);
+            this.sesionInteractiva.soltar();
+        }
+    }
+
+    /**
+     * Lista un directorio con MLSD si el servidor lo admite o con LIST si no,
+     * sin incluir las entradas del propio directorio y del padre.
+     *
+     * @param cliente Sesión con la que se lista.
+     * @param ruta Ruta absoluta del directorio.
+     * @param usarMlsd true si el servidor admite MLSD.
+     * @return El contenido del directorio.
+     * @throws IOException Si el servidor no deja listarlo.
+     */
+    protected static FTPFile[] listar(FTPClient cliente, String ruta, boolean usarMlsd) throws IOException {
+        FTPFile[] archivos;
+        if (usarMlsd) {
+            List<FTPFile> elementos = new ArrayList<>();
+            for (FTPFile f : cliente.mlistDir(ruta)) {
+                // MLSD incluye el propio directorio y el padre.
+                String crudo = f.getRawListing().toLowerCase();
+                if (!crudo.contains("type=cdir;") && !crudo.contains("type=pdir;")) {
+                    elementos.add(f);
+                }
             }
-            this.refrescarListado();
+            archivos = elementos.toArray(new FTPFile[elementos.size()]);
+        } else {
+            archivos = cliente.listFiles(ruta);
+        }
 
-        } catch (IOException ex) {
-            System.out.println("ERROR: " + ex);
+        if (!FTPReply.isPositiveCompletion(cliente.getReplyCode())) {
+            throw new IOException("No se puede listar " + ruta + ": " + cliente.getReplyString());
         }
+        return archivos;
+    }
+
+    /**
+     * Indica si los listados se piden con MLSD, para que los hilos que listan
+     * con sesiones del pool guarden en la cache lo mismo que la sesión
+     * interactiva.
+     *
+     * @return true si el servidor admite MLSD.
+     */
+    protected boolean isUsarMlsd() {
+        return this.usarMlsd;
+    }
+
+    // Indica si un elemento del listado mostrado es un directorio. Los enlaces
+    // y los nombres que no aparecen se dan por buenos y decide el servidor.
+    private boolean esDirectorio(String nombre) {
+        if (this.listadoActual != null) {
+            for (FTPFile f : this.listadoActual) {
+                if (f.getName().equals(nombre)) {
+                    return !f.isFile();
+                }
+            }
+        }
+        return true;
+    }
+
+    // Obtiene la ruta del directorio padre.
+    private static String rutaPadre(String ruta) {
+        int barra = ruta.endsWith("/") ? ruta.lastIndexOf('/', ruta.length() - 2) : ruta.lastIndexOf('/');
+        return barra > 0 ? ruta.substring(0, barra) : "/";
     }
 
     /**
      * Muestra la ruta actual remota.
      */
     private void actualizarRutaActualFtp() {
-        this.vCliente.setRutaDirectoriosRemoto(getRutaActualRemota());
+        this.vCliente.setRutaDirectoriosRemoto(this.rutaActual);
+    }
+
+    // Pregunta al servidor la ruta actual. Solo se usa al conectar y cuando
+    // algo falla, para volver a estar de acuerdo con el servidor.
+    private void resincronizarRuta() {
+        try {
+            String ruta;
+            FTPClient clienteFtp = this.sesionInteractiva.tomar();
+            try {
+                ruta = clienteFtp.printWorkingDirectory();
+            } finally {
+                this.sesionInteractiva.soltar();
+            }
+            if (ruta != null) {
+                this.rutaActual = ruta;
+                this.actualizarRutaActualFtp();
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al preguntar la ruta actual", ex);
+        }
     }
 
     /**
@@ -507,11 +1295,7 @@ public class Control {
      * @return Cadena con el nombre de la ruta remota.
      */
     protected String getRutaActualRemota() {
-        try {
-            return this.clienteFtp.printWorkingDirectory();
-        } catch (IOException ex) {
-            return null;
-        }
+        return this.rutaActual;
     }
 
     /**
@@ -527,7 +1311,60 @@ public class Control {
      * Muestra información sobre el estado del cliente FTP.
      */
     public void mostrarInfoFtp() {
-        System.out.println("INFO FTP: " + this.clienteFtp.getReplyString());
+        RegistroEventos.info("INFO FTP: " + this.sesionInteractiva.getCliente().getReplyString());
+    }
+
+    // Apunta la transferencia en el diario para poder reanudarla si se cierra el programa.
+    private void apuntarEnDiario(HiloGenerico hilo, byte accion, String rutaLocal, String rutaRemota) {
+        if (rutaRemota != null) {
+            hilo.setDiario(this.diario.encolar(accion, servidor, usuario, rutaLocal, rutaRemota), 0);
+        }
+    }
+
+    // Las transferencias canceladas por el usuario no se reanudan.
+    private void quitarDelDiario(List<HiloGenerico> grupoHilos) {
+        for (HiloGenerico h : grupoHilos) {
+            this.diario.terminada(h.getIdDiario());
+        }
+    }
+
+    // Relanza las transferencias de este servidor y usuario que quedaron a medias en la sesión anterior.
+    private void reanudarTransferencias() {
+        List<DiarioTransferencias.Apunte> pendientes = this.diario.getPendientes(servidor, usuario);
+        List<HiloGenerico> subidas = new ArrayList<>();
+        List<HiloGenerico> descargas = new ArrayList<>();
+
+        for (DiarioTransferencias.Apunte apunte : pendientes) {
+            HiloGenerico hilo;
+            if (apunte.accion == HiloGenerico.SUBIR) {
+                File archivo = new File(apunte.rutaLocal);
+                if (!archivo.exists()) {
+                    this.diario.terminada(apunte.id);
+                    continue;
+                }
+                hilo = new HiloGenerico(this, servidor, usuario, contrasenia, archivo, apunte.rutaRemota);
+                subidas.add(hilo);
+            } else {
+                hilo = new HiloGenerico(this, servidor, usuario, contrasenia, apunte.rutaLocal, apunte.rutaRemota);
+                descargas.add(hilo);
+            }
+            hilo.setDiario(apunte.id, apunte.desplazamiento);
+            hilo.setPrioridad(PlanificadorTransferencias.BAJA);
+        }
+
+        if (!subidas.isEmpty()) {
+            this.empezarSubidas(subidas);
+        }
+
+        if (!descargas.isEmpty()) {
+            this.comprobarDirectorioDescargas();
+            this.empezarDescargas(descargas);
+        }
+
+        if (!subidas.isEmpty() || !descargas.isEmpty()) {
+            this.vCliente.setEstado("Reanudando " + (subidas.size() + descargas.size()) + " transferencias pendientes...");
+            this.refrescarBarraProgreso();
+        }
     }
 
     // Inicia el hilo con el objeto pasado.
@@ -537,20 +1374,15 @@ public class Control {
     }
 
     // Avisa a todos los hilos pasados por parámetro que han de dejar lo que estén haciendo.
-    private void desconectarHilos(HiloGenerico[] grupoHilos) {
-        if (!(grupoHilos == null)) {
-            for (HiloGenerico h : grupoHilos) {
-                h.desconectarHilo();
-            }
+    private void desconectarHilos(List<HiloGenerico> grupoHilos) {
+        for (HiloGenerico h : grupoHilos) {
+            h.desconectarHilo();
         }
     }
 
     // Controla la barra de progreso por numero de archivos subidos / descargados.
     private void refrescarBarraProgreso() {
-        int archivosEnCola = this.numeroArchivosASubir + this.numeroArchivosADescargar;
-        int archivosTerminados = this.numeroArchivosSubidos + this.numeroArchivosDescargados;
-
-        this.vCliente.actualizarProgreso(archivosEnCola, archivosTerminados);
+        this.vCliente.actualizarProgreso(this.contadores.getArchivosEnCola(), this.contadores.getArchivosTerminados());
     }
 
     /**
@@ -559,6 +1391,7 @@ public class Control {
      * @param args Parametros que se pasan al programa nada más ejecutarlo.
      */
     public static void main(String[] args) {
+        inicioMain = System.nanoTime();
         new Control();
     }
 }
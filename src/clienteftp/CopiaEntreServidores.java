@@ -0,0 +1,193 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase CopiaEntreServidores. Copia archivos de un servidor FTP a otro sin
+ * pasar por la carpeta de descargas. Primero intenta FXP (PASV en el origen y
+ * PORT en el destino, los datos van directos de un servidor a otro) y si
+ * alguno de los dos no lo permite reenvía los datos en memoria, del flujo de
+ * lectura del origen al de escritura del destino, con un buffer acotado.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class CopiaEntreServidores {
+
+    private final Control padre;
+    private final PoolSesiones origen, destino;
+    private final String rutaOrigen, rutaDestino;
+    private final int paralelismo;
+    private final AtomicInteger copiados, fallidos;
+    private volatile boolean fxpPermitido;
+
+    /**
+     * Constructor de la copia.
+     *
+     * @param padre Permite la comunicación con la instancia de control.
+     * @param origen Pool de sesiones del servidor de origen.
+     * @param rutaOrigen Directorio remoto de origen.
+     * @param destino Pool de sesiones del servidor de destino.
+     * @param rutaDestino Directorio remoto de destino.
+     * @param paralelismo Número de archivos que se copian a la vez.
+     */
+    public CopiaEntreServidores(Control padre, PoolSesiones origen, String rutaOrigen, PoolSesiones destino, String rutaDestino, int paralelismo) {
+        this.padre = padre;
+        this.origen = origen;
+        this.rutaOrigen = rutaOrigen;
+        this.destino = destino;
+        this.rutaDestino = rutaDestino;
+        this.paralelismo = Math.max(1, paralelismo);
+        this.copiados = new AtomicInteger(0);
+        this.fallidos = new AtomicInteger(0);
+        this.fxpPermitido = true;
+    }
+
+    /**
+     * Copia los archivos y espera a que terminen todos.
+     *
+     * @param nombreArchivos Nombres de los archivos del directorio de origen.
+     * @return Cadena con el resumen de la copia.
+     */
+    public String copiar(List<String> nombreArchivos) {
+        ExecutorService hilos = Executors.newFixedThreadPool(Math.min(this.paralelismo, nombreArchivos.size()));
+        for (final String nombre : nombreArchivos) {
+            hilos.execute(new Runnable() {
+                @Override
+                public void run() {
+                    copiarArchivo(nombre);
+                }
+            });
+        }
+        hilos.shutdown();
+
+        try {
+            hilos.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {
+            hilos.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        String resumen = "Copiados " + this.copiados.get() + " archivos a " + this.destino.getServidor();
+        if (this.fallidos.get() > 0) {
+            resumen += ", fallaron " + this.fallidos.get();
+        }
+        return resumen + ".";
+    }
+
+    // Copia un archivo con una sesión de cada servidor.
+    private void copiarArchivo(String nombre) {
+        FTPClient clienteOrigen = null, clienteDestino = null;
+        boolean correcto = false;
+        try {
+            clienteOrigen = this.origen.obtener();
+            clienteDestino = this.destino.obtener();
+            String desde = CacheListados.unir(this.rutaOrigen, nombre);
+            String hasta = CacheListados.unir(this.rutaDestino, nombre);
+
+            if (this.fxpPermitido) {
+                ResultadoFxp resultado = this.copiarFxp(clienteOrigen, clienteDestino, desde, hasta);
+                correcto = resultado == ResultadoFxp.COPIADO;
+                if (resultado == ResultadoFxp.DESTINO_ESPERANDO) {
+                    // El destino espera unos datos que no van a llegar: se
+                    // cierra esa sesión y se reenvía con otra.
+                    FTPClient esperando = clienteDestino;
+                    clienteDestino = null;
+                    this.destino.descartar(esperando);
+                    clienteDestino = this.destino.obtener();
+                }
+            }
+            if (!correcto) {
+                correcto = this.copiarReenviando(clienteOrigen, clienteDestino, desde, hasta);
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al copiar " + nombre, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.liberar(this.origen, clienteOrigen, correcto);
+            this.liberar(this.destino, clienteDestino, correcto);
+        }
+
+        if (correcto) {
+            this.copiados.incrementAndGet();
+        } else {
+            this.fallidos.incrementAndGet();
+            this.padre.setMensajeCliente("Error al copiar el elemento: " + nombre);
+        }
+    }
+
+    // Copia directa entre servidores. Si alguno de los dos rechaza el modo FXP
+    // no se vuelve a intentar en el resto de archivos. Las dos sesiones
+    // vuelven a su modo de datos, porque después se devuelven a sus pools.
+    private ResultadoFxp copiarFxp(FTPClient clienteOrigen, FTPClient clienteDestino, String desde, String hasta) throws IOException {
+        try {
+            if (!clienteOrigen.enterRemotePassiveMode()) {
+                this.fxpPermitido = false;
+                return ResultadoFxp.FALLIDO;
+            }
+
+            InetAddress direccion = InetAddress.getByName(clienteOrigen.getPassiveHost());
+            if (!clienteDestino.enterRemoteActiveMode(direccion, clienteOrigen.getPassivePort())
+                    || !clienteDestino.remoteStore(hasta)) {
+                this.fxpPermitido = false;
+                RegistroEventos.aviso("FXP no permitido, se reenviarán los datos: " + clienteDestino.getReplyString());
+                return ResultadoFxp.FALLIDO;
+            }
+            if (!clienteOrigen.remoteRetrieve(desde)) {
+                // El destino ya ha aceptado el STOR y esperaría hasta agotar
+                // su tiempo una conexión de datos que nunca llega.
+                this.fxpPermitido = false;
+                RegistroEventos.aviso("El origen rechaza RETR en FXP, se reenviarán los datos: " + clienteOrigen.getReplyString());
+                return ResultadoFxp.DESTINO_ESPERANDO;
+            }
+            boolean correcto = clienteOrigen.completePendingCommand();
+            // El destino siempre tiene un STOR pendiente de respuesta.
+            correcto = clienteDestino.completePendingCommand() && correcto;
+            return correcto ? ResultadoFxp.COPIADO : ResultadoFxp.FALLIDO;
+        } finally {
+            this.origen.restablecerModo(clienteOrigen);
+            this.destino.restablecerModo(clienteDestino);
+        }
+    }
+
+    // Lee del origen y escribe en el destino a la vez, sin tocar el disco.
+    private boolean copiarReenviando(FTPClient clienteOrigen, FTPClient clienteDestino, String desde, String hasta) throws IOException {
+        InputStream entrada = clienteOrigen.retrieveFileStream(desde);
+        if (entrada == null) {
+            return false;
+        }
+
+        boolean correcto;
+        try {
+            correcto = clienteDestino.storeFile(hasta, entrada);
+        } finally {
+            entrada.close();
+        }
+        return clienteOrigen.completePendingCommand() && correcto;
+    }
+
+    // Cómo ha acabado un intento de FXP.
+    private enum ResultadoFxp {
+        COPIADO, FALLIDO, DESTINO_ESPERANDO
+    }
+
+    // Devuelve la sesión al pool o la descarta si algo ha ido mal.
+    private void liberar(PoolSesiones pool, FTPClient cliente, boolean correcto) {
+        if (cliente != null) {
+            if (correcto) {
+                pool.devolver(cliente);
+            } else {
+                pool.descartar(cliente);
+            }
+        }
+    }
+}
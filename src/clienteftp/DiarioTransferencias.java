@@ -0,0 +1,387 @@
+package clienteftp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clase DiarioTransferencias. Guarda en disco las transferencias encoladas, en
+ * curso (con los bytes ya enviados) y terminadas para poder reanudarlas la
+ * próxima vez que se inicie el programa. Las que fallan se quedan pendientes
+ * con el número de intentos, hasta agotar el máximo. El archivo solo crece por
+ * el final, un único hilo escribe los registros por lotes y hace un fsync por
+ * lote, y cada cierto número de registros se compacta dejando solo lo
+ * pendiente.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class DiarioTransferencias {
+
+    private static final byte ENCOLADA = 0;
+    private static final byte PROGRESO = 1;
+    private static final byte TERMINADA = 2;
+    private static final byte FALLIDA = 3;
+    private static final int MAX_LOTE = 4096;
+    private static final int REGISTROS_PARA_COMPACTAR = 20000;
+
+    private final File archivo;
+    private final BlockingQueue<Registro> colaEscritura;
+    private final Map<Long, Apunte> pendientes;
+    private final AtomicLong siguienteId;
+    private final int maximoIntentos;
+    private DataOutputStream escritor;
+    private FileOutputStream salida;
+    private Thread hiloEscritor;
+    private int registrosEscritos;
+
+    /**
+     * Constructor del diario.
+     *
+     * @param archivo Archivo en el que se guardan los registros.
+     * @param maximoIntentos Veces que puede fallar una transferencia antes de
+     * darla por terminada.
+     */
+    public DiarioTransferencias(File archivo, int maximoIntentos) {
+        this.archivo = archivo;
+        this.maximoIntentos = Math.max(1, maximoIntentos);
+        this.colaEscritura = new LinkedBlockingQueue<>();
+        this.pendientes = new ConcurrentHashMap<>();
+        this.siguienteId = new AtomicLong(1);
+        this.registrosEscritos = 0;
+    }
+
+    /**
+     * Lee el diario de la sesión anterior, lo compacta y arranca el hilo que
+     * escribe los nuevos registros.
+     */
+    public void iniciar() {
+        this.cargar();
+        try {
+            this.compactar();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al compactar el diario de transferencias", ex);
+        }
+
+        this.hiloEscritor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                escribirRegistros();
+            }
+        }, "diario-transferencias");
+        this.hiloEscritor.setDaemon(true);
+        this.hiloEscritor.start();
+
+        // Al salir con System.exit se vuelca lo que quede en la cola.
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cerrar();
+            }
+        }));
+    }
+
+    // Reconstruye las transferencias pendientes a partir del archivo. Si el
+    // último registro quedó a medias (cierre brusco) simplemente se ignora.
+    private void cargar() {
+        if (!this.archivo.exists()) {
+            return;
+        }
+
+        long maxId = 0;
+        try (DataInputStream lector = new DataInputStream(new BufferedInputStream(new FileInputStream(archivo)))) {
+            while (true) {
+                byte tipo = lector.readByte();
+                long id = lector.readLong();
+                maxId = Math.max(maxId, id);
+
+                switch (tipo) {
+                    case ENCOLADA:
+                        Apunte apunte = new Apunte(id, lector.readByte(), lector.readUTF(), lector.readUTF(), lector.readUTF(), lector.readUTF());
+                        this.pendientes.put(id, apunte);
+                        break;
+                    case PROGRESO:
+                        long desplazamiento = lector.readLong();
+                        Apunte enCurso = this.pendientes.get(id);
+                        if (enCurso != null) {
+                            enCurso.desplazamiento = desplazamiento;
+                        }
+                        break;
+                    case TERMINADA:
+                        this.pendientes.remove(id);
+                        break;
+                    case FALLIDA:
+                        long intentos = lector.readLong();
+                        Apunte fallida = this.pendientes.get(id);
+                        if (fallida != null) {
+                            fallida.intentos = (int) intentos;
+                        }
+                        break;
+                    default:
+                        throw new IOException("Registro desconocido en el diario: " + tipo);
+                }
+            }
+        } catch (EOFException ex) {
+            // Fin del diario.
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al leer el diario de transferencias", ex);
+        }
+        this.siguienteId.set(maxId + 1);
+    }
+
+    /**
+     * Apunta una nueva transferencia en cola.
+     *
+     * @param accion HiloGenerico.SUBIR o HiloGenerico.DESCARGAR.
+     * @param servidor Servidor contra el que se hace la transferencia.
+     * @param usuario Usuario con el que se hace la transferencia.
+     * @param rutaLocal Ruta del archivo local (subidas) o nombre del archivo
+     * remoto (descargas).
+     * @param rutaRemota Directorio remoto de la transferencia.
+     * @return El identificador de la transferencia en el diario.
+     */
+    public long encolar(byte accion, String servidor, String usuario, String rutaLocal, String rutaRemota) {
+        Apunte apunte = new Apunte(this.siguienteId.getAndIncrement(), accion, servidor, usuario, rutaLocal, rutaRemota);
+        this.pendientes.put(apunte.id, apunte);
+        this.colaEscritura.add(new Registro(ENCOLADA, apunte.id, apunte));
+        return apunte.id;
+    }
+
+    /**
+     * Apunta cuántos bytes lleva una transferencia en curso.
+     *
+     * @param id Identificador de la transferencia.
+     * @param desplazamiento Bytes ya transferidos.
+     */
+    public void progreso(long id, long desplazamiento) {
+        Apunte apunte = this.pendientes.get(id);
+        if (apunte != null) {
+            apunte.desplazamiento = desplazamiento;
+            this.colaEscritura.add(new Registro(PROGRESO, id, desplazamiento));
+        }
+    }
+
+    /**
+     * Apunta que una transferencia ha terminado (bien, mal o cancelada) y no
+     * hay que reanudarla.
+     *
+     * @param id Identificador de la transferencia.
+     */
+    public void terminada(long id) {
+        if (this.pendientes.remove(id) != null) {
+            this.colaEscritura.add(new Registro(TERMINADA, id, 0));
+        }
+    }
+
+    /**
+     * Apunta que una transferencia ha fallado. Si aún no ha agotado los
+     * intentos sigue pendiente y se reanudará la próxima vez que se conecte;
+     * si los ha agotado se da por terminada.
+     *
+     * @param id Identificador de la transferencia.
+     * @return true si se reanudará.
+     */
+    public boolean fallida(long id) {
+        Apunte apunte = this.pendientes.get(id);
+        if (apunte == null) {
+            return false;
+        }
+        if (++apunte.intentos >= this.maximoIntentos) {
+            this.terminada(id);
+            return false;
+        }
+        this.colaEscritura.add(new Registro(FALLIDA, id, apunte.intentos));
+        return true;
+    }
+
+    /**
+     * Obtiene las transferencias que quedaron sin terminar para un servidor y
+     * usuario concretos.
+     *
+     * @param servidor Servidor de la sesión actual.
+     * @param usuario Usuario de la sesión actual.
+     * @return Listado de transferencias pendientes.
+     */
+    public List<Apunte> getPendientes(String servidor, String usuario) {
+        List<Apunte> resultado = new ArrayList<>();
+        for (Apunte apunte : this.pendientes.values()) {
+            if (apunte.servidor.equals(servidor) && apunte.usuario.equals(usuario)) {
+                resultado.add(apunte);
+            }
+        }
+        return resultado;
+    }
+
+    // Bucle del hilo escritor: espera registros, escribe todos los que haya en
+    // la cola de una vez y hace un único fsync por lote.
+    private void escribirRegistros() {
+        List<Registro> lote = new ArrayList<>(MAX_LOTE);
+        while (true) {
+            try {
+                lote.add(this.colaEscritura.take());
+                this.colaEscritura.drainTo(lote, MAX_LOTE - 1);
+                synchronized (this) {
+                    this.escribirLote(lote);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al escribir el diario de transferencias", ex);
+            }
+            lote.clear();
+        }
+    }
+
+    // Escribe y sincroniza un lote de registros, compactando si toca.
+    private void escribirLote(List<Registro> lote) throws IOException {
+        if (this.escritor == null) {
+            this.abrir();
+        }
+
+        for (Registro registro : lote) {
+            registro.escribir(this.escritor);
+        }
+        this.escritor.flush();
+        this.salida.getChannel().force(false);
+
+        this.registrosEscritos += lote.size();
+        if (this.registrosEscritos >= REGISTROS_PARA_COMPACTAR) {
+            this.compactar();
+        }
+    }
+
+    // Abre el diario para añadir registros al final.
+    private void abrir() throws IOException {
+        this.salida = new FileOutputStream(this.archivo, true);
+        this.escritor = new DataOutputStream(new BufferedOutputStream(this.salida, 64 * 1024));
+    }
+
+    // Reescribe el diario solo con las transferencias pendientes y lo cambia
+    // por el actual de forma atómica.
+    private synchronized void compactar() throws IOException {
+        File temporal = new File(this.archivo.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporal); DataOutputStream compacto = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (Apunte apunte : this.pendientes.values()) {
+                new Registro(ENCOLADA, apunte.id, apunte).escribir(compacto);
+                if (apunte.desplazamiento > 0) {
+                    new Registro(PROGRESO, apunte.id, apunte.desplazamiento).escribir(compacto);
+                }
+                if (apunte.intentos > 0) {
+                    new Registro(FALLIDA, apunte.id, apunte.intentos).escribir(compacto);
+                }
+            }
+            compacto.flush();
+            fos.getChannel().force(false);
+        }
+
+        if (this.escritor != null) {
+            this.escritor.close();
+            this.escritor = null;
+        }
+        Files.move(temporal.toPath(), this.archivo.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.registrosEscritos = this.pendientes.size();
+    }
+
+    /**
+     * Vuelca los registros que aún estén en cola y cierra el diario.
+     */
+    public void cerrar() {
+        List<Registro> lote = new ArrayList<>();
+        this.colaEscritura.drainTo(lote);
+        synchronized (this) {
+            try {
+                if (!lote.isEmpty()) {
+                    this.escribirLote(lote);
+                }
+                if (this.escritor != null) {
+                    this.escritor.close();
+                    this.escritor = null;
+                }
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al cerrar el diario de transferencias", ex);
+            }
+        }
+    }
+
+    /**
+     * Datos de una transferencia apuntada en el diario.
+     */
+    public static class Apunte {
+
+        protected final long id;
+        protected final byte accion;
+        protected final String servidor, usuario, rutaLocal, rutaRemota;
+        protected volatile long desplazamiento;
+        protected volatile int intentos;
+
+        private Apunte(long id, byte accion, String servidor, String usuario, String rutaLocal, String rutaRemota) {
+            this.id = id;
+            this.accion = accion;
+            this.servidor = servidor;
+            this.usuario = usuario;
+            this.rutaLocal = rutaLocal;
+            this.rutaRemota = rutaRemota;
+            this.desplazamiento = 0;
+            this.intentos = 0;
+        }
+    }
+
+    // Un registro a la espera de ser escrito. El valor es el desplazamiento
+    // en los de progreso y el número de intentos en los de fallo.
+    private static class Registro {
+
+        private final byte tipo;
+        private final long id;
+        private final Apunte apunte;
+        private final long valor;
+
+        private Registro(byte tipo, long id, Apunte apunte) {
+            this.tipo = tipo;
+            this.id = id;
+            this.apunte = apunte;
+            this.valor = 0;
+        }
+
+        private Registro(byte tipo, long id, long valor) {
+            this.tipo = tipo;
+            this.id = id;
+            this.apunte = null;
+            this.valor = valor;
+        }
+
+        private void escribir(DataOutputStream escritor) throws IOException {
+            escritor.writeByte(this.tipo);
+            escritor.writeLong(this.id);
+            switch (this.tipo) {
+                case ENCOLADA:
+                    escritor.writeByte(this.apunte.accion);
+                    escritor.writeUTF(this.apunte.servidor);
+                    escritor.writeUTF(this.apunte.usuario);
+                    escritor.writeUTF(this.apunte.rutaLocal);
+                    escritor.writeUTF(this.apunte.rutaRemota);
+                    break;
+                case PROGRESO:
+                case FALLIDA:
+                    escritor.writeLong(this.valor);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
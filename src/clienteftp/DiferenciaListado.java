@@ -0,0 +1,118 @@
+package clienteftp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase DiferenciaListado. Guarda una foto del último listado de un directorio
+ * (nombre y una firma calculada con el tamaño, la fecha y el tipo) y al
+ * recibir un listado nuevo obtiene solo lo que se ha añadido, modificado o
+ * eliminado desde la foto anterior.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class DiferenciaListado {
+
+    /**
+     * Cambios entre dos listados.
+     */
+    public static class Cambios {
+
+        protected final List<FTPFile> nuevos = new ArrayList<>();
+        protected final List<FTPFile> modificados = new ArrayList<>();
+        protected final List<String> eliminados = new ArrayList<>();
+
+        /**
+         * Indica si no ha cambiado nada.
+         *
+         * @return true si los dos listados son iguales.
+         */
+        public boolean isVacio() {
+            return nuevos.isEmpty() && modificados.isEmpty() && eliminados.isEmpty();
+        }
+
+        /**
+         * Obtiene el número total de cambios.
+         *
+         * @return Número de entradas añadidas, modificadas o eliminadas.
+         */
+        public int getNumeroCambios() {
+            return nuevos.size() + modificados.size() + eliminados.size();
+        }
+    }
+
+    private Map<String, Long> firmas;
+    private int generacion;
+
+    /**
+     * Constructor con la foto vacía.
+     */
+    public DiferenciaListado() {
+        this.firmas = new HashMap<>();
+        this.generacion = 0;
+    }
+
+    /**
+     * Compara el listado con la foto anterior y la sustituye por él.
+     *
+     * @param archivos Listado nuevo del directorio.
+     * @return Los cambios respecto a la foto anterior.
+     */
+    public Cambios comparar(FTPFile[] archivos) {
+        Cambios cambios = new Cambios();
+        Map<String, Long> nuevasFirmas = new HashMap<>(Math.max(16, archivos.length * 4 / 3 + 1));
+
+        for (FTPFile archivo : archivos) {
+            long firma = firma(archivo);
+            Long anterior = this.firmas.remove(archivo.getName());
+            nuevasFirmas.put(archivo.getName(), firma);
+
+            if (anterior == null) {
+                cambios.nuevos.add(archivo);
+            } else if (anterior != firma) {
+                cambios.modificados.add(archivo);
+            }
+        }
+
+        // Lo que queda en la foto anterior ya no está en el directorio.
+        cambios.eliminados.addAll(this.firmas.keySet());
+
+        this.firmas = nuevasFirmas;
+        this.generacion++;
+        return cambios;
+    }
+
+    /**
+     * Olvida la foto anterior, el siguiente listado saldrá entero como nuevo.
+     */
+    public void vaciar() {
+        this.firmas = new HashMap<>();
+        this.generacion = 0;
+    }
+
+    /**
+     * Indica si todavía no se ha comparado ningún listado.
+     *
+     * @return true si la foto está vacía y nunca se ha usado.
+     */
+    public boolean isPrimeraVez() {
+        return this.generacion == 0;
+    }
+
+    /**
+     * Obtiene la firma de una entrada, que cambia si cambia su tamaño, su
+     * fecha o su tipo.
+     *
+     * @param archivo Entrada del listado.
+     * @return La firma de la entrada.
+     */
+    public static long firma(FTPFile archivo) {
+        long fecha = archivo.getTimestamp() == null ? 0 : archivo.getTimestamp().getTimeInMillis();
+        long firma = 31 * archivo.getSize() + fecha;
+        return 31 * firma + archivo.getType();
+    }
+}
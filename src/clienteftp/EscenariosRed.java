@@ -0,0 +1,761 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase EscenariosRed. Banco de pruebas de red para desarrollo: levanta un
+ * ServidorFtpSimulado detrás de un ProxyRed y mide, en cada escenario, cómo
+ * se comportan las piezas de las transferencias (pool de sesiones, descarga
+ * bloqueante con reanudación por REST, muchos archivos pequeños en paralelo
+ * y el motor NIO). El escenario concurrencia lanza mil descargas a la vez
+ * con un hilo por transferencia y luego con el motor NIO, para comparar los
+ * dos motores con la misma carga; el escenario sumas mide lo que cuesta
+ * calcular cada suma de comprobación mientras se descarga, y el escenario
+ * tls cuánto se ahorra al reanudar las sesiones TLS. No necesita nada de
+ * fuera (el certificado del servidor lo crea keytool) y no abre ventanas.
+ *
+ * Uso: java -cp ClienteFTP.jar clienteftp.EscenariosRed [escenario...]
+ * Escenarios: local, wan, limite, cortes, concurrencia, sumas, tls. Sin
+ * argumentos se ejecutan todos.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class EscenariosRed {
+
+    private static final int SESIONES = 4;
+    private static final int GRANDE = 4 * 1024 * 1024;
+    private static final int PEQUENIOS = 40;
+    private static final int TAMANIO_PEQUENIO = 4 * 1024;
+    private static final int REINTENTOS = 20;
+    private static final String CONCURRENCIA = "concurrencia";
+    private static final int CONCURRENTES = 1000;
+    private static final int TAMANIO_MEDIO = 32 * 1024;
+    // Hilos que preparan las descargas NIO, los mismos que usa el
+    // planificador con nio.preparacion por defecto.
+    private static final int PREPARADORES = 64;
+    private static final String SUMAS = "sumas";
+    // Descargas del archivo grande por medida en el escenario de sumas; se
+    // queda la más rápida para que no cuente el ruido de la máquina.
+    private static final int REPETICIONES = 3;
+    private static final String TLS = "tls";
+    private static final String CLAVE_TLS = "escenarios";
+
+    private final File base, raiz, locales;
+    private final Map<String, ProxyRed.Condiciones> escenarios;
+
+    /**
+     * Constructor del banco, crea los archivos de prueba en una carpeta
+     * temporal. Hay que borrarla con limpiar() al acabar.
+     *
+     * @throws IOException Si no se pueden crear.
+     */
+    public EscenariosRed() throws IOException {
+        File base = File.createTempFile("escenarios", "");
+        base.delete();
+        this.base = base;
+        this.raiz = new File(base, "servidor");
+        this.locales = new File(base, "local");
+        this.raiz.mkdirs();
+        this.locales.mkdirs();
+        Random azar = new Random(1);
+        escribir(new File(this.raiz, "grande.bin"), GRANDE, azar);
+        for (int i = 0; i < PEQUENIOS; i++) {
+            escribir(new File(this.raiz, "pequenio" + i + ".bin"), TAMANIO_PEQUENIO, azar);
+        }
+        for (int i = 0; i < CONCURRENTES; i++) {
+            escribir(new File(this.raiz, "medio" + i + ".bin"), TAMANIO_MEDIO, azar);
+        }
+
+        this.escenarios = new LinkedHashMap<>();
+        this.escenarios.put("local", new ProxyRed.Condiciones(0, 0, 0, 0, 0));
+        this.escenarios.put("wan", new ProxyRed.Condiciones(100, 2 * 1024 * 1024, 0.02, 0, 0));
+        this.escenarios.put("limite", new ProxyRed.Condiciones(20, 0, 0, 0, 2));
+        this.escenarios.put("cortes", new ProxyRed.Condiciones(20, 4 * 1024 * 1024, 0, 0.01, 0));
+        this.escenarios.put(CONCURRENCIA, new ProxyRed.Condiciones(20, 512 * 1024, 0, 0, 0));
+        this.escenarios.put(SUMAS, new ProxyRed.Condiciones(0, 0, 0, 0, 0));
+        this.escenarios.put(TLS, new ProxyRed.Condiciones(20, 0, 0, 0, 0));
+
+        // El certificado del servidor simulado es de prueba: el cliente lo acepta sin más.
+        try (Writer ajustes = new OutputStreamWriter(new FileOutputStream(new File(base, "tls.properties")), StandardCharsets.UTF_8)) {
+            ajustes.write("tls.confiar.todos=true\n");
+        }
+    }
+
+    /**
+     * Ejecuta un escenario y escribe las medidas por la salida estándar.
+     *
+     * @param nombre local, wan, limite, cortes, concurrencia, sumas o tls.
+     * @throws IOException Si no se puede levantar el servidor o el proxy.
+     */
+    public void ejecutar(String nombre) throws IOException {
+        ProxyRed.Condiciones condiciones = this.escenarios.get(nombre);
+        if (condiciones == null) {
+            System.out.println("Escenario desconocido: " + nombre + ". Hay: " + this.escenarios.keySet());
+            return;
+        }
+        System.out.println("== " + nombre + " (" + condiciones + ")");
+        KeyManager[] clavesTls = null;
+        if (nombre.equals(TLS) && (clavesTls = this.clavesTls()) == null) {
+            return;
+        }
+
+        ServidorFtpSimulado servidor = new ServidorFtpSimulado(this.raiz);
+        ProxyRed proxy = new ProxyRed(servidor.getPuerto(), condiciones, nombre.hashCode());
+        servidor.iniciar();
+        proxy.iniciar();
+        int sesiones = nombre.equals(CONCURRENCIA) ? CONCURRENTES : SESIONES;
+        byte seguridad = clavesTls == null ? Perfil.SIN_TLS : Perfil.TLS_EXPLICITO;
+        Perfil perfil = new Perfil("127.0.0.1", proxy.getPuerto(), "prueba", "prueba", seguridad, clavesTls != null, true, 64 * 1024, sesiones);
+        File ajustes = clavesTls == null ? new File(this.raiz, "ninguna.properties") : new File(this.raiz.getParentFile(), "tls.properties");
+        FabricaClientes fabrica = new FabricaClientes(perfil, new Configuracion(ajustes));
+        PoolSesiones pool = new PoolSesiones(perfil, fabrica);
+        pool.setTiempoConexion(10000);
+        try {
+            if (nombre.equals(CONCURRENCIA)) {
+                this.calentar(pool);
+                this.medirConcurrentes(pool);
+                this.medirConcurrentesNio(pool);
+            } else if (nombre.equals(SUMAS)) {
+                this.medirSumas(pool);
+            } else if (clavesTls != null) {
+                this.medirTls(servidor, pool, clavesTls);
+            } else {
+                this.medirPool(pool);
+                this.medirGrande(pool);
+                this.medirPequenios(pool);
+                this.medirNio(pool);
+            }
+        } finally {
+            pool.cerrarTodas();
+            proxy.detener();
+            servidor.detener();
+        }
+        System.out.println("   Proxy: " + proxy.getResumen());
+    }
+
+    /**
+     * Borra la carpeta temporal con los archivos de prueba, las descargas y
+     * el certificado.
+     */
+    public void limpiar() {
+        borrar(this.base);
+    }
+
+    // Borra un archivo o una carpeta con todo lo que tenga dentro; de un
+    // enlace simbólico borra solo el enlace.
+    private static void borrar(File archivo) {
+        File[] contenido = Files.isSymbolicLink(archivo.toPath()) ? null : archivo.listFiles();
+        if (contenido != null) {
+            for (File hijo : contenido) {
+                borrar(hijo);
+            }
+        }
+        if (!archivo.delete() && archivo.exists()) {
+            System.out.println("No se puede borrar " + archivo);
+        }
+    }
+
+    // Abre todas las sesiones del pool a la vez y cuenta cuántas lo consiguen.
+    private void medirPool(final PoolSesiones pool) {
+        final AtomicInteger abiertas = new AtomicInteger();
+        final AtomicReference<String> error = new AtomicReference<>();
+        final List<FTPClient> clientes = new ArrayList<>();
+        long inicio = System.currentTimeMillis();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < SESIONES; i++) {
+            hilos.add(arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        FTPClient cliente = pool.obtener();
+                        abiertas.incrementAndGet();
+                        synchronized (clientes) {
+                            clientes.add(cliente);
+                        }
+                    } catch (IOException | InterruptedException ex) {
+                        error.set(ex.toString());
+                    }
+                }
+            }));
+        }
+        esperar(hilos);
+        for (FTPClient cliente : clientes) {
+            pool.devolver(cliente);
+        }
+        System.out.println("   Pool: " + abiertas.get() + " de " + SESIONES + " sesiones en " + (System.currentTimeMillis() - inicio) + " ms"
+                + (error.get() == null ? "" : ", último error: " + error.get()));
+    }
+
+    // Descarga el archivo grande reanudando con REST tras cada corte, como
+    // hace el diario de transferencias.
+    private void medirGrande(PoolSesiones pool) throws IOException {
+        File destino = new File(this.locales, "grande.bin");
+        destino.delete();
+        long inicio = System.currentTimeMillis();
+        int intentos = 0;
+        while (destino.length() < GRANDE && intentos++ < REINTENTOS) {
+            FTPClient cliente = null;
+            try {
+                cliente = pool.obtener();
+                cliente.setRestartOffset(destino.length());
+                try (OutputStream salida = new FileOutputStream(destino, true)) {
+                    cliente.retrieveFile("/grande.bin", salida);
+                }
+                pool.devolver(cliente);
+            } catch (IOException | InterruptedException ex) {
+                if (cliente != null) {
+                    pool.descartar(cliente);
+                }
+                esperarReintento(intentos);
+            }
+        }
+        this.informar("Grande bloqueante", inicio, GRANDE, intentos - 1, iguales(destino, new File(this.raiz, "grande.bin")));
+    }
+
+    // Descarga los archivos pequeños con tantos hilos como sesiones; cada
+    // archivo se reintenta con otra sesión si falla.
+    private void medirPequenios(final PoolSesiones pool) throws IOException {
+        final ConcurrentLinkedQueue<String> pendientes = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < PEQUENIOS; i++) {
+            pendientes.add("pequenio" + i + ".bin");
+        }
+        final AtomicInteger reintentos = new AtomicInteger();
+        final AtomicInteger fallidos = new AtomicInteger();
+        long inicio = System.currentTimeMillis();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < SESIONES; i++) {
+            hilos.add(arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    String nombre;
+                    while ((nombre = pendientes.poll()) != null) {
+                        int intento = 0;
+                        while (!descargarUno(pool, nombre)) {
+                            if (++intento >= REINTENTOS || !esperarReintento(intento)) {
+                                fallidos.incrementAndGet();
+                                break;
+                            }
+                            reintentos.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        esperar(hilos);
+        boolean correcto = fallidos.get() == 0;
+        for (int i = 0; i < PEQUENIOS && correcto; i++) {
+            correcto = iguales(new File(this.locales, "pequenio" + i + ".bin"), new File(this.raiz, "pequenio" + i + ".bin"));
+        }
+        this.informar(PEQUENIOS + " pequeños en paralelo", inicio, PEQUENIOS * TAMANIO_PEQUENIO, reintentos.get(), correcto);
+    }
+
+    // Descarga un archivo pequeño entero con una sesión del pool.
+    private boolean descargarUno(PoolSesiones pool, String nombre) {
+        FTPClient cliente;
+        try {
+            cliente = pool.obtener();
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+        try (OutputStream salida = new FileOutputStream(new File(this.locales, nombre))) {
+            boolean correcto = cliente.retrieveFile("/" + nombre, salida);
+            pool.devolver(cliente);
+            return correcto;
+        } catch (IOException ex) {
+            pool.descartar(cliente);
+            return false;
+        }
+    }
+
+    // Descarga el archivo grande con el motor NIO, reanudando tras cada corte.
+    private void medirNio(PoolSesiones pool) throws IOException {
+        MotorNio motor = new MotorNio(1, 64 * 1024, 16);
+        File destino = new File(this.locales, "grande-nio.bin");
+        destino.delete();
+        long inicio = System.currentTimeMillis();
+        int intentos = 0;
+        try {
+            while (destino.length() < GRANDE && intentos++ < REINTENTOS) {
+                FTPClient cliente = null;
+                try {
+                    cliente = pool.obtener();
+                    boolean correcto = this.descargarNio(motor, cliente, destino);
+                    if (correcto) {
+                        pool.devolver(cliente);
+                    } else {
+                        pool.descartar(cliente);
+                    }
+                } catch (IOException | InterruptedException ex) {
+                    if (cliente != null) {
+                        pool.descartar(cliente);
+                    }
+                    esperarReintento(intentos);
+                }
+            }
+        } finally {
+            motor.detener();
+        }
+        this.informar("Grande NIO", inicio, GRANDE, intentos - 1, iguales(destino, new File(this.raiz, "grande.bin")));
+    }
+
+    // Un intento de descarga NIO desde lo que ya hay en disco.
+    private boolean descargarNio(MotorNio motor, FTPClient cliente, File destino) throws IOException, InterruptedException {
+        long desde = destino.length();
+        SocketChannel canal = MotorNio.abrirDatos(cliente, 10000);
+        FileChannel archivo = FileChannel.open(destino.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if ((desde > 0 && !FTPReply.isPositiveIntermediate(cliente.rest(Long.toString(desde))))
+                || !FTPReply.isPositivePreliminary(cliente.sendCommand("RETR", "/grande.bin"))) {
+            canal.close();
+            archivo.close();
+            return false;
+        }
+        final CountDownLatch fin = new CountDownLatch(1);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        motor.descargar(canal, archivo, desde, null, new MotorNio.Oyente() {
+            @Override
+            public void progreso(long bytes) {
+            }
+
+            @Override
+            public void terminada(IOException ex) {
+                error.set(ex);
+                fin.countDown();
+            }
+        });
+        fin.await();
+        return error.get() == null && cliente.completePendingCommand();
+    }
+
+    // Deja abiertas en el pool las sesiones de todas las descargas, para
+    // que los dos motores se midan con las sesiones ya logueadas, como las
+    // deja precalentar() en el programa.
+    private void calentar(final PoolSesiones pool) {
+        final List<FTPClient> clientes = new ArrayList<>();
+        final AtomicInteger pendientes = new AtomicInteger(CONCURRENTES);
+        long inicio = System.currentTimeMillis();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < CONCURRENTES / 10; i++) {
+            hilos.add(arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    while (pendientes.getAndDecrement() > 0) {
+                        try {
+                            FTPClient cliente = pool.obtener();
+                            synchronized (clientes) {
+                                clientes.add(cliente);
+                            }
+                        } catch (IOException | InterruptedException ex) {
+                            return;
+                        }
+                    }
+                }
+            }));
+        }
+        esperar(hilos);
+        for (FTPClient cliente : clientes) {
+            pool.devolver(cliente);
+        }
+        System.out.println("   Sesiones: " + clientes.size() + " de " + CONCURRENTES + " abiertas en "
+                + (System.currentTimeMillis() - inicio) + " ms");
+    }
+
+    // Descarga los archivos medianos todos a la vez con un hilo bloqueado en
+    // cada uno, como hacen las transferencias sin el motor NIO.
+    private void medirConcurrentes(final PoolSesiones pool) throws IOException {
+        final AtomicInteger fallidos = new AtomicInteger();
+        long inicio = System.currentTimeMillis();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < CONCURRENTES; i++) {
+            final String nombre = "medio" + i + ".bin";
+            hilos.add(arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    if (!descargarUno(pool, nombre)) {
+                        fallidos.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        esperar(hilos);
+        long terminado = System.currentTimeMillis();
+        boolean correcto = fallidos.get() == 0 && this.mediosIguales("");
+        this.informarTiempo(CONCURRENTES + " a la vez bloqueante (" + CONCURRENTES + " hilos)", terminado - inicio,
+                (long) CONCURRENTES * TAMANIO_MEDIO, 0, correcto);
+    }
+
+    // Descarga los mismos archivos a la vez con un solo bucle NIO. Los hilos
+    // preparadores hacen a la vez las órdenes de control de cada archivo
+    // (NOOP, EPSV y RETR), como los del planificador, y lo dejan en el motor,
+    // que mueve todos los bytes; el preparador pasa enseguida al siguiente.
+    private void medirConcurrentesNio(final PoolSesiones pool) throws IOException {
+        final MotorNio motor = new MotorNio(1, TAMANIO_MEDIO, CONCURRENTES);
+        final ConcurrentLinkedQueue<String> pendientes = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < CONCURRENTES; i++) {
+            pendientes.add("medio" + i + ".bin");
+        }
+        final CountDownLatch fin = new CountDownLatch(CONCURRENTES);
+        final AtomicInteger fallidos = new AtomicInteger();
+        long inicio = System.currentTimeMillis();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < PREPARADORES; i++) {
+            hilos.add(arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    String nombre;
+                    while ((nombre = pendientes.poll()) != null) {
+                        try {
+                            if (lanzarNio(motor, pool, nombre, fin, fallidos)) {
+                                continue;
+                            }
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        fallidos.incrementAndGet();
+                        fin.countDown();
+                    }
+                }
+            }));
+        }
+        esperar(hilos);
+        try {
+            fin.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            motor.detener();
+        }
+        long terminado = System.currentTimeMillis();
+        boolean correcto = fallidos.get() == 0 && this.mediosIguales("nio-");
+        this.informarTiempo(CONCURRENTES + " a la vez NIO (1 bucle, " + PREPARADORES + " hilos de control)", terminado - inicio,
+                (long) CONCURRENTES * TAMANIO_MEDIO, 0, correcto);
+    }
+
+    // Pide un archivo y deja su conexión de datos al motor sin esperar a que
+    // acabe; al terminar se lee la respuesta y se devuelve la sesión.
+    private boolean lanzarNio(MotorNio motor, final PoolSesiones pool, String nombre,
+            final CountDownLatch fin, final AtomicInteger fallidos) throws InterruptedException {
+        final FTPClient cliente;
+        try {
+            cliente = pool.obtener();
+        } catch (IOException ex) {
+            return false;
+        }
+        try {
+            SocketChannel canal = MotorNio.abrirDatos(cliente, 10000);
+            FileChannel archivo = FileChannel.open(new File(this.locales, "nio-" + nombre).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (!FTPReply.isPositivePreliminary(cliente.sendCommand("RETR", "/" + nombre))) {
+                canal.close();
+                archivo.close();
+                pool.descartar(cliente);
+                return false;
+            }
+            motor.descargar(canal, archivo, 0, null, new MotorNio.Oyente() {
+                @Override
+                public void progreso(long bytes) {
+                }
+
+                @Override
+                public void terminada(IOException error) {
+                    boolean correcto = false;
+                    try {
+                        correcto = cliente.completePendingCommand() && error == null;
+                    } catch (IOException ex) {
+                        // La sesión queda mal y se descarta.
+                    }
+                    if (correcto) {
+                        pool.devolver(cliente);
+                    } else {
+                        fallidos.incrementAndGet();
+                        pool.descartar(cliente);
+                    }
+                    fin.countDown();
+                }
+            });
+            return true;
+        } catch (IOException ex) {
+            pool.descartar(cliente);
+            return false;
+        }
+    }
+
+    // Compara los archivos medianos descargados, con el prefijo dado, con
+    // los del servidor.
+    private boolean mediosIguales(String prefijo) throws IOException {
+        for (int i = 0; i < CONCURRENTES; i++) {
+            if (!iguales(new File(this.locales, prefijo + "medio" + i + ".bin"), new File(this.raiz, "medio" + i + ".bin"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Descarga el archivo grande sin guardarlo, primero sin suma y luego con
+    // cada algoritmo, y compara los tiempos: la diferencia es lo que añade
+    // sumar en el mismo hilo que recibe los datos. También se mide la suma
+    // sola sobre el archivo local, para ver cuánto margen deja a la red.
+    private void medirSumas(PoolSesiones pool) throws IOException {
+        long base = this.descargarSumando(pool, null, null);
+        this.informarTiempo("Sin suma", base, GRANDE, 0, base >= 0);
+        if (base < 0) {
+            return;
+        }
+        for (SumaVerificacion.Algoritmo algoritmo : SumaVerificacion.Algoritmo.values()) {
+            SumaVerificacion esperada = null;
+            long local = Long.MAX_VALUE;
+            for (int i = 0; i < REPETICIONES; i++) {
+                esperada = new SumaVerificacion(algoritmo);
+                long inicioLocal = System.nanoTime();
+                esperada.sumarPrefijo(new File(this.raiz, "grande.bin"), GRANDE);
+                local = Math.max(1, Math.min(local, (System.nanoTime() - inicioLocal) / 1000000));
+            }
+            long milisegundos = this.descargarSumando(pool, algoritmo, esperada.getHex());
+            this.informarTiempo("Con " + algoritmo + " (" + String.format("%+d%%", (milisegundos - base) * 100 / Math.max(1, base)) + ", la suma sola a "
+                    + (GRANDE * 1000L / 1024 / local) + " KB/s)", milisegundos, GRANDE, 0, milisegundos >= 0);
+        }
+    }
+
+    // Lo que tarda la descarga más rápida de REPETICIONES, con la suma del
+    // algoritmo si se da uno. -1 si falla o la suma no es la esperada.
+    private long descargarSumando(PoolSesiones pool, SumaVerificacion.Algoritmo algoritmo, String esperada) {
+        OutputStream descarte = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int desde, int cantidad) {
+            }
+        };
+        long mejor = Long.MAX_VALUE;
+        for (int i = 0; i < REPETICIONES; i++) {
+            SumaVerificacion suma = algoritmo == null ? null : new SumaVerificacion(algoritmo);
+            FTPClient cliente;
+            try {
+                cliente = pool.obtener();
+            } catch (IOException | InterruptedException ex) {
+                return -1;
+            }
+            long inicio = System.nanoTime();
+            try {
+                if (!cliente.retrieveFile("/grande.bin", suma == null ? descarte : suma.envolver(descarte))) {
+                    pool.devolver(cliente);
+                    return -1;
+                }
+                pool.devolver(cliente);
+            } catch (IOException ex) {
+                pool.descartar(cliente);
+                return -1;
+            }
+            mejor = Math.min(mejor, (System.nanoTime() - inicio) / 1000000);
+            if (suma != null && !suma.getHex().equals(esperada)) {
+                return -1;
+            }
+        }
+        return mejor;
+    }
+
+    // Abre sesiones TLS una tras otra, cada una con un listado por una
+    // conexión de datos cifrada, primero sin que el servidor deje reanudar
+    // (todos los saludos completos) y luego dejándole.
+    // Con TLS el proxy no puede reescribir PASV, así que la latencia solo
+    // afecta al control y los datos van directos al servidor.
+    private void medirTls(ServidorFtpSimulado servidor, PoolSesiones pool, KeyManager[] claves) throws IOException {
+        for (boolean reanudar : new boolean[]{false, true}) {
+            servidor.setTls(claves, reanudar);
+            int completos = servidor.getSaludosCompletos();
+            int reanudados = servidor.getSaludosReanudados();
+            int abiertas = 0;
+            String error = null;
+            long inicio = System.currentTimeMillis();
+            for (int i = 0; i < SESIONES; i++) {
+                FTPClient cliente = null;
+                try {
+                    cliente = pool.abrirReservada();
+                    cliente.listFiles("/");
+                    if (FTPReply.isPositiveCompletion(cliente.getReplyCode())) {
+                        abiertas++;
+                    } else {
+                        error = cliente.getReplyString().trim();
+                    }
+                } catch (IOException ex) {
+                    error = ex.toString();
+                } finally {
+                    cerrarCliente(cliente);
+                }
+            }
+            long milisegundos = System.currentTimeMillis() - inicio;
+            System.out.println("   TLS " + (reanudar ? "reanudando" : "sin reanudar") + ": " + abiertas + " de " + SESIONES
+                    + " sesiones con listado, " + milisegundos / SESIONES + " ms cada una, "
+                    + (servidor.getSaludosCompletos() - completos) + " saludos completos y "
+                    + (servidor.getSaludosReanudados() - reanudados) + " reanudados"
+                    + (error == null ? "" : ", último error: " + error));
+        }
+    }
+
+    // Crea con keytool un certificado de prueba para el servidor simulado y
+    // carga su clave. Null si no se puede.
+    private KeyManager[] clavesTls() {
+        File almacen = new File(this.raiz.getParentFile(), "servidor.p12");
+        try {
+            if (!almacen.exists()) {
+                Process keytool = new ProcessBuilder(new File(System.getProperty("java.home"), "bin" + File.separator + "keytool").getPath(),
+                        "-genkeypair", "-alias", "servidor", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=127.0.0.1",
+                        "-validity", "1", "-storetype", "PKCS12", "-keystore", almacen.getPath(),
+                        "-storepass", CLAVE_TLS, "-keypass", CLAVE_TLS)
+                        .redirectErrorStream(true)
+                        .redirectOutput(new File(this.raiz.getParentFile(), "keytool.log"))
+                        .start();
+                if (keytool.waitFor() != 0) {
+                    System.out.println("   No se puede crear el certificado de prueba con keytool");
+                    return null;
+                }
+            }
+            KeyStore claves = KeyStore.getInstance("PKCS12");
+            try (InputStream entrada = new FileInputStream(almacen)) {
+                claves.load(entrada, CLAVE_TLS.toCharArray());
+            }
+            KeyManagerFactory gestores = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            gestores.init(claves, CLAVE_TLS.toCharArray());
+            return gestores.getKeyManagers();
+        } catch (IOException | GeneralSecurityException ex) {
+            System.out.println("   No se puede preparar TLS: " + ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // Cierra una sesión de prueba sin propagar errores.
+    private static void cerrarCliente(FTPClient cliente) {
+        if (cliente != null && cliente.isConnected()) {
+            try {
+                cliente.disconnect();
+            } catch (IOException ex) {
+                // Ya estaba cerrada.
+            }
+        }
+    }
+
+    // Escribe una línea con el tiempo, la velocidad y si el resultado es correcto.
+    private void informar(String prueba, long inicio, long bytes, int reintentos, boolean correcto) {
+        this.informarTiempo(prueba, System.currentTimeMillis() - inicio, bytes, reintentos, correcto);
+    }
+
+    // Como informar, con lo que ha tardado ya medido.
+    private void informarTiempo(String prueba, long milisegundos, long bytes, int reintentos, boolean correcto) {
+        milisegundos = Math.max(1, milisegundos);
+        System.out.println("   " + prueba + ": " + milisegundos + " ms, " + (bytes * 1000 / 1024 / milisegundos) + " KB/s, "
+                + reintentos + " reintentos, " + (correcto ? "correcto" : "INCORRECTO"));
+    }
+
+    // Crea un archivo con bytes al azar.
+    private static void escribir(File archivo, int tamanio, Random azar) throws IOException {
+        byte[] datos = new byte[tamanio];
+        azar.nextBytes(datos);
+        try (OutputStream salida = new FileOutputStream(archivo)) {
+            salida.write(datos);
+        }
+    }
+
+    // Compara dos archivos por tamaño y CRC32.
+    private static boolean iguales(File a, File b) throws IOException {
+        return a.length() == b.length() && crc(a) == crc(b);
+    }
+
+    private static long crc(File archivo) throws IOException {
+        CRC32 suma = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream entrada = new FileInputStream(archivo)) {
+            int leidos;
+            while ((leidos = entrada.read(buffer)) != -1) {
+                suma.update(buffer, 0, leidos);
+            }
+        }
+        return suma.getValue();
+    }
+
+    // Espera antes de reintentar, más cuanto más intentos; así un 421 no se
+    // convierte en un bucle de conexiones. Devuelve false si se interrumpe.
+    private static boolean esperarReintento(int intento) {
+        try {
+            Thread.sleep(Math.min(2000, 50L * intento));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Arranca un hilo de prueba.
+    private static Thread arrancar(Runnable tarea) {
+        Thread hilo = new Thread(tarea, "escenario");
+        hilo.start();
+        return hilo;
+    }
+
+    // Espera a que terminen los hilos de una prueba.
+    private static void esperar(List<Thread> hilos) {
+        for (Thread hilo : hilos) {
+            try {
+                hilo.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Metodo principal.
+     *
+     * @param args Escenarios que se ejecutan; ninguno para todos.
+     * @throws IOException Si no se pueden preparar los archivos de prueba.
+     */
+    public static void main(String[] args) throws IOException {
+        EscenariosRed banco = new EscenariosRed();
+        List<String> nombres = new ArrayList<>();
+        for (String arg : args) {
+            nombres.add(arg);
+        }
+        if (nombres.isEmpty()) {
+            nombres.addAll(banco.escenarios.keySet());
+        }
+        try {
+            for (String nombre : nombres) {
+                banco.ejecutar(nombre);
+            }
+        } finally {
+            banco.limpiar();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Clase EscritorDescarga. Escribe una descarga en un temporal junto al
+ * destino (nombre.part) y solo le da el nombre definitivo, con un renombrado
+ * atómico, cuando ha terminado bien; así nadie ve nunca un archivo a medias
+ * con el nombre final. Si se conoce el tamaño, el temporal se reserva de una
+ * vez en lugar de crecer bloque a bloque. Si la descarga se cancela el
+ * temporal se conserva para reanudarla desde el diario.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class EscritorDescarga {
+
+    protected static final String EXTENSION = ".part";
+    // Por debajo de este tamaño reservar no compensa la llamada de más.
+    private static final long RESERVAR_DESDE = 1024 * 1024;
+
+    private final File destino, parcial;
+    private FileChannel canal;
+
+    /**
+     * Constructor del escritor.
+     *
+     * @param destino Archivo final de la descarga.
+     */
+    public EscritorDescarga(File destino) {
+        this.destino = destino;
+        this.parcial = new File(destino.getParentFile(), destino.getName() + EXTENSION);
+    }
+
+    /**
+     * Obtiene el archivo final.
+     *
+     * @return Archivo con el nombre definitivo.
+     */
+    public File getDestino() {
+        return destino;
+    }
+
+    /**
+     * Obtiene el temporal donde se escribe mientras dura la descarga.
+     *
+     * @return Archivo .part junto al destino.
+     */
+    public File getParcial() {
+        return parcial;
+    }
+
+    /**
+     * Calcula desde qué byte se reanuda: lo que diga el diario, siempre que el
+     * temporal siga ahí y tenga al menos esos bytes.
+     *
+     * @param desplazamiento Bytes apuntados en el diario, 0 si es nueva.
+     * @return Byte desde el que se descarga.
+     */
+    public long calcularInicio(long desplazamiento) {
+        if (desplazamiento <= 0 || !this.parcial.exists()) {
+            return 0;
+        }
+        return Math.min(desplazamiento, this.parcial.length());
+    }
+
+    /**
+     * Abre el temporal colocado en el byte de inicio. Si la descarga es nueva
+     * se vacía lo que hubiera de antes.
+     *
+     * @param inicio Byte desde el que se escribe.
+     * @param tamanio Tamaño del archivo en el servidor, -1 si no se sabe.
+     * @return Canal para escribir la descarga.
+     * @throws IOException Si no se puede crear el temporal.
+     */
+    public FileChannel abrir(long inicio, long tamanio) throws IOException {
+        RandomAccessFile archivo = new RandomAccessFile(this.parcial, "rw");
+        try {
+            if (inicio == 0) {
+                archivo.setLength(0);
+            }
+            if (tamanio >= RESERVAR_DESDE && archivo.length() < tamanio) {
+                archivo.setLength(tamanio);
+            }
+            this.canal = archivo.getChannel();
+            this.canal.position(inicio);
+            return this.canal;
+        } catch (IOException ex) {
+            archivo.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Obtiene un flujo de escritura sobre el canal abierto, para las
+     * descargas que no usan el motor NIO.
+     *
+     * @return Flujo que escribe en el temporal.
+     */
+    public OutputStream getSalida() {
+        return Channels.newOutputStream(this.canal);
+    }
+
+    /**
+     * Da la descarga por buena: deja el temporal con su longitud real (puede
+     * haberse reservado de más) y el sincronizador lo fuerza a disco si toca y
+     * lo renombra.
+     *
+     * @param longitud Bytes que tiene el archivo descargado.
+     * @param sincronizador Decide cuándo se hace fsync.
+     * @throws IOException Si no se puede dejar el archivo en su sitio.
+     */
+    public void terminar(long longitud, SincronizadorDescargas sincronizador) throws IOException {
+        this.cerrar();
+        if (this.parcial.length() != longitud) {
+            try (RandomAccessFile archivo = new RandomAccessFile(this.parcial, "rw")) {
+                archivo.setLength(longitud);
+            }
+        }
+        sincronizador.confirmar(this);
+    }
+
+    /**
+     * Deja la descarga sin terminar.
+     *
+     * @param conservar true para dejar el temporal y poder reanudar.
+     */
+    public void abandonar(boolean conservar) {
+        this.cerrar();
+        if (!conservar && this.parcial.exists() && !this.parcial.delete()) {
+            RegistroEventos.aviso("No se puede borrar " + this.parcial);
+        }
+    }
+
+    /**
+     * Fuerza a disco el contenido del temporal.
+     *
+     * @throws IOException Si el sistema no lo puede escribir.
+     */
+    protected void forzar() throws IOException {
+        try (FileChannel archivo = FileChannel.open(this.parcial.toPath(), StandardOpenOption.WRITE)) {
+            archivo.force(true);
+        }
+    }
+
+    /**
+     * Cambia el temporal por el archivo final de una sola vez.
+     *
+     * @throws IOException Si no se puede renombrar.
+     */
+    protected void publicar() throws IOException {
+        Files.move(this.parcial.toPath(), this.destino.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Cierra el canal si sigue abierto; el motor NIO lo cierra por su cuenta.
+    private void cerrar() {
+        if (this.canal != null) {
+            try {
+                this.canal.close();
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al cerrar " + this.parcial, ex);
+            }
+            this.canal = null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package clienteftp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clase EstadoTransferencia. Guarda el estado de una única subida o descarga.
+ * Lo actualiza el hilo que hace la transferencia y lo leen el publicador de
+ * eventos y la interfaz, por eso todos sus campos son volátiles o atómicos.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class EstadoTransferencia {
+
+    /**
+     * Fases por las que pasa una transferencia.
+     */
+    public enum Fase {
+        EN_COLA, EN_CURSO, COMPLETADA, FALLIDA, CANCELADA
+    }
+
+    private final byte accion;
+    private final String nombre;
+    private final AtomicLong bytesTransferidos;
+    private volatile Fase fase;
+    private volatile SumaVerificacion.Veredicto veredicto;
+
+    /**
+     * Constructor del estado de una transferencia.
+     *
+     * @param accion HiloGenerico.SUBIR o HiloGenerico.DESCARGAR.
+     * @param nombre Nombre del archivo que se transfiere.
+     */
+    public EstadoTransferencia(byte accion, String nombre) {
+        this.accion = accion;
+        this.nombre = nombre;
+        this.bytesTransferidos = new AtomicLong(0);
+        this.fase = Fase.EN_COLA;
+    }
+
+    /**
+     * Obtiene la acción de la transferencia.
+     *
+     * @return HiloGenerico.SUBIR o HiloGenerico.DESCARGAR.
+     */
+    public byte getAccion() {
+        return accion;
+    }
+
+    /**
+     * Obtiene el nombre del archivo que se transfiere.
+     *
+     * @return Nombre del archivo.
+     */
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Obtiene la fase en la que está la transferencia.
+     *
+     * @return La fase actual.
+     */
+    public Fase getFase() {
+        return fase;
+    }
+
+    /**
+     * Cambia la fase de la transferencia.
+     *
+     * @param fase La nueva fase.
+     */
+    public void setFase(Fase fase) {
+        this.fase = fase;
+    }
+
+    /**
+     * Indica si la transferencia ya ha acabado, bien o mal.
+     *
+     * @return true si ha acabado, false si sigue en cola o en curso.
+     */
+    public boolean isTerminada() {
+        return fase == Fase.COMPLETADA || fase == Fase.FALLIDA || fase == Fase.CANCELADA;
+    }
+
+    /**
+     * Obtiene el resultado de comparar la suma de comprobación.
+     *
+     * @return El veredicto o null si no se ha verificado.
+     */
+    public SumaVerificacion.Veredicto getVeredicto() {
+        return veredicto;
+    }
+
+    /**
+     * Guarda el resultado de comparar la suma de comprobación.
+     *
+     * @param veredicto El veredicto de la comparación.
+     */
+    public void setVeredicto(SumaVerificacion.Veredicto veredicto) {
+        this.veredicto = veredicto;
+    }
+
+    /**
+     * Obtiene los bytes transferidos hasta ahora.
+     *
+     * @return Número de bytes.
+     */
+    public long getBytesTransferidos() {
+        return bytesTransferidos.get();
+    }
+
+    /**
+     * Actualiza los bytes transferidos hasta ahora.
+     *
+     * @param bytes Número total de bytes.
+     */
+    public void setBytesTransferidos(long bytes) {
+        this.bytesTransferidos.set(bytes);
+    }
+}
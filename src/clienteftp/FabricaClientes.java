@@ -0,0 +1,161 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.util.TrustManagerUtils;
+
+/**
+ * Clase FabricaClientes. Crea los clientes FTP de un perfil: FTPClient normal
+ * o FTPSClient con TLS explícito (AUTH TLS) o implícito. Todos los clientes
+ * TLS del proceso comparten un mismo SSLContext, así que las sesiones nuevas
+ * del pool reanudan la sesión TLS en lugar de repetir el saludo completo, y
+ * las conexiones de datos reutilizan la sesión de la conexión de control.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class FabricaClientes {
+
+    private static SSLContext contextoCompartido;
+    private static SSLContext contextoConfiarTodos;
+
+    private final Perfil perfil;
+    private final String[] cifrados, protocolos;
+    private final boolean confiarTodos, verificarNombre, reutilizarEnDatos;
+
+    /**
+     * Constructor de la fábrica.
+     *
+     * @param perfil Perfil de conexión, con su tipo de seguridad.
+     * @param configuracion Ajustes tls.* (cifrados, protocolos, confianza).
+     */
+    public FabricaClientes(Perfil perfil, Configuracion configuracion) {
+        this.perfil = perfil;
+        this.cifrados = leerLista(configuracion.getCadena("tls.cifrados", ""));
+        this.protocolos = leerLista(configuracion.getCadena("tls.protocolos", ""));
+        this.confiarTodos = configuracion.getBooleano("tls.confiar.todos", false);
+        this.verificarNombre = configuracion.getBooleano("tls.verificar.nombre", true);
+        this.reutilizarEnDatos = configuracion.getBooleano("tls.reutilizar.datos", true);
+    }
+
+    // Convierte "a, b, c" en un listado, o null si está vacío.
+    private static String[] leerLista(String valor) {
+        return valor.isEmpty() ? null : valor.split("\\s*,\\s*");
+    }
+
+    /**
+     * Crea un cliente sin conectar.
+     *
+     * @return Un FTPClient o un FTPSClient según el perfil.
+     * @throws IOException Si no se puede preparar el contexto TLS.
+     */
+    public FTPClient crear() throws IOException {
+        if (this.perfil.getSeguridad() == Perfil.SIN_TLS) {
+            return new FTPClient();
+        }
+
+        ClienteFtps cliente = new ClienteFtps(this.perfil.getSeguridad() == Perfil.TLS_IMPLICITO,
+                contexto(this.confiarTodos), this.reutilizarEnDatos);
+        if (this.cifrados != null) {
+            cliente.setEnabledCipherSuites(this.cifrados);
+        }
+        if (this.protocolos != null) {
+            cliente.setEnabledProtocols(this.protocolos);
+        }
+        cliente.setEndpointCheckingEnabled(this.verificarNombre && !this.confiarTodos);
+        return cliente;
+    }
+
+    /**
+     * Después del login elige si la conexión de datos va cifrada (PROT P) o
+     * en claro (PROT C). En FTP normal no hace nada.
+     *
+     * @param cliente Cliente creado por esta fábrica y ya logueado.
+     * @throws IOException Si el servidor rechaza PBSZ o PROT.
+     */
+    public void proteger(FTPClient cliente) throws IOException {
+        if (cliente instanceof FTPSClient) {
+            FTPSClient clienteTls = (FTPSClient) cliente;
+            clienteTls.execPBSZ(0);
+            clienteTls.execPROT(this.perfil.isProtegerDatos() ? "P" : "C");
+        }
+    }
+
+    // Contexto TLS compartido por todo el proceso. Su cache de sesiones es lo
+    // que permite reanudar entre conexiones.
+    private static synchronized SSLContext contexto(boolean confiarTodos) throws IOException {
+        try {
+            if (confiarTodos) {
+                if (contextoConfiarTodos == null) {
+                    contextoConfiarTodos = SSLContext.getInstance("TLS");
+                    contextoConfiarTodos.init(null, new TrustManager[]{TrustManagerUtils.getAcceptAllTrustManager()}, null);
+                }
+                return contextoConfiarTodos;
+            }
+            if (contextoCompartido == null) {
+                contextoCompartido = SSLContext.getInstance("TLS");
+                contextoCompartido.init(null, null, null);
+            }
+            return contextoCompartido;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("No se puede preparar TLS: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Cliente FTPS que, al abrir una conexión de datos, le pasa la sesión TLS
+     * de la conexión de control. Muchos servidores (vsftpd, FileZilla Server)
+     * lo exigen y además se ahorra un saludo TLS completo por transferencia.
+     */
+    private static class ClienteFtps extends FTPSClient {
+
+        private static volatile boolean reutilizacionDisponible = true;
+
+        private final boolean reutilizarEnDatos;
+
+        private ClienteFtps(boolean implicito, SSLContext contexto, boolean reutilizarEnDatos) {
+            super(implicito, contexto);
+            this.reutilizarEnDatos = reutilizarEnDatos;
+        }
+
+        @Override
+        protected void _prepareDataSocket_(Socket socket) throws IOException {
+            if (!this.reutilizarEnDatos || !reutilizacionDisponible
+                    || !(socket instanceof SSLSocket) || !(_socket_ instanceof SSLSocket)) {
+                return;
+            }
+
+            SSLSession sesion = ((SSLSocket) _socket_).getSession();
+            if (!sesion.isValid()) {
+                return;
+            }
+            // La JSSE solo reanuda por host:puerto, así que se apunta la sesión
+            // de control bajo el host y puerto de la conexión de datos.
+            SSLSessionContext contexto = sesion.getSessionContext();
+            try {
+                Field campoCache = contexto.getClass().getDeclaredField("sessionHostPortCache");
+                campoCache.setAccessible(true);
+                Object cache = campoCache.get(contexto);
+                Method poner = cache.getClass().getDeclaredMethod("put", Object.class, Object.class);
+                poner.setAccessible(true);
+                String clave = (socket.getInetAddress().getHostAddress() + ":" + socket.getPort()).toLowerCase(Locale.ROOT);
+                poner.invoke(cache, clave, sesion);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                // Otra JVM sin esa cache interna: se sigue sin reutilizar.
+                reutilizacionDisponible = false;
+                RegistroEventos.aviso("No se puede reutilizar la sesión TLS en los datos", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package clienteftp;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase GuiBusqueda. Busca archivos en el árbol remoto y muestra los
+ * resultados según se van encontrando.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class GuiBusqueda extends JFrame implements BuscadorRemoto.OyenteBusqueda {
+
+    private Control padre;
+    private BuscadorRemoto buscador;
+    private JPanel pnlGlobal, pnlCriterios, pnlSur;
+    private JTextField txtNombre, txtTamanioMinimo, txtTamanioMaximo, txtModificadoDespues, txtProfundidad;
+    private JCheckBox chkExpresionRegular;
+    private JButton btnBuscar;
+    private JLabel lblEstado;
+    private DefaultListModel<String> modeloResultados;
+    private JList<String> listaResultados;
+
+    /**
+     * Constructor de la ventana de búsqueda.
+     *
+     * @param padre Permite la comunicación con la instancia de control.
+     */
+    public GuiBusqueda(Control padre) {
+        this.padre = padre;
+        this.crearObjetos();
+        this.definirTexto();
+        this.definirEstilo();
+        this.crearDistribucion();
+        this.aniadirElementos();
+        this.eventos();
+
+        this.setSize(560, 420);
+        this.setLocationRelativeTo(null);
+        this.setAlwaysOnTop(true);
+    }
+
+    // Crea los objetos.
+    private void crearObjetos() {
+        this.pnlGlobal = new JPanel();
+        this.pnlCriterios = new JPanel();
+        this.pnlSur = new JPanel();
+        this.txtNombre = new JTextField();
+        this.txtTamanioMinimo = new JTextField();
+        this.txtTamanioMaximo = new JTextField();
+        this.txtModificadoDespues = new JTextField();
+        this.txtProfundidad = new JTextField();
+        this.chkExpresionRegular = new JCheckBox();
+        this.btnBuscar = new JButton();
+        this.lblEstado = new JLabel();
+        this.modeloResultados = new DefaultListModel<>();
+        this.listaResultados = new JList<>(modeloResultados);
+    }
+
+    // Define el texto de todos los elementos.
+    private void definirTexto() {
+        this.setTitle("Buscar en el servidor FTP");
+        this.chkExpresionRegular.setText("Expresión regular");
+        this.txtNombre.setToolTipText("Nombre a buscar, admite * y ? (ejemplo: *.log)");
+        this.txtModificadoDespues.setToolTipText("Fecha con formato dd/MM/yyyy, vacío para no filtrar");
+        this.txtProfundidad.setToolTipText("Niveles de subdirectorios que se recorren, vacío para todos");
+        this.listaResultados.setToolTipText("Doble clic para ir al directorio del elemento");
+        this.setBuscando(false);
+        this.setEstado("Escribe los criterios y pulsa buscar.");
+    }
+
+    // Define los estilos de todos los elementos de la interfaz, colores, iconos y bordes.
+    private void definirEstilo() {
+        this.setIconImage(Recursos.imagenVentana());
+        this.lblEstado.setIcon(Recursos.icono("info.png"));
+        this.pnlGlobal.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        this.pnlCriterios.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        this.pnlSur.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+        this.pnlGlobal.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.pnlCriterios.setBackground(GuiLogueo.COLOR_FONDO);
+        this.pnlSur.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.chkExpresionRegular.setBackground(GuiLogueo.COLOR_FONDO);
+        this.txtNombre.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.txtTamanioMinimo.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.txtTamanioMaximo.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.txtModificadoDespues.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.txtProfundidad.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.btnBuscar.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.lblEstado.setForeground(GuiLogueo.COLOR_LETRA);
+    }
+
+    // Crea las distintas distribuciones para los distintos paneles.
+    private void crearDistribucion() {
+        this.getContentPane().setLayout(new BorderLayout());
+        this.pnlGlobal.setLayout(new BorderLayout());
+        this.pnlCriterios.setLayout(new GridLayout(6, 2, 7, 5));
+        this.pnlSur.setLayout(new BorderLayout(5, 5));
+    }
+
+    // Añade elementos a los paneles.
+    private void aniadirElementos() {
+        this.getContentPane().add(this.pnlGlobal);
+        this.pnlGlobal.add(this.pnlCriterios, BorderLayout.NORTH);
+        this.pnlGlobal.add(new JScrollPane(this.listaResultados), BorderLayout.CENTER);
+        this.pnlGlobal.add(this.pnlSur, BorderLayout.SOUTH);
+
+        this.pnlCriterios.add(new JLabel("Nombre"));
+        this.pnlCriterios.add(this.txtNombre);
+        this.pnlCriterios.add(this.chkExpresionRegular);
+        this.pnlCriterios.add(new JLabel());
+        this.pnlCriterios.add(new JLabel("Tamaño mínimo / máximo (KB)"));
+        JPanel pnlTamanio = new JPanel(new GridLayout(1, 2, 5, 5));
+        pnlTamanio.setBackground(GuiLogueo.COLOR_FONDO);
+        pnlTamanio.add(this.txtTamanioMinimo);
+        pnlTamanio.add(this.txtTamanioMaximo);
+        this.pnlCriterios.add(pnlTamanio);
+        this.pnlCriterios.add(new JLabel("Modificado después de"));
+        this.pnlCriterios.add(this.txtModificadoDespues);
+        this.pnlCriterios.add(new JLabel("Profundidad máxima"));
+        this.pnlCriterios.add(this.txtProfundidad);
+        this.pnlCriterios.add(new JLabel());
+        this.pnlCriterios.add(this.btnBuscar);
+
+        this.pnlSur.add(this.lblEstado, BorderLayout.CENTER);
+    }
+
+    /**
+     * Muestra la ventana.
+     *
+     * @param valor true mostrar, false ocultar.
+     */
+    public void mostrar(boolean valor) {
+        this.setVisible(valor);
+    }
+
+    // Cambia el botón según haya o no una búsqueda en marcha.
+    private void setBuscando(boolean buscando) {
+        if (buscando) {
+            this.btnBuscar.setText("Cancelar");
+            this.btnBuscar.setIcon(Recursos.icono("cancelar.png"));
+            this.btnBuscar.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
+        } else {
+            this.btnBuscar.setText("Buscar");
+            this.btnBuscar.setIcon(Recursos.icono("info.png"));
+            this.btnBuscar.setBackground(GuiLogueo.COLOR_BOTONES);
+        }
+    }
+
+    // Muestra un mensaje en la barra de estado.
+    private void setEstado(String estado) {
+        this.lblEstado.setText("Estado: " + estado);
+    }
+
+    // Lee los criterios de los campos y lanza la búsqueda.
+    private void empezarBusqueda() {
+        BuscadorRemoto nuevo = this.padre.crearBuscador();
+        try {
+            nuevo.setNombre(this.txtNombre.getText(), this.chkExpresionRegular.isSelected());
+            nuevo.setTamanio(leerKilobytes(this.txtTamanioMinimo, 0), leerKilobytes(this.txtTamanioMaximo, Long.MAX_VALUE));
+            if (!this.txtModificadoDespues.getText().trim().isEmpty()) {
+                nuevo.setModificadoDespues(new SimpleDateFormat("dd/MM/yyyy").parse(this.txtModificadoDespues.getText().trim()).getTime());
+            }
+            if (!this.txtProfundidad.getText().trim().isEmpty()) {
+                nuevo.setProfundidadMaxima(Integer.parseInt(this.txtProfundidad.getText().trim()));
+            }
+        } catch (ParseException | RuntimeException ex) {
+            this.setEstado("Criterios no válidos: " + ex.getMessage());
+            return;
+        }
+
+        this.buscador = nuevo;
+        this.modeloResultados.clear();
+        this.setBuscando(true);
+        this.setEstado("Buscando...");
+        this.buscador.buscar(this.padre.getRutaActualRemota(), this);
+    }
+
+    // Lee un tamaño en KB de un campo, o el valor por defecto si está vacío.
+    private static long leerKilobytes(JTextField campo, long porDefecto) {
+        String texto = campo.getText().trim();
+        return texto.isEmpty() ? porDefecto : Long.parseLong(texto) * 1024;
+    }
+
+    @Override
+    public void encontrado(final String ruta, FTPFile archivo) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                modeloResultados.addElement(ruta);
+            }
+        });
+    }
+
+    @Override
+    public void terminado(final int encontrados, final int directorios) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                buscador = null;
+                setBuscando(false);
+                setEstado(encontrados + " encontrados en " + directorios + " directorios.");
+            }
+        });
+    }
+
+    /**
+     * Controla todos los eventos de la interfaz gráfica.
+     */
+    private void eventos() {
+        // Botón buscar / cancelar.
+        this.btnBuscar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                if (buscador == null) {
+                    empezarBusqueda();
+                } else {
+                    buscador.cancelar();
+                    setEstado("Cancelando...");
+                }
+            }
+        });
+
+        // Doble clic en un resultado: ir a su directorio.
+        this.listaResultados.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent me) {
+                if (me.getClickCount() == 2 && listaResultados.getSelectedIndex() > -1) {
+                    String ruta = listaResultados.getSelectedValue();
+                    int barra = ruta.lastIndexOf('/');
+                    padre.cambiarDirectorio(barra > 0 ? ruta.substring(0, barra) : "/");
+                }
+            }
+        });
+    }
+}
@@ -3,7 +3,6 @@ package clienteftp;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.GridLayout;
-import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
@@ -11,18 +10,26 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JPasswordField;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import org.apache.commons.net.ftp.FTPFile;
 
 /**
  * Clase GuiClienteFtp. Interactua con el servidor FTP.
@@ -33,10 +40,11 @@ import javax.swing.JScrollPane;
 public class GuiClienteFtp extends JFrame {
 
     private Control padre;
-    private JButton btnSubir, btnDescargar, btnEliminar, btnCrearDirectorio, btnRefrescar, btnDesconectar;
+    private JButton btnSubir, btnVigilar, btnDescargar, btnVigilarServidor, btnCopiarServidor, btnCola, btnBuscar, btnEliminar, btnCrearDirectorio, btnRefrescar, btnNuevaSesion, btnDesconectar;
     private JPanel pnlGlobal, pnlGlobalCentro, pnlCentroNorte, pnlGlobalEste, pnlCentroNorteA, pnlGlobalSur;
-    private DefaultListModel modeloLista;
-    private JList listadoElementos;
+    private ModeloListado modeloListado;
+    private JTable tablaElementos;
+    private JTextField txtFiltro;
     private JLabel lblServidor, lblUsuario, lblDirectorioFtp, lblEstado;
     private JProgressBar pbProgreso;
     private JFileChooser escogedorArchivos;
@@ -57,7 +65,7 @@ public class GuiClienteFtp extends JFrame {
         this.aniadirElementos();
         this.eventos();
 
-        this.setSize(700, 400);
+        this.setSize(700, 520);
         this.setLocationRelativeTo(null);
         this.setAlwaysOnTop(true);
     }
@@ -65,10 +73,16 @@ public class GuiClienteFtp extends JFrame {
     // Crea los objetos.
     private void crearObjetos() {
         this.btnSubir = new JButton();
+        this.btnVigilar = new JButton();
         this.btnDescargar = new JButton();
+        this.btnVigilarServidor = new JButton();
+        this.btnCopiarServidor = new JButton();
+        this.btnCola = new JButton();
+        this.btnBuscar = new JButton();
         this.btnEliminar = new JButton();
         this.btnCrearDirectorio = new JButton();
         this.btnRefrescar = new JButton();
+        this.btnNuevaSesion = new JButton();
         this.btnDesconectar = new JButton();
         this.pnlGlobal = new JPanel();
         this.pnlGlobalCentro = new JPanel();
@@ -76,15 +90,14 @@ public class GuiClienteFtp extends JFrame {
         this.pnlGlobalEste = new JPanel();
         this.pnlCentroNorteA = new JPanel();
         this.pnlGlobalSur = new JPanel();
-        this.modeloLista = new DefaultListModel();
-        this.listadoElementos = new JList(modeloLista);
+        this.modeloListado = new ModeloListado();
+        this.tablaElementos = new JTable(modeloListado);
+        this.txtFiltro = new JTextField();
         this.lblServidor = new JLabel();
         this.lblUsuario = new JLabel();
         this.lblDirectorioFtp = new JLabel();
         this.lblEstado = new JLabel();
         this.pbProgreso = new JProgressBar(0, 100);
-        this.escogedorArchivos = new JFileChooser();
-        this.escogedorArchivos.setMultiSelectionEnabled(true);
     }
 
     // Define el texto de todos los elementos.
@@ -92,34 +105,55 @@ public class GuiClienteFtp extends JFrame {
         this.setTitle("Conexión a servidor FTP");
         this.setDescargando(false);
         this.setSubiendo(false);
+        this.setVigilando(false);
+        this.setVigilandoServidor(false);
+        this.btnCopiarServidor.setText("Copiar a servidor");
+        this.btnCola.setText("Cola");
+        this.btnBuscar.setText("Buscar");
         this.btnEliminar.setText("Eliminar");
         this.btnCrearDirectorio.setText("Crear directorio");
         this.btnRefrescar.setText("Refrescar");
+        this.btnNuevaSesion.setText("Nueva sesión");
         this.btnDesconectar.setText("Desconectar");
     }
 
     // Define los textos que se mostrarán al colocar el mouse sobre algun elemento.
     private void definirTextoAyuda() {
+        this.txtFiltro.setToolTipText("Escribe para filtrar el listado por nombre");
+        this.tablaElementos.getTableHeader().setToolTipText("Pulsa en una columna para ordenar por ella");
+        this.btnCopiarServidor.setToolTipText("Copia los archivos seleccionados directamente a otro servidor ftp");
+        this.btnCola.setToolTipText("Transferencias esperando turno; se pueden adelantar");
+        this.btnBuscar.setToolTipText("Busca archivos en este directorio y sus subdirectorios");
         this.btnEliminar.setToolTipText("Elimina los archivos y directorios seleccionados");
         this.btnCrearDirectorio.setToolTipText("Crea una nueva carpeta en el directorio remoto del servidor ftp");
         this.btnRefrescar.setToolTipText("Refrescar listado de directorios y archivos");
+        this.btnNuevaSesion.setToolTipText("Abre otra ventana para conectar con otro servidor a la vez");
         this.btnDesconectar.setToolTipText("Sale de esta sesión y vuelve al menu de logueo");
     }
 
     // Define los estilos de todos los elementos de la interfaz, colores, iconos y bordes.
     private void definirEstilo() {
-        this.setIconImage(Toolkit.getDefaultToolkit().getImage(GuiClienteFtp.class.getResource("/recursos/icono.png")));
-        this.btnEliminar.setIcon(new ImageIcon(getClass().getResource("/recursos/eliminar.png")));
-        this.btnCrearDirectorio.setIcon(new ImageIcon(getClass().getResource("/recursos/crear.png")));
-        this.btnRefrescar.setIcon(new ImageIcon(getClass().getResource("/recursos/limpiar.png")));
-        this.btnDesconectar.setIcon(new ImageIcon(getClass().getResource("/recursos/desconectar.png")));
-        this.lblEstado.setIcon(new ImageIcon(getClass().getResource("/recursos/info.png")));
+        this.setIconImage(Recursos.imagenVentana());
+        this.btnCopiarServidor.setIcon(Recursos.icono("conectar.png"));
+        this.btnCola.setIcon(Recursos.icono("cargar.png"));
+        this.btnBuscar.setIcon(Recursos.icono("info.png"));
+        this.btnEliminar.setIcon(Recursos.icono("eliminar.png"));
+        this.btnCrearDirectorio.setIcon(Recursos.icono("crear.png"));
+        this.btnRefrescar.setIcon(Recursos.icono("limpiar.png"));
+        this.btnNuevaSesion.setIcon(Recursos.icono("cargar.png"));
+        this.btnDesconectar.setIcon(Recursos.icono("desconectar.png"));
+        this.lblEstado.setIcon(Recursos.icono("info.png"));
         this.pnlGlobal.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         this.pnlCentroNorteA.setBorder(BorderFactory.createEmptyBorder(0, 0, 5, 0));
         this.pnlGlobalEste.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 0));
         this.pnlGlobalSur.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
         this.pnlCentroNorte.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         this.pnlGlobalCentro.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        this.txtFiltro.setBackground(GuiLogueo.COLOR_CAMPOS);
+        this.tablaElementos.setFillsViewportHeight(true);
+        this.tablaElementos.setShowGrid(false);
+        this.tablaElementos.getTableHeader().setReorderingAllowed(false);
+        this.tablaElementos.getColumnModel().getColumn(ModeloListado.COLUMNA_NOMBRE).setPreferredWidth(300);
         this.pbProgreso.setForeground(GuiLogueo.COLOR_BARRA_PROGRESO);
         this.pbProgreso.setBackground(GuiLogueo.COLOR_CAMPOS);
         this.pnlCentroNorteA.setBackground(GuiLogueo.COLOR_FONDO);
@@ -127,14 +161,24 @@ public class GuiClienteFtp extends JFrame {
         this.pnlGlobalEste.setBackground(GuiLogueo.COLOR_FONDO2);
         this.pnlGlobalSur.setBackground(GuiLogueo.COLOR_FONDO2);
         this.pnlGlobal.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.btnCopiarServidor.setBackground(GuiLogueo.COLOR_BOTONES);
+        this.btnCola.setBackground(GuiLogueo.COLOR_BOTONES);
+        this.btnBuscar.setBackground(GuiLogueo.COLOR_BOTONES);
         this.btnEliminar.setBackground(GuiLogueo.COLOR_BOTONES);
         this.btnCrearDirectorio.setBackground(GuiLogueo.COLOR_BOTONES);
         this.btnRefrescar.setBackground(GuiLogueo.COLOR_BOTONES);
+        this.btnNuevaSesion.setBackground(GuiLogueo.COLOR_BOTONES);
         this.btnDesconectar.setBackground(GuiLogueo.COLOR_BOTONES);
         this.btnSubir.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnVigilar.setCursor(GuiLogueo.CURSOR_BOTONES);
         this.btnDescargar.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnVigilarServidor.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnCopiarServidor.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnCola.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnBuscar.setCursor(GuiLogueo.CURSOR_BOTONES);
         this.btnEliminar.setCursor(GuiLogueo.CURSOR_BOTONES);
         this.btnCrearDirectorio.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnNuevaSesion.setCursor(GuiLogueo.CURSOR_BOTONES);
         this.btnDesconectar.setCursor(GuiLogueo.CURSOR_BOTONES);
         this.lblEstado.setForeground(GuiLogueo.COLOR_LETRA);
     }
@@ -144,8 +188,8 @@ public class GuiClienteFtp extends JFrame {
         this.getContentPane().setLayout(new BorderLayout());
         this.pnlGlobal.setLayout(new BorderLayout());
         this.pnlGlobalCentro.setLayout(new BorderLayout());
-        this.pnlCentroNorte.setLayout(new GridLayout(2, 1));
-        this.pnlGlobalEste.setLayout(new GridLayout(6, 1, 10, 10));
+        this.pnlCentroNorte.setLayout(new GridLayout(3, 1));
+        this.pnlGlobalEste.setLayout(new GridLayout(12, 1, 10, 10));
         this.pnlCentroNorteA.setLayout(new GridLayout(1, 2, 5, 5));
         this.pnlGlobalSur.setLayout(new GridLayout(2, 1, 5, 5));
     }
@@ -161,12 +205,19 @@ public class GuiClienteFtp extends JFrame {
         this.pnlGlobalCentro.add(pnlCentroNorte, BorderLayout.NORTH);
         this.pnlCentroNorte.add(pnlCentroNorteA);
         this.pnlCentroNorte.add(lblDirectorioFtp);
-        this.pnlGlobalCentro.add(new JScrollPane(listadoElementos), BorderLayout.CENTER);
+        this.pnlCentroNorte.add(txtFiltro);
+        this.pnlGlobalCentro.add(new JScrollPane(tablaElementos), BorderLayout.CENTER);
         this.pnlGlobalEste.add(btnSubir);
+        this.pnlGlobalEste.add(btnVigilar);
         this.pnlGlobalEste.add(btnDescargar);
+        this.pnlGlobalEste.add(btnVigilarServidor);
+        this.pnlGlobalEste.add(btnCopiarServidor);
+        this.pnlGlobalEste.add(btnCola);
+        this.pnlGlobalEste.add(btnBuscar);
         this.pnlGlobalEste.add(btnEliminar);
         this.pnlGlobalEste.add(btnCrearDirectorio);
         this.pnlGlobalEste.add(btnRefrescar);
+        this.pnlGlobalEste.add(btnNuevaSesion);
         this.pnlGlobalEste.add(btnDesconectar);
         this.pnlGlobalSur.add(pbProgreso);
         this.pnlGlobalSur.add(lblEstado);
@@ -190,12 +241,12 @@ public class GuiClienteFtp extends JFrame {
         if (descargando) {
             this.btnDescargar.setText("Cancelar descarga");
             this.btnDescargar.setToolTipText("Cancela todas las descargas");
-            this.btnDescargar.setIcon(new ImageIcon(getClass().getResource("/recursos/cancelar.png")));
+            this.btnDescargar.setIcon(Recursos.icono("cancelar.png"));
             this.btnDescargar.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
         } else {
             this.btnDescargar.setText("Descargar");
             this.btnDescargar.setToolTipText("Descarga los archivos seleccionados en la ruta " + this.padre.getRutaCompletaDescargas());
-            this.btnDescargar.setIcon(new ImageIcon(getClass().getResource("/recursos/descargar.png")));
+            this.btnDescargar.setIcon(Recursos.icono("descargar.png"));
             this.btnDescargar.setBackground(GuiLogueo.COLOR_BOTONES);
         }
     }
@@ -209,16 +260,55 @@ public class GuiClienteFtp extends JFrame {
         if (subiendo) {
             this.btnSubir.setText("Cancelar subida");
             this.btnSubir.setToolTipText("Cancela todas subidas");
-            this.btnSubir.setIcon(new ImageIcon(getClass().getResource("/recursos/cancelar.png")));
+            this.btnSubir.setIcon(Recursos.icono("cancelar.png"));
             this.btnSubir.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
         } else {
             this.btnSubir.setText("Subir");
             this.btnSubir.setToolTipText("Selecciona el archivo/s que deseas subir");
-            this.btnSubir.setIcon(new ImageIcon(getClass().getResource("/recursos/subir.png")));
+            this.btnSubir.setIcon(Recursos.icono("subir.png"));
             this.btnSubir.setBackground(GuiLogueo.COLOR_BOTONES);
         }
     }
 
+    /**
+     * Si está vigilando una carpeta mostrará una cosa en caso contrario otra.
+     *
+     * @param vigilando true si hay una carpeta vigilada, false si no.
+     */
+    protected void setVigilando(boolean vigilando) {
+        if (vigilando) {
+            this.btnVigilar.setText("Dejar de vigilar");
+            this.btnVigilar.setToolTipText("Deja de subir lo que aparezca en la carpeta vigilada");
+            this.btnVigilar.setIcon(Recursos.icono("cancelar.png"));
+            this.btnVigilar.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
+        } else {
+            this.btnVigilar.setText("Vigilar carpeta");
+            this.btnVigilar.setToolTipText("Sube sola al directorio actual cada archivo que aparezca en una carpeta local");
+            this.btnVigilar.setIcon(Recursos.icono("cargar.png"));
+            this.btnVigilar.setBackground(GuiLogueo.COLOR_BOTONES);
+        }
+    }
+
+    /**
+     * Si está vigilando directorios del servidor mostrará una cosa en caso
+     * contrario otra.
+     *
+     * @param vigilando true si hay directorios vigilados, false si no.
+     */
+    protected void setVigilandoServidor(boolean vigilando) {
+        if (vigilando) {
+            this.btnVigilarServidor.setText("Dejar de vigilar");
+            this.btnVigilarServidor.setToolTipText("Deja de descargar lo que cambie en el servidor");
+            this.btnVigilarServidor.setIcon(Recursos.icono("cancelar.png"));
+            this.btnVigilarServidor.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
+        } else {
+            this.btnVigilarServidor.setText("Vigilar servidor");
+            this.btnVigilarServidor.setToolTipText("Descarga solo lo nuevo o modificado en los directorios seleccionados, o en el actual");
+            this.btnVigilarServidor.setIcon(Recursos.icono("cargar.png"));
+            this.btnVigilarServidor.setBackground(GuiLogueo.COLOR_BOTONES);
+        }
+    }
+
     /**
      * Muestra el nombre del servidor, su dirección IP.
      *
@@ -256,20 +346,44 @@ public class GuiClienteFtp extends JFrame {
     }
 
     /**
-     * Muestra un listado con las cadenas obtenidas.
+     * Muestra el listado de archivos y directorios obtenido. Si es el mismo
+     * directorio que ya se mostraba solo se actualizan las filas que han
+     * cambiado. Si se llama desde otro hilo el cambio se pasa al hilo de la
+     * interfaz.
      *
-     * @param nombresArchivo Listado con los nombres de archivo.
+     * @param ruta Ruta del directorio listado.
+     * @param archivos Listado de archivos y directorios.
      */
-    protected void setListado(String[] nombresArchivo) {
-        this.modeloLista.clear();
-        if (nombresArchivo.length == 0) {
-            this.listadoElementos.setBackground(GuiLogueo.COLOR_FONDO_VACIO);
+    protected void setListado(final String ruta, final FTPFile[] archivos) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    setListado(ruta, archivos);
+                }
+            });
+            return;
+        }
+
+        this.modeloListado.setEntradas(ruta, archivos);
+        if (archivos.length == 0) {
+            this.tablaElementos.setBackground(GuiLogueo.COLOR_FONDO_VACIO);
         } else {
-            this.listadoElementos.setBackground(Color.white);
-            for (String nombre : nombresArchivo) {
-                this.modeloLista.addElement(nombre);
-            }
+            this.tablaElementos.setBackground(Color.white);
+        }
+    }
+
+    /**
+     * Obtiene los nombres de los elementos seleccionados en el listado.
+     *
+     * @return Listado de nombres.
+     */
+    protected List<String> getNombresSeleccionados() {
+        List<String> seleccionados = new ArrayList<>();
+        for (int fila : this.tablaElementos.getSelectedRows()) {
+            seleccionados.add(this.modeloListado.getNombre(fila));
         }
+        return seleccionados;
     }
 
     /**
@@ -278,6 +392,11 @@ public class GuiClienteFtp extends JFrame {
      * @return Los archivos seleccionados o null si no se ha seleccionado nada.
      */
     protected File[] seleccionarArchivos() {
+        // Crear un JFileChooser es lento, se hace la primera vez que se usa.
+        if (this.escogedorArchivos == null) {
+            this.escogedorArchivos = new JFileChooser();
+            this.escogedorArchivos.setMultiSelectionEnabled(true);
+        }
         int botonPulsado = escogedorArchivos.showDialog(GuiClienteFtp.this, "Seleccionar el archivo/s");
         if (botonPulsado == JFileChooser.APPROVE_OPTION) {
             return escogedorArchivos.getSelectedFiles();
@@ -286,6 +405,89 @@ public class GuiClienteFtp extends JFrame {
         }
     }
 
+    /**
+     * Abre una ventana de selección de carpetas.
+     *
+     * @return La carpeta seleccionada o null si no se ha seleccionado nada.
+     */
+    protected File seleccionarCarpeta() {
+        JFileChooser escogedorCarpeta = new JFileChooser();
+        escogedorCarpeta.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        int botonPulsado = escogedorCarpeta.showDialog(GuiClienteFtp.this, "Vigilar esta carpeta");
+        if (botonPulsado == JFileChooser.APPROVE_OPTION) {
+            return escogedorCarpeta.getSelectedFile();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Pide confirmación con un mensaje. Si se llama desde otro hilo espera a
+     * que se conteste en el hilo de la interfaz.
+     *
+     * @param titulo Título de la ventana.
+     * @param mensaje Lo que se pregunta.
+     * @return true si se acepta.
+     */
+    protected boolean confirmar(final String titulo, final String mensaje) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            final boolean[] respuesta = new boolean[1];
+            try {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        respuesta[0] = confirmar(titulo, mensaje);
+                    }
+                });
+            } catch (InterruptedException | InvocationTargetException ex) {
+                RegistroEventos.error("Fallo al pedir confirmación", ex);
+            }
+            return respuesta[0];
+        }
+
+        int botonPulsado = JOptionPane.showConfirmDialog(GuiClienteFtp.this, mensaje, titulo, JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+        return botonPulsado == JOptionPane.OK_OPTION;
+    }
+
+    /**
+     * Pide los datos del servidor al que se van a copiar los archivos: un
+     * perfil guardado o el servidor, usuario y contraseña a mano.
+     *
+     * @param perfiles Nombres de los perfiles guardados.
+     * @return Perfil elegido (vacío si se escriben los datos), servidor,
+     * usuario, contraseña y ruta de destino, o null si se cancela.
+     */
+    protected String[] pedirServidorDestino(List<String> perfiles) {
+        JComboBox<String> cmbPerfiles = new JComboBox<>();
+        cmbPerfiles.addItem("(escribir los datos)");
+        for (String nombre : perfiles) {
+            cmbPerfiles.addItem(nombre);
+        }
+        JTextField txtServidor = new JTextField();
+        JTextField txtUsuario = new JTextField();
+        JPasswordField passContrasenia = new JPasswordField();
+        JTextField txtRuta = new JTextField("/");
+        JPanel pnlDatos = new JPanel(new GridLayout(5, 2, 5, 5));
+        pnlDatos.add(new JLabel("Perfil"));
+        pnlDatos.add(cmbPerfiles);
+        pnlDatos.add(new JLabel("Servidor"));
+        pnlDatos.add(txtServidor);
+        pnlDatos.add(new JLabel("Usuario"));
+        pnlDatos.add(txtUsuario);
+        pnlDatos.add(new JLabel("Contraseña"));
+        pnlDatos.add(passContrasenia);
+        pnlDatos.add(new JLabel("Ruta destino"));
+        pnlDatos.add(txtRuta);
+
+        int botonPulsado = JOptionPane.showConfirmDialog(GuiClienteFtp.this, pnlDatos, "Copiar a servidor", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (botonPulsado == JOptionPane.OK_OPTION) {
+            String perfil = cmbPerfiles.getSelectedIndex() > 0 ? (String) cmbPerfiles.getSelectedItem() : "";
+            return new String[]{perfil, txtServidor.getText(), txtUsuario.getText(), new String(passContrasenia.getPassword()), txtRuta.getText()};
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Avtualiza la barra de progreso.
      *
@@ -309,11 +511,51 @@ public class GuiClienteFtp extends JFrame {
             }
         });
 
+        // Botón vigilar carpeta.
+        this.btnVigilar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoVigilarCarpeta();
+            }
+        });
+
         // Botón descargar.
         this.btnDescargar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
-                padre.pulsadoDescargar(listadoElementos.getSelectedValuesList());
+                padre.pulsadoDescargar(getNombresSeleccionados());
+            }
+        });
+
+        // Botón vigilar servidor.
+        this.btnVigilarServidor.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoVigilarServidor(getNombresSeleccionados());
+            }
+        });
+
+        // Botón copiar a servidor.
+        this.btnCopiarServidor.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoCopiarServidor(getNombresSeleccionados());
+            }
+        });
+
+        // Botón cola.
+        this.btnCola.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoVerCola();
+            }
+        });
+
+        // Botón buscar.
+        this.btnBuscar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoBuscar();
             }
         });
 
@@ -321,7 +563,7 @@ public class GuiClienteFtp extends JFrame {
         this.btnEliminar.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
-                padre.eliminarArchivoDirectorio(listadoElementos.getSelectedValuesList());
+                padre.eliminarArchivoDirectorio(getNombresSeleccionados());
             }
         });
 
@@ -347,6 +589,14 @@ public class GuiClienteFtp extends JFrame {
             }
         });
 
+        // Botón nueva sesión.
+        this.btnNuevaSesion.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                padre.pulsadoNuevaSesion();
+            }
+        });
+
         // Botón desconectar.
         this.btnDesconectar.addActionListener(new ActionListener() {
             @Override
@@ -355,14 +605,43 @@ public class GuiClienteFtp extends JFrame {
             }
         });
 
+        // Filtro del listado según se escribe.
+        this.txtFiltro.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                modeloListado.setFiltro(txtFiltro.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                modeloListado.setFiltro(txtFiltro.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+                modeloListado.setFiltro(txtFiltro.getText());
+            }
+        });
+
+        // Ordenar al pulsar en la cabecera de una columna.
+        this.tablaElementos.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent me) {
+                int columna = tablaElementos.columnAtPoint(me.getPoint());
+                if (columna > -1) {
+                    modeloListado.ordenarPor(tablaElementos.convertColumnIndexToModel(columna));
+                }
+            }
+        });
+
         // Eventos del ratón.
-        this.listadoElementos.addMouseListener(new MouseAdapter() {
+        this.tablaElementos.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent me) {
 
                 // Doble clic + Elementos seleccionados es al menos 1.
-                if (me.getClickCount() == 2 && listadoElementos.getSelectedIndex() > -1) {
-                    padre.cambiarDirectorio(listadoElementos.getSelectedValue().toString());
+                if (me.getClickCount() == 2 && tablaElementos.getSelectedRow() > -1) {
+                    padre.cambiarDirectorio(modeloListado.getNombre(tablaElementos.getSelectedRow()));
                 }
 
                 // Clic derecho.
@@ -376,8 +655,7 @@ public class GuiClienteFtp extends JFrame {
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                GuiClienteFtp.this.padre.desconectar();
-                System.exit(0);
+                GuiClienteFtp.this.padre.cerrarVentanaCliente();
             }
         });
     }
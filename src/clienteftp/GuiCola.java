@@ -0,0 +1,219 @@
+package clienteftp;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.Timer;
+
+/**
+ * Clase GuiCola. Muestra las transferencias que esperan turno, en el orden en
+ * que saldrían, y permite adelantar las seleccionadas sin cancelar el resto.
+ * La lista se refresca sola cada segundo mientras la ventana está abierta.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class GuiCola extends JFrame {
+
+    private static final String[] PRIORIDADES = {"alta", "normal", "baja"};
+
+    private Control padre;
+    private JPanel pnlGlobal, pnlBotones, pnlSur;
+    private JButton btnAdelantar, btnRefrescar;
+    private JLabel lblEstado;
+    private DefaultListModel<String> modeloCola;
+    private JList<String> listaCola;
+    private List<HiloGenerico> cola;
+    private Timer temporizador;
+
+    /**
+     * Constructor de la ventana de la cola.
+     *
+     * @param padre Permite la comunicación con la instancia de control.
+     */
+    public GuiCola(Control padre) {
+        this.padre = padre;
+        this.crearObjetos();
+        this.definirTexto();
+        this.definirEstilo();
+        this.crearDistribucion();
+        this.aniadirElementos();
+        this.eventos();
+        this.refrescar();
+
+        this.setSize(460, 360);
+        this.setLocationRelativeTo(null);
+        this.setAlwaysOnTop(true);
+    }
+
+    // Crea los objetos.
+    private void crearObjetos() {
+        this.pnlGlobal = new JPanel();
+        this.pnlBotones = new JPanel();
+        this.pnlSur = new JPanel();
+        this.btnAdelantar = new JButton();
+        this.btnRefrescar = new JButton();
+        this.lblEstado = new JLabel();
+        this.modeloCola = new DefaultListModel<>();
+        this.listaCola = new JList<>(modeloCola);
+        this.cola = new ArrayList<>();
+        this.temporizador = new Timer(1000, null);
+    }
+
+    // Define el texto de todos los elementos.
+    private void definirTexto() {
+        this.setTitle("Transferencias en cola");
+        this.btnAdelantar.setText("Adelantar");
+        this.btnRefrescar.setText("Refrescar");
+        this.btnAdelantar.setToolTipText("Las seleccionadas empiezan en cuanto quede una sesión libre");
+        this.listaCola.setToolTipText("Selecciona una o varias transferencias");
+    }
+
+    // Define los estilos de todos los elementos de la interfaz, colores, iconos y bordes.
+    private void definirEstilo() {
+        this.setIconImage(Recursos.imagenVentana());
+        this.lblEstado.setIcon(Recursos.icono("info.png"));
+        this.btnAdelantar.setIcon(Recursos.icono("subir.png"));
+        this.btnRefrescar.setIcon(Recursos.icono("cargar.png"));
+        this.pnlGlobal.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        this.pnlBotones.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+        this.pnlSur.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
+        this.pnlGlobal.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.pnlBotones.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.pnlSur.setBackground(GuiLogueo.COLOR_FONDO2);
+        this.btnAdelantar.setBackground(GuiLogueo.COLOR_BOTONES);
+        this.btnRefrescar.setBackground(GuiLogueo.COLOR_BOTONES);
+        this.btnAdelantar.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.btnRefrescar.setCursor(GuiLogueo.CURSOR_BOTONES);
+        this.lblEstado.setForeground(GuiLogueo.COLOR_LETRA);
+    }
+
+    // Crea las distintas distribuciones para los distintos paneles.
+    private void crearDistribucion() {
+        this.getContentPane().setLayout(new BorderLayout());
+        this.pnlGlobal.setLayout(new BorderLayout());
+        this.pnlBotones.setLayout(new GridLayout(1, 2, 7, 5));
+        this.pnlSur.setLayout(new BorderLayout(5, 5));
+    }
+
+    // Añade elementos a los paneles.
+    private void aniadirElementos() {
+        this.getContentPane().add(this.pnlGlobal);
+        this.pnlGlobal.add(new JScrollPane(this.listaCola), BorderLayout.CENTER);
+        this.pnlGlobal.add(this.pnlSur, BorderLayout.SOUTH);
+
+        this.pnlBotones.add(this.btnAdelantar);
+        this.pnlBotones.add(this.btnRefrescar);
+        this.pnlSur.add(this.pnlBotones, BorderLayout.NORTH);
+        this.pnlSur.add(this.lblEstado, BorderLayout.CENTER);
+    }
+
+    /**
+     * Muestra la ventana.
+     *
+     * @param valor true mostrar, false ocultar.
+     */
+    public void mostrar(boolean valor) {
+        if (valor) {
+            this.temporizador.start();
+        } else {
+            this.temporizador.stop();
+        }
+        this.setVisible(valor);
+    }
+
+    // Vuelve a leer la cola conservando la selección si sigue en ella.
+    private void refrescar() {
+        List<HiloGenerico> seleccion = this.getSeleccion();
+        this.cola = this.padre.getCola();
+        this.modeloCola.clear();
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < this.cola.size(); i++) {
+            HiloGenerico hilo = this.cola.get(i);
+            this.modeloCola.addElement(describir(hilo));
+            if (seleccion.contains(hilo)) {
+                indices.add(i);
+            }
+        }
+        int[] seleccionados = new int[indices.size()];
+        for (int i = 0; i < seleccionados.length; i++) {
+            seleccionados[i] = indices.get(i);
+        }
+        this.listaCola.setSelectedIndices(seleccionados);
+        this.lblEstado.setText("Estado: " + this.cola.size() + " transferencias esperando.");
+    }
+
+    // Transferencias seleccionadas en la lista.
+    private List<HiloGenerico> getSeleccion() {
+        List<HiloGenerico> seleccion = new ArrayList<>();
+        for (int indice : this.listaCola.getSelectedIndices()) {
+            if (indice < this.cola.size()) {
+                seleccion.add(this.cola.get(indice));
+            }
+        }
+        return seleccion;
+    }
+
+    // Texto de una transferencia en la lista.
+    private static String describir(HiloGenerico hilo) {
+        EstadoTransferencia estado = hilo.getEstado();
+        String accion = estado.getAccion() == HiloGenerico.SUBIR ? "Subir" : "Descargar";
+        return accion + " " + estado.getNombre() + " (" + PRIORIDADES[hilo.getPrioridad()] + ")";
+    }
+
+    /**
+     * Controla todos los eventos de la interfaz gráfica.
+     */
+    private void eventos() {
+        // Refresco periódico.
+        this.temporizador.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                refrescar();
+            }
+        });
+
+        // Botón adelantar.
+        this.btnAdelantar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                List<HiloGenerico> seleccion = getSeleccion();
+                if (!seleccion.isEmpty()) {
+                    int adelantadas = padre.adelantar(seleccion);
+                    listaCola.clearSelection();
+                    refrescar();
+                    lblEstado.setText("Estado: " + adelantadas + " adelantadas, " + cola.size() + " esperando.");
+                }
+            }
+        });
+
+        // Botón refrescar.
+        this.btnRefrescar.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                refrescar();
+            }
+        });
+
+        // Al cerrar se para el refresco.
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent we) {
+                temporizador.stop();
+            }
+        });
+    }
+}
@@ -5,12 +5,15 @@ import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.GridLayout;
 import java.awt.Insets;
-import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
 import javax.swing.BorderFactory;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -29,9 +32,12 @@ public class GuiLogueo extends JFrame {
 
     private Control padre;
     private JPanel pnlCentro, pnlSur;
-    private JTextField txtUsuario, txtServidor;
+    private JTextField txtUsuario, txtServidor, txtPuerto, txtMaxSesiones, txtBuffer;
     private JPasswordField passContrasenia;
-    private boolean mostrarContrasenia;
+    private JComboBox<String> cmbPerfiles, cmbSeguridad;
+    private JCheckBox chkPasivo, chkProtegerDatos;
+    private boolean mostrarContrasenia, cargandoPerfiles;
+    private int maxSesionesPorDefecto, bufferPorDefecto;
     private JButton btnLimpiar, btnCargarSesion, btnConectar, btnSalir;
     private JLabel lblEstado, lblContraseniaInfo;
     protected static final Color COLOR_FONDO = new Color(254, 244, 235);
@@ -61,8 +67,8 @@ public class GuiLogueo extends JFrame {
         this.aniadirElementos();
         this.eventos();
 
-        this.setSize(640, 240);
-        this.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        this.setSize(640, 360);
+        this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         this.setLocationRelativeTo(null);
         this.setAlwaysOnTop(true);
     }
@@ -74,6 +80,13 @@ public class GuiLogueo extends JFrame {
         this.txtUsuario = new JTextField();
         this.passContrasenia = new JPasswordField();
         this.txtServidor = new JTextField();
+        this.txtPuerto = new JTextField(String.valueOf(Perfil.PUERTO_POR_DEFECTO));
+        this.txtMaxSesiones = new JTextField();
+        this.txtBuffer = new JTextField();
+        this.cmbPerfiles = new JComboBox<>();
+        this.chkPasivo = new JCheckBox();
+        this.cmbSeguridad = new JComboBox<>(new String[]{"Sin cifrar (FTP)", "TLS explícito (FTPES)", "TLS implícito (FTPS)"});
+        this.chkProtegerDatos = new JCheckBox();
         this.btnLimpiar = new JButton();
         this.btnCargarSesion = new JButton();
         this.btnConectar = new JButton();
@@ -91,33 +104,53 @@ public class GuiLogueo extends JFrame {
         this.btnSalir.setText("Salir");
         this.lblEstado.setText("Introduce los datos de sesión");
         this.lblContraseniaInfo.setText("Contraseña (ocultar)");
+        this.chkPasivo.setText("Solo modo pasivo");
+        this.chkProtegerDatos.setText("Cifrar también los datos");
+        this.chkProtegerDatos.setSelected(true);
     }
 
     // Define los textos que se mostrarán al colocar el mouse sobre algun elemento.
     private void definirTextoAyuda() {
         this.txtServidor.setToolTipText("Escribe la direccion del servidor, ejemplo: 192.168.1.100");
+        this.cmbPerfiles.setToolTipText("Servidores a los que ya te has conectado");
+        this.txtPuerto.setToolTipText("Puerto del servidor, por defecto 21");
+        this.chkPasivo.setToolTipText("Sin marcar, se prueba EPSV, PASV y activo la primera vez y se recuerda el que funciona; marcado, nunca se usa el activo");
+        this.cmbSeguridad.setToolTipText("Cifra la conexión con TLS; el implícito usa por defecto el puerto 990");
+        this.chkProtegerDatos.setToolTipText("Con TLS, cifra también los archivos y listados (PROT P) y no solo la conexión de control");
+        this.txtMaxSesiones.setToolTipText("Número máximo de sesiones a la vez con este servidor");
+        this.txtBuffer.setToolTipText("Tamaño del buffer de transferencia en KB");
         this.txtUsuario.setToolTipText("Nombre de usuario, si no se escribe nada por defecto es Anonimous");
         this.passContrasenia.setToolTipText("Contraseña de usuario *Pulsa INTRO para ver/ocultar la contraseña");
         this.btnLimpiar.setToolTipText("Vacia todos los campos de texto");
         this.btnCargarSesion.setToolTipText("Carga la sesión anterior si la hay");
-        this.btnSalir.setToolTipText("Sale de la aplicación");
+        this.btnSalir.setToolTipText("Cierra esta sesión, la aplicación sale al cerrar la última");
     }
 
     // Define los estilos de todos los elementos de la interfaz, colores, iconos y bordes.
     private void definirEstilo() {
-        this.setIconImage(Toolkit.getDefaultToolkit().getImage(GuiLogueo.class.getResource("/recursos/icono.png")));
-        this.btnLimpiar.setIcon(new ImageIcon(getClass().getResource("/recursos/limpiar.png")));
-        this.btnCargarSesion.setIcon(new ImageIcon(getClass().getResource("/recursos/cargar.png")));
-        this.btnSalir.setIcon(new ImageIcon(getClass().getResource("/recursos/salir.png")));
+        this.setIconImage(Recursos.imagenVentana());
+        this.btnLimpiar.setIcon(Recursos.icono("limpiar.png"));
+        this.btnCargarSesion.setIcon(Recursos.icono("cargar.png"));
+        this.btnSalir.setIcon(Recursos.icono("salir.png"));
         this.pnlCentro.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         this.pnlSur.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         this.txtUsuario.setMargin(new Insets(0, 5, 0, 5));
         this.passContrasenia.setMargin(new Insets(0, 5, 0, 5));
         this.txtServidor.setMargin(new Insets(0, 5, 0, 5));
+        this.txtPuerto.setMargin(new Insets(0, 5, 0, 5));
+        this.txtMaxSesiones.setMargin(new Insets(0, 5, 0, 5));
+        this.txtBuffer.setMargin(new Insets(0, 5, 0, 5));
         this.pnlCentro.setBackground(COLOR_FONDO);
         this.txtUsuario.setBackground(COLOR_CAMPOS);
         this.passContrasenia.setBackground(COLOR_CAMPOS);
         this.txtServidor.setBackground(COLOR_CAMPOS);
+        this.txtPuerto.setBackground(COLOR_CAMPOS);
+        this.txtMaxSesiones.setBackground(COLOR_CAMPOS);
+        this.txtBuffer.setBackground(COLOR_CAMPOS);
+        this.cmbPerfiles.setBackground(COLOR_CAMPOS);
+        this.chkPasivo.setBackground(COLOR_FONDO);
+        this.cmbSeguridad.setBackground(COLOR_CAMPOS);
+        this.chkProtegerDatos.setBackground(COLOR_FONDO);
         this.pnlSur.setBackground(COLOR_FONDO2);
         this.btnLimpiar.setBackground(COLOR_BOTONES);
         this.btnCargarSesion.setBackground(COLOR_BOTONES);
@@ -132,7 +165,7 @@ public class GuiLogueo extends JFrame {
     // Crea las distintas distribuciones para los distintos paneles.
     private void crearDistribucion() {
         this.getContentPane().setLayout(new BorderLayout());
-        this.pnlCentro.setLayout(new GridLayout(4, 2, 7, 5));
+        this.pnlCentro.setLayout(new GridLayout(8, 2, 7, 5));
         this.pnlSur.setLayout(new GridLayout(1, 4, 7, 7));
     }
 
@@ -141,15 +174,39 @@ public class GuiLogueo extends JFrame {
         this.getContentPane().add(this.pnlCentro, BorderLayout.CENTER);
         this.getContentPane().add(this.pnlSur, BorderLayout.SOUTH);
 
+        this.pnlCentro.add(new JLabel("Perfil"));
+        this.pnlCentro.add(this.cmbPerfiles);
+
         this.pnlCentro.add(new JLabel("Servidor"));
         this.pnlCentro.add(this.txtServidor);
 
+        this.pnlCentro.add(new JLabel("Puerto / Modo"));
+        JPanel pnlPuerto = new JPanel(new GridLayout(1, 2, 7, 5));
+        pnlPuerto.setBackground(COLOR_FONDO);
+        pnlPuerto.add(this.txtPuerto);
+        pnlPuerto.add(this.chkPasivo);
+        this.pnlCentro.add(pnlPuerto);
+
+        this.pnlCentro.add(new JLabel("Seguridad"));
+        JPanel pnlSeguridad = new JPanel(new GridLayout(1, 2, 7, 5));
+        pnlSeguridad.setBackground(COLOR_FONDO);
+        pnlSeguridad.add(this.cmbSeguridad);
+        pnlSeguridad.add(this.chkProtegerDatos);
+        this.pnlCentro.add(pnlSeguridad);
+
         this.pnlCentro.add(new JLabel("Usuario"));
         this.pnlCentro.add(this.txtUsuario);
 
         this.pnlCentro.add(this.lblContraseniaInfo);
         this.pnlCentro.add(this.passContrasenia);
 
+        this.pnlCentro.add(new JLabel("Sesiones máximas / Buffer (KB)"));
+        JPanel pnlLimites = new JPanel(new GridLayout(1, 2, 7, 5));
+        pnlLimites.setBackground(COLOR_FONDO);
+        pnlLimites.add(this.txtMaxSesiones);
+        pnlLimites.add(this.txtBuffer);
+        this.pnlCentro.add(pnlLimites);
+
         this.pnlCentro.add(new JLabel("Estado"));
         this.pnlCentro.add(this.lblEstado);
 
@@ -208,6 +265,109 @@ public class GuiLogueo extends JFrame {
         return this.passContrasenia.getPassword();
     }
 
+    /**
+     * Obtiene el puerto escrito.
+     *
+     * @return String Puerto del servidor.
+     */
+    protected String getPuerto() {
+        return this.txtPuerto.getText();
+    }
+
+    /**
+     * Indica si se ha marcado usar solo el modo pasivo.
+     *
+     * @return true solo pasivo, false elegir el modo automáticamente.
+     */
+    protected boolean isPasivo() {
+        return this.chkPasivo.isSelected();
+    }
+
+    /**
+     * Obtiene el tipo de seguridad elegido.
+     *
+     * @return Perfil.SIN_TLS, Perfil.TLS_EXPLICITO o Perfil.TLS_IMPLICITO.
+     */
+    protected byte getSeguridad() {
+        return (byte) this.cmbSeguridad.getSelectedIndex();
+    }
+
+    /**
+     * Indica si se ha marcado cifrar también los datos.
+     *
+     * @return true PROT P, false PROT C.
+     */
+    protected boolean isProtegerDatos() {
+        return this.chkProtegerDatos.isSelected();
+    }
+
+    /**
+     * Obtiene el número máximo de sesiones escrito.
+     *
+     * @return String Número de sesiones.
+     */
+    protected String getMaxSesiones() {
+        return this.txtMaxSesiones.getText();
+    }
+
+    /**
+     * Obtiene el tamaño de buffer escrito, en KB.
+     *
+     * @return String Tamaño del buffer.
+     */
+    protected String getBufferKilobytes() {
+        return this.txtBuffer.getText();
+    }
+
+    /**
+     * Rellena la lista de perfiles guardados.
+     *
+     * @param nombres Nombres de los perfiles.
+     */
+    protected void setPerfiles(List<String> nombres) {
+        this.cargandoPerfiles = true;
+        Object seleccionado = this.cmbPerfiles.getSelectedItem();
+        this.cmbPerfiles.removeAllItems();
+        for (String nombre : nombres) {
+            this.cmbPerfiles.addItem(nombre);
+        }
+        this.cmbPerfiles.setSelectedItem(seleccionado);
+        this.cargandoPerfiles = false;
+    }
+
+    /**
+     * Rellena todos los campos con los datos de un perfil.
+     *
+     * @param perfil El perfil.
+     */
+    protected void setPerfil(Perfil perfil) {
+        this.cargandoPerfiles = true;
+        this.cmbPerfiles.setSelectedItem(perfil.getNombre());
+        this.cargandoPerfiles = false;
+        this.setServidor(perfil.getServidor());
+        this.txtPuerto.setText(String.valueOf(perfil.getPuerto()));
+        this.chkPasivo.setSelected(perfil.isPasivo());
+        this.cmbSeguridad.setSelectedIndex(perfil.getSeguridad());
+        this.chkProtegerDatos.setSelected(perfil.isProtegerDatos());
+        this.setUsuario(perfil.getUsuario());
+        this.setContrasenia(perfil.getContrasenia());
+        this.txtMaxSesiones.setText(String.valueOf(perfil.getMaxSesiones()));
+        this.txtBuffer.setText(String.valueOf(perfil.getBufferDatos() / 1024));
+    }
+
+    /**
+     * Define los valores de sesiones y buffer que se ponen al limpiar.
+     *
+     * @param maxSesiones Número máximo de sesiones.
+     * @param bufferDatos Tamaño del buffer en bytes.
+     */
+    protected void setValoresPorDefecto(int maxSesiones, int bufferDatos) {
+        this.maxSesionesPorDefecto = maxSesiones;
+        this.bufferPorDefecto = bufferDatos / 1024;
+        this.txtMaxSesiones.setText(String.valueOf(this.maxSesionesPorDefecto));
+        this.txtBuffer.setText(String.valueOf(this.bufferPorDefecto));
+    }
+
     /**
      * Establecer un nombre de servidor.
      *
@@ -253,13 +413,13 @@ public class GuiLogueo extends JFrame {
         if (conectando) {
             this.btnConectar.setText("Cancelar");
             this.btnConectar.setToolTipText("Cancela la conexión.");
-            this.btnConectar.setIcon(new ImageIcon(getClass().getResource("/recursos/cancelar.png")));
+            this.btnConectar.setIcon(Recursos.icono("cancelar.png"));
             this.btnConectar.setBackground(GuiLogueo.COLOR_BOTONES_CANCELAR);
             this.bloquearCampos(true);
         } else {
             this.btnConectar.setText("Conectar");
             this.btnConectar.setToolTipText("Intenta conectar con el servidor ftp");
-            this.btnConectar.setIcon(new ImageIcon(getClass().getResource("/recursos/conectar.png")));
+            this.btnConectar.setIcon(Recursos.icono("conectar.png"));
             this.btnConectar.setBackground(GuiLogueo.COLOR_BOTONES);
             this.bloquearCampos(false);
         }
@@ -268,6 +428,13 @@ public class GuiLogueo extends JFrame {
     // Bloquea o desbloquea los campos en función del parametro introducido.
     private void bloquearCampos(boolean valor) {
         this.txtServidor.setEditable(!valor);
+        this.txtPuerto.setEditable(!valor);
+        this.txtMaxSesiones.setEditable(!valor);
+        this.txtBuffer.setEditable(!valor);
+        this.chkPasivo.setEnabled(!valor);
+        this.cmbSeguridad.setEnabled(!valor);
+        this.chkProtegerDatos.setEnabled(!valor);
+        this.cmbPerfiles.setEnabled(!valor);
         this.txtUsuario.setEditable(!valor);
         this.passContrasenia.setEditable(!valor);
         this.btnLimpiar.setEnabled(!valor);
@@ -285,6 +452,12 @@ public class GuiLogueo extends JFrame {
                 GuiLogueo.this.txtServidor.setText("");
                 GuiLogueo.this.txtUsuario.setText("");
                 GuiLogueo.this.passContrasenia.setText("");
+                GuiLogueo.this.txtPuerto.setText(String.valueOf(Perfil.PUERTO_POR_DEFECTO));
+                GuiLogueo.this.chkPasivo.setSelected(false);
+                GuiLogueo.this.cmbSeguridad.setSelectedIndex(Perfil.SIN_TLS);
+                GuiLogueo.this.chkProtegerDatos.setSelected(true);
+                GuiLogueo.this.txtMaxSesiones.setText(String.valueOf(maxSesionesPorDefecto));
+                GuiLogueo.this.txtBuffer.setText(String.valueOf(bufferPorDefecto));
                 GuiLogueo.this.lblEstado.setText("Introduce los datos de sesión.");
                 if (GuiLogueo.this.mostrarContrasenia) {
                     GuiLogueo.this.verOcultarContrasenia();
@@ -304,6 +477,28 @@ public class GuiLogueo extends JFrame {
             }
         });
 
+        // Elegir un perfil guardado.
+        this.cmbPerfiles.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                if (!cargandoPerfiles && cmbPerfiles.getSelectedItem() != null) {
+                    padre.perfilSeleccionado((String) cmbPerfiles.getSelectedItem());
+                    setEstado("Perfil cargado.");
+                }
+            }
+        });
+
+        // Al cambiar a TLS implícito o volver, se cambia el puerto si era el de por defecto.
+        this.cmbSeguridad.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                String puerto = txtPuerto.getText().trim();
+                if (puerto.equals(String.valueOf(Perfil.PUERTO_POR_DEFECTO)) || puerto.equals(String.valueOf(Perfil.PUERTO_TLS_IMPLICITO))) {
+                    txtPuerto.setText(String.valueOf(getSeguridad() == Perfil.TLS_IMPLICITO ? Perfil.PUERTO_TLS_IMPLICITO : Perfil.PUERTO_POR_DEFECTO));
+                }
+            }
+        });
+
         // Botón conectar.
         this.btnConectar.addActionListener(new ActionListener() {
             @Override
@@ -319,7 +514,15 @@ public class GuiLogueo extends JFrame {
         this.btnSalir.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
-                System.exit(0);
+                padre.cerrarVentanaLogueo();
+            }
+        });
+
+        // Al cerrar la ventana.
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                GuiLogueo.this.padre.cerrarVentanaLogueo();
             }
         });
 
@@ -2,11 +2,20 @@ package clienteftp;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.io.CopyStreamAdapter;
 
 /**
  * Clase HiloGenerico. Permite crear conexiones paralelas al servidor. Permite
@@ -17,13 +26,39 @@ import org.apache.commons.net.ftp.FTPClient;
  */
 public class HiloGenerico implements Runnable {
 
-    private FTPClient clienteFtp;
+    protected static final byte CONECTAR = 0;
+    protected static final byte SUBIR = 1;
+    protected static final byte DESCARGAR = 2;
+    // Cada cuántos bytes se apunta el progreso en el diario.
+    private static final long INTERVALO_PROGRESO = 1024 * 1024;
+    // Numera las transferencias para seguirlas en el registro.
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+
+    private volatile FTPClient clienteFtp;
+    private PoolSesiones pool;
     private Control padre;
     private byte accion;
     private File archivo;
     private String nombreArchivo, rutaActual;
     private String servidor, usuario, contrasenia;
-    private boolean fin;
+    private String claveCache, sesionCache;
+    private volatile boolean fin;
+    // Si el fallo ya se ha apuntado en el diario, si se reanudará y si la
+    // suma de comprobación ha salido mal (lo transferido no sirve).
+    private boolean falloApuntado, reanudable, sumaIncorrecta;
+    private long idDiario, desplazamiento, tamanio;
+    private byte prioridad;
+    private EstadoTransferencia estado;
+    private volatile MotorNio.Transferencia transferenciaNio;
+    // Si la transferencia se ha entregado al motor NIO: entonces acaba en su
+    // oyente, después de que el hilo quede libre.
+    private boolean enMotor;
+    private final AtomicReference<Runnable> alTerminar;
+    private final long id;
+    private long inicio;
+    // Instantes de la traza: cuándo se creó y cuándo se pidieron los datos.
+    private final long creado;
+    private long inicioTraza, inicioDatos;
 
     // 0 - Conectar.
     public HiloGenerico(Control padre, String servidor, String usuario, String contrasenia) {
@@ -32,8 +67,15 @@ public class HiloGenerico implements Runnable {
         this.usuario = usuario;
         this.contrasenia = contrasenia;
         this.clienteFtp = new FTPClient();
-        this.accion = 0;
+        this.accion = CONECTAR;
         this.fin = false;
+        this.idDiario = 0;
+        this.desplazamiento = 0;
+        this.tamanio = -1;
+        this.prioridad = PlanificadorTransferencias.NORMAL;
+        this.id = SECUENCIA.incrementAndGet();
+        this.creado = Trazador.ahora();
+        this.alTerminar = new AtomicReference<>();
     }
 
     // 1 - Subir.
@@ -41,7 +83,8 @@ public class HiloGenerico implements Runnable {
         this(padre, servidor, usuario, contrasenia);
         this.archivo = archivoSeleccionado;
         this.rutaActual = rutaActualRemota;
-        this.accion = 1;
+        this.accion = SUBIR;
+        this.estado = new EstadoTransferencia(SUBIR, archivoSeleccionado.getName());
     }
 
     // 2 - Descargar.
@@ -49,20 +92,116 @@ public class HiloGenerico implements Runnable {
         this(padre, servidor, usuario, contrasenia);
         this.nombreArchivo = nombreArchivo;
         this.rutaActual = rutaActualLocal;
-        this.accion = 2;
+        this.accion = DESCARGAR;
+        this.estado = new EstadoTransferencia(DESCARGAR, nombreArchivo);
+    }
+
+    /**
+     * Asocia el hilo a una transferencia del diario. Si el desplazamiento es
+     * mayor que cero la transferencia se reanuda desde ese byte.
+     *
+     * @param idDiario Identificador de la transferencia en el diario.
+     * @param desplazamiento Bytes ya transferidos en una sesión anterior.
+     */
+    protected void setDiario(long idDiario, long desplazamiento) {
+        this.idDiario = idDiario;
+        this.desplazamiento = desplazamiento;
+    }
+
+    /**
+     * Indica el tamaño del archivo en el servidor, si se sabe por el listado,
+     * para reservar el espacio de la descarga de una vez.
+     *
+     * @param tamanio Bytes del archivo remoto, -1 si no se sabe.
+     */
+    protected void setTamanio(long tamanio) {
+        this.tamanio = tamanio;
+    }
+
+    /**
+     * Indica la clave del archivo en la cache de descargas. Sin clave la
+     * descarga no pasa por la cache.
+     *
+     * @param claveCache Clave de CacheDescargas, o null.
+     */
+    protected void setClaveCache(String claveCache) {
+        this.claveCache = claveCache;
+    }
+
+    /**
+     * Indica la sesión ("usuario@servidor:puerto") para calcular la clave de
+     * la cache de descargas si no hay clave: la fecha se pide con MDTM antes
+     * de descargar.
+     *
+     * @param sesionCache Sesión de CacheDescargas.clave(), o null.
+     */
+    protected void setSesionCache(String sesionCache) {
+        this.sesionCache = sesionCache;
+    }
+
+    /**
+     * Indica en qué carril del planificador espera la transferencia.
+     *
+     * @param prioridad ALTA, NORMAL o BAJA de PlanificadorTransferencias.
+     */
+    protected void setPrioridad(byte prioridad) {
+        this.prioridad = prioridad;
+    }
+
+    /**
+     * Indica qué hacer cuando la transferencia acabe del todo. Con el motor
+     * NIO eso pasa después de que run() vuelva.
+     *
+     * @param alTerminar Se ejecuta una sola vez, o null.
+     */
+    protected void setAlTerminar(Runnable alTerminar) {
+        this.alTerminar.set(alTerminar);
+    }
+
+    /**
+     * Obtiene la prioridad de la transferencia.
+     *
+     * @return ALTA, NORMAL o BAJA de PlanificadorTransferencias.
+     */
+    protected byte getPrioridad() {
+        return this.prioridad;
+    }
+
+    /**
+     * Obtiene el estado de la transferencia que hace este hilo.
+     *
+     * @return El estado o null si el hilo solo conecta.
+     */
+    protected EstadoTransferencia getEstado() {
+        return this.estado;
     }
 
-    // Comprueba si la conexion se puede establecer.
-    protected synchronized boolean conectar(String servidor, String usuario, String contrasenia, FTPClient cliente) {
+    /**
+     * Obtiene el identificador de la transferencia en el diario.
+     *
+     * @return El identificador o 0 si no está apuntada.
+     */
+    protected long getIdDiario() {
+        return this.idDiario;
+    }
+
+    // Comprueba si la conexion se puede establecer. El cliente que queda
+    // conectado puede ser otro si ganó un intento paralelo.
+    protected synchronized boolean conectar(String servidor, String usuario, String contrasenia) {
         boolean correcto = false;
         try {
-            cliente.connect(servidor);
-            correcto = cliente.login(usuario, contrasenia);
+            Perfil perfil = padre.getPerfil();
+            FabricaClientes fabrica = padre.getFabricaClientes();
+            this.clienteFtp = ConectorRapido.conectar(fabrica, servidor, perfil.getPuerto(), padre.getTiempoConexion());
+            correcto = this.clienteFtp.login(usuario, contrasenia);
             if (correcto) {
-                cliente.setFileType(FTPClient.BINARY_FILE_TYPE);
+                fabrica.proteger(this.clienteFtp);
+                this.clienteFtp.setFileType(FTPClient.BINARY_FILE_TYPE);
+                perfil.aplicarModo(this.clienteFtp);
             }
         } catch (IOException ex) {
-            System.out.println("ERROR: " + ex);
+            RegistroEventos.error("Fallo al conectar con " + servidor, ex);
+            correcto = false;
         }
         return correcto;
     }
@@ -73,73 +212,537 @@ public class HiloGenerico implements Runnable {
     protected void desconectarHilo() {
         try {
             this.fin = true;
+            if (this.estado != null && !this.estado.isTerminada()) {
+                this.estado.setFase(EstadoTransferencia.Fase.CANCELADA);
+            }
+            if (this.transferenciaNio != null) {
+                this.transferenciaNio.cancelar();
+            }
             this.clienteFtp.disconnect();
         } catch (IOException ex) {
-            System.out.println("ERROR al desconectar el hilo." + ex);
+            RegistroEventos.error("Fallo al desconectar el hilo", ex);
+        }
+    }
+
+    // Las subidas y descargas usan una sesión ya logueada del pool. Si se
+    // cancela mientras espera se suelta sin hacer nada.
+    private boolean tomarSesion() {
+        if (this.fin) {
+            return false;
+        }
+        this.pool = padre.getPoolSesiones();
+        long inicioSesion = Trazador.ahora();
+        try {
+            this.clienteFtp = this.pool.obtener();
+        } catch (IOException ex) {
+            this.fallarSinSesion(ex);
+            return false;
+        } catch (InterruptedException ex) {
+            return false;
+        }
+        Trazador.tramo(this.id, "sesion", inicioSesion, null);
+        if (this.fin) {
+            this.pool.descartar(this.clienteFtp);
+            return false;
+        }
+        return true;
+    }
+
+    // Devuelve la sesión al pool, o la cierra si se ha cancelado o ha fallado.
+    private void soltarSesion() {
+        this.clienteFtp.setCopyStreamListener(null);
+        if (this.fin || !this.clienteFtp.isConnected()) {
+            this.pool.descartar(this.clienteFtp);
+        } else {
+            this.pool.devolver(this.clienteFtp);
         }
     }
 
+    // Sin sesión la transferencia se da por fallida; si le quedan intentos
+    // sigue en el diario.
+    private void fallarSinSesion(IOException ex) {
+        RegistroEventos.error("Fallo al obtener sesión", ex);
+        this.registrar(this.accion == SUBIR ? "subida" : "descarga", false);
+        this.estado.setFase(EstadoTransferencia.Fase.FALLIDA);
+        if (this.accion == SUBIR) {
+            padre.archivoSubido(this.estado);
+        } else {
+            padre.archivoDescargado(this.estado);
+        }
+        padre.setMensajeCliente("No se puede abrir sesión para " + this.estado.getNombre() + this.avisoReintento());
+    }
+
     private void subir() {
-        String cadenaResultado = "";
         boolean correcto = true;
 
+        SumaVerificacion suma = padre.crearSumaVerificacion();
+
         try (FileInputStream escritorRemoto = new FileInputStream(archivo.getPath())) {
-            if (!clienteFtp.storeFile(archivo.getName(), escritorRemoto)) {
+            long inicio = this.calcularInicioSubida();
+            InputStream entrada = escritorRemoto;
+            if (suma != null) {
+                suma.sumarPrefijo(archivo, inicio);
+                entrada = suma.envolver(escritorRemoto);
+            }
+            if (inicio > 0) {
+                escritorRemoto.getChannel().position(inicio);
+                clienteFtp.setRestartOffset(inicio);
+            }
+            this.apuntarProgreso(inicio);
+            this.inicioDatos = Trazador.ahora();
+            if (!clienteFtp.storeFile(this.getRutaRemota(archivo.getName()), entrada)) {
                 correcto = false;
+            } else if (suma != null) {
+                correcto = this.verificar(suma, this.getRutaRemota(archivo.getName()));
             }
         } catch (Exception ex) {
             correcto = false;
-            System.out.println("ERROR al descargar, es normal si desconecto las sesiones de los hilos: " + ex);
+            RegistroEventos.aviso("Fallo al subir " + archivo.getName() + ", es normal si se desconectan las sesiones de los hilos", ex);
         }
 
+        this.terminarSubida(correcto);
+    }
+
+    // Anota el resultado de la subida.
+    private void terminarSubida(boolean correcto) {
+        this.registrar("subida", correcto);
         if (correcto) {
-            padre.archivoSubido(true);
+            this.terminarDiario();
+            this.estado.setFase(EstadoTransferencia.Fase.COMPLETADA);
+            padre.archivoSubido(this.estado);
         } else if (!this.fin) {
-            cadenaResultado += "Error al subir el elemento: " + archivo.getName();
-            padre.archivoSubido(false);
-            padre.setMensajeCliente(cadenaResultado);
+            this.estado.setFase(EstadoTransferencia.Fase.FALLIDA);
+            padre.archivoSubido(this.estado);
+            padre.setMensajeCliente("Error al subir el elemento: " + archivo.getName() + this.avisoReintento());
         }
     }
 
     private void descargar() {
-        String cadenaResultado = "";
         boolean correcto = true;
+        EscritorDescarga escritor = new EscritorDescarga(this.getDestino());
 
-        try (FileOutputStream escritorLocal = new FileOutputStream(padre.getRutaCompletaDescargas() + "\\" + nombreArchivo)) {
-            if (!clienteFtp.retrieveFile(nombreArchivo, escritorLocal)) {
+        try {
+            long inicio = escritor.calcularInicio(this.desplazamiento);
+            SumaVerificacion suma = padre.crearSumaVerificacion();
+            if (suma != null) {
+                suma.sumarPrefijo(escritor.getParcial(), inicio);
+            }
+            FileChannel canal = escritor.abrir(inicio, this.tamanio);
+            OutputStream escritorLocal = escritor.getSalida();
+            OutputStream salida = suma == null ? escritorLocal : suma.envolver(escritorLocal);
+            clienteFtp.setRestartOffset(inicio);
+            this.apuntarProgreso(inicio);
+            this.inicioDatos = Trazador.ahora();
+            if (!clienteFtp.retrieveFile(this.getRutaRemota(nombreArchivo), salida)) {
                 correcto = false;
+            } else if (suma != null) {
+                correcto = this.verificar(suma, this.getRutaRemota(nombreArchivo));
+            }
+            if (correcto) {
+                escritor.terminar(canal.position(), padre.getSincronizadorDescargas());
+                this.guardarEnCache();
             }
             // Cuando fuerzo a desconectar el cliente FTP llega a este punto.
         } catch (Exception ex) {
             correcto = false;
-            System.out.println("ERROR al descargar, es normal si desconecto las sesiones de los hilos: " + ex);
+            RegistroEventos.aviso("Fallo al descargar " + nombreArchivo + ", es normal si se desconectan las sesiones de los hilos", ex);
         }
 
+        if (!correcto) {
+            escritor.abandonar(this.conservarParcial());
+        }
+        this.terminarDescarga(correcto);
+    }
+
+    // Anota el resultado de la descarga.
+    private void terminarDescarga(boolean correcto) {
+        this.registrar("descarga", correcto);
         if (correcto) {
-            padre.archivoDescargado(true);
+            this.terminarDiario();
+            this.estado.setFase(EstadoTransferencia.Fase.COMPLETADA);
+            padre.archivoDescargado(this.estado);
         } else if (!this.fin) {
-            cadenaResultado += "Error al descargar el elemento: " + nombreArchivo;
-            padre.archivoDescargado(false);
-            padre.setMensajeCliente(cadenaResultado);
+            this.estado.setFase(EstadoTransferencia.Fase.FALLIDA);
+            padre.archivoDescargado(this.estado);
+            padre.setMensajeCliente("Error al descargar el elemento: " + nombreArchivo + this.avisoReintento());
+        }
+    }
+
+    // Apunta en el registro cómo ha acabado la transferencia, con la última
+    // respuesta del servidor y lo que ha tardado desde que salió de la cola,
+    // y en la traza el tramo de toda la transferencia.
+    private void registrar(String evento, boolean correcto) {
+        RegistroEventos.Nivel nivel = correcto || this.fin ? RegistroEventos.Nivel.INFO : RegistroEventos.Nivel.AVISO;
+        if (!RegistroEventos.activo(nivel) && !Trazador.activo()) {
+            return;
+        }
+        String resultado = correcto ? evento : evento + (this.fin ? " cancelada" : " fallida");
+        String ruta = this.getRutaRemota(this.accion == SUBIR ? this.archivo.getName() : this.nombreArchivo);
+        Trazador.tramo(this.id, resultado, this.inicioTraza, ruta);
+        RegistroEventos.transferencia(nivel, resultado, this.id, this.servidor,
+                ruta, this.clienteFtp.getReplyCode(), this.estado.getBytesTransferidos(), System.currentTimeMillis() - this.inicio);
+    }
+
+    // Apunta en la traza lo que ha tardado en llegar el primer byte desde
+    // que se pidieron los datos: PASV, la orden y la respuesta del servidor.
+    private void trazarPrimerByte() {
+        if (this.inicioDatos != 0) {
+            Trazador.tramo(this.id, "primer byte", this.inicioDatos, null);
+            this.inicioDatos = 0;
+        }
+    }
+
+    // Archivo local donde se guarda la descarga.
+    private File getDestino() {
+        return new File(padre.getRutaCompletaDescargas(), nombreArchivo);
+    }
+
+    // Si la cache de descargas tiene el mismo archivo (misma ruta, tamaño y
+    // fecha) se deja en su sitio desde ahí, sin abrir sesión.
+    private boolean servirDesdeCache() {
+        if (this.claveCache == null || this.fin) {
+            return false;
+        }
+        EscritorDescarga escritor = new EscritorDescarga(this.getDestino());
+        if (!padre.getCacheDescargas().servir(this.claveCache, escritor.getParcial())) {
+            return false;
         }
+        try {
+            padre.getSincronizadorDescargas().confirmar(escritor);
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al servir desde la cache " + nombreArchivo, ex);
+            escritor.abandonar(false);
+            return false;
+        }
+        this.estado.setBytesTransferidos(escritor.getDestino().length());
+        this.terminarDescarga(true);
+        return true;
     }
 
-    private void setRutaActualRemota(String ruta) {
+    // Si el listado no traía la fecha exacta, la pide con MDTM para poder
+    // usar la cache de descargas. Sin ella la descarga no pasa por la cache.
+    // Devuelve true si ahora hay una clave que antes no había.
+    private boolean calcularClaveCache() {
+        if (this.claveCache != null || this.sesionCache == null || this.tamanio < 0) {
+            return false;
+        }
+        String ruta = this.getRutaRemota(nombreArchivo);
         try {
-            this.clienteFtp.changeWorkingDirectory(ruta);
+            FTPFile fecha = this.clienteFtp.mdtmFile(ruta);
+            this.claveCache = CacheDescargas.clave(this.sesionCache, ruta, this.tamanio, fecha == null ? null : fecha.getTimestamp());
         } catch (IOException ex) {
-            Logger.getLogger(HiloGenerico.class.getName()).log(Level.SEVERE, null, ex);
+            RegistroEventos.depurar("Sin MDTM para " + ruta + ": " + ex);
         }
+        return this.claveCache != null;
+    }
+
+    // Guarda en la cache de descargas el archivo recién publicado.
+    private void guardarEnCache() {
+        if (this.claveCache != null) {
+            padre.getCacheDescargas().guardar(this.claveCache, this.getDestino());
+        }
+    }
+
+    // Un temporal a medias sirve si el diario va a reanudar la descarga:
+    // porque se ha cancelado al desconectar o porque ha fallado y le quedan
+    // intentos. Si la suma no coincidía lo descargado no vale.
+    private boolean conservarParcial() {
+        return this.idDiario != 0 && !this.sumaIncorrecta && (this.fin || this.apuntarFallo());
+    }
+
+    // Apunta el fallo en el diario una sola vez por transferencia. Si se va a
+    // reanudar tras una suma incorrecta se empieza de cero.
+    private boolean apuntarFallo() {
+        if (!this.falloApuntado && this.idDiario != 0) {
+            this.falloApuntado = true;
+            this.reanudable = padre.getDiario().fallida(this.idDiario);
+            if (this.reanudable && this.sumaIncorrecta) {
+                padre.getDiario().progreso(this.idDiario, 0);
+            }
+        }
+        return this.reanudable;
+    }
+
+    // Completa el mensaje de error si la transferencia se volverá a intentar.
+    private String avisoReintento() {
+        return this.apuntarFallo() ? " (se reintentará al volver a conectar)" : "";
+    }
+
+    // El motor NIO solo se usa en modo pasivo y con los datos sin cifrar; si
+    // no, o si no está activado, la transferencia bloquea su hilo como antes.
+    private MotorNio motorNio() {
+        MotorNio motor = padre.getMotorNio();
+        if (motor == null || this.clienteFtp.getDataConnectionMode() != FTPClient.PASSIVE_LOCAL_DATA_CONNECTION_MODE) {
+            return null;
+        }
+        if (this.clienteFtp instanceof FTPSClient && padre.getPerfil().isProtegerDatos()) {
+            return null;
+        }
+        return motor;
+    }
+
+    // Sube el archivo con el motor NIO. El hilo queda libre en cuanto se
+    // entrega la conexión de datos; el resto lo hace terminarNio.
+    private void subirNio(MotorNio motor) {
+        String ruta = this.getRutaRemota(archivo.getName());
+        SocketChannel canal = null;
+        FileChannel lector = null;
+        try {
+            long inicio = this.calcularInicioSubida();
+            SumaVerificacion suma = padre.crearSumaVerificacion();
+            if (suma != null) {
+                suma.sumarPrefijo(archivo, inicio);
+            }
+            lector = FileChannel.open(archivo.toPath(), StandardOpenOption.READ);
+            this.inicioDatos = Trazador.ahora();
+            canal = this.prepararDatosNio(inicio, "STOR", ruta);
+            this.apuntarProgreso(inicio);
+            this.transferenciaNio = motor.subir(canal, lector, inicio, suma, this.crearOyenteNio(inicio, suma, ruta, null));
+            this.enMotor = true;
+            this.cancelarSiFin();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al subir con NIO", ex);
+            cerrarCanal(canal);
+            cerrarCanal(lector);
+            this.terminarSubida(false);
+            this.soltarSesion();
+        }
+    }
+
+    // Descarga el archivo con el motor NIO.
+    private void descargarNio(MotorNio motor) {
+        String ruta = this.getRutaRemota(nombreArchivo);
+        EscritorDescarga escritor = new EscritorDescarga(this.getDestino());
+        SocketChannel canal = null;
+        try {
+            long inicio = escritor.calcularInicio(this.desplazamiento);
+            SumaVerificacion suma = padre.crearSumaVerificacion();
+            if (suma != null) {
+                suma.sumarPrefijo(escritor.getParcial(), inicio);
+            }
+            FileChannel archivo = escritor.abrir(inicio, this.tamanio);
+            this.inicioDatos = Trazador.ahora();
+            canal = this.prepararDatosNio(inicio, "RETR", ruta);
+            this.apuntarProgreso(inicio);
+            this.transferenciaNio = motor.descargar(canal, archivo, inicio, suma, this.crearOyenteNio(inicio, suma, ruta, escritor));
+            this.enMotor = true;
+            this.cancelarSiFin();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al descargar con NIO", ex);
+            cerrarCanal(canal);
+            escritor.abandonar(this.conservarParcial());
+            this.terminarDescarga(false);
+            this.soltarSesion();
+        }
+    }
+
+    // Si se canceló mientras se entregaba al motor, se corta ya.
+    private void cancelarSiFin() {
+        MotorNio.Transferencia transferencia = this.transferenciaNio;
+        if (this.fin && transferencia != null) {
+            transferencia.cancelar();
+        }
+    }
+
+    // Abre la conexión de datos pasiva, envía REST si hace falta y el comando
+    // de la transferencia, y comprueba que el servidor la acepta.
+    private SocketChannel prepararDatosNio(long inicio, String comando, String ruta) throws IOException {
+        SocketChannel canal = MotorNio.abrirDatos(clienteFtp, padre.getTiempoConexion());
+        try {
+            if (inicio > 0 && !FTPReply.isPositiveIntermediate(clienteFtp.rest(Long.toString(inicio)))) {
+                throw new IOException("El servidor no admite REST: " + clienteFtp.getReplyString());
+            }
+            if (!FTPReply.isPositivePreliminary(clienteFtp.sendCommand(comando, ruta))) {
+                throw new IOException(comando + " rechazado: " + clienteFtp.getReplyString());
+            }
+        } catch (IOException ex) {
+            cerrarCanal(canal);
+            throw ex;
+        }
+        return canal;
+    }
+
+    // Recibe el progreso desde el bucle NIO y, al final, lee la respuesta del
+    // servidor, verifica la suma, publica la descarga y devuelve la sesión.
+    private MotorNio.Oyente crearOyenteNio(final long inicio, final SumaVerificacion suma, final String ruta, final EscritorDescarga escritor) {
+        final DiarioTransferencias diario = padre.getDiario();
+        return new MotorNio.Oyente() {
+            private long ultimoApunte = 0, total = 0;
+
+            @Override
+            public void progreso(long bytes) {
+                if (total == 0) {
+                    trazarPrimerByte();
+                }
+                total = bytes;
+                estado.setBytesTransferidos(inicio + bytes);
+                if (idDiario != 0 && bytes - ultimoApunte >= INTERVALO_PROGRESO) {
+                    ultimoApunte = bytes;
+                    diario.progreso(idDiario, inicio + bytes);
+                }
+            }
+
+            @Override
+            public void terminada(IOException error) {
+                transferenciaNio = null;
+                boolean correcto = error == null;
+                if (error != null) {
+                    RegistroEventos.error("Fallo en la transferencia NIO de " + ruta, error);
+                }
+                try {
+                    if (!clienteFtp.completePendingCommand()) {
+                        correcto = false;
+                    } else if (correcto && suma != null) {
+                        correcto = verificar(suma, ruta);
+                    }
+                } catch (IOException ex) {
+                    correcto = false;
+                    RegistroEventos.error("Fallo al terminar la transferencia NIO", ex);
+                }
+                if (escritor != null) {
+                    if (correcto) {
+                        try {
+                            escritor.terminar(inicio + total, padre.getSincronizadorDescargas());
+                            guardarEnCache();
+                        } catch (IOException ex) {
+                            correcto = false;
+                            RegistroEventos.error("Fallo al guardar " + escritor.getDestino(), ex);
+                        }
+                    }
+                    if (!correcto) {
+                        escritor.abandonar(conservarParcial());
+                    }
+                }
+                if (accion == SUBIR) {
+                    terminarSubida(correcto);
+                } else {
+                    terminarDescarga(correcto);
+                }
+                soltarSesion();
+                avisarFin();
+            }
+        };
+    }
+
+    // Avisa de que la transferencia ha acabado, una sola vez.
+    private void avisarFin() {
+        Runnable aviso = this.alTerminar.getAndSet(null);
+        if (aviso != null) {
+            aviso.run();
+        }
+    }
+
+    // Cierra un canal sin propagar el error.
+    private static void cerrarCanal(Channel canal) {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ex) {
+                RegistroEventos.error("Fallo al cerrar un canal", ex);
+            }
+        }
+    }
+
+    // Compara la suma calculada durante la transferencia con la del servidor.
+    // Solo se da por mala la transferencia si las sumas no coinciden.
+    private boolean verificar(SumaVerificacion suma, String nombre) throws IOException {
+        SumaVerificacion.Veredicto veredicto = suma.comparar(clienteFtp, nombre);
+        this.estado.setVeredicto(veredicto);
+        RegistroEventos.info("Verificacion " + nombre + " (" + suma.getHex() + "): " + veredicto);
+
+        if (veredicto == SumaVerificacion.Veredicto.INCORRECTA) {
+            this.sumaIncorrecta = true;
+            padre.setMensajeCliente("La suma de comprobación no coincide: " + nombre);
+            return false;
+        }
+        return true;
+    }
+
+    // Al reanudar una subida se parte de lo que diga el diario, siempre que el
+    // servidor tenga al menos esos bytes del archivo.
+    private long calcularInicioSubida() throws IOException {
+        if (this.desplazamiento <= 0) {
+            return 0;
+        }
+        if (clienteFtp.sendCommand("SIZE", this.getRutaRemota(archivo.getName())) == FTPReply.FILE_STATUS) {
+            String[] partes = clienteFtp.getReplyString().trim().split(" ");
+            long tamanioRemoto = Long.parseLong(partes[partes.length - 1]);
+            return Math.min(this.desplazamiento, Math.min(tamanioRemoto, archivo.length()));
+        }
+        return 0;
+    }
+
+    // Lleva los bytes transferidos al estado y, cada INTERVALO_PROGRESO bytes, al diario.
+    private void apuntarProgreso(final long inicio) {
+        final DiarioTransferencias diario = padre.getDiario();
+        this.estado.setFase(EstadoTransferencia.Fase.EN_CURSO);
+        this.estado.setBytesTransferidos(inicio);
+        this.clienteFtp.setCopyStreamListener(new CopyStreamAdapter() {
+            private long ultimoApunte = 0;
+
+            @Override
+            public void bytesTransferred(long totalBytesTransferred, int bytesTransferred, long streamSize) {
+                if (ultimoApunte == 0 && totalBytesTransferred == bytesTransferred) {
+                    trazarPrimerByte();
+                }
+                estado.setBytesTransferidos(inicio + totalBytesTransferred);
+                if (idDiario != 0 && totalBytesTransferred - ultimoApunte >= INTERVALO_PROGRESO) {
+                    ultimoApunte = totalBytesTransferred;
+                    diario.progreso(idDiario, inicio + totalBytesTransferred);
+                }
+            }
+        });
+    }
+
+    // Marca la transferencia como terminada en el diario.
+    private void terminarDiario() {
+        if (this.idDiario != 0) {
+            padre.getDiario().terminada(this.idDiario);
+        }
+    }
+
+    // Las transferencias usan rutas completas, así no hace falta CWD.
+    private String getRutaRemota(String nombre) {
+        return CacheListados.unir(this.rutaActual, nombre);
     }
 
     @Override
     public void run() {
-        // Antes que nada conecta:
-        boolean estoyLogueado = this.conectar(servidor, usuario, contrasenia, clienteFtp);
+        this.inicio = System.currentTimeMillis();
+        long pistaAnterior = Trazador.cambiarPista(this.id);
+        try {
+            this.trazarInicio();
+            this.ejecutar();
+        } finally {
+            Trazador.cambiarPista(pistaAnterior);
+            if (!this.enMotor) {
+                this.avisarFin();
+            }
+        }
+    }
 
+    // Da nombre a la pista de la traza y apunta lo que ha esperado en cola.
+    private void trazarInicio() {
+        this.inicioTraza = Trazador.ahora();
+        if (!Trazador.activo()) {
+            return;
+        }
+        if (this.accion == CONECTAR) {
+            Trazador.nombrar(this.id, "conexión " + this.servidor);
+        } else {
+            String nombre = this.accion == SUBIR ? this.archivo.getName() : this.nombreArchivo;
+            Trazador.nombrar(this.id, (this.accion == SUBIR ? "subida " : "descarga ") + this.getRutaRemota(nombre));
+            Trazador.tramo(this.id, "cola", this.creado, null);
+        }
+    }
+
+    // Hace la acción del hilo.
+    private void ejecutar() {
         switch (accion) {
-            case 0: // Conectar.
-                System.out.println("Accion: conectar");
+            case CONECTAR:
+                RegistroEventos.depurar("Accion: conectar");
+                boolean estoyLogueado = this.conectar(servidor, usuario, contrasenia);
+                Trazador.tramo(this.id, estoyLogueado ? "conexión" : "conexión fallida", this.inicioTraza, servidor);
                 if (!fin) {
                     if (this.clienteFtp.isConnected() && estoyLogueado) {
                         this.padre.resultadoConexion(this.clienteFtp);
@@ -149,16 +752,37 @@ public class HiloGenerico implements Runnable {
                 }
                 break;
 
-            case 1: // Subir.
-                System.out.println("Accion: subir");
-                this.setRutaActualRemota(rutaActual);
-                this.subir();
+            case SUBIR:
+                RegistroEventos.depurar("Accion: subir");
+                if (this.tomarSesion()) {
+                    MotorNio motor = this.motorNio();
+                    if (motor != null) {
+                        this.subirNio(motor);
+                    } else {
+                        this.subir();
+                        this.soltarSesion();
+                    }
+                }
                 break;
 
-            case 2: // Descargar.
-                System.out.println("Accion: descargar " + nombreArchivo);
-                this.setRutaActualRemota(rutaActual);
-                this.descargar();
+            case DESCARGAR:
+                RegistroEventos.depurar("Accion: descargar " + nombreArchivo);
+                if (this.servirDesdeCache()) {
+                    break;
+                }
+                if (this.tomarSesion()) {
+                    if (this.calcularClaveCache() && this.servirDesdeCache()) {
+                        this.soltarSesion();
+                        break;
+                    }
+                    MotorNio motor = this.motorNio();
+                    if (motor != null) {
+                        this.descargarNio(motor);
+                    } else {
+                        this.descargar();
+                        this.soltarSesion();
+                    }
+                }
                 break;
         }
     }
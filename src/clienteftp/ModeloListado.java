@@ -0,0 +1,438 @@
+package clienteftp;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase ModeloListado. Modelo de la tabla de archivos remotos. Guarda los
+ * datos por columnas en arrays de tipos primitivos (nombre, tamaño, fecha y si
+ * es directorio) en lugar de un objeto por fila, y la tabla solo pide los
+ * valores de las filas que se ven. Sobre esos arrays mantiene un índice de
+ * orden y otro con las filas que pasan el filtro.
+ *
+ * Al refrescar el mismo directorio solo se aplican los cambios respecto al
+ * listado anterior y se avisa a la tabla fila a fila, así se conservan la
+ * selección y la posición del scroll.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class ModeloListado extends AbstractTableModel {
+
+    protected static final int COLUMNA_NOMBRE = 0;
+    protected static final int COLUMNA_TAMANIO = 1;
+    protected static final int COLUMNA_FECHA = 2;
+    private static final String[] TITULOS = {"Nombre", "Tamaño", "Modificado"};
+
+    // Datos por columnas. Cada entrada ocupa un hueco; los huecos de las
+    // entradas eliminadas se reutilizan para las nuevas.
+    private String[] nombres;
+    private long[] tamanios;
+    private long[] fechas;
+    private boolean[] directorios;
+    private int[] huecosLibres;
+    private int numeroHuecos, numeroHuecosLibres;
+    private final Map<String, Integer> indice;
+    private final DiferenciaListado diferencia;
+    private String ruta;
+    // Huecos de todas las entradas en el orden actual.
+    private int[] orden;
+    private int numeroEntradas;
+    // Huecos de las entradas que pasan el filtro, en el orden actual.
+    private int[] vista;
+    private int numeroVisibles;
+    private int columnaOrden;
+    private boolean ascendente;
+    private String filtro;
+    private final Comparator<Integer> comparador;
+    private final SimpleDateFormat formatoFecha;
+
+    /**
+     * Constructor del modelo, vacío y ordenado por nombre.
+     */
+    public ModeloListado() {
+        this.indice = new HashMap<>();
+        this.diferencia = new DiferenciaListado();
+        this.columnaOrden = COLUMNA_NOMBRE;
+        this.ascendente = true;
+        this.filtro = "";
+        this.formatoFecha = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+        this.comparador = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return comparar(a, b);
+            }
+        };
+        this.vaciar(0);
+    }
+
+    /**
+     * Muestra el listado de un directorio. Si es el mismo directorio que ya se
+     * mostraba solo se aplican los cambios; si es otro se carga entero.
+     *
+     * @param ruta Ruta del directorio remoto.
+     * @param archivos Archivos y directorios del listado remoto.
+     */
+    public void setEntradas(String ruta, FTPFile[] archivos) {
+        boolean mismoDirectorio = ruta != null && ruta.equals(this.ruta);
+        this.ruta = ruta;
+
+        if (!mismoDirectorio) {
+            this.diferencia.vaciar();
+        }
+        DiferenciaListado.Cambios cambios = this.diferencia.comparar(archivos);
+
+        // Con muchos cambios sale más barato recargar todo de una vez.
+        if (!mismoDirectorio || cambios.getNumeroCambios() > this.numeroEntradas / 2) {
+            this.cargarTodo(archivos);
+            return;
+        }
+
+        for (String nombre : cambios.eliminados) {
+            this.eliminar(nombre);
+        }
+        for (FTPFile archivo : cambios.modificados) {
+            this.modificar(archivo);
+        }
+        for (FTPFile archivo : cambios.nuevos) {
+            this.insertar(this.ocuparHueco(archivo));
+        }
+    }
+
+    /**
+     * Ordena por una columna. Si ya estaba ordenado por esa columna invierte
+     * el sentido.
+     *
+     * @param columna Índice de la columna.
+     */
+    public void ordenarPor(int columna) {
+        if (columna == this.columnaOrden) {
+            this.ascendente = !this.ascendente;
+        } else {
+            this.columnaOrden = columna;
+            this.ascendente = true;
+        }
+        this.ordenar();
+        this.filtrarTodo();
+        this.fireTableDataChanged();
+    }
+
+    /**
+     * Filtra las filas cuyo nombre contiene el texto indicado, sin distinguir
+     * mayúsculas. Si el texto nuevo amplía el anterior solo se revisan las
+     * filas que ya pasaban el filtro.
+     *
+     * @param texto Texto que deben contener los nombres.
+     */
+    public void setFiltro(String texto) {
+        String nuevo = texto.trim().toLowerCase();
+        boolean amplia = nuevo.contains(this.filtro);
+        this.filtro = nuevo;
+
+        if (amplia) {
+            this.filtrarVisibles();
+        } else {
+            this.filtrarTodo();
+        }
+        this.fireTableDataChanged();
+    }
+
+    /**
+     * Obtiene el nombre de la entrada que se ve en una fila.
+     *
+     * @param fila Fila de la tabla.
+     * @return Nombre del archivo o directorio.
+     */
+    public String getNombre(int fila) {
+        return this.nombres[this.vista[fila]];
+    }
+
+    /**
+     * Indica si la entrada que se ve en una fila es un directorio.
+     *
+     * @param fila Fila de la tabla.
+     * @return true si es un directorio.
+     */
+    public boolean isDirectorio(int fila) {
+        return this.directorios[this.vista[fila]];
+    }
+
+    /**
+     * Obtiene el número total de entradas, incluidas las filtradas.
+     *
+     * @return Número de entradas.
+     */
+    public int getNumeroEntradas() {
+        return this.numeroEntradas;
+    }
+
+    @Override
+    public int getRowCount() {
+        return this.numeroVisibles;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return TITULOS.length;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return TITULOS[columna];
+    }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        int i = this.vista[fila];
+        switch (columna) {
+            case COLUMNA_NOMBRE:
+                return this.directorios[i] ? this.nombres[i] + "/" : this.nombres[i];
+            case COLUMNA_TAMANIO:
+                return this.directorios[i] ? "" : formatearTamanio(this.tamanios[i]);
+            default:
+                return this.fechas[i] == 0 ? "" : this.formatoFecha.format(new Date(this.fechas[i]));
+        }
+    }
+
+    // Deja el modelo vacío con sitio para el número de entradas indicado.
+    private void vaciar(int capacidad) {
+        this.nombres = new String[capacidad];
+        this.tamanios = new long[capacidad];
+        this.fechas = new long[capacidad];
+        this.directorios = new boolean[capacidad];
+        this.huecosLibres = new int[capacidad];
+        this.orden = new int[capacidad];
+        this.vista = new int[capacidad];
+        this.numeroHuecos = 0;
+        this.numeroHuecosLibres = 0;
+        this.numeroEntradas = 0;
+        this.numeroVisibles = 0;
+        this.indice.clear();
+    }
+
+    // Sustituye todas las entradas y avisa a la tabla de que ha cambiado todo.
+    private void cargarTodo(FTPFile[] archivos) {
+        this.vaciar(archivos.length);
+        for (FTPFile archivo : archivos) {
+            this.orden[this.numeroEntradas++] = this.ocuparHueco(archivo);
+        }
+        this.ordenar();
+        this.filtrarTodo();
+        this.fireTableDataChanged();
+    }
+
+    // Guarda una entrada en un hueco libre (o al final) y la añade al índice.
+    private int ocuparHueco(FTPFile archivo) {
+        int hueco;
+        if (this.numeroHuecosLibres > 0) {
+            hueco = this.huecosLibres[--this.numeroHuecosLibres];
+        } else {
+            if (this.numeroHuecos == this.nombres.length) {
+                this.ampliar();
+            }
+            hueco = this.numeroHuecos++;
+        }
+        this.rellenarHueco(hueco, archivo);
+        this.indice.put(this.nombres[hueco], hueco);
+        return hueco;
+    }
+
+    // Copia los datos de la entrada en su hueco.
+    private void rellenarHueco(int hueco, FTPFile archivo) {
+        this.nombres[hueco] = archivo.getName().intern();
+        this.tamanios[hueco] = archivo.getSize();
+        this.fechas[hueco] = archivo.getTimestamp() == null ? 0 : archivo.getTimestamp().getTimeInMillis();
+        this.directorios[hueco] = archivo.isDirectory();
+    }
+
+    // Duplica la capacidad de todos los arrays.
+    private void ampliar() {
+        int capacidad = Math.max(16, this.nombres.length * 2);
+        this.nombres = Arrays.copyOf(this.nombres, capacidad);
+        this.tamanios = Arrays.copyOf(this.tamanios, capacidad);
+        this.fechas = Arrays.copyOf(this.fechas, capacidad);
+        this.directorios = Arrays.copyOf(this.directorios, capacidad);
+        this.huecosLibres = Arrays.copyOf(this.huecosLibres, capacidad);
+        this.orden = Arrays.copyOf(this.orden, capacidad);
+        this.vista = Arrays.copyOf(this.vista, capacidad);
+    }
+
+    // Quita una entrada del orden, de la vista y del índice, y libera su hueco.
+    private void eliminar(String nombre) {
+        Integer hueco = this.indice.remove(nombre);
+        if (hueco != null) {
+            this.quitarDeIndices(hueco);
+            this.nombres[hueco] = null;
+            this.huecosLibres[this.numeroHuecosLibres++] = hueco;
+        }
+    }
+
+    // Actualiza una entrada. Si sigue en el mismo sitio del orden solo se
+    // repinta su fila; si no, se saca y se vuelve a meter en su nuevo sitio.
+    private void modificar(FTPFile archivo) {
+        Integer hueco = this.indice.get(archivo.getName());
+        if (hueco == null) {
+            return;
+        }
+
+        int posicion = this.buscar(this.orden, this.numeroEntradas, hueco);
+        int fila = this.pasaFiltro(hueco) ? this.buscar(this.vista, this.numeroVisibles, hueco) : -1;
+        this.rellenarHueco(hueco, archivo);
+
+        boolean sigueEnOrden = (posicion == 0 || this.comparar(this.orden[posicion - 1], hueco) < 0)
+                && (posicion == this.numeroEntradas - 1 || this.comparar(hueco, this.orden[posicion + 1]) < 0);
+        if (sigueEnOrden && fila >= 0) {
+            this.fireTableRowsUpdated(fila, fila);
+        } else {
+            this.numeroEntradas = quitar(this.orden, this.numeroEntradas, posicion);
+            if (fila >= 0) {
+                this.numeroVisibles = quitar(this.vista, this.numeroVisibles, fila);
+                this.fireTableRowsDeleted(fila, fila);
+            }
+            this.insertar(hueco);
+        }
+    }
+
+    // Mete una entrada en su sitio del orden y, si pasa el filtro, de la vista.
+    private void insertar(int hueco) {
+        int posicion = -this.buscar(this.orden, this.numeroEntradas, hueco) - 1;
+        this.numeroEntradas = meter(this.orden, this.numeroEntradas, posicion, hueco);
+
+        if (this.pasaFiltro(hueco)) {
+            int fila = -this.buscar(this.vista, this.numeroVisibles, hueco) - 1;
+            this.numeroVisibles = meter(this.vista, this.numeroVisibles, fila, hueco);
+            this.fireTableRowsInserted(fila, fila);
+        }
+    }
+
+    // Saca una entrada del orden y, si estaba visible, de la vista.
+    private void quitarDeIndices(int hueco) {
+        int posicion = this.buscar(this.orden, this.numeroEntradas, hueco);
+        this.numeroEntradas = quitar(this.orden, this.numeroEntradas, posicion);
+
+        if (this.pasaFiltro(hueco)) {
+            int fila = this.buscar(this.vista, this.numeroVisibles, hueco);
+            this.numeroVisibles = quitar(this.vista, this.numeroVisibles, fila);
+            this.fireTableRowsDeleted(fila, fila);
+        }
+    }
+
+    // Búsqueda binaria de un hueco en un índice ordenado. Devuelve su
+    // posición o, si no está, (-(posición donde iría) - 1).
+    private int buscar(int[] indices, int longitud, int hueco) {
+        int bajo = 0, alto = longitud - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int resultado = this.comparar(indices[medio], hueco);
+            if (resultado < 0) {
+                bajo = medio + 1;
+            } else if (resultado > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    // Mete un valor en una posición del array desplazando el resto.
+    private static int meter(int[] indices, int longitud, int posicion, int valor) {
+        System.arraycopy(indices, posicion, indices, posicion + 1, longitud - posicion);
+        indices[posicion] = valor;
+        return longitud + 1;
+    }
+
+    // Quita el valor de una posición del array desplazando el resto.
+    private static int quitar(int[] indices, int longitud, int posicion) {
+        System.arraycopy(indices, posicion + 1, indices, posicion, longitud - posicion - 1);
+        return longitud - 1;
+    }
+
+    // Recalcula el índice de orden.
+    private void ordenar() {
+        Integer[] huecos = new Integer[this.numeroEntradas];
+        for (int i = 0; i < huecos.length; i++) {
+            huecos[i] = this.orden[i];
+        }
+
+        Arrays.sort(huecos, this.comparador);
+        for (int i = 0; i < huecos.length; i++) {
+            this.orden[i] = huecos[i];
+        }
+    }
+
+    // Compara dos entradas: primero los directorios, después la columna de
+    // orden y, para que nunca haya empates, el nombre y el hueco.
+    private int comparar(int a, int b) {
+        if (this.directorios[a] != this.directorios[b]) {
+            return this.directorios[a] ? -1 : 1;
+        }
+
+        int resultado;
+        switch (this.columnaOrden) {
+            case COLUMNA_TAMANIO:
+                resultado = Long.compare(this.tamanios[a], this.tamanios[b]);
+                break;
+            case COLUMNA_FECHA:
+                resultado = Long.compare(this.fechas[a], this.fechas[b]);
+                break;
+            default:
+                resultado = this.nombres[a].compareToIgnoreCase(this.nombres[b]);
+                break;
+        }
+        if (resultado == 0) {
+            resultado = this.nombres[a].compareTo(this.nombres[b]);
+        }
+        if (resultado == 0) {
+            resultado = Integer.compare(a, b);
+        }
+        return this.ascendente ? resultado : -resultado;
+    }
+
+    // Aplica el filtro a todas las entradas.
+    private void filtrarTodo() {
+        this.numeroVisibles = 0;
+        for (int j = 0; j < this.numeroEntradas; j++) {
+            if (this.pasaFiltro(this.orden[j])) {
+                this.vista[this.numeroVisibles++] = this.orden[j];
+            }
+        }
+    }
+
+    // Aplica el filtro solo a las entradas que ya estaban visibles.
+    private void filtrarVisibles() {
+        int visibles = 0;
+        for (int j = 0; j < this.numeroVisibles; j++) {
+            if (this.pasaFiltro(this.vista[j])) {
+                this.vista[visibles++] = this.vista[j];
+            }
+        }
+        this.numeroVisibles = visibles;
+    }
+
+    // Indica si una entrada pasa el filtro actual.
+    private boolean pasaFiltro(int i) {
+        return this.filtro.isEmpty() || this.nombres[i].toLowerCase().contains(this.filtro);
+    }
+
+    // Pasa un tamaño en bytes a una cadena legible.
+    private static String formatearTamanio(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] unidades = {"KB", "MB", "GB", "TB"};
+        double valor = bytes;
+        int unidad = -1;
+        while (valor >= 1024 && unidad < unidades.length - 1) {
+            valor /= 1024;
+            unidad++;
+        }
+        return String.format("%.1f %s", valor, unidades[unidad]);
+    }
+}
@@ -0,0 +1,444 @@
+package clienteftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase MotorNio. Mueve los datos de las transferencias sin dejar un hilo
+ * bloqueado por cada una. La conexión de control sigue siendo de commons-net;
+ * solo la conexión de datos pasiva (EPSV o PASV) se abre como SocketChannel
+ * no bloqueante y la atienden unos pocos bucles con un Selector cada uno. Los
+ * archivos locales se leen y escriben con FileChannel y los buffers directos
+ * se reutilizan entre transferencias.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class MotorNio {
+
+    // Lecturas o escrituras seguidas de una misma transferencia antes de
+    // atender a las demás.
+    private static final int RONDAS_POR_AVISO = 8;
+    private static final Pattern PATRON_PASV = Pattern.compile("(\\d{1,3}),(\\d{1,3}),(\\d{1,3}),(\\d{1,3}),(\\d{1,3}),(\\d{1,3})");
+    private static final Pattern PATRON_EPSV = Pattern.compile("\\((.)\\1\\1(\\d+)\\1\\)");
+
+    private final Bucle[] bucles;
+    private final AtomicInteger siguienteBucle;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+    private final AtomicInteger buffersLibres;
+    private final int tamanioBuffer, maxBuffersLibres;
+    private final ExecutorService finalizador;
+
+    /**
+     * Constructor del motor, arranca los bucles.
+     *
+     * @param hilos Número de bucles, cada uno con su hilo y su Selector.
+     * @param tamanioBuffer Tamaño de cada buffer directo en bytes.
+     * @param maxBuffersLibres Buffers que se guardan para reutilizar.
+     * @throws IOException Si no se puede abrir un Selector.
+     */
+    public MotorNio(int hilos, int tamanioBuffer, int maxBuffersLibres) throws IOException {
+        this.tamanioBuffer = Math.max(4096, tamanioBuffer);
+        this.maxBuffersLibres = Math.max(0, maxBuffersLibres);
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.buffersLibres = new AtomicInteger();
+        this.siguienteBucle = new AtomicInteger();
+        this.bucles = new Bucle[Math.max(1, hilos)];
+        for (int i = 0; i < this.bucles.length; i++) {
+            this.bucles[i] = new Bucle(i + 1);
+        }
+
+        // El final de cada transferencia lee la respuesta del servidor, que
+        // bloquea, así que no se hace en los bucles.
+        final AtomicInteger numero = new AtomicInteger();
+        ThreadPoolExecutor ejecutor = new ThreadPoolExecutor(this.bucles.length * 2, this.bucles.length * 2,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable tarea) {
+                Thread hilo = new Thread(tarea, "nio-final-" + numero.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            }
+        });
+        ejecutor.allowCoreThreadTimeOut(true);
+        this.finalizador = ejecutor;
+    }
+
+    /**
+     * Detiene los bucles. Las transferencias en curso se dan por fallidas.
+     */
+    public void detener() {
+        for (Bucle bucle : this.bucles) {
+            bucle.detener();
+        }
+        this.finalizador.shutdown();
+    }
+
+    /**
+     * Pide al servidor una conexión de datos pasiva, primero con EPSV y si no
+     * lo admite con PASV, y la abre. Hay que enviar después el comando de la
+     * transferencia (RETR o STOR) por la conexión de control.
+     *
+     * @param cliente Sesión logueada.
+     * @param tiempoMaximo Milisegundos máximos para conectar.
+     * @return Canal conectado y en modo no bloqueante.
+     * @throws IOException Si el servidor no da una dirección o no se conecta.
+     */
+    public static SocketChannel abrirDatos(FTPClient cliente, int tiempoMaximo) throws IOException {
+        InetAddress remota = cliente.getRemoteAddress();
+        InetSocketAddress direccion;
+        if (cliente.epsv() == FTPReply.ENTERING_EPSV_MODE) {
+            Matcher m = PATRON_EPSV.matcher(cliente.getReplyString());
+            if (!m.find()) {
+                throw new IOException("Respuesta EPSV no válida: " + cliente.getReplyString());
+            }
+            direccion = new InetSocketAddress(remota, Integer.parseInt(m.group(2)));
+        } else if (cliente.pasv() == FTPReply.ENTERING_PASSIVE_MODE) {
+            direccion = leerPasv(cliente.getReplyString(), remota);
+        } else {
+            throw new IOException("El servidor no admite modo pasivo: " + cliente.getReplyString());
+        }
+
+        SocketChannel canal = SocketChannel.open();
+        try {
+            canal.socket().connect(direccion, tiempoMaximo);
+            canal.configureBlocking(false);
+        } catch (IOException ex) {
+            canal.close();
+            throw ex;
+        }
+        return canal;
+    }
+
+    // Dirección de una respuesta 227. Si es privada y el servidor no, está
+    // detrás de NAT y se usa la dirección de la conexión de control.
+    private static InetSocketAddress leerPasv(String respuesta, InetAddress remota) throws IOException {
+        Matcher m = PATRON_PASV.matcher(respuesta);
+        if (!m.find()) {
+            throw new IOException("Respuesta PASV no válida: " + respuesta);
+        }
+        byte[] ip = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            ip[i] = (byte) Integer.parseInt(m.group(i + 1));
+        }
+        int puerto = Integer.parseInt(m.group(5)) * 256 + Integer.parseInt(m.group(6));
+        InetAddress anunciada = InetAddress.getByAddress(ip);
+        if (anunciada.isSiteLocalAddress() && !remota.isSiteLocalAddress() || anunciada.isAnyLocalAddress()) {
+            anunciada = remota;
+        }
+        return new InetSocketAddress(anunciada, puerto);
+    }
+
+    /**
+     * Recibe por el canal y escribe en el archivo hasta que el servidor cierre
+     * la conexión de datos.
+     *
+     * @param canal Conexión de datos ya abierta, tras enviar RETR.
+     * @param archivo Archivo local abierto para escribir.
+     * @param posicion Byte del archivo donde se empieza a escribir.
+     * @param suma Suma que se calcula de paso, o null.
+     * @param oyente Recibe el progreso y el final.
+     * @return La transferencia, para poder cancelarla.
+     */
+    public Transferencia descargar(SocketChannel canal, FileChannel archivo, long posicion, SumaVerificacion suma, Oyente oyente) {
+        return this.registrar(new Transferencia(false, canal, archivo, posicion, suma, oyente));
+    }
+
+    /**
+     * Lee el archivo y lo envía por el canal. Al acabar cierra la conexión de
+     * datos para que el servidor sepa que el archivo está completo.
+     *
+     * @param canal Conexión de datos ya abierta, tras enviar STOR.
+     * @param archivo Archivo local abierto para leer.
+     * @param posicion Byte del archivo desde el que se envía.
+     * @param suma Suma que se calcula de paso, o null.
+     * @param oyente Recibe el progreso y el final.
+     * @return La transferencia, para poder cancelarla.
+     */
+    public Transferencia subir(SocketChannel canal, FileChannel archivo, long posicion, SumaVerificacion suma, Oyente oyente) {
+        return this.registrar(new Transferencia(true, canal, archivo, posicion, suma, oyente));
+    }
+
+    // Reparte las transferencias entre los bucles por turnos.
+    private Transferencia registrar(final Transferencia transferencia) {
+        final Bucle bucle = this.bucles[Math.floorMod(this.siguienteBucle.getAndIncrement(), this.bucles.length)];
+        transferencia.bucle = bucle;
+        bucle.ejecutar(new Runnable() {
+            @Override
+            public void run() {
+                transferencia.empezar();
+            }
+        });
+        return transferencia;
+    }
+
+    // Toma un buffer libre o crea uno.
+    private ByteBuffer tomarBuffer() {
+        ByteBuffer buffer = this.buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(this.tamanioBuffer);
+        }
+        this.buffersLibres.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    // Guarda el buffer para otra transferencia si no sobran.
+    private void devolverBuffer(ByteBuffer buffer) {
+        if (this.buffersLibres.incrementAndGet() <= this.maxBuffersLibres) {
+            this.buffers.offer(buffer);
+        } else {
+            this.buffersLibres.decrementAndGet();
+        }
+    }
+
+    /**
+     * Recibe los avisos de una transferencia.
+     */
+    public interface Oyente {
+
+        /**
+         * Se llama desde el bucle cada vez que se mueven datos. No debe
+         * bloquear.
+         *
+         * @param bytes Bytes movidos desde que empezó.
+         */
+        void progreso(long bytes);
+
+        /**
+         * Se llama una vez, fuera de los bucles, cuando la conexión de datos
+         * ya está cerrada. Aquí se lee la respuesta final del servidor.
+         *
+         * @param error null si los datos se movieron enteros, o el motivo.
+         */
+        void terminada(IOException error);
+    }
+
+    /**
+     * Una transferencia atendida por un bucle.
+     */
+    public class Transferencia {
+
+        private final boolean subida;
+        private final SocketChannel canal;
+        private final FileChannel archivo;
+        private final SumaVerificacion suma;
+        private final Oyente oyente;
+        private Bucle bucle;
+        private ByteBuffer buffer;
+        private SelectionKey clave;
+        private long posicion, bytes;
+        private boolean acabada;
+
+        private Transferencia(boolean subida, SocketChannel canal, FileChannel archivo, long posicion, SumaVerificacion suma, Oyente oyente) {
+            this.subida = subida;
+            this.canal = canal;
+            this.archivo = archivo;
+            this.posicion = posicion;
+            this.suma = suma;
+            this.oyente = oyente;
+        }
+
+        /**
+         * Corta la transferencia. El oyente recibe el final con error.
+         */
+        public void cancelar() {
+            this.bucle.ejecutar(new Runnable() {
+                @Override
+                public void run() {
+                    acabar(new IOException("Transferencia cancelada"));
+                }
+            });
+        }
+
+        // En el hilo del bucle: se apunta en su Selector.
+        private void empezar() {
+            try {
+                this.buffer = tomarBuffer();
+                if (this.subida) {
+                    // Sin datos leídos aún, el buffer queda vacío para escribir.
+                    this.buffer.flip();
+                }
+                this.clave = this.canal.register(this.bucle.selector, this.subida ? SelectionKey.OP_WRITE : SelectionKey.OP_READ, this);
+            } catch (IOException | RuntimeException ex) {
+                this.acabar(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+            }
+        }
+
+        // En el hilo del bucle: el canal está listo.
+        private void atender() throws IOException {
+            for (int i = 0; i < RONDAS_POR_AVISO && !this.acabada; i++) {
+                if (this.subida ? !this.enviar() : !this.recibir()) {
+                    return;
+                }
+            }
+        }
+
+        // Pasa lo recibido al archivo. Devuelve false si hay que esperar.
+        private boolean recibir() throws IOException {
+            this.buffer.clear();
+            int leidos = this.canal.read(this.buffer);
+            if (leidos == -1) {
+                this.acabar(null);
+                return false;
+            }
+            if (leidos == 0) {
+                return false;
+            }
+            this.buffer.flip();
+            if (this.suma != null) {
+                this.suma.sumar(this.buffer);
+            }
+            while (this.buffer.hasRemaining()) {
+                this.posicion += this.archivo.write(this.buffer, this.posicion);
+            }
+            this.bytes += leidos;
+            this.oyente.progreso(this.bytes);
+            return true;
+        }
+
+        // Envía lo que quede en el buffer o lee más del archivo. Devuelve
+        // false si hay que esperar.
+        private boolean enviar() throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                this.buffer.clear();
+                int leidos = this.archivo.read(this.buffer, this.posicion);
+                this.buffer.flip();
+                if (leidos == -1) {
+                    this.acabar(null);
+                    return false;
+                }
+                this.posicion += leidos;
+                if (this.suma != null) {
+                    this.suma.sumar(this.buffer);
+                }
+            }
+            int escritos = this.canal.write(this.buffer);
+            this.bytes += escritos;
+            if (escritos > 0) {
+                this.oyente.progreso(this.bytes);
+            }
+            return !this.buffer.hasRemaining();
+        }
+
+        // Cierra todo, devuelve el buffer y avisa al oyente fuera del bucle.
+        private void acabar(final IOException error) {
+            if (this.acabada) {
+                return;
+            }
+            this.acabada = true;
+            if (this.clave != null) {
+                this.clave.cancel();
+            }
+            cerrar(this.canal);
+            cerrar(this.archivo);
+            if (this.buffer != null) {
+                devolverBuffer(this.buffer);
+                this.buffer = null;
+            }
+            Runnable aviso = new Runnable() {
+                @Override
+                public void run() {
+                    oyente.terminada(error);
+                }
+            };
+            try {
+                finalizador.execute(aviso);
+            } catch (RejectedExecutionException ex) {
+                // El motor se está deteniendo.
+                aviso.run();
+            }
+        }
+    }
+
+    // Cierra un canal o selector sin propagar el error.
+    private static void cerrar(Closeable canal) {
+        try {
+            canal.close();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al cerrar un canal", ex);
+        }
+    }
+
+    // Un hilo con su Selector y la cola de tareas que le mandan otros hilos.
+    private class Bucle implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tareas;
+        private volatile boolean activo;
+
+        private Bucle(int numero) throws IOException {
+            this.selector = Selector.open();
+            this.tareas = new ConcurrentLinkedQueue<>();
+            this.activo = true;
+            Thread hilo = new Thread(this, "nio-" + numero);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        // Deja una tarea para el hilo del bucle y lo despierta.
+        private void ejecutar(Runnable tarea) {
+            this.tareas.add(tarea);
+            this.selector.wakeup();
+        }
+
+        private void detener() {
+            this.activo = false;
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (this.activo) {
+                    this.selector.select();
+                    Runnable tarea;
+                    while ((tarea = this.tareas.poll()) != null) {
+                        tarea.run();
+                    }
+                    Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey clave = it.next();
+                        it.remove();
+                        Transferencia transferencia = (Transferencia) clave.attachment();
+                        try {
+                            if (clave.isValid()) {
+                                transferencia.atender();
+                            }
+                        } catch (IOException ex) {
+                            transferencia.acabar(ex);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                RegistroEventos.error("Fallo en el bucle NIO", ex);
+            }
+            // Lo que quede abierto se da por fallido.
+            for (SelectionKey clave : this.selector.keys()) {
+                ((Transferencia) clave.attachment()).acabar(new IOException("Motor detenido"));
+            }
+            cerrar(this.selector);
+        }
+    }
+}
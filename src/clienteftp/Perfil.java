@@ -0,0 +1,197 @@
+package clienteftp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase Perfil. Datos de conexión a un servidor FTP: dirección, puerto,
+ * credenciales, seguridad TLS, modo de la conexión de datos, tamaño de buffer
+ * y número máximo de sesiones.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class Perfil {
+
+    protected static final int PUERTO_POR_DEFECTO = 21;
+    protected static final int PUERTO_TLS_IMPLICITO = 990;
+    protected static final byte SIN_TLS = 0;
+    protected static final byte TLS_EXPLICITO = 1;
+    protected static final byte TLS_IMPLICITO = 2;
+
+    private final String servidor, usuario, contrasenia;
+    private final int puerto, bufferDatos, maxSesiones;
+    private final boolean pasivo, protegerDatos;
+    private final byte seguridad;
+
+    /**
+     * Constructor del perfil.
+     *
+     * @param servidor Dirección del servidor.
+     * @param puerto Puerto de control.
+     * @param usuario Nombre de usuario.
+     * @param contrasenia Contraseña del usuario.
+     * @param seguridad SIN_TLS, TLS_EXPLICITO o TLS_IMPLICITO.
+     * @param protegerDatos true cifra también los datos (PROT P), false solo
+     * la conexión de control (PROT C).
+     * @param pasivo true para modo pasivo, false para activo.
+     * @param bufferDatos Tamaño del buffer de la conexión de datos en bytes.
+     * @param maxSesiones Número máximo de sesiones abiertas a la vez.
+     */
+    public Perfil(String servidor, int puerto, String usuario, String contrasenia, byte seguridad, boolean protegerDatos,
+            boolean pasivo, int bufferDatos, int maxSesiones) {
+        this.servidor = servidor;
+        this.puerto = puerto;
+        this.usuario = usuario;
+        this.contrasenia = contrasenia;
+        this.seguridad = seguridad;
+        this.protegerDatos = protegerDatos;
+        this.pasivo = pasivo;
+        this.bufferDatos = bufferDatos;
+        this.maxSesiones = maxSesiones;
+    }
+
+    /**
+     * Nombre con el que se identifica el perfil, usuario@servidor:puerto.
+     *
+     * @return El nombre del perfil.
+     */
+    public String getNombre() {
+        return usuario + "@" + servidor + (puerto == PUERTO_POR_DEFECTO ? "" : ":" + puerto);
+    }
+
+    /**
+     * Obtiene la dirección del servidor.
+     *
+     * @return Dirección del servidor.
+     */
+    public String getServidor() {
+        return servidor;
+    }
+
+    /**
+     * Obtiene el puerto de control.
+     *
+     * @return Número de puerto.
+     */
+    public int getPuerto() {
+        return puerto;
+    }
+
+    /**
+     * Obtiene el nombre de usuario.
+     *
+     * @return Nombre de usuario.
+     */
+    public String getUsuario() {
+        return usuario;
+    }
+
+    /**
+     * Obtiene la contraseña del usuario.
+     *
+     * @return La contraseña.
+     */
+    public String getContrasenia() {
+        return contrasenia;
+    }
+
+    /**
+     * Obtiene el tipo de seguridad de la conexión.
+     *
+     * @return SIN_TLS, TLS_EXPLICITO o TLS_IMPLICITO.
+     */
+    public byte getSeguridad() {
+        return seguridad;
+    }
+
+    /**
+     * Indica si la conexión de datos va cifrada cuando se usa TLS.
+     *
+     * @return true PROT P, false PROT C.
+     */
+    public boolean isProtegerDatos() {
+        return protegerDatos;
+    }
+
+    /**
+     * Indica si las conexiones de datos se abren solo en modo pasivo. Si no,
+     * el modo se elige probando con el servidor, activo incluido.
+     *
+     * @return true solo pasivo, false automático.
+     */
+    public boolean isPasivo() {
+        return pasivo;
+    }
+
+    /**
+     * Obtiene el tamaño del buffer de la conexión de datos.
+     *
+     * @return Tamaño en bytes.
+     */
+    public int getBufferDatos() {
+        return bufferDatos;
+    }
+
+    /**
+     * Obtiene el número máximo de sesiones abiertas a la vez.
+     *
+     * @return Número de sesiones.
+     */
+    public int getMaxSesiones() {
+        return maxSesiones;
+    }
+
+    /**
+     * Pone el cliente en el modo de conexión de datos del perfil, hasta que se
+     * sepa cuál funciona con el servidor.
+     *
+     * @param cliente Cliente FTP conectado.
+     */
+    public void aplicarModo(FTPClient cliente) {
+        if (this.pasivo) {
+            cliente.enterLocalPassiveMode();
+        } else {
+            cliente.enterLocalActiveMode();
+        }
+    }
+
+    /**
+     * Escribe el perfil.
+     *
+     * @param escritor Flujo de salida.
+     * @throws IOException Si no se puede escribir.
+     */
+    public void escribir(DataOutputStream escritor) throws IOException {
+        escritor.writeUTF(this.servidor);
+        escritor.writeInt(this.puerto);
+        escritor.writeUTF(this.usuario);
+        escritor.writeUTF(this.contrasenia);
+        escritor.writeByte(this.seguridad);
+        escritor.writeBoolean(this.protegerDatos);
+        escritor.writeBoolean(this.pasivo);
+        escritor.writeInt(this.bufferDatos);
+        escritor.writeInt(this.maxSesiones);
+    }
+
+    /**
+     * Lee un perfil escrito con escribir.
+     *
+     * @param lector Flujo de entrada.
+     * @param version Versión del archivo; la 1 no tenía seguridad TLS.
+     * @return El perfil leído.
+     * @throws IOException Si no se puede leer.
+     */
+    public static Perfil leer(DataInputStream lector, int version) throws IOException {
+        String servidor = lector.readUTF();
+        int puerto = lector.readInt();
+        String usuario = lector.readUTF();
+        String contrasenia = lector.readUTF();
+        byte seguridad = version >= 2 ? lector.readByte() : SIN_TLS;
+        boolean protegerDatos = version >= 2 ? lector.readBoolean() : true;
+        return new Perfil(servidor, puerto, usuario, contrasenia, seguridad, protegerDatos,
+                lector.readBoolean(), lector.readInt(), lector.readInt());
+    }
+}
@@ -0,0 +1,203 @@
+package clienteftp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase PlanificadorTransferencias. Ejecuta las subidas y descargas con un
+ * número fijo de hilos en lugar de crear un hilo por archivo, y deja en curso
+ * a la vez tantas como sesiones tiene el pool. Con el motor bloqueante cada
+ * transferencia ocupa su hilo hasta acabar y hay un hilo por sesión; con el
+ * motor NIO el hilo solo prepara la transferencia (sesión, EPSV, REST, RETR)
+ * y queda libre al entregarla, así que bastan unos pocos hilos para muchas
+ * transferencias en curso. Lo que no cabe espera en uno de tres carriles
+ * (alta, normal y baja prioridad); cada vez que queda un hilo libre se elige
+ * carril por turno ponderado, así los de más peso salen antes pero los de
+ * menos no se quedan parados. Una transferencia en cola se puede adelantar
+ * para que sea la siguiente sin cancelar las demás.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class PlanificadorTransferencias {
+
+    protected static final byte ALTA = 0;
+    protected static final byte NORMAL = 1;
+    protected static final byte BAJA = 2;
+
+    private final ThreadPoolExecutor ejecutor;
+    private final List<ConcurrentLinkedDeque<HiloGenerico>> carriles;
+    private final ConcurrentLinkedDeque<HiloGenerico> adelantados;
+    private final int[] pesos, creditos;
+    // Transferencias que aún pueden empezar sin pasar del máximo en curso.
+    private final Semaphore plazas;
+    private final Runnable turno, liberar;
+
+    /**
+     * Constructor del planificador.
+     *
+     * @param hilos Número de hilos que ejecutan o preparan transferencias.
+     * @param simultaneas Número máximo de transferencias en curso a la vez.
+     * @param pesos Peso de los carriles alta, normal y baja.
+     */
+    public PlanificadorTransferencias(int hilos, int simultaneas, int[] pesos) {
+        final AtomicInteger contador = new AtomicInteger();
+        int maximo = Math.max(1, hilos);
+        this.ejecutor = new ThreadPoolExecutor(maximo, maximo, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable tarea) {
+                Thread hilo = new Thread(tarea, "transferencia-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            }
+        });
+        // Sin transferencias no se quedan hilos parados.
+        this.ejecutor.allowCoreThreadTimeOut(true);
+
+        this.carriles = new ArrayList<>();
+        this.pesos = new int[3];
+        for (int i = 0; i < 3; i++) {
+            this.carriles.add(new ConcurrentLinkedDeque<HiloGenerico>());
+            this.pesos[i] = i < pesos.length ? Math.max(1, pesos[i]) : 1;
+        }
+        this.creditos = new int[3];
+        this.adelantados = new ConcurrentLinkedDeque<>();
+        this.plazas = new Semaphore(Math.max(1, simultaneas));
+
+        // Cada transferencia en cola tiene su turno en el ejecutor; el turno
+        // no lleva la transferencia, la elige al empezar. Sin plaza libre no
+        // espera: la transferencia se queda en su carril y la saca el turno
+        // que lanza la próxima que acabe.
+        this.turno = new Runnable() {
+            @Override
+            public void run() {
+                if (!plazas.tryAcquire()) {
+                    return;
+                }
+                HiloGenerico hilo = siguiente();
+                if (hilo == null) {
+                    plazas.release();
+                    return;
+                }
+                hilo.setAlTerminar(liberar);
+                hilo.run();
+            }
+        };
+        // Lo llama cada transferencia al acabar del todo, también desde el
+        // motor NIO cuando su hilo ya está preparando otra.
+        this.liberar = new Runnable() {
+            @Override
+            public void run() {
+                plazas.release();
+                if (hayEnCola()) {
+                    try {
+                        ejecutor.execute(turno);
+                    } catch (RejectedExecutionException ex) {
+                        // El planificador se ha detenido.
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Pone una transferencia en el carril de su prioridad.
+     *
+     * @param hilo Subida o descarga.
+     */
+    public void enviar(HiloGenerico hilo) {
+        this.carriles.get(hilo.getPrioridad()).offerLast(hilo);
+        this.ejecutor.execute(this.turno);
+    }
+
+    /**
+     * Hace que una transferencia en cola sea la siguiente en empezar.
+     *
+     * @param hilo Transferencia enviada y aún sin empezar.
+     * @return false si ya había empezado o no estaba en cola.
+     */
+    public synchronized boolean adelantar(HiloGenerico hilo) {
+        for (ConcurrentLinkedDeque<HiloGenerico> carril : this.carriles) {
+            if (carril.remove(hilo)) {
+                this.adelantados.offerFirst(hilo);
+                return true;
+            }
+        }
+        return this.adelantados.contains(hilo);
+    }
+
+    /**
+     * Obtiene las transferencias que esperan, las adelantadas primero y luego
+     * por carril.
+     *
+     * @return Copia de la cola en este momento.
+     */
+    public List<HiloGenerico> getEnCola() {
+        List<HiloGenerico> enCola = new ArrayList<>(this.adelantados);
+        for (ConcurrentLinkedDeque<HiloGenerico> carril : this.carriles) {
+            enCola.addAll(carril);
+        }
+        return enCola;
+    }
+
+    // Indica si queda alguna transferencia esperando.
+    private boolean hayEnCola() {
+        if (!this.adelantados.isEmpty()) {
+            return true;
+        }
+        for (ConcurrentLinkedDeque<HiloGenerico> carril : this.carriles) {
+            if (!carril.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Elige la siguiente transferencia: las adelantadas y, si no hay, la del
+    // carril con más crédito. Cada carril con algo en cola gana su peso en
+    // crédito y el elegido paga la suma de todos (turno ponderado suave).
+    private synchronized HiloGenerico siguiente() {
+        HiloGenerico hilo = this.adelantados.pollFirst();
+        if (hilo != null) {
+            return hilo;
+        }
+
+        int elegido = -1, total = 0;
+        for (int i = 0; i < 3; i++) {
+            if (!this.carriles.get(i).isEmpty()) {
+                this.creditos[i] += this.pesos[i];
+                total += this.pesos[i];
+                if (elegido == -1 || this.creditos[i] > this.creditos[elegido]) {
+                    elegido = i;
+                }
+            } else {
+                this.creditos[i] = 0;
+            }
+        }
+        if (elegido == -1) {
+            return null;
+        }
+        this.creditos[elegido] -= total;
+        return this.carriles.get(elegido).pollFirst();
+    }
+
+    /**
+     * Descarta las transferencias en cola y deja de aceptar nuevas. Las que
+     * quedan en el diario se reanudan en la próxima sesión.
+     */
+    public void detener() {
+        this.ejecutor.shutdownNow();
+        this.adelantados.clear();
+        for (ConcurrentLinkedDeque<HiloGenerico> carril : this.carriles) {
+            carril.clear();
+        }
+    }
+}
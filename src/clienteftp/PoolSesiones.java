@@ -0,0 +1,350 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase PoolSesiones. Mantiene sesiones ya logueadas contra un servidor para
+ * reutilizarlas entre operaciones en lugar de conectar y loguear cada vez.
+ * Limita además el número de sesiones abiertas a la vez contra ese servidor y,
+ * si se le da un presupuesto global, el total entre todos los servidores.
+ * Si el servidor no admite tantas sesiones como dice el perfil, el pool se
+ * queda con las que ya tiene abiertas y las demás operaciones esperan turno.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class PoolSesiones {
+
+    private final String servidor, usuario, contrasenia;
+    private final int bufferDatos, maximo;
+    private final Perfil perfil;
+    private final FabricaClientes fabrica;
+    private Semaphore presupuesto;
+    private final Semaphore permisos;
+    private final ConcurrentLinkedDeque<FTPClient> libres;
+    private final AtomicInteger enUso, retirados;
+    private CacheCapacidades capacidades;
+    private int tiempoConexion;
+    private volatile boolean cerrado;
+
+    /**
+     * Constructor del pool a partir de un perfil, con su puerto, seguridad,
+     * modo de conexión de datos, buffer y límite de sesiones.
+     *
+     * @param perfil Perfil de conexión.
+     * @param fabrica Crea los clientes FTP o FTPS del perfil.
+     */
+    public PoolSesiones(Perfil perfil, FabricaClientes fabrica) {
+        this(perfil, fabrica, 0);
+    }
+
+    /**
+     * Constructor del pool que deja fuera sesiones reservadas para otro uso,
+     * como la sesión interactiva, sin pasar del máximo del perfil.
+     *
+     * @param perfil Perfil de conexión.
+     * @param fabrica Crea los clientes FTP o FTPS del perfil.
+     * @param reservadas Sesiones del máximo del perfil que no usa el pool.
+     */
+    public PoolSesiones(Perfil perfil, FabricaClientes fabrica, int reservadas) {
+        this.perfil = perfil;
+        this.fabrica = fabrica;
+        this.servidor = perfil.getServidor();
+        this.usuario = perfil.getUsuario();
+        this.contrasenia = perfil.getContrasenia();
+        this.bufferDatos = perfil.getBufferDatos();
+        this.maximo = Math.max(1, perfil.getMaxSesiones() - reservadas);
+        this.permisos = new Semaphore(this.maximo, true);
+        this.libres = new ConcurrentLinkedDeque<>();
+        this.enUso = new AtomicInteger(0);
+        this.retirados = new AtomicInteger(0);
+        this.tiempoConexion = 10000;
+        this.cerrado = false;
+    }
+
+    /**
+     * Indica el presupuesto global de sesiones que comparte con los pools de
+     * otros servidores. Cada sesión en uso ocupa un permiso de los dos.
+     *
+     * @param presupuesto Semáforo compartido.
+     */
+    public void setPresupuesto(Semaphore presupuesto) {
+        this.presupuesto = presupuesto;
+    }
+
+    /**
+     * Indica la cache de capacidades que se aplica a cada sesión nueva.
+     *
+     * @param capacidades Cache de FEAT y SYST por servidor.
+     */
+    public void setCapacidades(CacheCapacidades capacidades) {
+        this.capacidades = capacidades;
+    }
+
+    /**
+     * Indica cuánto se espera como máximo al conectar una sesión nueva.
+     *
+     * @param milisegundos Tiempo máximo de conexión.
+     */
+    public void setTiempoConexion(int milisegundos) {
+        this.tiempoConexion = milisegundos;
+    }
+
+    /**
+     * Abre sesiones en segundo plano para que la primera transferencia no
+     * tenga que esperar a conectar y loguear. Cada una se abre en su propio
+     * hilo y nunca se pasa del máximo del pool.
+     *
+     * @param cantidad Número de sesiones que se dejan abiertas.
+     */
+    public void precalentar(int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            Thread hilo = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!intentarPermiso()) {
+                        return;
+                    }
+                    try {
+                        devolverLibre(abrir());
+                    } catch (IOException ex) {
+                        RegistroEventos.error("Fallo al precalentar sesión del pool", ex);
+                    } finally {
+                        soltarPermiso();
+                    }
+                }
+            }, "precalentar-sesion");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Obtiene una sesión logueada, reutilizando una libre si la hay. Si ya se
+     * ha llegado al máximo espera a que otra se devuelva. Si el servidor no
+     * deja abrir otra (no contesta, rechaza la conexión o responde 421)
+     * mientras hay sesiones del pool en uso, el pool se queda con una sesión
+     * menos y se espera a que se devuelva una de las abiertas.
+     *
+     * @return Cliente FTP conectado y logueado.
+     * @throws IOException Si no se puede conectar o loguear y no hay otras
+     * sesiones a las que esperar.
+     * @throws InterruptedException Si se interrumpe la espera.
+     */
+    public FTPClient obtener() throws IOException, InterruptedException {
+        while (true) {
+            this.tomarPermiso();
+            FTPClient cliente;
+            try {
+                cliente = this.tomarLibre();
+                if (cliente == null) {
+                    cliente = this.abrir();
+                }
+            } catch (IOException ex) {
+                if (!this.retirarPermiso(ex)) {
+                    this.soltarPermiso();
+                    throw ex;
+                }
+                continue;
+            } catch (RuntimeException ex) {
+                this.soltarPermiso();
+                throw ex;
+            }
+            this.enUso.incrementAndGet();
+            return cliente;
+        }
+    }
+
+    /**
+     * Abre una sesión para una reserva. No cuenta para el pool ni se devuelve
+     * a él; quien la pide la cierra.
+     *
+     * @return Cliente FTP conectado y logueado.
+     * @throws IOException Si no se puede conectar o loguear.
+     */
+    public FTPClient abrirReservada() throws IOException {
+        return this.abrir();
+    }
+
+    /**
+     * Vuelve a poner una sesión en el modo de datos del servidor: el del
+     * perfil o, si se sabe, el que funcionó al probarlo. Lo usa quien la haya
+     * cambiado de modo (por ejemplo para FXP) antes de devolverla.
+     *
+     * @param cliente Sesión obtenida con obtener().
+     */
+    public void restablecerModo(FTPClient cliente) {
+        this.perfil.aplicarModo(cliente);
+        if (this.capacidades != null) {
+            this.capacidades.configurar(this.servidor, cliente);
+        }
+    }
+
+    /**
+     * Devuelve una sesión al pool para que otra operación la reutilice.
+     *
+     * @param cliente Sesión obtenida con obtener().
+     */
+    public void devolver(FTPClient cliente) {
+        this.enUso.decrementAndGet();
+        this.devolverLibre(cliente);
+        this.soltarPermiso();
+    }
+
+    /**
+     * Cierra una sesión que ha quedado en mal estado en lugar de devolverla.
+     *
+     * @param cliente Sesión obtenida con obtener().
+     */
+    public void descartar(FTPClient cliente) {
+        this.enUso.decrementAndGet();
+        this.cerrar(cliente);
+        this.soltarPermiso();
+    }
+
+    /**
+     * Cierra todas las sesiones libres. Las que se devuelvan después también
+     * se cierran.
+     */
+    public void cerrarTodas() {
+        this.cerrado = true;
+        FTPClient cliente;
+        while ((cliente = this.libres.pollFirst()) != null) {
+            this.cerrar(cliente);
+        }
+    }
+
+    /**
+     * Obtiene la dirección del servidor del pool.
+     *
+     * @return Dirección del servidor.
+     */
+    public String getServidor() {
+        return servidor;
+    }
+
+    // Espera un permiso del pool y otro del presupuesto global.
+    private void tomarPermiso() throws InterruptedException {
+        this.permisos.acquire();
+        if (this.presupuesto != null) {
+            try {
+                this.presupuesto.acquire();
+            } catch (InterruptedException ex) {
+                this.permisos.release();
+                throw ex;
+            }
+        }
+    }
+
+    // Como tomarPermiso pero sin esperar.
+    private boolean intentarPermiso() {
+        if (!this.permisos.tryAcquire()) {
+            return false;
+        }
+        if (this.presupuesto != null && !this.presupuesto.tryAcquire()) {
+            this.permisos.release();
+            return false;
+        }
+        return true;
+    }
+
+    // Suelta los dos permisos.
+    private void soltarPermiso() {
+        if (this.presupuesto != null) {
+            this.presupuesto.release();
+        }
+        this.permisos.release();
+    }
+
+    // Saca una sesión libre que siga viva, o null si no hay ninguna.
+    private FTPClient tomarLibre() {
+        FTPClient cliente;
+        while ((cliente = this.libres.pollFirst()) != null) {
+            try {
+                if (cliente.isConnected() && cliente.sendNoOp()) {
+                    return cliente;
+                }
+            } catch (IOException ex) {
+                RegistroEventos.depurar("Sesión libre caída: " + ex);
+            }
+            this.cerrar(cliente);
+        }
+        return null;
+    }
+
+    // Tras fallar al abrir una sesión, si hay otras en uso y el fallo no es
+    // de usuario o contraseña, el servidor ya no admite más: el permiso
+    // tomado no se suelta, así el pool se queda con una sesión menos el resto
+    // de su vida, y la operación espera a que se devuelva otra. Solo se suelta
+    // el del presupuesto global, que pueden usar otros servidores.
+    private boolean retirarPermiso(IOException ex) {
+        if (ex instanceof LoginRechazado || this.enUso.get() == 0 || this.cerrado) {
+            return false;
+        }
+        if (this.presupuesto != null) {
+            this.presupuesto.release();
+        }
+        int retirado = this.retirados.incrementAndGet();
+        RegistroEventos.aviso(this.servidor + " no admite más sesiones; el pool baja a "
+                + (this.maximo - retirado) + " como mucho", ex);
+        return true;
+    }
+
+    // Deja una sesión en la lista de libres, o la cierra si el pool ya se ha cerrado.
+    private void devolverLibre(FTPClient cliente) {
+        if (this.cerrado || !cliente.isConnected()) {
+            this.cerrar(cliente);
+        } else {
+            this.libres.offerFirst(cliente);
+            if (this.cerrado && this.libres.remove(cliente)) {
+                this.cerrar(cliente);
+            }
+        }
+    }
+
+    // Conecta y loguea una sesión nueva.
+    private FTPClient abrir() throws IOException {
+        FTPClient cliente = ConectorRapido.conectar(this.fabrica, this.servidor, this.perfil.getPuerto(), this.tiempoConexion);
+        if (!cliente.login(this.usuario, this.contrasenia)) {
+            String respuesta = cliente.getReplyString();
+            this.cerrar(cliente);
+            throw new LoginRechazado("Login rechazado en " + this.servidor + ": " + respuesta);
+        }
+        try {
+            this.fabrica.proteger(cliente);
+        } catch (IOException ex) {
+            this.cerrar(cliente);
+            throw ex;
+        }
+        cliente.setFileType(FTPClient.BINARY_FILE_TYPE);
+        cliente.setBufferSize(this.bufferDatos);
+        this.restablecerModo(cliente);
+        return cliente;
+    }
+
+    // Cierra una sesión sin propagar errores.
+    private void cerrar(FTPClient cliente) {
+        try {
+            if (cliente.isConnected()) {
+                cliente.disconnect();
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al cerrar sesión del pool", ex);
+        }
+    }
+
+    // El servidor ha rechazado el usuario o la contraseña: esperar a otra
+    // sesión no lo arregla.
+    private static class LoginRechazado extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LoginRechazado(String mensaje) {
+            super(mensaje);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase Precargador. Cuando se muestra un directorio lista en segundo plano sus
+ * subdirectorios y guarda los listados en la cache, para que al entrar en
+ * ellos no haya que esperar al servidor. Se atiende antes lo último que se ha
+ * mostrado y, dentro de cada directorio, los subdirectorios modificados más
+ * recientemente. Mientras haya subidas o descargas en marcha se queda en
+ * pausa para no quitarles conexiones.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class Precargador implements Runnable {
+
+    // Tiempo entre comprobaciones mientras está en pausa.
+    private static final long ESPERA_PAUSA = 500;
+
+    private final Control padre;
+    private final PoolSesiones pool;
+    private final CacheListados cache;
+    private final LinkedBlockingDeque<Pendiente> pendientes;
+    private final int maximoPorDirectorio, profundidadMaxima;
+    private volatile boolean fin;
+
+    /**
+     * Constructor del precargador.
+     *
+     * @param padre Permite saber si hay transferencias en marcha.
+     * @param pool Pool de sesiones del servidor.
+     * @param cache Cache donde se guardan los listados.
+     * @param maximoPorDirectorio Subdirectorios que se precargan de cada
+     * directorio mostrado.
+     * @param profundidadMaxima Niveles por debajo del directorio mostrado.
+     * @param capacidad Número máximo de directorios esperando.
+     */
+    public Precargador(Control padre, PoolSesiones pool, CacheListados cache, int maximoPorDirectorio, int profundidadMaxima, int capacidad) {
+        this.padre = padre;
+        this.pool = pool;
+        this.cache = cache;
+        this.maximoPorDirectorio = maximoPorDirectorio;
+        this.profundidadMaxima = profundidadMaxima;
+        this.pendientes = new LinkedBlockingDeque<>(Math.max(1, capacidad));
+        this.fin = false;
+    }
+
+    /**
+     * Arranca el hilo del precargador.
+     */
+    public void iniciar() {
+        Thread hilo = new Thread(this, "precargador");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MIN_PRIORITY);
+        hilo.start();
+    }
+
+    /**
+     * Detiene el precargador y olvida lo pendiente.
+     */
+    public void detener() {
+        this.fin = true;
+        this.pendientes.clear();
+    }
+
+    /**
+     * Avisa de que se ha mostrado un directorio para precargar sus
+     * subdirectorios.
+     *
+     * @param ruta Ruta del directorio mostrado.
+     * @param archivos Listado del directorio.
+     */
+    public void directorioMostrado(String ruta, FTPFile[] archivos) {
+        this.encolar(ruta, archivos, 1);
+    }
+
+    // Encola los subdirectorios más recientes, delante de lo que ya hubiera.
+    private void encolar(String ruta, FTPFile[] archivos, int profundidad) {
+        if (profundidad > this.profundidadMaxima) {
+            return;
+        }
+
+        List<FTPFile> subdirectorios = new ArrayList<>();
+        for (FTPFile archivo : archivos) {
+            if (archivo.isDirectory() && !archivo.getName().equals(".") && !archivo.getName().equals("..")) {
+                subdirectorios.add(archivo);
+            }
+        }
+        Collections.sort(subdirectorios, new Comparator<FTPFile>() {
+            @Override
+            public int compare(FTPFile a, FTPFile b) {
+                return Long.compare(fecha(b), fecha(a));
+            }
+        });
+
+        // Se meten al revés para que el más reciente quede el primero.
+        int numero = Math.min(this.maximoPorDirectorio, subdirectorios.size());
+        for (int i = numero - 1; i >= 0; i--) {
+            String rutaHijo = CacheListados.unir(ruta, subdirectorios.get(i).getName());
+            if (!this.cache.contiene(rutaHijo)) {
+                if (this.pendientes.remainingCapacity() == 0) {
+                    this.pendientes.pollLast();
+                }
+                this.pendientes.offerFirst(new Pendiente(rutaHijo, profundidad));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!this.fin) {
+            try {
+                Pendiente pendiente = this.pendientes.pollFirst(ESPERA_PAUSA, TimeUnit.MILLISECONDS);
+                if (pendiente == null) {
+                    continue;
+                }
+                while (this.padre.hayTransferencias() && !this.fin) {
+                    Thread.sleep(ESPERA_PAUSA);
+                }
+                if (!this.fin && !this.cache.contiene(pendiente.ruta)) {
+                    this.precargar(pendiente);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // Lista un directorio con una sesión del pool y lo guarda en la cache,
+    // igual que lo listaría la sesión interactiva. Si el servidor lo rechaza
+    // no se guarda nada.
+    private void precargar(Pendiente pendiente) throws InterruptedException {
+        FTPClient cliente;
+        try {
+            cliente = this.pool.obtener();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al precargar " + pendiente.ruta, ex);
+            return;
+        }
+
+        try {
+            FTPFile[] archivos = Control.listar(cliente, pendiente.ruta, this.padre.isUsarMlsd());
+            this.pool.devolver(cliente);
+            this.cache.guardar(pendiente.ruta, archivos);
+            this.encolarAlFinal(pendiente.ruta, archivos, pendiente.profundidad + 1);
+        } catch (IOException ex) {
+            this.pool.descartar(cliente);
+            RegistroEventos.error("Fallo al precargar " + pendiente.ruta, ex);
+        }
+    }
+
+    // Los niveles más profundos van detrás de lo que pidió el usuario.
+    private void encolarAlFinal(String ruta, FTPFile[] archivos, int profundidad) {
+        if (profundidad > this.profundidadMaxima) {
+            return;
+        }
+        int numero = 0;
+        for (FTPFile archivo : archivos) {
+            if (numero >= this.maximoPorDirectorio) {
+                break;
+            }
+            if (archivo.isDirectory() && !archivo.getName().equals(".") && !archivo.getName().equals("..")) {
+                this.pendientes.offerLast(new Pendiente(CacheListados.unir(ruta, archivo.getName()), profundidad));
+                numero++;
+            }
+        }
+    }
+
+    // Fecha de modificación de un elemento, 0 si el servidor no la da.
+    private static long fecha(FTPFile archivo) {
+        return archivo.getTimestamp() == null ? 0 : archivo.getTimestamp().getTimeInMillis();
+    }
+
+    // Un directorio esperando a ser precargado.
+    private static class Pendiente {
+
+        private final String ruta;
+        private final int profundidad;
+
+        private Pendiente(String ruta, int profundidad) {
+            this.ruta = ruta;
+            this.profundidad = profundidad;
+        }
+    }
+}
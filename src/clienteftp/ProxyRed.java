@@ -0,0 +1,435 @@
+package clienteftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Clase ProxyRed. Proxy TCP para pruebas que se pone entre el cliente y un
+ * servidor FTP y simula una red mala: latencia, ancho de banda limitado,
+ * pérdidas, límite de conexiones (responde 421) y cortes a mitad de
+ * transferencia. Entiende lo justo de FTP para cambiar las respuestas 227 y
+ * 229 y hacer pasar también por él las conexiones de datos pasivas; tras
+ * AUTH TLS no puede leer el control, así que lo pasa tal cual y los datos van
+ * directos al servidor.
+ *
+ * Las pérdidas no se pueden provocar de verdad desde un proxy TCP; se simula
+ * su efecto: el bloque "perdido" llega con el retraso de una retransmisión y
+ * frena a los que vienen detrás.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class ProxyRed implements Runnable {
+
+    // Tamaño de cada bloque que se reenvía; los cortes se sortean por bloque.
+    private static final int BLOQUE = 16 * 1024;
+    // Bloques en vuelo por sentido, hace de ventana TCP.
+    private static final int EN_VUELO = 64;
+    // Conexiones de control que pueden esperar a ser aceptadas, para las
+    // pruebas que conectan cientos de sesiones a la vez.
+    private static final int ESPERA_ACEPTAR = 1024;
+    private static final Pattern PASV = Pattern.compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+    private static final Pattern EPSV = Pattern.compile("\\|\\|\\|(\\d+)\\|");
+
+    private final ServerSocket escucha;
+    private final InetAddress servidor;
+    private final int puertoServidor;
+    private final Condiciones condiciones;
+    private final Random azar;
+    private final AtomicInteger activas;
+    private final AtomicLong aceptadas, rechazadas, cortes, bytes;
+    private volatile boolean activo;
+
+    /**
+     * Condiciones de la red simulada.
+     */
+    public static class Condiciones {
+
+        private final long latencia, bytesPorSegundo;
+        private final double perdida, corte;
+        private final int maxConexiones;
+
+        /**
+         * Constructor de las condiciones.
+         *
+         * @param latencia Milisegundos de retraso en cada sentido (la mitad
+         * del RTT).
+         * @param bytesPorSegundo Ancho de banda de cada conexión y sentido, 0
+         * sin límite.
+         * @param perdida Probabilidad de que un bloque se "pierda" y llegue
+         * con el retraso de una retransmisión.
+         * @param corte Probabilidad de que la conexión se corte (RST) en cada
+         * bloque de 16 KB, en control y en datos.
+         * @param maxConexiones Conexiones de control a la vez; las de más
+         * reciben 421. 0 sin límite.
+         */
+        public Condiciones(long latencia, long bytesPorSegundo, double perdida, double corte, int maxConexiones) {
+            this.latencia = latencia;
+            this.bytesPorSegundo = bytesPorSegundo;
+            this.perdida = perdida;
+            this.corte = corte;
+            this.maxConexiones = maxConexiones;
+        }
+
+        @Override
+        public String toString() {
+            return "RTT " + (2 * latencia) + " ms, " + (bytesPorSegundo == 0 ? "sin límite" : (bytesPorSegundo / 1024) + " KB/s")
+                    + ", pérdida " + (perdida * 100) + "%, corte " + (corte * 100) + "% por bloque, "
+                    + (maxConexiones == 0 ? "sin límite de conexiones" : "máximo " + maxConexiones + " conexiones");
+        }
+    }
+
+    /**
+     * Constructor del proxy, escucha en un puerto libre de la máquina local.
+     *
+     * @param puertoServidor Puerto de control del servidor FTP local.
+     * @param condiciones Cómo se comporta la red.
+     * @param semilla Semilla del azar, para repetir un escenario igual.
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public ProxyRed(int puertoServidor, Condiciones condiciones, long semilla) throws IOException {
+        this.servidor = InetAddress.getLoopbackAddress();
+        this.escucha = new ServerSocket(0, ESPERA_ACEPTAR, this.servidor);
+        this.puertoServidor = puertoServidor;
+        this.condiciones = condiciones;
+        this.azar = new Random(semilla);
+        this.activas = new AtomicInteger();
+        this.aceptadas = new AtomicLong();
+        this.rechazadas = new AtomicLong();
+        this.cortes = new AtomicLong();
+        this.bytes = new AtomicLong();
+    }
+
+    /**
+     * Obtiene el puerto al que se conecta el cliente.
+     *
+     * @return Puerto de control del proxy.
+     */
+    public int getPuerto() {
+        return this.escucha.getLocalPort();
+    }
+
+    /**
+     * Arranca el hilo que acepta conexiones.
+     */
+    public void iniciar() {
+        this.activo = true;
+        arrancar(this, "proxy-red");
+    }
+
+    /**
+     * Deja de aceptar conexiones. Las que están abiertas siguen hasta cerrarse.
+     */
+    public void detener() {
+        this.activo = false;
+        cerrar(this.escucha);
+    }
+
+    /**
+     * Resume lo que ha pasado por el proxy.
+     *
+     * @return Conexiones, rechazos, cortes y bytes.
+     */
+    public String getResumen() {
+        return this.aceptadas.get() + " conexiones de control, " + this.rechazadas.get() + " rechazadas con 421, "
+                + this.cortes.get() + " cortes, " + (this.bytes.get() / 1024) + " KB reenviados";
+    }
+
+    @Override
+    public void run() {
+        while (this.activo) {
+            try {
+                Socket cliente = this.escucha.accept();
+                if (this.activas.incrementAndGet() > this.condiciones.maxConexiones && this.condiciones.maxConexiones > 0) {
+                    this.activas.decrementAndGet();
+                    this.rechazadas.incrementAndGet();
+                    OutputStream salida = cliente.getOutputStream();
+                    salida.write("421 Demasiadas conexiones, prueba más tarde.\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    salida.flush();
+                    cerrar(cliente);
+                    continue;
+                }
+                this.aceptadas.incrementAndGet();
+                try {
+                    this.unir(cliente, new Socket(this.servidor, this.puertoServidor), true);
+                } catch (IOException ex) {
+                    this.activas.decrementAndGet();
+                    cerrar(cliente);
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                if (this.activo) {
+                    RegistroEventos.error("Fallo en el proxy", ex);
+                }
+            }
+        }
+    }
+
+    // Une dos sockets con un tubo en cada sentido. En la conexión de control
+    // las respuestas del servidor se reescriben para que los datos pasen por
+    // el proxy.
+    private void unir(Socket cliente, Socket servidor, boolean control) throws IOException {
+        Conexion conexion = new Conexion(cliente, servidor, control);
+        new Tubo(conexion, cliente, servidor, false).iniciar();
+        new Tubo(conexion, servidor, cliente, control).iniciar();
+    }
+
+    // Abre un puerto para una conexión de datos pasiva y la une con el
+    // servidor cuando el cliente se conecta. Devuelve el puerto del proxy.
+    private int abrirDatos(final int puertoDatos) throws IOException {
+        final ServerSocket datos = new ServerSocket(0, 1, this.servidor);
+        datos.setSoTimeout(30000);
+        arrancar(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket cliente = datos.accept();
+                    unir(cliente, new Socket(servidor, puertoDatos), false);
+                } catch (IOException ex) {
+                    RegistroEventos.error("Fallo en la conexión de datos del proxy", ex);
+                } finally {
+                    cerrar(datos);
+                }
+            }
+        }, "proxy-red-datos");
+        return datos.getLocalPort();
+    }
+
+    // Cambia el puerto de una respuesta 227 o 229 por uno del proxy.
+    private String reescribir(String linea) throws IOException {
+        if (linea.startsWith("227")) {
+            Matcher m = PASV.matcher(linea);
+            if (m.find()) {
+                int puerto = this.abrirDatos(Integer.parseInt(m.group(5)) * 256 + Integer.parseInt(m.group(6)));
+                return linea.substring(0, m.start()) + "127,0,0,1," + (puerto / 256) + "," + (puerto % 256) + linea.substring(m.end());
+            }
+        } else if (linea.startsWith("229")) {
+            Matcher m = EPSV.matcher(linea);
+            if (m.find()) {
+                int puerto = this.abrirDatos(Integer.parseInt(m.group(1)));
+                return linea.substring(0, m.start()) + "|||" + puerto + "|" + linea.substring(m.end());
+            }
+        }
+        return linea;
+    }
+
+    // Sortea un suceso con la probabilidad dada.
+    private boolean sortear(double probabilidad) {
+        if (probabilidad <= 0) {
+            return false;
+        }
+        synchronized (this.azar) {
+            return this.azar.nextDouble() < probabilidad;
+        }
+    }
+
+    // Arranca un hilo demonio.
+    private static void arrancar(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Cierra un socket sin propagar el error.
+    private static void cerrar(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Ya estaba cerrado.
+        }
+    }
+
+    // Los dos sockets de una conexión: se cierran juntos cuando acaban los
+    // dos sentidos o cuando se corta.
+    private class Conexion {
+
+        private final Socket cliente, servidor;
+        private final boolean control;
+        private final AtomicInteger abiertos;
+        private volatile boolean cortada;
+
+        private Conexion(Socket cliente, Socket servidor, boolean control) {
+            this.cliente = cliente;
+            this.servidor = servidor;
+            this.control = control;
+            this.abiertos = new AtomicInteger(2);
+        }
+
+        // Corta con RST, como un router que pierde el estado.
+        private void cortar() {
+            if (this.cortada) {
+                return;
+            }
+            this.cortada = true;
+            cortes.incrementAndGet();
+            try {
+                this.cliente.setSoLinger(true, 0);
+                this.servidor.setSoLinger(true, 0);
+            } catch (IOException ex) {
+                // Se cierra igual.
+            }
+            this.cerrarTodo();
+        }
+
+        // Un sentido ha terminado; con los dos se cierra.
+        private void sentidoTerminado() {
+            if (this.abiertos.decrementAndGet() == 0) {
+                this.cerrarTodo();
+            }
+        }
+
+        private synchronized void cerrarTodo() {
+            if (!this.cliente.isClosed() || !this.servidor.isClosed()) {
+                cerrar(this.cliente);
+                cerrar(this.servidor);
+                if (this.control) {
+                    activas.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Un sentido de una conexión: un hilo lee y otro entrega cada bloque
+    // cuando le toca, respetando latencia y ancho de banda.
+    private class Tubo {
+
+        private final Conexion conexion;
+        private final Socket origen, destino;
+        private boolean reescribir;
+        private final BlockingQueue<Bloque> cola;
+        private final StringBuilder linea;
+
+        private Tubo(Conexion conexion, Socket origen, Socket destino, boolean reescribir) {
+            this.conexion = conexion;
+            this.origen = origen;
+            this.destino = destino;
+            this.reescribir = reescribir;
+            this.cola = new LinkedBlockingQueue<>(EN_VUELO);
+            this.linea = new StringBuilder();
+        }
+
+        private void iniciar() {
+            arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    leer();
+                }
+            }, "proxy-red-lector");
+            arrancar(new Runnable() {
+                @Override
+                public void run() {
+                    entregar();
+                }
+            }, "proxy-red-escritor");
+        }
+
+        // Lee bloques y los pone en cola con el momento en que deben llegar.
+        private void leer() {
+            byte[] buffer = new byte[BLOQUE];
+            try {
+                InputStream entrada = this.origen.getInputStream();
+                int leidos;
+                while ((leidos = entrada.read(buffer)) != -1) {
+                    byte[] datos = Arrays.copyOf(buffer, leidos);
+                    if (this.reescribir) {
+                        datos = this.reescribirLineas(datos);
+                    }
+                    long retraso = condiciones.latencia;
+                    if (sortear(condiciones.perdida)) {
+                        // Lo que tarda en notarse la pérdida y reenviarse.
+                        retraso += 2 * condiciones.latencia + 200;
+                    }
+                    this.cola.put(new Bloque(datos, System.currentTimeMillis() + retraso));
+                }
+                this.cola.put(new Bloque(null, System.currentTimeMillis() + condiciones.latencia));
+            } catch (IOException | InterruptedException ex) {
+                // Cerrado desde el otro lado o cortado; el escritor acaba al
+                // fallar su socket.
+            }
+        }
+
+        // Entrega los bloques en orden; un bloque retrasado frena a los demás.
+        private void entregar() {
+            long libreDesde = 0;
+            try {
+                OutputStream salida = this.destino.getOutputStream();
+                while (true) {
+                    Bloque bloque = this.cola.take();
+                    long espera = bloque.momento - System.currentTimeMillis();
+                    if (espera > 0) {
+                        Thread.sleep(espera);
+                    }
+                    if (bloque.datos == null) {
+                        this.destino.shutdownOutput();
+                        break;
+                    }
+                    // El corte se sortea al entregar, para que llegue lo que
+                    // había antes.
+                    if (sortear(condiciones.corte)) {
+                        this.conexion.cortar();
+                        break;
+                    }
+                    if (condiciones.bytesPorSegundo > 0) {
+                        long ahora = System.currentTimeMillis();
+                        libreDesde = Math.max(libreDesde, ahora) + bloque.datos.length * 1000L / condiciones.bytesPorSegundo;
+                        if (libreDesde > ahora) {
+                            Thread.sleep(libreDesde - ahora);
+                        }
+                    }
+                    salida.write(bloque.datos);
+                    salida.flush();
+                    bytes.addAndGet(bloque.datos.length);
+                }
+            } catch (IOException | InterruptedException ex) {
+                // Cerrado o cortado.
+            }
+            this.conexion.sentidoTerminado();
+        }
+
+        // Reescribe las respuestas 227 y 229 de un bloque del canal de control.
+        // Tras aceptar AUTH (234) el control va cifrado: desde ahí se pasa tal
+        // cual y los datos van directos al servidor.
+        private byte[] reescribirLineas(byte[] datos) throws IOException {
+            this.linea.append(new String(datos, StandardCharsets.ISO_8859_1));
+            StringBuilder salida = new StringBuilder();
+            int fin;
+            while ((fin = this.linea.indexOf("\n")) != -1) {
+                String respuesta = this.linea.substring(0, fin + 1);
+                salida.append(reescribir(respuesta));
+                this.linea.delete(0, fin + 1);
+                if (respuesta.startsWith("234")) {
+                    this.reescribir = false;
+                    salida.append(this.linea);
+                    this.linea.setLength(0);
+                }
+            }
+            return salida.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // Datos que deben llegar en un momento; sin datos marca el final.
+    private static class Bloque {
+
+        private final byte[] datos;
+        private final long momento;
+
+        private Bloque(byte[] datos, long momento) {
+            this.datos = datos;
+            this.momento = momento;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package clienteftp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clase PublicadorTransferencias. Recoge los avisos de transferencias
+ * terminadas en una cola sin bloqueos y un único hilo los va pasando a Control
+ * por lotes, de forma que un refresco lento de la interfaz o del listado nunca
+ * frena a los hilos que están terminando.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class PublicadorTransferencias implements Runnable {
+
+    // Espera máxima entre revisiones de la cola.
+    private static final long ESPERA_MAXIMA = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final Control padre;
+    private final ConcurrentLinkedQueue<EstadoTransferencia> cola;
+    private Thread hilo;
+
+    /**
+     * Constructor del publicador.
+     *
+     * @param padre Permite la comunicación con la instancia de control.
+     */
+    public PublicadorTransferencias(Control padre) {
+        this.padre = padre;
+        this.cola = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Arranca el hilo publicador.
+     */
+    public void iniciar() {
+        this.hilo = new Thread(this, "publicador-transferencias");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Para el hilo publicador cuando se cierra la sesión.
+     */
+    public void detener() {
+        this.hilo.interrupt();
+    }
+
+    /**
+     * Deja un aviso en la cola. Nunca bloquea al hilo que lo llama.
+     *
+     * @param estado Estado de la transferencia que ha cambiado.
+     */
+    public void publicar(EstadoTransferencia estado) {
+        this.cola.offer(estado);
+        LockSupport.unpark(this.hilo);
+    }
+
+    @Override
+    public void run() {
+        List<EstadoTransferencia> lote = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            EstadoTransferencia estado;
+            while ((estado = this.cola.poll()) != null) {
+                lote.add(estado);
+            }
+
+            if (lote.isEmpty()) {
+                LockSupport.parkNanos(this, ESPERA_MAXIMA);
+            } else {
+                try {
+                    this.padre.procesarTransferencias(lote);
+                } catch (RuntimeException ex) {
+                    RegistroEventos.error("Fallo al publicar transferencias", ex);
+                }
+                lote.clear();
+            }
+        }
+    }
+}
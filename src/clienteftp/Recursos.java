@@ -0,0 +1,76 @@
+package clienteftp;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.ImageIcon;
+
+/**
+ * Clase Recursos. Iconos de las ventanas, cargados la primera vez que se piden
+ * y guardados para las siguientes: cambiar un botón de "descargar" a
+ * "cancelar" ya no vuelve a leer la imagen del jar. Los de las ventanas que
+ * aún no se han abierto se pueden ir cargando en segundo plano.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class Recursos {
+
+    private static final String CARPETA = "/recursos/";
+    private static final Map<String, ImageIcon> ICONOS = new ConcurrentHashMap<>();
+    private static Image imagenVentana;
+
+    private Recursos() {
+    }
+
+    /**
+     * Obtiene un icono de la carpeta de recursos.
+     *
+     * @param nombre Nombre del archivo, por ejemplo "info.png".
+     * @return El icono, el mismo objeto en todas las llamadas.
+     */
+    public static ImageIcon icono(String nombre) {
+        ImageIcon icono = ICONOS.get(nombre);
+        if (icono == null) {
+            icono = new ImageIcon(Recursos.class.getResource(CARPETA + nombre));
+            ImageIcon anterior = ICONOS.putIfAbsent(nombre, icono);
+            if (anterior != null) {
+                icono = anterior;
+            }
+        }
+        return icono;
+    }
+
+    /**
+     * Obtiene el icono que se muestra en la barra de título de las ventanas.
+     *
+     * @return La imagen, compartida por todas las ventanas.
+     */
+    public static synchronized Image imagenVentana() {
+        if (imagenVentana == null) {
+            imagenVentana = Toolkit.getDefaultToolkit().getImage(Recursos.class.getResource(CARPETA + "icono.png"));
+        }
+        return imagenVentana;
+    }
+
+    /**
+     * Carga unos iconos en un hilo aparte, para que estén listos cuando se
+     * abra la ventana que los usa.
+     *
+     * @param nombres Nombres de los archivos.
+     */
+    public static void precargar(final String... nombres) {
+        Thread hilo = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String nombre : nombres) {
+                    icono(nombre);
+                }
+            }
+        }, "precarga-iconos");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MIN_PRIORITY);
+        hilo.start();
+    }
+}
@@ -0,0 +1,200 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase RecursosCompartidos. Lo que comparten todas las sesiones abiertas en
+ * el mismo proceso: configuración, diario, perfiles, cache de capacidades y el
+ * presupuesto global de sesiones. Lleva también la cuenta de sesiones vivas
+ * para cerrar el programa cuando se cierra la última ventana. Los perfiles y
+ * el índice de la cache de descargas se leen en segundo plano para no
+ * retrasar la primera ventana; quien los pida antes de tiempo espera.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class RecursosCompartidos {
+
+    private final Configuracion configuracion;
+    private final DiarioTransferencias diario;
+    private final CacheCapacidades capacidades;
+    private final FutureTask<AlmacenPerfiles> perfiles;
+    private final Semaphore presupuesto;
+    private final AtomicInteger sesionesVivas;
+    private final SincronizadorDescargas sincronizador;
+    private final FutureTask<CacheDescargas> cacheDescargas;
+    private MotorNio motorNio;
+    private boolean motorNioProbado;
+
+    /**
+     * Constructor de los recursos compartidos, los carga de disco.
+     */
+    public RecursosCompartidos() {
+        File archivoConfiguracion = new File("configuracion.properties");
+        this.configuracion = new Configuracion(archivoConfiguracion);
+        RegistroEventos.configurar(this.configuracion, archivoConfiguracion);
+        Trazador.configurar(this.configuracion);
+        this.diario = new DiarioTransferencias(new File("transferencias.diario"), this.configuracion.getEntero("diario.intentos", 3));
+        this.diario.iniciar();
+        this.capacidades = new CacheCapacidades(new File("capacidades.properties"), this.configuracion.getEntero("capacidades.dias", 7));
+        this.perfiles = cargarAparte("carga-perfiles", new Callable<AlmacenPerfiles>() {
+            @Override
+            public AlmacenPerfiles call() {
+                return new AlmacenPerfiles(new File("perfiles.bin"), new File("sesionAnterior.bin"),
+                        configuracion.getEntero("buffer.datos", 64 * 1024), configuracion.getEntero("sesiones.maximo", 8));
+            }
+        });
+        this.presupuesto = new Semaphore(Math.max(1, this.configuracion.getEntero("sesiones.globales", 16)), true);
+        this.sesionesVivas = new AtomicInteger();
+        this.sincronizador = new SincronizadorDescargas(this.configuracion.getCadena("descargas.fsync", "no"));
+        this.cacheDescargas = cargarAparte("carga-cache-descargas", new Callable<CacheDescargas>() {
+            @Override
+            public CacheDescargas call() {
+                return new CacheDescargas(new File(configuracion.getCadena("cache.descargas.carpeta", "CacheDescargas")),
+                        configuracion.getEntero("cache.descargas.megas", 1024) * 1024L * 1024L,
+                        configuracion.getBooleano("cache.descargas.enlazar", true));
+            }
+        });
+    }
+
+    // Empieza a cargar algo en un hilo aparte.
+    private static <T> FutureTask<T> cargarAparte(String nombre, Callable<T> carga) {
+        FutureTask<T> tarea = new FutureTask<>(carga);
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        return tarea;
+    }
+
+    // Espera a que termine una carga.
+    private static <T> T esperar(FutureTask<T> tarea) {
+        boolean interrumpido = false;
+        try {
+            while (true) {
+                try {
+                    return tarea.get();
+                } catch (InterruptedException ex) {
+                    interrumpido = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("No se ha podido cargar: " + ex.getCause(), ex.getCause());
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Obtiene la configuración.
+     *
+     * @return La configuración.
+     */
+    public Configuracion getConfiguracion() {
+        return configuracion;
+    }
+
+    /**
+     * Obtiene el diario de transferencias.
+     *
+     * @return El diario de transferencias.
+     */
+    public DiarioTransferencias getDiario() {
+        return diario;
+    }
+
+    /**
+     * Obtiene la cache de capacidades de los servidores.
+     *
+     * @return La cache de capacidades.
+     */
+    public CacheCapacidades getCapacidades() {
+        return capacidades;
+    }
+
+    /**
+     * Obtiene el almacén de perfiles. Si aún se está leyendo espera a que
+     * termine.
+     *
+     * @return El almacén de perfiles.
+     */
+    public AlmacenPerfiles getPerfiles() {
+        return esperar(this.perfiles);
+    }
+
+    /**
+     * Obtiene el presupuesto global: cuántas sesiones pueden estar en uso a la
+     * vez sumando todos los servidores (ajuste sesiones.globales).
+     *
+     * @return Semáforo compartido por todos los pools.
+     */
+    public Semaphore getPresupuesto() {
+        return presupuesto;
+    }
+
+    /**
+     * Obtiene el sincronizador que publica las descargas terminadas (ajuste
+     * descargas.fsync).
+     *
+     * @return El sincronizador compartido.
+     */
+    public SincronizadorDescargas getSincronizador() {
+        return sincronizador;
+    }
+
+    /**
+     * Obtiene la cache local de descargas (ajustes cache.descargas.*). Si aún
+     * se está leyendo su índice espera a que termine.
+     *
+     * @return La cache compartida, inactiva si cache.descargas.megas vale 0.
+     */
+    public CacheDescargas getCacheDescargas() {
+        return esperar(this.cacheDescargas);
+    }
+
+    /**
+     * Obtiene el motor NIO que comparten todas las sesiones, creándolo la
+     * primera vez. Solo existe si transferencias.motor vale nio.
+     *
+     * @return El motor o null si se usa el motor bloqueante.
+     */
+    public synchronized MotorNio getMotorNio() {
+        if (!this.motorNioProbado) {
+            this.motorNioProbado = true;
+            if ("nio".equalsIgnoreCase(this.configuracion.getCadena("transferencias.motor", "bloqueante"))) {
+                try {
+                    this.motorNio = new MotorNio(this.configuracion.getEntero("nio.hilos", 2),
+                            this.configuracion.getEntero("buffer.datos", 64 * 1024),
+                            this.configuracion.getEntero("nio.buffers", 256));
+                } catch (IOException ex) {
+                    RegistroEventos.aviso("No se puede iniciar el motor NIO, se usa el bloqueante", ex);
+                }
+            }
+        }
+        return this.motorNio;
+    }
+
+    /**
+     * Apunta que se ha abierto una sesión nueva.
+     */
+    public void sesionAbierta() {
+        this.sesionesVivas.incrementAndGet();
+    }
+
+    /**
+     * Apunta que se ha cerrado una sesión. Si era la última sale del programa.
+     */
+    public void sesionCerrada() {
+        if (this.sesionesVivas.decrementAndGet() <= 0) {
+            this.getCacheDescargas().guardarIndice();
+            System.exit(0);
+        }
+    }
+}
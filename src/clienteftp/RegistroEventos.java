@@ -0,0 +1,344 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clase RegistroEventos. Registro del programa. Los hilos que apuntan algo
+ * solo dejan el evento en una cola sin bloqueos y siguen; un único hilo
+ * escritor les da formato y los escribe por lotes, en la salida estándar o en
+ * el archivo de registro.archivo. Cada evento es una línea con la hora, el
+ * nivel, el hilo y, en las transferencias, campos clave=valor (id, servidor,
+ * ruta, codigo, bytes, ms) fáciles de filtrar.
+ *
+ * La cola no pasa de registro.maximo eventos: si el escritor se queda atrás
+ * los que no caben se descartan y se cuenta cuántos. Los avisos y errores
+ * tienen un diez por ciento más de sitio, para que una avalancha de eventos
+ * normales no los tape. El nivel mínimo sale de
+ * registro.nivel y se vuelve a leer si cambia el archivo de configuración,
+ * sin reiniciar.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class RegistroEventos {
+
+    /**
+     * Niveles de los eventos, de menos a más grave. NADA no registra nada.
+     */
+    public enum Nivel {
+        DEPURAR, INFO, AVISO, ERROR, NADA
+    }
+
+    // Cada cuánto se mira si ha cambiado el archivo de configuración.
+    private static final long REVISAR_NIVEL = TimeUnit.SECONDS.toMillis(2);
+    // Eventos que se escriben como mucho de una vez.
+    private static final int LOTE = 1000;
+
+    private static final ConcurrentLinkedQueue<Evento> COLA = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger ENCOLADOS = new AtomicInteger();
+    private static final AtomicLong DESCARTADOS = new AtomicLong();
+    private static volatile Nivel nivel = Nivel.INFO;
+    private static volatile int maximo = 10000;
+    private static volatile boolean esperando;
+    private static volatile Thread escritor;
+    private static Writer salida;
+    private static volatile File archivoConfiguracion;
+    private static long modificacionConfiguracion;
+
+    private RegistroEventos() {
+    }
+
+    /**
+     * Toma el nivel, el límite de la cola y el archivo de salida de la
+     * configuración, y vigila el archivo para cambiar el nivel en marcha.
+     *
+     * @param configuracion Configuración ya leída.
+     * @param archivo Archivo del que se ha leído.
+     */
+    public static synchronized void configurar(Configuracion configuracion, File archivo) {
+        nivel = leerNivel(configuracion.getCadena("registro.nivel", "INFO"), Nivel.INFO);
+        maximo = Math.max(100, configuracion.getEntero("registro.maximo", 10000));
+        String ruta = configuracion.getCadena("registro.archivo", "");
+        if (!ruta.isEmpty() && salida == null) {
+            try {
+                salida = new OutputStreamWriter(new FileOutputStream(ruta, true), StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                aviso("No se puede abrir el archivo de registro " + ruta, ex);
+            }
+        }
+        archivoConfiguracion = archivo;
+        modificacionConfiguracion = archivo.lastModified();
+    }
+
+    /**
+     * Cambia el nivel mínimo que se registra.
+     *
+     * @param minimo Nuevo nivel.
+     */
+    public static void setNivel(Nivel minimo) {
+        nivel = minimo;
+    }
+
+    /**
+     * Indica si se registran los eventos de un nivel, para no preparar
+     * mensajes caros que luego se descartarían.
+     *
+     * @param n Nivel del evento.
+     * @return true si se registra.
+     */
+    public static boolean activo(Nivel n) {
+        return n.compareTo(nivel) >= 0 && n != Nivel.NADA;
+    }
+
+    /**
+     * Registra un detalle que solo interesa al buscar un problema.
+     *
+     * @param mensaje Texto del evento.
+     */
+    public static void depurar(String mensaje) {
+        apuntar(Nivel.DEPURAR, mensaje, null);
+    }
+
+    /**
+     * Registra un evento normal.
+     *
+     * @param mensaje Texto del evento.
+     */
+    public static void info(String mensaje) {
+        apuntar(Nivel.INFO, mensaje, null);
+    }
+
+    /**
+     * Registra algo que no ha ido bien pero tiene arreglo.
+     *
+     * @param mensaje Texto del evento.
+     */
+    public static void aviso(String mensaje) {
+        apuntar(Nivel.AVISO, mensaje, null);
+    }
+
+    /**
+     * Registra algo que no ha ido bien, con su causa.
+     *
+     * @param mensaje Texto del evento.
+     * @param causa Excepción que lo explica.
+     */
+    public static void aviso(String mensaje, Throwable causa) {
+        apuntar(Nivel.AVISO, mensaje, causa);
+    }
+
+    /**
+     * Registra un error.
+     *
+     * @param mensaje Texto del evento.
+     * @param causa Excepción que lo explica, puede ser null.
+     */
+    public static void error(String mensaje, Throwable causa) {
+        apuntar(Nivel.ERROR, mensaje, causa);
+    }
+
+    /**
+     * Registra el resultado de una transferencia u otra operación con el
+     * servidor, con sus datos en campos separados.
+     *
+     * @param n Nivel del evento.
+     * @param evento Qué ha pasado, por ejemplo "descarga".
+     * @param id Identificador de la transferencia.
+     * @param servidor Servidor.
+     * @param ruta Ruta remota.
+     * @param codigo Última respuesta del servidor, 0 si no hay.
+     * @param bytes Bytes transferidos.
+     * @param milisegundos Lo que ha tardado.
+     */
+    public static void transferencia(Nivel n, String evento, long id, String servidor, String ruta, int codigo, long bytes, long milisegundos) {
+        if (activo(n)) {
+            Evento e = new Evento(n, evento, null);
+            e.transferencia = true;
+            e.id = id;
+            e.servidor = servidor;
+            e.ruta = ruta;
+            e.codigo = codigo;
+            e.bytes = bytes;
+            e.milisegundos = milisegundos;
+            encolar(e);
+        }
+    }
+
+    private static void apuntar(Nivel n, String mensaje, Throwable causa) {
+        if (activo(n)) {
+            encolar(new Evento(n, mensaje, causa));
+        }
+    }
+
+    // Deja el evento en la cola si cabe y despierta al escritor si dormía.
+    private static void encolar(Evento evento) {
+        int limite = evento.nivel.compareTo(Nivel.AVISO) >= 0 ? maximo + maximo / 10 : maximo;
+        if (ENCOLADOS.incrementAndGet() > limite) {
+            ENCOLADOS.decrementAndGet();
+            DESCARTADOS.incrementAndGet();
+            return;
+        }
+        COLA.add(evento);
+        if (escritor == null) {
+            arrancar();
+        }
+        if (esperando) {
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    private static synchronized void arrancar() {
+        if (escritor != null) {
+            return;
+        }
+        Thread hilo = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                escribir();
+            }
+        }, "registro-eventos");
+        hilo.setDaemon(true);
+        hilo.start();
+        escritor = hilo;
+
+        // Al salir con System.exit se escribe lo que quede en la cola.
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StringBuilder lote = new StringBuilder();
+                SimpleDateFormat formato = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+                while (vaciar(lote, formato)) {
+                }
+            }
+        }));
+    }
+
+    // Bucle del hilo escritor: vacía la cola y duerme hasta que llegue algo.
+    private static void escribir() {
+        StringBuilder lote = new StringBuilder();
+        SimpleDateFormat formato = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        long ultimaRevision = System.currentTimeMillis();
+        while (true) {
+            if (vaciar(lote, formato)) {
+                continue;
+            }
+            esperando = true;
+            if (COLA.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(REVISAR_NIVEL));
+            }
+            esperando = false;
+            if (System.currentTimeMillis() - ultimaRevision >= REVISAR_NIVEL) {
+                ultimaRevision = System.currentTimeMillis();
+                revisarNivel();
+            }
+        }
+    }
+
+    // Escribe de una vez lo que hay en la cola, como mucho un lote. Devuelve
+    // true si el lote se ha llenado y puede quedar algo.
+    private static synchronized boolean vaciar(StringBuilder lote, SimpleDateFormat formato) {
+        Evento evento;
+        int escritos = 0;
+        while (escritos < LOTE && (evento = COLA.poll()) != null) {
+            ENCOLADOS.decrementAndGet();
+            evento.formatear(lote, formato);
+            escritos++;
+        }
+        long descartados = DESCARTADOS.getAndSet(0);
+        if (descartados > 0) {
+            new Evento(Nivel.AVISO, "Se han descartado " + descartados + " eventos, el registro no daba abasto", null).formatear(lote, formato);
+        }
+        if (lote.length() == 0) {
+            return false;
+        }
+        if (salida == null) {
+            System.out.print(lote);
+            System.out.flush();
+        } else {
+            try {
+                salida.write(lote.toString());
+                salida.flush();
+            } catch (IOException ex) {
+                System.err.println("No se puede escribir el registro: " + ex);
+            }
+        }
+        lote.setLength(0);
+        return escritos == LOTE;
+    }
+
+    // Si ha cambiado el archivo de configuración toma el nivel nuevo.
+    private static synchronized void revisarNivel() {
+        File archivo = archivoConfiguracion;
+        if (archivo == null || archivo.lastModified() == modificacionConfiguracion) {
+            return;
+        }
+        modificacionConfiguracion = archivo.lastModified();
+        Nivel nuevo = leerNivel(new Configuracion(archivo).getCadena("registro.nivel", "INFO"), nivel);
+        if (nuevo != nivel) {
+            nivel = nuevo;
+            apuntar(Nivel.INFO, "Nivel del registro: " + nuevo, null);
+        }
+    }
+
+    // Pasa el texto de la configuración a nivel; si no es ninguno, el dado.
+    private static Nivel leerNivel(String texto, Nivel porDefecto) {
+        try {
+            return Nivel.valueOf(texto.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return porDefecto;
+        }
+    }
+
+    // Un evento pendiente de escribir. Se le da formato en el hilo escritor.
+    private static class Evento {
+
+        private final long momento;
+        private final Nivel nivel;
+        private final String hilo;
+        private final String mensaje;
+        private final Throwable causa;
+        private boolean transferencia;
+        private long id, bytes, milisegundos;
+        private String servidor, ruta;
+        private int codigo;
+
+        private Evento(Nivel nivel, String mensaje, Throwable causa) {
+            this.momento = System.currentTimeMillis();
+            this.nivel = nivel;
+            this.hilo = Thread.currentThread().getName();
+            this.mensaje = mensaje;
+            this.causa = causa;
+        }
+
+        // Añade la línea del evento al lote.
+        private void formatear(StringBuilder lote, SimpleDateFormat formato) {
+            lote.append(formato.format(new Date(this.momento))).append(' ').append(this.nivel)
+                    .append(" [").append(this.hilo).append("] ").append(this.mensaje);
+            if (this.transferencia) {
+                lote.append(" id=").append(this.id)
+                        .append(" servidor=").append(this.servidor)
+                        .append(" ruta=\"").append(this.ruta).append('"')
+                        .append(" codigo=").append(this.codigo)
+                        .append(" bytes=").append(this.bytes)
+                        .append(" ms=").append(this.milisegundos);
+            }
+            if (this.causa != null) {
+                lote.append(": ").append(this.causa);
+            }
+            lote.append(System.lineSeparator());
+        }
+    }
+}
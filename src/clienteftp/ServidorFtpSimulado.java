@@ -0,0 +1,484 @@
+package clienteftp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Clase ServidorFtpSimulado. Servidor FTP mínimo, dentro del mismo proceso,
+ * para las pruebas de red: sirve una carpeta local en modo pasivo (PASV y
+ * EPSV) con LIST, SIZE, MDTM, REST, RETR, STOR y poco más, y si se le da un
+ * contexto TLS también AUTH TLS con PROT P. Acepta cualquier usuario y
+ * contraseña. No pretende ser un servidor completo, solo algo contra
+ * lo que conectar sin depender de servicios de fuera.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class ServidorFtpSimulado implements Runnable {
+
+    // Sesiones que pueden esperar a ser aceptadas.
+    private static final int ESPERA_ACEPTAR = 1024;
+
+    private final ServerSocket escucha;
+    private final File raiz;
+    private final Set<String> sesionesTls;
+    private final AtomicInteger saludosCompletos, saludosReanudados;
+    private volatile KeyManager[] clavesTls;
+    private volatile SSLContext tls;
+    private volatile boolean activo;
+
+    /**
+     * Constructor del servidor, escucha en un puerto libre de la máquina
+     * local.
+     *
+     * @param raiz Carpeta que se sirve como "/".
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public ServidorFtpSimulado(File raiz) throws IOException {
+        this.raiz = raiz.getCanonicalFile();
+        this.escucha = new ServerSocket(0, ESPERA_ACEPTAR, InetAddress.getLoopbackAddress());
+        this.sesionesTls = ConcurrentHashMap.newKeySet();
+        this.saludosCompletos = new AtomicInteger();
+        this.saludosReanudados = new AtomicInteger();
+    }
+
+    /**
+     * Acepta AUTH TLS con la clave dada. Se puede cambiar con el servidor en
+     * marcha; vale para los saludos que empiecen después.
+     *
+     * @param claves Clave y certificado del servidor, o null para no admitir
+     * TLS.
+     * @param reanudar true para que todos los saludos compartan un contexto y
+     * se puedan reanudar; false para hacer cada saludo con un contexto nuevo,
+     * que no conoce ninguna sesión ni ticket anterior.
+     * @throws IOException Si no se puede preparar el contexto TLS.
+     */
+    public void setTls(KeyManager[] claves, boolean reanudar) throws IOException {
+        this.clavesTls = claves;
+        this.tls = claves != null && reanudar ? nuevoContexto(claves) : null;
+    }
+
+    /**
+     * Obtiene cuántos saludos TLS completos se han hecho, de control y datos.
+     *
+     * @return Saludos completos desde que arrancó.
+     */
+    public int getSaludosCompletos() {
+        return this.saludosCompletos.get();
+    }
+
+    /**
+     * Obtiene cuántos saludos TLS han reanudado una sesión anterior.
+     *
+     * @return Saludos reanudados desde que arrancó.
+     */
+    public int getSaludosReanudados() {
+        return this.saludosReanudados.get();
+    }
+
+    /**
+     * Obtiene el puerto de control.
+     *
+     * @return Puerto donde escucha el servidor.
+     */
+    public int getPuerto() {
+        return this.escucha.getLocalPort();
+    }
+
+    /**
+     * Arranca el hilo que acepta sesiones.
+     */
+    public void iniciar() {
+        this.activo = true;
+        Thread hilo = new Thread(this, "servidor-simulado");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Deja de aceptar sesiones.
+     */
+    public void detener() {
+        this.activo = false;
+        try {
+            this.escucha.close();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al cerrar el servidor simulado", ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.activo) {
+            try {
+                Thread hilo = new Thread(new Sesion(this.escucha.accept()), "servidor-simulado-sesion");
+                hilo.setDaemon(true);
+                hilo.start();
+            } catch (IOException ex) {
+                if (this.activo) {
+                    RegistroEventos.error("Fallo en el servidor simulado", ex);
+                }
+            }
+        }
+    }
+
+    // Una sesión de control.
+    private class Sesion implements Runnable {
+
+        private Socket socket;
+        private BufferedReader entrada;
+        private Writer salida;
+        private boolean protegerDatos;
+        private ServerSocket pasivo;
+        private String directorio;
+        private long reinicio;
+
+        private Sesion(Socket socket) {
+            this.socket = socket;
+            this.directorio = "/";
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.abrirFlujos();
+                this.responder("220 Servidor FTP simulado");
+                String linea;
+                while ((linea = this.entrada.readLine()) != null) {
+                    int espacio = linea.indexOf(' ');
+                    String comando = (espacio == -1 ? linea : linea.substring(0, espacio)).toUpperCase(Locale.ROOT);
+                    String argumento = espacio == -1 ? "" : linea.substring(espacio + 1);
+                    if (!this.atender(comando, argumento)) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                // El cliente ha cerrado o se ha cortado.
+            } finally {
+                this.cerrarPasivo();
+                try {
+                    this.socket.close();
+                } catch (IOException ex) {
+                    // Ya estaba cerrado.
+                }
+            }
+        }
+
+        // Atiende un comando. Devuelve false para cerrar la sesión.
+        private boolean atender(String comando, String argumento) throws IOException {
+            File archivo = this.resolver(argumento);
+            switch (comando) {
+                case "USER":
+                    this.responder("331 Contraseña, por favor");
+                    break;
+                case "PASS":
+                    this.responder("230 Dentro");
+                    break;
+                case "SYST":
+                    this.responder("215 UNIX Type: L8");
+                    break;
+                case "FEAT":
+                    this.responder("211-Extensiones:\r\n EPSV\r\n PASV\r\n SIZE\r\n MDTM\r\n REST STREAM\r\n"
+                            + (clavesTls == null ? "" : " AUTH TLS\r\n PBSZ\r\n PROT\r\n") + "211 Fin");
+                    break;
+                case "AUTH":
+                    if (clavesTls == null || !argumento.trim().equalsIgnoreCase("TLS")) {
+                        this.responder("504 Solo AUTH TLS");
+                    } else {
+                        this.responder("234 Empieza TLS");
+                        this.socket = saludar(this.socket);
+                        this.abrirFlujos();
+                    }
+                    break;
+                case "PBSZ":
+                    this.responder("200 PBSZ=0");
+                    break;
+                case "PROT":
+                    this.protegerDatos = argumento.trim().equalsIgnoreCase("P");
+                    this.responder("200 Vale");
+                    break;
+                case "TYPE":
+                case "MODE":
+                case "STRU":
+                case "OPTS":
+                case "NOOP":
+                    this.responder("200 Vale");
+                    break;
+                case "PWD":
+                    this.responder("257 \"" + this.directorio + "\"");
+                    break;
+                case "CWD":
+                    if (archivo.isDirectory()) {
+                        this.directorio = this.rutaRemota(argumento);
+                        this.responder("250 Directorio cambiado");
+                    } else {
+                        this.responder("550 No existe");
+                    }
+                    break;
+                case "PASV":
+                    int puerto = this.abrirPasivo();
+                    this.responder("227 Entering Passive Mode (127,0,0,1," + (puerto / 256) + "," + (puerto % 256) + ")");
+                    break;
+                case "EPSV":
+                    this.responder("229 Entering Extended Passive Mode (|||" + this.abrirPasivo() + "|)");
+                    break;
+                case "SIZE":
+                    if (archivo.isFile()) {
+                        this.responder("213 " + archivo.length());
+                    } else {
+                        this.responder("550 No existe");
+                    }
+                    break;
+                case "MDTM":
+                    if (archivo.exists()) {
+                        this.responder("213 " + fechaUtc("yyyyMMddHHmmss", archivo.lastModified()));
+                    } else {
+                        this.responder("550 No existe");
+                    }
+                    break;
+                case "REST":
+                    this.reinicio = Long.parseLong(argumento.trim());
+                    this.responder("350 Se empezará en " + this.reinicio);
+                    break;
+                case "LIST":
+                case "NLST":
+                    this.listar(this.resolver(sinOpciones(argumento)), comando.equals("NLST"));
+                    break;
+                case "RETR":
+                    this.enviar(archivo);
+                    break;
+                case "STOR":
+                    this.recibir(archivo);
+                    break;
+                case "DELE":
+                    this.responder(archivo.isFile() && archivo.delete() ? "250 Borrado" : "550 No se puede borrar");
+                    break;
+                case "MKD":
+                    this.responder(archivo.mkdir() ? "257 \"" + this.rutaRemota(argumento) + "\" creado" : "550 No se puede crear");
+                    break;
+                case "RMD":
+                    this.responder(archivo.isDirectory() && archivo.delete() ? "250 Borrado" : "550 No se puede borrar");
+                    break;
+                case "QUIT":
+                    this.responder("221 Adiós");
+                    return false;
+                default:
+                    this.responder("502 No implementado");
+            }
+            return true;
+        }
+
+        // Envía el listado en formato UNIX por la conexión de datos.
+        private void listar(File carpeta, boolean soloNombres) throws IOException {
+            File[] archivos = carpeta.isDirectory() ? carpeta.listFiles() : new File[]{carpeta};
+            StringBuilder listado = new StringBuilder();
+            for (File archivo : archivos == null ? new File[0] : archivos) {
+                if (!archivo.exists()) {
+                    continue;
+                }
+                if (!soloNombres) {
+                    listado.append(archivo.isDirectory() ? "drwxr-xr-x" : "-rw-r--r--").append(" 1 ftp ftp ")
+                            .append(archivo.length()).append(' ')
+                            .append(fechaUtc("MMM dd yyyy", archivo.lastModified())).append(' ');
+                }
+                listado.append(archivo.getName()).append("\r\n");
+            }
+            Socket datos = this.aceptarDatos();
+            if (datos == null) {
+                return;
+            }
+            try (OutputStream salidaDatos = datos.getOutputStream()) {
+                salidaDatos.write(listado.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            this.responder("226 Listado enviado");
+        }
+
+        // Envía un archivo desde el punto de REST.
+        private void enviar(File archivo) throws IOException {
+            long inicio = this.reinicio;
+            this.reinicio = 0;
+            if (!archivo.isFile()) {
+                this.responder("550 No existe");
+                return;
+            }
+            Socket datos = this.aceptarDatos();
+            if (datos == null) {
+                return;
+            }
+            try (InputStream lector = new FileInputStream(archivo); OutputStream salidaDatos = datos.getOutputStream()) {
+                lector.skip(inicio);
+                copiar(lector, salidaDatos);
+            } catch (IOException ex) {
+                this.responder("426 Conexión de datos cortada");
+                return;
+            }
+            this.responder("226 Enviado");
+        }
+
+        // Recibe un archivo; con REST escribe desde ese byte.
+        private void recibir(File archivo) throws IOException {
+            long inicio = this.reinicio;
+            this.reinicio = 0;
+            Socket datos = this.aceptarDatos();
+            if (datos == null) {
+                return;
+            }
+            try (RandomAccessFile escritor = new RandomAccessFile(archivo, "rw"); InputStream entradaDatos = datos.getInputStream()) {
+                escritor.setLength(inicio);
+                escritor.seek(inicio);
+                byte[] buffer = new byte[64 * 1024];
+                int leidos;
+                while ((leidos = entradaDatos.read(buffer)) != -1) {
+                    escritor.write(buffer, 0, leidos);
+                }
+            } catch (IOException ex) {
+                this.responder("426 Conexión de datos cortada");
+                return;
+            }
+            this.responder("226 Recibido");
+        }
+
+        // Abre el puerto pasivo para la próxima transferencia.
+        private int abrirPasivo() throws IOException {
+            this.cerrarPasivo();
+            this.pasivo = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            this.pasivo.setSoTimeout(30000);
+            return this.pasivo.getLocalPort();
+        }
+
+        // Espera la conexión de datos. Null si no se pidió PASV o no llega.
+        private Socket aceptarDatos() throws IOException {
+            if (this.pasivo == null) {
+                this.responder("425 Usa PASV o EPSV primero");
+                return null;
+            }
+            this.responder("150 Abriendo conexión de datos");
+            try {
+                Socket datos = this.pasivo.accept();
+                return this.protegerDatos ? saludar(datos) : datos;
+            } catch (IOException ex) {
+                this.responder("425 No ha llegado la conexión de datos");
+                return null;
+            } finally {
+                this.cerrarPasivo();
+            }
+        }
+
+        private void cerrarPasivo() {
+            if (this.pasivo != null) {
+                try {
+                    this.pasivo.close();
+                } catch (IOException ex) {
+                    // Ya estaba cerrado.
+                }
+                this.pasivo = null;
+            }
+        }
+
+        // Ruta absoluta en el servidor de un argumento.
+        private String rutaRemota(String argumento) {
+            if (argumento.isEmpty()) {
+                return this.directorio;
+            }
+            return argumento.startsWith("/") ? argumento : CacheListados.unir(this.directorio, argumento);
+        }
+
+        // Archivo local de un argumento, sin salir de la raíz.
+        private File resolver(String argumento) throws IOException {
+            File archivo = new File(raiz, this.rutaRemota(argumento)).getCanonicalFile();
+            return archivo.getPath().startsWith(raiz.getPath()) ? archivo : raiz;
+        }
+
+        // Lee y escribe por el socket actual, que cambia tras AUTH TLS.
+        private void abrirFlujos() throws IOException {
+            this.entrada = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+            this.salida = new OutputStreamWriter(this.socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        private void responder(String respuesta) throws IOException {
+            this.salida.write(respuesta + "\r\n");
+            this.salida.flush();
+        }
+    }
+
+    // Hace el saludo TLS como servidor sobre un socket ya conectado y cuenta
+    // si ha reanudado una sesión. Solo TLS 1.2: en 1.3 la reanudación va por
+    // tickets y el identificador de sesión no dice si se ha reanudado.
+    private SSLSocket saludar(Socket socket) throws IOException {
+        SSLContext contexto = this.tls != null ? this.tls : nuevoContexto(this.clavesTls);
+        SSLSocket seguro = (SSLSocket) contexto.getSocketFactory().createSocket(socket,
+                socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+        seguro.setUseClientMode(false);
+        seguro.setEnabledProtocols(new String[]{"TLSv1.2"});
+        seguro.startHandshake();
+        SSLSession sesion = seguro.getSession();
+        if (this.sesionesTls.add(Base64.getEncoder().encodeToString(sesion.getId()))) {
+            this.saludosCompletos.incrementAndGet();
+        } else {
+            this.saludosReanudados.incrementAndGet();
+        }
+        return seguro;
+    }
+
+    // Contexto TLS de servidor con la clave dada y su propia cache de sesiones.
+    private static SSLContext nuevoContexto(KeyManager[] claves) throws IOException {
+        try {
+            SSLContext contexto = SSLContext.getInstance("TLS");
+            contexto.init(claves, null, null);
+            return contexto;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("No se puede preparar TLS: " + ex.getMessage(), ex);
+        }
+    }
+
+    // Quita las opciones de LIST (como -a o -l) y deja solo la ruta.
+    private static String sinOpciones(String argumento) {
+        String ruta = argumento.trim();
+        while (ruta.startsWith("-")) {
+            int espacio = ruta.indexOf(' ');
+            ruta = espacio == -1 ? "" : ruta.substring(espacio + 1).trim();
+        }
+        return ruta;
+    }
+
+    // Copia un flujo en otro.
+    private static void copiar(InputStream entrada, OutputStream salida) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int leidos;
+        while ((leidos = entrada.read(buffer)) != -1) {
+            salida.write(buffer, 0, leidos);
+        }
+    }
+
+    // Fecha en UTC con el formato dado.
+    private static String fechaUtc(String formato, long momento) {
+        SimpleDateFormat fecha = new SimpleDateFormat(formato, Locale.US);
+        fecha.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fecha.format(new Date(momento));
+    }
+}
@@ -0,0 +1,109 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase SesionInteractiva. La sesión reservada para lo que hace el usuario
+ * al navegar (listar, crear carpetas, borrar). No pertenece al pool, así que
+ * las transferencias nunca la ocupan; las órdenes se atienden de una en una y
+ * si el servidor la ha cerrado por inactividad se vuelve a abrir.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class SesionInteractiva {
+
+    // Tras este tiempo sin usarse se comprueba con NOOP antes de una orden.
+    private static final long INACTIVIDAD = 30000;
+
+    private final PoolSesiones pool;
+    private final ReentrantLock cerrojo;
+    private final long pista;
+    private FTPClient cliente;
+    private long ultimoUso, pistaAnterior;
+
+    /**
+     * Constructor de la sesión.
+     *
+     * @param cliente Sesión ya logueada con la que se conectó.
+     * @param pool Pool del servidor, para abrir otra si esta se cae.
+     */
+    public SesionInteractiva(FTPClient cliente, PoolSesiones pool) {
+        this.cliente = cliente;
+        this.pool = pool;
+        this.cerrojo = new ReentrantLock(true);
+        this.ultimoUso = System.currentTimeMillis();
+        this.pista = Trazador.nuevaPista("sesión interactiva");
+    }
+
+    /**
+     * Toma la sesión para una orden, esperando a que acabe la anterior. Hay
+     * que soltarla siempre con soltar(). Mientras, lo que se trace desde el
+     * hilo va a la pista de la sesión.
+     *
+     * @return Cliente FTP conectado y logueado.
+     * @throws IOException Si estaba caída y no se puede volver a abrir.
+     */
+    public FTPClient tomar() throws IOException {
+        this.cerrojo.lock();
+        this.pistaAnterior = Trazador.cambiarPista(this.pista);
+        try {
+            if (!this.cliente.isConnected() || !this.responde()) {
+                RegistroEventos.aviso("La sesión interactiva se ha cerrado, se abre otra.");
+                this.cerrar();
+                this.cliente = this.pool.abrirReservada();
+            }
+            return this.cliente;
+        } catch (IOException | RuntimeException ex) {
+            Trazador.cambiarPista(this.pistaAnterior);
+            this.cerrojo.unlock();
+            throw ex;
+        }
+    }
+
+    /**
+     * Suelta la sesión tomada con tomar().
+     */
+    public void soltar() {
+        this.ultimoUso = System.currentTimeMillis();
+        Trazador.cambiarPista(this.pistaAnterior);
+        this.cerrojo.unlock();
+    }
+
+    /**
+     * Obtiene el cliente sin tomarlo, para consultar la última respuesta.
+     *
+     * @return Cliente FTP de la sesión.
+     */
+    public FTPClient getCliente() {
+        return this.cliente;
+    }
+
+    /**
+     * Cierra la sesión.
+     */
+    public void cerrar() {
+        try {
+            if (this.cliente.isConnected()) {
+                this.cliente.disconnect();
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al cerrar la sesión interactiva", ex);
+        }
+    }
+
+    // Una sesión parada mucho rato puede estar cerrada sin saberlo; solo se
+    // comprueba si lleva un tiempo sin usarse.
+    private boolean responde() {
+        if (System.currentTimeMillis() - this.ultimoUso < INACTIVIDAD) {
+            return true;
+        }
+        try {
+            return this.cliente.sendNoOp();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clase SincronizadorDescargas. Decide si las descargas terminadas se fuerzan
+ * a disco antes de darles su nombre definitivo, según el ajuste
+ * descargas.fsync: "no" solo las renombra, "archivo" hace fsync de cada una y
+ * "lote" junta las que terminan mientras se fuerza el lote anterior. Solo
+ * hay un lote forzándose a la vez; lo hace una de sus descargas por todas,
+ * con un solo fsync de cada directorio, y las demás esperan. Una descarga
+ * sola no espera nada, y con muchos archivos pequeños a la vez se ahorran
+ * casi todas las esperas al disco.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class SincronizadorDescargas {
+
+    protected static final byte NO = 0;
+    protected static final byte ARCHIVO = 1;
+    protected static final byte LOTE = 2;
+
+    private final byte modo;
+    private Lote abierto;
+    private boolean sincronizando;
+
+    /**
+     * Constructor del sincronizador.
+     *
+     * @param modo "no", "archivo" o "lote"; cualquier otro valor es "no".
+     */
+    public SincronizadorDescargas(String modo) {
+        if ("archivo".equalsIgnoreCase(modo)) {
+            this.modo = ARCHIVO;
+        } else if ("lote".equalsIgnoreCase(modo)) {
+            this.modo = LOTE;
+        } else {
+            this.modo = NO;
+        }
+    }
+
+    /**
+     * Publica una descarga terminada. Vuelve cuando el archivo ya tiene su
+     * nombre definitivo (y está en disco si el modo lo pide).
+     *
+     * @param escritor Descarga con el temporal ya cerrado.
+     * @throws IOException Si no se puede forzar o renombrar.
+     */
+    public void confirmar(EscritorDescarga escritor) throws IOException {
+        if (this.modo == NO) {
+            escritor.publicar();
+            return;
+        }
+        if (this.modo == ARCHIVO) {
+            escritor.forzar();
+            escritor.publicar();
+            forzarDirectorio(escritor.getDestino().getParentFile());
+            return;
+        }
+
+        Lote lote;
+        boolean primera = false;
+        boolean interrumpido = false;
+        synchronized (this) {
+            if (this.abierto == null) {
+                this.abierto = new Lote();
+            }
+            lote = this.abierto;
+            lote.escritores.add(escritor);
+            // Mientras otro lote se está forzando este se va llenando; cuando
+            // acaba, la primera que despierta se lleva el lote entero.
+            while (!lote.hecho) {
+                if (!this.sincronizando && this.abierto == lote) {
+                    this.sincronizando = true;
+                    this.abierto = null;
+                    primera = true;
+                    break;
+                }
+                try {
+                    this.wait();
+                } catch (InterruptedException ex) {
+                    // No se puede salir antes: el archivo aún no tendría su nombre.
+                    interrumpido = true;
+                }
+            }
+        }
+
+        if (primera) {
+            try {
+                lote.sincronizar();
+            } finally {
+                synchronized (this) {
+                    lote.hecho = true;
+                    this.sincronizando = false;
+                    this.notifyAll();
+                }
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = lote.errores.get(escritor);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Hace fsync del directorio para que el renombrado también quede en disco.
+    // En Windows no se pueden abrir directorios; allí basta con el renombrado.
+    private static void forzarDirectorio(File directorio) {
+        try (FileChannel canal = FileChannel.open(directorio.toPath(), StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException ex) {
+            // Sin soporte en este sistema.
+        }
+    }
+
+    // Descargas que se fuerzan juntas.
+    private static class Lote {
+
+        private final List<EscritorDescarga> escritores = new ArrayList<>();
+        private final Map<EscritorDescarga, IOException> errores = new HashMap<>();
+        private boolean hecho;
+
+        // Fuerza y renombra todas, y después cada directorio una vez.
+        private void sincronizar() {
+            Set<File> directorios = new LinkedHashSet<>();
+            for (EscritorDescarga escritor : this.escritores) {
+                try {
+                    escritor.forzar();
+                    escritor.publicar();
+                    directorios.add(escritor.getDestino().getParentFile());
+                } catch (IOException ex) {
+                    this.errores.put(escritor, ex);
+                }
+            }
+            for (File directorio : directorios) {
+                forzarDirectorio(directorio);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase SondeoDatos. Averigua con qué modo se pueden abrir las conexiones de
+ * datos con un servidor: EPSV, PASV tal cual, PASV cambiando la dirección
+ * privada que anuncia un servidor detrás de NAT por la de la conexión de
+ * control, o activo. Cada modo se prueba con un listado y tiempos cortos, y
+ * se queda el primero que funciona; CacheCapacidades lo recuerda para que
+ * las siguientes sesiones no tengan que volver a probar.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class SondeoDatos {
+
+    /**
+     * Modos de la conexión de datos, en el orden en que se prueban.
+     */
+    public enum Modo {
+        EPSV, PASV, PASV_NAT, ACTIVO;
+
+        /**
+         * Deja el cliente usando este modo en las conexiones de datos.
+         *
+         * @param cliente Cliente FTP conectado.
+         */
+        public void aplicar(FTPClient cliente) {
+            if (this == ACTIVO) {
+                cliente.enterLocalActiveMode();
+                return;
+            }
+            cliente.enterLocalPassiveMode();
+            cliente.setUseEPSVwithIPv4(this == EPSV);
+            cliente.setPassiveNatWorkaround(this == PASV_NAT);
+        }
+    }
+
+    private SondeoDatos() {
+    }
+
+    /**
+     * Prueba los modos por orden hasta que uno consigue listar el directorio
+     * inicial. Se prueba con sesiones aparte: si un modo falla después de enviar
+     * el listado, el servidor puede contestar tarde y esa sesión ya no sirve,
+     * así que se cierra y el siguiente modo se prueba en otra.
+     *
+     * @param pool Pool del servidor, para abrir las sesiones de prueba.
+     * @param soloPasivo true si no se debe probar el modo activo.
+     * @param tiempoMaximo Milisegundos que se espera a cada conexión de datos.
+     * @return El modo que funciona, o null si no funciona ninguno.
+     */
+    public static Modo sondear(PoolSesiones pool, boolean soloPasivo, int tiempoMaximo) {
+        boolean detrasDeNat = false;
+        for (Modo modo : Modo.values()) {
+            if (modo == Modo.ACTIVO && soloPasivo) {
+                break;
+            }
+            if (modo == Modo.PASV_NAT && !detrasDeNat) {
+                continue;
+            }
+            FTPClient cliente;
+            try {
+                cliente = pool.abrirReservada();
+            } catch (IOException ex) {
+                RegistroEventos.aviso("No se puede abrir sesión para probar el modo de datos", ex);
+                return null;
+            }
+            try {
+                if (!descartado(cliente, modo) && probar(cliente, modo, tiempoMaximo)) {
+                    RegistroEventos.info("Conexiones de datos con " + pool.getServidor() + " en modo " + modo);
+                    return modo;
+                }
+                if (modo == Modo.PASV) {
+                    detrasDeNat = anunciaPrivada(cliente);
+                }
+            } finally {
+                cerrar(cliente);
+            }
+        }
+        return null;
+    }
+
+    // EPSV no se prueba si el servidor no lo admite.
+    private static boolean descartado(FTPClient cliente, Modo modo) {
+        try {
+            return modo == Modo.EPSV && cliente.epsv() != FTPReply.ENTERING_EPSV_MODE;
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    // Tras fallar PASV, indica si el servidor anunció una dirección privada
+    // sin serlo él: entonces está detrás de NAT y vale la pena cambiarla.
+    private static boolean anunciaPrivada(FTPClient cliente) {
+        String anunciada = cliente.getPassiveHost();
+        try {
+            return anunciada != null && InetAddress.getByName(anunciada).isSiteLocalAddress()
+                    && !cliente.getRemoteAddress().isSiteLocalAddress();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    // Lista el directorio inicial con el modo y tiempos cortos; vale si el
+    // servidor termina el listado bien.
+    private static boolean probar(FTPClient cliente, Modo modo, int tiempoMaximo) {
+        modo.aplicar(cliente);
+        cliente.setConnectTimeout(tiempoMaximo);
+        cliente.setDataTimeout(tiempoMaximo);
+        try {
+            cliente.listFiles();
+            return FTPReply.isPositiveCompletion(cliente.getReplyCode());
+        } catch (IOException ex) {
+            RegistroEventos.depurar("El modo " + modo + " no funciona: " + ex);
+            return false;
+        }
+    }
+
+    // Cierra una sesión de prueba sin propagar errores.
+    private static void cerrar(FTPClient cliente) {
+        try {
+            cliente.disconnect();
+        } catch (IOException ex) {
+            RegistroEventos.depurar("Fallo al cerrar la sesión de prueba: " + ex);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Clase SumaVerificacion. Calcula la suma de comprobación de un archivo a la
+ * vez que se transfiere, envolviendo el flujo que ya usa la transferencia, y
+ * la compara con la que da el servidor (HASH, XCRC, XMD5, XSHA256) o con un
+ * archivo de suma que esté junto al original en el servidor.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class SumaVerificacion {
+
+    /**
+     * Algoritmos de suma disponibles.
+     */
+    public enum Algoritmo {
+        CRC32("CRC32", "XCRC", ".crc", 8),
+        MD5("MD5", "XMD5", ".md5", 32),
+        SHA256("SHA-256", "XSHA256", ".sha256", 64);
+
+        private final String nombreHash, comandoX, extension;
+        private final int longitudHex;
+
+        Algoritmo(String nombreHash, String comandoX, String extension, int longitudHex) {
+            this.nombreHash = nombreHash;
+            this.comandoX = comandoX;
+            this.extension = extension;
+            this.longitudHex = longitudHex;
+        }
+
+        /**
+         * Busca el algoritmo por su nombre en la configuración.
+         *
+         * @param nombre crc32, md5 o sha256.
+         * @return El algoritmo o null si no se quiere verificar.
+         */
+        public static Algoritmo desdeNombre(String nombre) {
+            for (Algoritmo a : values()) {
+                if (a.name().equalsIgnoreCase(nombre)) {
+                    return a;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Resultado de la comparación con el servidor.
+     */
+    public enum Veredicto {
+        CORRECTA, INCORRECTA, SIN_REFERENCIA
+    }
+
+    private final Algoritmo algoritmo;
+    private final CRC32 crc;
+    private final MessageDigest resumen;
+    // digest() reinicia el resumen, así que su hexadecimal se guarda la
+    // primera vez que se pide.
+    private String hexResumen;
+
+    /**
+     * Constructor de la suma.
+     *
+     * @param algoritmo Algoritmo que se va a calcular.
+     */
+    public SumaVerificacion(Algoritmo algoritmo) {
+        this.algoritmo = algoritmo;
+        if (algoritmo == Algoritmo.CRC32) {
+            this.crc = new CRC32();
+            this.resumen = null;
+        } else {
+            this.crc = null;
+            try {
+                this.resumen = MessageDigest.getInstance(algoritmo.nombreHash);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    // Añade bytes a la suma.
+    private void actualizar(byte[] b, int desde, int cantidad) {
+        if (this.crc != null) {
+            this.crc.update(b, desde, cantidad);
+        } else {
+            this.resumen.update(b, desde, cantidad);
+        }
+    }
+
+    /**
+     * Suma los primeros bytes de un archivo local. Se usa al reanudar una
+     * transferencia para que la suma cubra también lo ya transferido.
+     *
+     * @param archivo Archivo local.
+     * @param bytes Número de bytes desde el principio.
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    public void sumarPrefijo(File archivo, long bytes) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (FileInputStream lector = new FileInputStream(archivo)) {
+            long pendientes = bytes;
+            int leidos;
+            while (pendientes > 0 && (leidos = lector.read(buffer, 0, (int) Math.min(buffer.length, pendientes))) != -1) {
+                this.actualizar(buffer, 0, leidos);
+                pendientes -= leidos;
+            }
+        }
+    }
+
+    /**
+     * Envuelve el flujo de escritura de una descarga para sumar los bytes a la
+     * vez que se escriben.
+     *
+     * @param salida Flujo hacia el archivo local.
+     * @return Flujo que escribe en salida y suma lo escrito.
+     */
+    public OutputStream envolver(OutputStream salida) {
+        return new FilterOutputStream(salida) {
+            @Override
+            public void write(int b) throws IOException {
+                this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int desde, int cantidad) throws IOException {
+                out.write(b, desde, cantidad);
+                actualizar(b, desde, cantidad);
+            }
+        };
+    }
+
+    /**
+     * Envuelve el flujo de lectura de una subida para sumar los bytes a la vez
+     * que se leen.
+     *
+     * @param entrada Flujo desde el archivo local.
+     * @return Flujo que lee de entrada y suma lo leído.
+     */
+    public InputStream envolver(InputStream entrada) {
+        return new FilterInputStream(entrada) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1) {
+                    actualizar(new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int desde, int cantidad) throws IOException {
+                int leidos = in.read(b, desde, cantidad);
+                if (leidos > 0) {
+                    actualizar(b, desde, leidos);
+                }
+                return leidos;
+            }
+        };
+    }
+
+    /**
+     * Suma los bytes pendientes de un buffer sin moverlo. Lo usa el motor NIO,
+     * que no pasa por flujos.
+     *
+     * @param datos Buffer con los bytes entre su posición y su límite.
+     */
+    public void sumar(ByteBuffer datos) {
+        ByteBuffer copia = datos.duplicate();
+        if (this.crc != null) {
+            this.crc.update(copia);
+        } else {
+            this.resumen.update(copia);
+        }
+    }
+
+    /**
+     * Obtiene la suma calculada en hexadecimal. Con MD5 y SHA-256 la primera
+     * llamada cierra la suma: las siguientes dan el mismo valor y los bytes
+     * que se sumen después ya no cuentan.
+     *
+     * @return Cadena hexadecimal en minúsculas.
+     */
+    public String getHex() {
+        if (this.crc != null) {
+            return String.format("%08x", this.crc.getValue());
+        }
+        if (this.hexResumen == null) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : this.resumen.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            this.hexResumen = hex.toString();
+        }
+        return this.hexResumen;
+    }
+
+    /**
+     * Compara la suma calculada con la del servidor. Se prueba primero HASH,
+     * luego el comando X del algoritmo y por último un archivo de suma junto
+     * al original (archivo.md5, archivo.sha256...).
+     *
+     * @param cliente Sesión con el servidor.
+     * @param rutaRemota Ruta del archivo remoto.
+     * @return El veredicto de la comparación.
+     * @throws IOException Si se pierde la conexión.
+     */
+    public Veredicto comparar(FTPClient cliente, String rutaRemota) throws IOException {
+        String remota = this.sumaServidor(cliente, rutaRemota);
+        if (remota == null) {
+            remota = this.sumaArchivoLateral(cliente, rutaRemota);
+        }
+        if (remota == null) {
+            return Veredicto.SIN_REFERENCIA;
+        }
+        return remota.equalsIgnoreCase(this.getHex()) ? Veredicto.CORRECTA : Veredicto.INCORRECTA;
+    }
+
+    // Pide la suma al servidor con HASH o con el comando X correspondiente.
+    private String sumaServidor(FTPClient cliente, String rutaRemota) throws IOException {
+        if (cliente.hasFeature("HASH")
+                && FTPReply.isPositiveCompletion(cliente.sendCommand("OPTS", "HASH " + this.algoritmo.nombreHash))
+                && cliente.sendCommand("HASH", rutaRemota) == FTPReply.FILE_STATUS) {
+            String suma = this.buscarHex(cliente.getReplyString());
+            if (suma != null) {
+                return suma;
+            }
+        }
+        if (FTPReply.isPositiveCompletion(cliente.sendCommand(this.algoritmo.comandoX, rutaRemota))) {
+            return this.buscarHex(cliente.getReplyString());
+        }
+        return null;
+    }
+
+    // Lee la suma de un archivo de suma junto al original, si existe.
+    private String sumaArchivoLateral(FTPClient cliente, String rutaRemota) throws IOException {
+        InputStream datos = cliente.retrieveFileStream(rutaRemota + this.algoritmo.extension);
+        if (datos == null) {
+            return null;
+        }
+
+        byte[] buffer = new byte[4096];
+        int total = 0, leidos;
+        try {
+            while (total < buffer.length && (leidos = datos.read(buffer, total, buffer.length - total)) != -1) {
+                total += leidos;
+            }
+        } finally {
+            datos.close();
+        }
+        cliente.completePendingCommand();
+        return this.buscarHex(new String(buffer, 0, total, StandardCharsets.US_ASCII));
+    }
+
+    // Busca en el texto la primera palabra hexadecimal con la longitud del algoritmo.
+    private String buscarHex(String texto) {
+        for (String palabra : texto.trim().split("\\s+")) {
+            if (palabra.length() == this.algoritmo.longitudHex && palabra.matches("[0-9a-fA-F]+")) {
+                return palabra;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,294 @@
+package clienteftp;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.net.ProtocolCommandEvent;
+import org.apache.commons.net.ProtocolCommandListener;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase Trazador. Traza opcional de lo que hace cada transferencia, para ver
+ * en qué se va el tiempo: conectar, login, CWD, PASV, hasta el primer byte o
+ * la copia. Se activa poniendo un archivo en traza.archivo y se escribe en el
+ * formato de eventos de Chrome (JSON), que abren chrome://tracing y Perfetto.
+ *
+ * Cada transferencia es una pista con su identificador; lo que hacen otros
+ * hilos sin pista (navegar, buscar, precargar) va a una pista por hilo. Las
+ * órdenes al servidor se trazan solas: cada cliente que sale de
+ * ConectorRapido lleva un oyente que convierte cada orden y su respuesta en
+ * un tramo, y la parte de datos de RETR, STOR o LIST en otro.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class Trazador {
+
+    // Las pistas de los hilos sin pista propia empiezan aquí, para no chocar
+    // con los identificadores de las transferencias.
+    private static final long PISTAS_HILOS = 1000000000L;
+
+    private static final long BASE = System.nanoTime();
+    private static final AtomicLong PISTAS = new AtomicLong(PISTAS_HILOS / 2);
+    private static final ThreadLocal<Long> PISTA = new ThreadLocal<>();
+    private static final Map<Long, Boolean> NOMBRADAS = new ConcurrentHashMap<>();
+    private static volatile boolean activo;
+    private static Writer salida;
+    private static boolean primero = true;
+
+    private Trazador() {
+    }
+
+    /**
+     * Activa la traza si la configuración indica un archivo en traza.archivo.
+     * El archivo se sobrescribe y se cierra al salir del programa.
+     *
+     * @param configuracion Configuración ya leída.
+     */
+    public static synchronized void configurar(Configuracion configuracion) {
+        String ruta = configuracion.getCadena("traza.archivo", "");
+        if (ruta.isEmpty() || activo) {
+            return;
+        }
+        try {
+            salida = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(ruta), StandardCharsets.UTF_8), 64 * 1024);
+            salida.write("[");
+        } catch (IOException ex) {
+            RegistroEventos.aviso("No se puede abrir el archivo de traza " + ruta, ex);
+            return;
+        }
+        activo = true;
+        escribir("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"ClienteFtp\"}}");
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cerrar();
+            }
+        }));
+        RegistroEventos.info("Traza activada en " + ruta);
+    }
+
+    /**
+     * Indica si se está trazando, para no preparar datos que no se usarían.
+     *
+     * @return true si la traza está activada.
+     */
+    public static boolean activo() {
+        return activo;
+    }
+
+    /**
+     * Obtiene el instante actual en la escala de la traza.
+     *
+     * @return Microsegundos desde que arrancó el programa.
+     */
+    public static long ahora() {
+        return (System.nanoTime() - BASE) / 1000;
+    }
+
+    /**
+     * Asigna una pista al hilo actual: lo que se trace desde él irá ahí.
+     *
+     * @param pista Pista nueva, o 0 para volver a la pista del hilo.
+     * @return La pista que tenía antes, para restaurarla.
+     */
+    public static long cambiarPista(long pista) {
+        Long anterior = PISTA.get();
+        if (pista == 0) {
+            PISTA.remove();
+        } else {
+            PISTA.set(pista);
+        }
+        return anterior == null ? 0 : anterior;
+    }
+
+    /**
+     * Crea una pista con nombre para algo que no es una transferencia, por
+     * ejemplo la sesión interactiva.
+     *
+     * @param nombre Nombre que se muestra.
+     * @return La pista nueva.
+     */
+    public static long nuevaPista(String nombre) {
+        long pista = PISTAS.incrementAndGet();
+        nombrar(pista, nombre);
+        return pista;
+    }
+
+    /**
+     * Obtiene la pista del hilo actual. Si no tiene una asignada se usa una
+     * propia del hilo, con su nombre.
+     *
+     * @return Pista del hilo.
+     */
+    public static long getPista() {
+        Long pista = PISTA.get();
+        if (pista != null) {
+            return pista;
+        }
+        Thread hilo = Thread.currentThread();
+        long propia = PISTAS_HILOS + hilo.getId();
+        if (activo && NOMBRADAS.putIfAbsent(propia, Boolean.TRUE) == null) {
+            nombrar(propia, hilo.getName());
+        }
+        return propia;
+    }
+
+    /**
+     * Pone nombre a una pista en la traza.
+     *
+     * @param pista Pista.
+     * @param nombre Nombre que se muestra, por ejemplo "descarga /a/b.zip".
+     */
+    public static void nombrar(long pista, String nombre) {
+        if (activo) {
+            escribir("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + pista
+                    + ",\"args\":{\"name\":\"" + escapar(nombre) + "\"}}");
+        }
+    }
+
+    /**
+     * Apunta un tramo que empezó en inicio y acaba ahora.
+     *
+     * @param pista Pista del tramo.
+     * @param nombre Qué se ha hecho, por ejemplo "conectar".
+     * @param inicio Instante de inicio, de ahora().
+     * @param detalle Dato que se muestra con el tramo, puede ser null.
+     */
+    public static void tramo(long pista, String nombre, long inicio, String detalle) {
+        if (activo) {
+            tramo(pista, nombre, inicio, ahora(), detalle, 0);
+        }
+    }
+
+    /**
+     * Hace que se tracen las órdenes que el cliente envía al servidor. Se
+     * llama una vez por cliente, ya conectado.
+     *
+     * @param cliente Cliente FTP.
+     */
+    public static void seguir(FTPClient cliente) {
+        if (activo) {
+            cliente.addProtocolCommandListener(new Seguidor());
+        }
+    }
+
+    private static void tramo(long pista, String nombre, long inicio, long fin, String detalle, int codigo) {
+        StringBuilder evento = new StringBuilder(160);
+        evento.append("{\"name\":\"").append(escapar(nombre)).append("\",\"cat\":\"ftp\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(pista)
+                .append(",\"ts\":").append(inicio).append(",\"dur\":").append(Math.max(0, fin - inicio));
+        if (detalle != null || codigo != 0) {
+            evento.append(",\"args\":{");
+            if (detalle != null) {
+                evento.append("\"detalle\":\"").append(escapar(detalle)).append('"');
+            }
+            if (codigo != 0) {
+                evento.append(detalle != null ? "," : "").append("\"codigo\":").append(codigo);
+            }
+            evento.append('}');
+        }
+        escribir(evento.append('}').toString());
+    }
+
+    // Añade un evento al archivo. El último evento no lleva coma detrás y
+    // el corchete se cierra al salir; si el programa muere sin cerrarlo, los
+    // visores de trazas lo aceptan igual.
+    private static synchronized void escribir(String evento) {
+        if (salida == null) {
+            return;
+        }
+        try {
+            salida.write(primero ? "\n" : ",\n");
+            salida.write(evento);
+            primero = false;
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al escribir la traza, se desactiva", ex);
+            activo = false;
+            salida = null;
+        }
+    }
+
+    // Cierra el archivo de la traza.
+    private static synchronized void cerrar() {
+        if (salida == null) {
+            return;
+        }
+        activo = false;
+        try {
+            salida.write("\n]\n");
+            salida.close();
+        } catch (IOException ex) {
+            System.err.println("No se puede cerrar la traza: " + ex);
+        }
+        salida = null;
+    }
+
+    // Escapa un texto para ponerlo entre comillas en JSON.
+    private static String escapar(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length() + 8);
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Convierte las órdenes de un cliente y sus respuestas en tramos. Cada
+    // orden es un tramo hasta su respuesta; si la respuesta es preliminar
+    // (150 de RETR, STOR o LIST) el paso de los datos hasta la respuesta
+    // final es otro. Un cliente solo lo usa un hilo a la vez.
+    private static class Seguidor implements ProtocolCommandListener {
+
+        private String orden, argumento;
+        private long pista, inicio;
+        private boolean datos;
+
+        @Override
+        public void protocolCommandSent(ProtocolCommandEvent evento) {
+            this.orden = evento.getCommand();
+            this.argumento = argumento(evento);
+            this.pista = getPista();
+            this.inicio = ahora();
+            this.datos = false;
+        }
+
+        @Override
+        public void protocolReplyReceived(ProtocolCommandEvent evento) {
+            // Los avisos que commons-net mete como respuesta llevan código 0.
+            if (this.orden == null || !activo || evento.getReplyCode() == 0) {
+                return;
+            }
+            long fin = ahora();
+            tramo(this.pista, this.datos ? this.orden + " datos" : this.orden, this.inicio, fin, this.argumento, evento.getReplyCode());
+            if (evento.getReplyCode() >= 100 && evento.getReplyCode() < 200) {
+                this.datos = true;
+                this.inicio = fin;
+            } else {
+                this.orden = null;
+            }
+        }
+
+        // El argumento de la orden, salvo la contraseña.
+        private static String argumento(ProtocolCommandEvent evento) {
+            String orden = evento.getCommand();
+            String mensaje = evento.getMessage();
+            if (mensaje == null || "PASS".equalsIgnoreCase(orden) || "ACCT".equalsIgnoreCase(orden)) {
+                return null;
+            }
+            String argumento = mensaje.substring(Math.min(orden.length(), mensaje.length())).trim();
+            return argumento.isEmpty() ? null : argumento;
+        }
+    }
+}
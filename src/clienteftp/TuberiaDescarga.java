@@ -0,0 +1,147 @@
+package clienteftp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Clase TuberiaDescarga. Entrega el contenido de un archivo remoto como un
+ * flujo de lectura conectado directamente a la conexión de datos, sin pasar
+ * por la carpeta de descargas ni cargar el archivo entero en memoria. Si el
+ * consumidor lee despacio el servidor espera, porque el propio TCP frena el
+ * envío cuando se llena el buffer.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class TuberiaDescarga {
+
+    /**
+     * Lo que se hace con los datos de cada archivo según van llegando.
+     */
+    public interface ProcesadorFlujo {
+
+        /**
+         * Procesa el contenido de un archivo. No hace falta cerrar el flujo.
+         *
+         * @param rutaRemota Ruta del archivo remoto.
+         * @param datos Flujo con el contenido del archivo.
+         * @throws IOException Si falla la lectura o el procesado.
+         */
+        void procesar(String rutaRemota, InputStream datos) throws IOException;
+    }
+
+    /**
+     * Lo que se hace con cada línea de un archivo de texto.
+     */
+    public interface ProcesadorLineas {
+
+        /**
+         * Procesa una línea.
+         *
+         * @param rutaRemota Ruta del archivo remoto.
+         * @param linea Línea sin el salto de línea.
+         */
+        void procesar(String rutaRemota, String linea);
+    }
+
+    private final PoolSesiones pool;
+    private final int tamanioBuffer;
+
+    /**
+     * Constructor de la tubería.
+     *
+     * @param pool Pool de sesiones del servidor.
+     * @param tamanioBuffer Tamaño del buffer de lectura en bytes.
+     */
+    public TuberiaDescarga(PoolSesiones pool, int tamanioBuffer) {
+        this.pool = pool;
+        this.tamanioBuffer = tamanioBuffer;
+    }
+
+    /**
+     * Descarga un archivo pasando sus datos al procesador según llegan. Los
+     * archivos terminados en .gz se descomprimen por el camino.
+     *
+     * @param rutaRemota Ruta del archivo remoto.
+     * @param procesador Lo que se hace con los datos.
+     * @return true si el servidor confirma que ha enviado el archivo entero.
+     * @throws IOException Si falla la conexión o el procesado.
+     * @throws InterruptedException Si se interrumpe la espera de una sesión.
+     */
+    public boolean procesar(String rutaRemota, ProcesadorFlujo procesador) throws IOException, InterruptedException {
+        FTPClient cliente = this.pool.obtener();
+        boolean correcto = false;
+        try {
+            InputStream datos = cliente.retrieveFileStream(rutaRemota);
+            if (datos == null) {
+                // El servidor ha rechazado el RETR, la sesión sigue siendo válida.
+                correcto = true;
+                return false;
+            }
+
+            try (InputStream flujo = this.prepararFlujo(rutaRemota, datos)) {
+                procesador.procesar(rutaRemota, new FlujoSinCierre(flujo));
+            }
+            correcto = cliente.completePendingCommand();
+            return correcto;
+        } finally {
+            if (correcto) {
+                this.pool.devolver(cliente);
+            } else {
+                this.pool.descartar(cliente);
+            }
+        }
+    }
+
+    /**
+     * Descarga un archivo de texto pasando sus líneas al procesador según
+     * llegan.
+     *
+     * @param rutaRemota Ruta del archivo remoto.
+     * @param procesador Lo que se hace con cada línea.
+     * @return true si el servidor confirma que ha enviado el archivo entero.
+     * @throws IOException Si falla la conexión o el procesado.
+     * @throws InterruptedException Si se interrumpe la espera de una sesión.
+     */
+    public boolean procesarLineas(String rutaRemota, final ProcesadorLineas procesador) throws IOException, InterruptedException {
+        return this.procesar(rutaRemota, new ProcesadorFlujo() {
+            @Override
+            public void procesar(String ruta, InputStream datos) throws IOException {
+                BufferedReader lector = new BufferedReader(new InputStreamReader(datos, StandardCharsets.UTF_8));
+                String linea;
+                while ((linea = lector.readLine()) != null) {
+                    procesador.procesar(ruta, linea);
+                }
+            }
+        });
+    }
+
+    // Añade el buffer y, si hace falta, la descompresión.
+    private InputStream prepararFlujo(String rutaRemota, InputStream datos) throws IOException {
+        InputStream flujo = new BufferedInputStream(datos, this.tamanioBuffer);
+        if (rutaRemota.toLowerCase().endsWith(".gz")) {
+            flujo = new GZIPInputStream(flujo, this.tamanioBuffer);
+        }
+        return flujo;
+    }
+
+    // Evita que el procesador cierre la conexión de datos antes de tiempo;
+    // la tubería la cierra cuando el procesador termina.
+    private static class FlujoSinCierre extends FilterInputStream {
+
+        private FlujoSinCierre(InputStream flujo) {
+            super(flujo);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
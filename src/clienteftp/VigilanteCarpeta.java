@@ -0,0 +1,242 @@
+package clienteftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clase VigilanteCarpeta. Sube solos los archivos que aparecen en una carpeta
+ * local. No recorre la carpeta: espera los avisos del WatchService, agrupa los
+ * avisos seguidos de un mismo archivo, y solo lo da por listo cuando su tamaño
+ * y fecha no han cambiado durante el tiempo de estabilidad. Los archivos
+ * listos se envían por lotes al planificador de transferencias.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class VigilanteCarpeta implements Runnable {
+
+    // Archivos subidos que se recuerdan como mucho; si se olvida alguno, solo
+    // se vuelve a subir si recibe otro aviso.
+    private static final int MAX_SUBIDOS = 10000;
+
+    private final Control padre;
+    private final Path carpeta;
+    private final String rutaRemota;
+    private final long estabilidad;
+    private final int maxLote;
+    // Archivos con avisos recientes, por orden de llegada.
+    private final Map<Path, Candidato> candidatos;
+    // Tamaño y fecha con los que se subió cada archivo, los más recientes.
+    private final Map<Path, String> subidos;
+    private WatchService vigilante;
+    private Thread hilo;
+    private volatile boolean activo;
+
+    /**
+     * Constructor del vigilante.
+     *
+     * @param padre Permite la comunicación con la instancia de control.
+     * @param carpeta Carpeta local que se vigila.
+     * @param rutaRemota Directorio remoto al que se suben los archivos.
+     * @param estabilidad Milisegundos que un archivo debe quedarse igual para
+     * darlo por terminado de escribir.
+     * @param maxLote Número máximo de archivos por lote de subida.
+     */
+    public VigilanteCarpeta(Control padre, File carpeta, String rutaRemota, long estabilidad, int maxLote) {
+        this.padre = padre;
+        this.carpeta = carpeta.toPath();
+        this.rutaRemota = rutaRemota;
+        this.estabilidad = Math.max(100, estabilidad);
+        this.maxLote = Math.max(1, maxLote);
+        this.candidatos = new LinkedHashMap<>();
+        this.subidos = new LinkedHashMap<Path, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, String> mayor) {
+                return size() > MAX_SUBIDOS;
+            }
+        };
+    }
+
+    /**
+     * Registra la carpeta y arranca el hilo que la vigila.
+     *
+     * @throws IOException Si no se puede vigilar la carpeta.
+     */
+    public void iniciar() throws IOException {
+        this.vigilante = FileSystems.getDefault().newWatchService();
+        this.carpeta.register(this.vigilante, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.activo = true;
+        this.hilo = new Thread(this, "vigilante-carpeta");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Deja de vigilar la carpeta. Los lotes ya enviados siguen su curso.
+     */
+    public void detener() {
+        this.activo = false;
+        try {
+            this.vigilante.close();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al cerrar el vigilante de carpeta", ex);
+        }
+    }
+
+    /**
+     * Obtiene la carpeta que se vigila.
+     *
+     * @return La carpeta local.
+     */
+    public File getCarpeta() {
+        return this.carpeta.toFile();
+    }
+
+    @Override
+    public void run() {
+        long espera = Math.max(50, this.estabilidad / 4);
+        try {
+            while (this.activo) {
+                WatchKey clave = this.vigilante.poll(espera, TimeUnit.MILLISECONDS);
+                if (clave != null) {
+                    this.leerAvisos(clave);
+                    // Se recogen también los avisos que ya estén esperando.
+                    while ((clave = this.vigilante.poll()) != null) {
+                        this.leerAvisos(clave);
+                    }
+                }
+                this.enviarEstables();
+            }
+        } catch (InterruptedException | RuntimeException ex) {
+            if (this.activo) {
+                RegistroEventos.error("Fallo en el vigilante de carpeta", ex);
+            }
+        }
+    }
+
+    // Apunta o retrasa los candidatos de los avisos recibidos.
+    private void leerAvisos(WatchKey clave) {
+        long ahora = System.currentTimeMillis();
+        for (WatchEvent<?> aviso : clave.pollEvents()) {
+            if (aviso.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Se han perdido avisos: solo en este caso se recorre la carpeta.
+                this.revisarCarpeta(ahora);
+            } else if (aviso.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                this.olvidar(this.carpeta.resolve((Path) aviso.context()));
+            } else {
+                this.apuntar(this.carpeta.resolve((Path) aviso.context()), ahora);
+            }
+        }
+        if (!clave.reset()) {
+            RegistroEventos.aviso("La carpeta vigilada ya no está disponible: " + this.carpeta);
+            this.activo = false;
+        }
+    }
+
+    // Marca todos los archivos de la carpeta como candidatos.
+    private void revisarCarpeta(long ahora) {
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(this.carpeta)) {
+            for (Path ruta : contenido) {
+                this.apuntar(ruta, ahora);
+            }
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al revisar la carpeta vigilada", ex);
+        }
+    }
+
+    // Un archivo borrado deja de ser candidato y se olvida que se subió: si
+    // vuelve a aparecer con el mismo tamaño y fecha se sube otra vez.
+    private void olvidar(Path ruta) {
+        this.candidatos.remove(ruta);
+        this.subidos.remove(ruta);
+    }
+
+    // Un aviso nuevo de un archivo reinicia su espera.
+    private void apuntar(Path ruta, long ahora) {
+        String nombre = ruta.getFileName().toString();
+        if (nombre.startsWith(".") || nombre.endsWith("~") || nombre.endsWith(".tmp") || nombre.endsWith(".part")) {
+            return;
+        }
+        Candidato candidato = this.candidatos.get(ruta);
+        if (candidato == null) {
+            this.candidatos.put(ruta, new Candidato(ahora));
+        } else {
+            candidato.ultimoAviso = ahora;
+        }
+    }
+
+    // Comprueba los candidatos sin avisos durante el tiempo de estabilidad y
+    // envía por lotes los que no han cambiado desde la última comprobación.
+    private void enviarEstables() {
+        long ahora = System.currentTimeMillis();
+        List<File> lote = new ArrayList<>();
+        Iterator<Map.Entry<Path, Candidato>> it = this.candidatos.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Candidato> entrada = it.next();
+            Candidato candidato = entrada.getValue();
+            if (ahora - candidato.ultimoAviso < this.estabilidad) {
+                continue;
+            }
+
+            String firma = firma(entrada.getKey());
+            if (firma == null) {
+                // Borrado, movido o es un directorio.
+                it.remove();
+                this.subidos.remove(entrada.getKey());
+            } else if (!firma.equals(candidato.firma)) {
+                // Ha cambiado desde la última vez: se espera otro periodo.
+                candidato.firma = firma;
+                candidato.ultimoAviso = ahora;
+            } else {
+                it.remove();
+                if (!firma.equals(this.subidos.put(entrada.getKey(), firma))) {
+                    lote.add(entrada.getKey().toFile());
+                    if (lote.size() >= this.maxLote) {
+                        this.padre.subirLote(lote, this.rutaRemota, PlanificadorTransferencias.NORMAL);
+                        lote = new ArrayList<>();
+                    }
+                }
+            }
+        }
+        if (!lote.isEmpty()) {
+            this.padre.subirLote(lote, this.rutaRemota, PlanificadorTransferencias.NORMAL);
+        }
+    }
+
+    // Tamaño y fecha de un archivo normal, o null si no existe.
+    private static String firma(Path ruta) {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(ruta, BasicFileAttributes.class);
+            return atributos.isRegularFile() ? atributos.size() + "/" + atributos.lastModifiedTime().toMillis() : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // Un archivo que ha recibido avisos y aún no se ha subido.
+    private static class Candidato {
+
+        private long ultimoAviso;
+        private String firma;
+
+        private Candidato(long ultimoAviso) {
+            this.ultimoAviso = ultimoAviso;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package clienteftp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Clase VigilanteRemoto. Descarga solos los archivos nuevos o modificados de
+ * unos directorios del servidor. Cada directorio se revisa cada cierto tiempo:
+ * primero se pide solo su fecha (MLST o MDTM) y, si no ha cambiado, no se
+ * lista. Cuando se lista, DiferenciaListado compara la firma de cada archivo
+ * (tamaño y fecha) con la foto anterior; un archivo nuevo o cambiado se
+ * descarga cuando sale igual en dos revisiones seguidas, para no bajarlo a
+ * medio subir. El intervalo de cada directorio se acorta cuando cambia y se
+ * alarga cuando no.
+ *
+ * @since 19/10/2026
+ * @author Carlos Aguirre Vozmediano
+ */
+public class VigilanteRemoto implements Runnable {
+
+    // Tiempo máximo dormido seguido, para notar pronto que se ha detenido.
+    private static final long ESPERA_MAXIMA = 500;
+
+    private final Control padre;
+    private final PoolSesiones pool;
+    private final List<Directorio> directorios;
+    private final long intervaloMinimo, intervaloMaximo;
+    private final int forzarCada;
+    private final boolean usarMlsd, usarMlst, usarMdtm;
+    private volatile boolean activo;
+
+    /**
+     * Constructor del vigilante.
+     *
+     * @param padre Recibe los archivos que hay que descargar.
+     * @param pool Pool de sesiones del servidor.
+     * @param rutas Directorios remotos que se vigilan.
+     * @param capacidades Funciones del servidor (MLSD, MLST, MDTM).
+     * @param intervaloMinimo Milisegundos mínimos entre dos revisiones de un
+     * mismo directorio.
+     * @param intervaloMaximo Milisegundos máximos entre dos revisiones.
+     * @param forzarCada Número de revisiones sin cambio de fecha tras las que
+     * se lista igualmente, porque cambiar un archivo existente no siempre
+     * cambia la fecha del directorio.
+     */
+    public VigilanteRemoto(Control padre, PoolSesiones pool, List<String> rutas, CacheCapacidades capacidades,
+            long intervaloMinimo, long intervaloMaximo, int forzarCada) {
+        this.padre = padre;
+        this.pool = pool;
+        this.intervaloMinimo = Math.max(1000, intervaloMinimo);
+        this.intervaloMaximo = Math.max(this.intervaloMinimo, intervaloMaximo);
+        this.forzarCada = Math.max(1, forzarCada);
+        this.usarMlsd = capacidades.tieneFuncion(pool.getServidor(), "MLST");
+        this.usarMlst = this.usarMlsd;
+        this.usarMdtm = capacidades.tieneFuncion(pool.getServidor(), "MDTM");
+        this.directorios = new ArrayList<>();
+        for (String ruta : rutas) {
+            this.directorios.add(new Directorio(ruta, this.intervaloMinimo));
+        }
+    }
+
+    /**
+     * Arranca el hilo del vigilante.
+     */
+    public void iniciar() {
+        this.activo = true;
+        Thread hilo = new Thread(this, "vigilante-remoto");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Deja de vigilar. Las descargas ya pedidas siguen su curso.
+     */
+    public void detener() {
+        this.activo = false;
+    }
+
+    /**
+     * Obtiene el número de directorios vigilados.
+     *
+     * @return Número de directorios.
+     */
+    public int getNumeroDirectorios() {
+        return this.directorios.size();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.activo) {
+                long ahora = System.currentTimeMillis();
+                long siguiente = ahora + ESPERA_MAXIMA;
+                for (Directorio directorio : this.directorios) {
+                    if (!this.activo) {
+                        return;
+                    }
+                    if (directorio.siguiente <= ahora) {
+                        this.revisar(directorio);
+                    }
+                    siguiente = Math.min(siguiente, directorio.siguiente);
+                }
+                long espera = siguiente - System.currentTimeMillis();
+                if (espera > 0) {
+                    Thread.sleep(espera);
+                }
+            }
+        } catch (InterruptedException ex) {
+            this.activo = false;
+        }
+    }
+
+    // Revisa un directorio y pide la descarga de lo que haya cambiado.
+    private void revisar(Directorio directorio) throws InterruptedException {
+        FTPClient cliente;
+        try {
+            cliente = this.pool.obtener();
+        } catch (IOException ex) {
+            RegistroEventos.error("Fallo al vigilar " + directorio.ruta, ex);
+            directorio.programar(false, this.intervaloMinimo, this.intervaloMaximo);
+            return;
+        }
+
+        List<String> listos;
+        boolean cambio;
+        try {
+            String fecha = this.fechaDirectorio(cliente, directorio.ruta);
+            boolean forzar = directorio.diferencia.isPrimeraVez() || !directorio.pendientes.isEmpty()
+                    || fecha == null || ++directorio.rondasSinListar >= this.forzarCada;
+            if (!forzar && fecha.equals(directorio.fecha)) {
+                this.pool.devolver(cliente);
+                directorio.programar(false, this.intervaloMinimo, this.intervaloMaximo);
+                return;
+            }
+
+            FTPFile[] listado = Control.listar(cliente, directorio.ruta, this.usarMlsd);
+            this.pool.devolver(cliente);
+            directorio.fecha = fecha;
+            directorio.rondasSinListar = 0;
+            listos = directorio.comparar(listado);
+            cambio = !listos.isEmpty() || !directorio.pendientes.isEmpty();
+        } catch (IOException ex) {
+            this.pool.descartar(cliente);
+            RegistroEventos.error("Fallo al vigilar " + directorio.ruta, ex);
+            directorio.programar(false, this.intervaloMinimo, this.intervaloMaximo);
+            return;
+        }
+
+        directorio.programar(cambio, this.intervaloMinimo, this.intervaloMaximo);
+        if (!listos.isEmpty() && this.activo) {
+            RegistroEventos.info("Cambios en " + directorio.ruta + ": " + listos.size() + " archivos.");
+            this.padre.descargarLote(listos, directorio.ruta, PlanificadorTransferencias.NORMAL);
+        }
+    }
+
+    // Fecha de modificación del directorio, o null si el servidor no la da.
+    private String fechaDirectorio(FTPClient cliente, String ruta) throws IOException {
+        if (this.usarMlst) {
+            FTPFile datos = cliente.mlistFile(ruta);
+            if (datos != null && datos.getTimestamp() != null) {
+                return Long.toString(datos.getTimestamp().getTimeInMillis());
+            }
+        } else if (this.usarMdtm) {
+            return cliente.getModificationTime(ruta);
+        }
+        return null;
+    }
+
+    // Estado de un directorio vigilado.
+    private static class Directorio {
+
+        private final String ruta;
+        private final DiferenciaListado diferencia;
+        // Archivos nuevos o cambiados esperando a salir iguales otra vez.
+        private Set<String> pendientes;
+        private String fecha;
+        private int rondasSinListar;
+        private long intervalo, siguiente;
+
+        private Directorio(String ruta, long intervalo) {
+            this.ruta = ruta;
+            this.diferencia = new DiferenciaListado();
+            this.pendientes = new HashSet<>();
+            this.intervalo = intervalo;
+            this.siguiente = 0;
+        }
+
+        // Compara el listado con la foto anterior y devuelve los archivos que
+        // ya se pueden descargar: los pendientes que no han vuelto a cambiar.
+        // La primera vez solo toma la foto.
+        private List<String> comparar(FTPFile[] listado) {
+            boolean primeraVez = this.diferencia.isPrimeraVez();
+            DiferenciaListado.Cambios cambios = this.diferencia.comparar(listado);
+            List<String> listos = new ArrayList<>();
+            if (primeraVez || (cambios.isVacio() && this.pendientes.isEmpty())) {
+                return listos;
+            }
+
+            Set<String> cambiados = new HashSet<>();
+            for (FTPFile archivo : cambios.nuevos) {
+                if (archivo.isFile()) {
+                    cambiados.add(archivo.getName());
+                }
+            }
+            for (FTPFile archivo : cambios.modificados) {
+                if (archivo.isFile()) {
+                    cambiados.add(archivo.getName());
+                }
+            }
+            for (String nombre : this.pendientes) {
+                if (!cambiados.contains(nombre) && !cambios.eliminados.contains(nombre)) {
+                    listos.add(nombre);
+                }
+            }
+            this.pendientes = cambiados;
+            return listos;
+        }
+
+        // Acorta el intervalo si ha habido cambios y lo alarga si no.
+        private void programar(boolean cambio, long minimo, long maximo) {
+            if (cambio) {
+                this.intervalo = Math.max(minimo, this.intervalo / 2);
+            } else {
+                this.intervalo = Math.min(maximo, this.intervalo * 3 / 2);
+            }
+            this.siguiente = System.currentTimeMillis() + (this.pendientes.isEmpty() ? this.intervalo : minimo);
+        }
+    }
+}